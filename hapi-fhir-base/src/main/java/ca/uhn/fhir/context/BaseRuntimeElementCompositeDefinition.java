@@ -26,9 +26,11 @@ import java.lang.reflect.Modifier;
  */
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -37,6 +39,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IBase;
@@ -75,8 +78,10 @@ public abstract class BaseRuntimeElementCompositeDefinition<T extends IBase> ext
 	private Map<String, Integer> forcedOrder = null;
 	private List<BaseRuntimeChildDefinition> myChildren = new ArrayList<BaseRuntimeChildDefinition>();
 	private List<BaseRuntimeChildDefinition> myChildrenAndExtensions;
+	private Map<Class<?>, BitSet> myChildrenWhichMayContainType = new ConcurrentHashMap<Class<?>, BitSet>();
 	private Map<Class<? extends IBase>, BaseRuntimeElementDefinition<?>> myClassToElementDefinitions;
 	private FhirContext myContext;
+	private Map<Class<?>, Boolean> myMayContainType = new ConcurrentHashMap<Class<?>, Boolean>();
 	private Map<String, BaseRuntimeChildDefinition> myNameToChild = new HashMap<String, BaseRuntimeChildDefinition>();
 	private List<ScannedField> myScannedFields = new ArrayList<BaseRuntimeElementCompositeDefinition.ScannedField>();
 	private volatile boolean mySealed;
@@ -167,6 +172,39 @@ public abstract class BaseRuntimeElementCompositeDefinition<T extends IBase> ext
 		return myChildrenAndExtensions;
 	}
 
+	/**
+	 * Returns a set in which bit <code>n</code> is set if the values of the child at index <code>n</code> in
+	 * {@link #getChildrenAndExtension()} may be, or may contain, an element of the given type. A bit is only
+	 * clear if the child can only hold primitive values which can not be of the given type, so children which
+	 * can hold composite values (which may carry extensions of any type) are always set.
+	 * <p>
+	 * The result is computed from the model the first time a given type is requested, and is then cached.
+	 * The returned set must not be modified.
+	 * </p>
+	 */
+	public BitSet getChildrenWhichMayContainType(Class<?> theType) {
+		BitSet retVal = myChildrenWhichMayContainType.get(theType);
+		if (retVal == null) {
+			List<BaseRuntimeChildDefinition> children = getChildrenAndExtension();
+			retVal = new BitSet(children.size());
+			for (int i = 0; i < children.size(); i++) {
+				BaseRuntimeChildDefinition nextChild = children.get(i);
+				if (nextChild.getValidChildNames().isEmpty()) {
+					retVal.set(i);
+				}
+				for (String nextName : nextChild.getValidChildNames()) {
+					BaseRuntimeElementDefinition<?> nextDef = nextChild.getChildByName(nextName);
+					if (nextDef == null || !isPrimitive(nextDef) || isRelatedType(theType, nextDef.getImplementingClass())) {
+						retVal.set(i);
+						break;
+					}
+				}
+			}
+			myChildrenWhichMayContainType.put(theType, retVal);
+		}
+		return retVal;
+	}
+
 
 	/**
 	 * Has this class been sealed
@@ -175,6 +213,86 @@ public abstract class BaseRuntimeElementCompositeDefinition<T extends IBase> ext
 		return mySealed;
 	}
 
+	/**
+	 * Returns <code>false</code> if neither an element of this type nor any of its descendants can be an
+	 * instance of the given type, not counting the contents of extensions (which may hold almost any type).
+	 * Resource references are treated as being able to contain any type, since their target resource may be
+	 * visited along with them, and the same applies to contained resources.
+	 * <p>
+	 * The result is computed from the model the first time a given type is requested, and is then cached.
+	 * </p>
+	 */
+	public boolean mayContainType(Class<?> theType) {
+		Boolean retVal = myMayContainType.get(theType);
+		if (retVal == null) {
+			retVal = computeMayContainType(theType);
+			myMayContainType.put(theType, retVal);
+		}
+		return retVal;
+	}
+
+	private boolean computeMayContainType(Class<?> theType) {
+		Set<BaseRuntimeElementDefinition<?>> visited = Collections.newSetFromMap(new IdentityHashMap<BaseRuntimeElementDefinition<?>, Boolean>());
+		LinkedList<BaseRuntimeElementDefinition<?>> queue = new LinkedList<BaseRuntimeElementDefinition<?>>();
+		queue.add(this);
+		while (!queue.isEmpty()) {
+			BaseRuntimeElementDefinition<?> next = queue.removeFirst();
+			if (!visited.add(next)) {
+				continue;
+			}
+			if (isRelatedType(theType, next.getImplementingClass()) || IBaseReference.class.isAssignableFrom(next.getImplementingClass())) {
+				return true;
+			}
+			if (isPrimitive(next)) {
+				continue;
+			}
+			if (next instanceof RuntimeElementDirectResource) {
+				// Embedded resources (e.g. Bundle.entry.resource) are not descended into
+				continue;
+			}
+			if (!(next instanceof BaseRuntimeElementCompositeDefinition) || (next != this && next.getChildType() == ChildTypeEnum.RESOURCE)) {
+				// Contained resources, or something we don't know how to inspect
+				return true;
+			}
+
+			for (BaseRuntimeChildDefinition nextChild : ((BaseRuntimeElementCompositeDefinition<?>) next).getChildrenAndExtension()) {
+				if (nextChild instanceof RuntimeChildExtension || nextChild instanceof RuntimeChildDeclaredExtensionDefinition || nextChild instanceof RuntimeChildUndeclaredExtensionDefinition) {
+					continue;
+				}
+				if (nextChild instanceof RuntimeChildAny) {
+					return true;
+				}
+				for (String nextName : nextChild.getValidChildNames()) {
+					BaseRuntimeElementDefinition<?> nextDef = nextChild.getChildByName(nextName);
+					if (nextDef == null) {
+						return true;
+					}
+					queue.add(nextDef);
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean isPrimitive(BaseRuntimeElementDefinition<?> theDefinition) {
+		switch (theDefinition.getChildType()) {
+		case ID_DATATYPE:
+		case PRIMITIVE_DATATYPE:
+		case PRIMITIVE_XHTML:
+		case PRIMITIVE_XHTML_HL7ORG:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Instances of one of the types could also be instances of the other one
+	 */
+	private static boolean isRelatedType(Class<?> theType, Class<?> theOtherType) {
+		return theType.isAssignableFrom(theOtherType) || theOtherType.isAssignableFrom(theType);
+	}
+
 	@SuppressWarnings("unchecked")
 	void populateScanAlso(Set<Class<? extends IBase>> theScanAlso) {
 		for (ScannedField next : myScannedFields) {
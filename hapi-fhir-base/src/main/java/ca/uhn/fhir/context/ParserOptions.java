@@ -42,6 +42,8 @@ public class ParserOptions {
 	private boolean myStripVersionsFromReferences = true;
 	private Set<String> myDontStripVersionsFromReferencesAtPaths = Collections.emptySet();
 	private boolean myOverrideResourceIdWithBundleEntryFullUrl = true;
+	private boolean myStitchBundleCrossReferences = true;
+	private boolean myUseStreamingJsonParser = false;
 	
 	/**
 	 * If supplied value(s), any resource references at the specified paths will have their
@@ -174,4 +176,68 @@ public class ParserOptions {
 		myOverrideResourceIdWithBundleEntryFullUrl = theOverrideResourceIdWithBundleEntryFullUrl;
 		return this;
 	}
+
+	/**
+	 * If set to <code>true</code> (which is the default), when a Bundle is parsed any resource references
+	 * within it which point to another resource in the same Bundle (by resource ID or by
+	 * <code>Bundle.entry.fullUrl</code>) will have that resource populated, so that it can be accessed using
+	 * <code>getResource()</code> on the reference. Set this to <code>false</code> if this is not needed (e.g.
+	 * when a server is only going to store the entries) in order to make parsing large Bundles faster.
+	 * References to contained resources are always populated.
+	 *
+	 * @return Returns the parser instance's configuration setting for populating references between resources
+	 *         in a Bundle. Default is <code>true</code>.
+	 */
+	public boolean isStitchBundleCrossReferences() {
+		return myStitchBundleCrossReferences;
+	}
+
+	/**
+	 * If set to <code>true</code> (which is the default), when a Bundle is parsed any resource references
+	 * within it which point to another resource in the same Bundle (by resource ID or by
+	 * <code>Bundle.entry.fullUrl</code>) will have that resource populated, so that it can be accessed using
+	 * <code>getResource()</code> on the reference. Set this to <code>false</code> if this is not needed (e.g.
+	 * when a server is only going to store the entries) in order to make parsing large Bundles faster.
+	 * References to contained resources are always populated.
+	 *
+	 * @param theStitchBundleCrossReferences
+	 *           Set this to <code>false</code> to prevent the parser from populating references between
+	 *           resources in a Bundle
+	 *
+	 * @return Returns a reference to <code>this</code> parser so that method calls can be chained together
+	 */
+	public ParserOptions setStitchBundleCrossReferences(boolean theStitchBundleCrossReferences) {
+		myStitchBundleCrossReferences = theStitchBundleCrossReferences;
+		return this;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the JSON parser will read resources
+	 * directly from the token stream instead of first loading the entire document into a tree of
+	 * JSON objects. Small fragments such as extensions and primitive element metadata
+	 * (e.g. <code>_birthDate</code>) are still read as trees, and a resource whose
+	 * <code>resourceType</code> is not its first property is read as a tree as well.
+	 *
+	 * @return Returns the parser instance's configuration setting for streaming JSON parsing. Default is <code>false</code>.
+	 */
+	public boolean isUseStreamingJsonParser() {
+		return myUseStreamingJsonParser;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the JSON parser will read resources
+	 * directly from the token stream instead of first loading the entire document into a tree of
+	 * JSON objects. Small fragments such as extensions and primitive element metadata
+	 * (e.g. <code>_birthDate</code>) are still read as trees, and a resource whose
+	 * <code>resourceType</code> is not its first property is read as a tree as well.
+	 *
+	 * @param theUseStreamingJsonParser
+	 *           Set this to <code>true</code> to parse JSON content without building a tree first
+	 *
+	 * @return Returns a reference to <code>this</code> parser so that method calls can be chained together
+	 */
+	public ParserOptions setUseStreamingJsonParser(boolean theUseStreamingJsonParser) {
+		myUseStreamingJsonParser = theUseStreamingJsonParser;
+		return this;
+	}
 }
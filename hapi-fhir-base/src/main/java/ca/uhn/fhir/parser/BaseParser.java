@@ -283,8 +283,27 @@ public abstract class BaseParser implements IParser {
 
 	protected abstract void doEncodeResourceToWriter(IBaseResource theResource, Writer theWriter) throws IOException, DataFormatException;
 
+	/**
+	 * Subclasses may override this if they are able to write bytes natively. The
+	 * default implementation encodes through a UTF-8 {@link OutputStreamWriter}.
+	 */
+	protected void doEncodeResourceToOutputStream(IBaseResource theResource, OutputStream theOutputStream) throws IOException, DataFormatException {
+		Writer writer = new OutputStreamWriter(theOutputStream, Constants.CHARSET_UTF8);
+		doEncodeResourceToWriter(theResource, writer);
+		writer.flush();
+	}
+
 	protected abstract <T extends IBaseResource> T doParseResource(Class<T> theResourceType, Reader theReader) throws DataFormatException;
 
+	/**
+	 * Subclasses may override this if they are able to read bytes natively. The
+	 * default implementation decodes the stream as UTF-8.
+	 */
+	protected <T extends IBaseResource> T doParseResource(Class<T> theResourceType, InputStream theInputStream) throws DataFormatException {
+		Reader reader = new InputStreamReader(theInputStream, Constants.CHARSET_UTF8);
+		return doParseResource(theResourceType, reader);
+	}
+
 	@Override
 	public String encodeResourceToString(IBaseResource theResource) throws DataFormatException {
 		Writer stringWriter = new StringWriter();
@@ -296,17 +315,29 @@ public abstract class BaseParser implements IParser {
 		return stringWriter.toString();
 	}
 
+	@Override
+	public final void encodeResourceToOutputStream(IBaseResource theResource, OutputStream theOutputStream) throws IOException, DataFormatException {
+		Validate.notNull(theResource, "theResource can not be null");
+		Validate.notNull(theOutputStream, "theOutputStream can not be null");
+		validateResourceVersionForEncoding(theResource);
+
+		doEncodeResourceToOutputStream(theResource, theOutputStream);
+	}
+
 	@Override
 	public final void encodeResourceToWriter(IBaseResource theResource, Writer theWriter) throws IOException, DataFormatException {
 		Validate.notNull(theResource, "theResource can not be null");
 		Validate.notNull(theWriter, "theWriter can not be null");
+		validateResourceVersionForEncoding(theResource);
+
+		doEncodeResourceToWriter(theResource, theWriter);
+	}
 
+	private void validateResourceVersionForEncoding(IBaseResource theResource) {
 		if (theResource.getStructureFhirVersionEnum() != myContext.getVersion().getVersion()) {
 			throw new IllegalArgumentException(
 				"This parser is for FHIR version " + myContext.getVersion().getVersion() + " - Can not encode a structure for version " + theResource.getStructureFhirVersionEnum());
 		}
-
-		doEncodeResourceToWriter(theResource, theWriter);
 	}
 
 	private void filterCodingsWithNoCodeOrSystem(List<? extends IBaseCoding> tagList) {
@@ -620,6 +651,23 @@ public abstract class BaseParser implements IParser {
 		return mySuppressNarratives;
 	}
 
+	@Override
+	public <T extends IBaseResource> T parseResource(Class<T> theResourceType, InputStream theInputStream) throws DataFormatException {
+
+		/*
+		 * We do this so that the context can verify that the structure is for
+		 * the correct FHIR version
+		 */
+		if (theResourceType != null) {
+			myContext.getResourceDefinition(theResourceType);
+		}
+
+		// Actually do the parse
+		T retVal = doParseResource(theResourceType, theInputStream);
+
+		return postProcessParsedResource(retVal);
+	}
+
 	@Override
 	public <T extends IBaseResource> T parseResource(Class<T> theResourceType, Reader theReader) throws DataFormatException {
 
@@ -634,6 +682,10 @@ public abstract class BaseParser implements IParser {
 		// Actually do the parse
 		T retVal = doParseResource(theResourceType, theReader);
 
+		return postProcessParsedResource(retVal);
+	}
+
+	private <T extends IBaseResource> T postProcessParsedResource(T retVal) {
 		RuntimeResourceDefinition def = myContext.getResourceDefinition(retVal);
 		if ("Bundle".equals(def.getName())) {
 
@@ -684,6 +736,29 @@ public abstract class BaseParser implements IParser {
 		return (T) parseResource(theResourceType, reader);
 	}
 
+	@Override
+	public <T extends IBase> BundleEntryIterator<T> parseBundleEntries(Class<? extends IBaseBundle> theBundleType, Reader theReader) throws DataFormatException {
+		Validate.notNull(theBundleType, "theBundleType can not be null");
+		Validate.notNull(theReader, "theReader can not be null");
+
+		RuntimeResourceDefinition def = myContext.getResourceDefinition(theBundleType);
+		if (!"Bundle".equals(def.getName())) {
+			throw new IllegalArgumentException("Type " + theBundleType.getName() + " is not a Bundle type");
+		}
+
+		return newBundleEntryIterator(theBundleType, theReader);
+	}
+
+	/**
+	 * Creates the format specific iterator for {@link #parseBundleEntries(Class, Reader)}
+	 */
+	protected abstract <T extends IBase> BundleEntryIterator<T> newBundleEntryIterator(Class<? extends IBaseBundle> theBundleType, Reader theReader);
+
+	@Override
+	public IBaseResource parseResource(InputStream theInputStream) throws ConfigurationException, DataFormatException {
+		return parseResource(null, theInputStream);
+	}
+
 	@Override
 	public IBaseResource parseResource(Reader theReader) throws ConfigurationException, DataFormatException {
 		return parseResource(null, theReader);
@@ -0,0 +1,129 @@
+package ca.uhn.fhir.parser;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+
+/**
+ * Iterates over the entries of a Bundle which is being parsed incrementally. Instances are
+ * created using {@link IParser#parseBundleEntries(Class, java.io.Reader)}.
+ * <p>
+ * Each entry is only read from the underlying stream when it is requested, so the memory required
+ * is proportional to the size of a single entry instead of to the size of the whole Bundle. Each
+ * returned entry is fully populated (<code>fullUrl</code>, <code>request</code>, <code>response</code>,
+ * <code>resource</code>, etc.) but is not attached to any Bundle. Because entries are parsed
+ * independently of each other, references between resources in different entries are not resolved
+ * into resource instances the way they are when the whole Bundle is parsed.
+ * </p>
+ * <p>
+ * Thread safety: <b>Instances of this class are not thread safe</b>
+ * </p>
+ *
+ * @since 3.2.0
+ */
+public abstract class BundleEntryIterator<T extends IBase> implements Iterator<T> {
+
+	private final Class<? extends IBaseBundle> myBundleType;
+	private final FhirContext myContext;
+	private boolean myFinished;
+	private T myNext;
+
+	BundleEntryIterator(FhirContext theContext, Class<? extends IBaseBundle> theBundleType) {
+		myContext = theContext;
+		myBundleType = theBundleType;
+	}
+
+	/**
+	 * Parses a Bundle containing a single entry and returns that entry
+	 */
+	@SuppressWarnings("unchecked")
+	T extractEntry(IBaseBundle theSingleEntryBundle) {
+		RuntimeResourceDefinition def = myContext.getResourceDefinition(theSingleEntryBundle);
+		List<IBase> entries = def.getChildByName("entry").getAccessor().getValues(theSingleEntryBundle);
+		if (entries.isEmpty()) {
+			return null;
+		}
+		return (T) entries.get(0);
+	}
+
+	/**
+	 * Returns a Bundle populated with the Bundle level elements (i.e. everything other than the
+	 * entries, such as <code>Bundle.type</code>) which have been read so far. Elements which
+	 * appear before the first entry (which includes <code>Bundle.type</code> in any Bundle
+	 * which follows the element order defined by FHIR) are available once {@link #hasNext()}
+	 * has been called for the first time, and all elements are available once iteration has
+	 * finished.
+	 */
+	public abstract IBaseBundle getBundle();
+
+	Class<? extends IBaseBundle> getBundleType() {
+		return myBundleType;
+	}
+
+	String getBundleTypeName() {
+		return myContext.getResourceDefinition(myBundleType).getName();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (myNext == null && !myFinished) {
+			myNext = readNextEntry();
+			if (myNext == null) {
+				myFinished = true;
+			}
+		}
+		return myNext != null;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		T retVal = myNext;
+		myNext = null;
+		return retVal;
+	}
+
+	/**
+	 * Reads and parses the next entry from the underlying stream
+	 *
+	 * @return The entry, or <code>null</code> if there are no more entries
+	 */
+	abstract T readNextEntry();
+
+	/**
+	 * Not supported
+	 */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+}
@@ -42,6 +42,20 @@ public interface IParser {
 
 	void encodeResourceToWriter(IBaseResource theResource, Writer theWriter) throws IOException, DataFormatException;
 
+	/**
+	 * Encodes a resource directly to a byte stream using the UTF-8 character encoding. This avoids
+	 * building an intermediate String when the encoded resource is ultimately needed as bytes (e.g. to
+	 * store it or to send it over the network). The stream may be e.g. a
+	 * {@link java.util.zip.GZIPOutputStream} in order to compress the output as it is written.
+	 *
+	 * @param theResource
+	 *           The resource to encode
+	 * @param theOutputStream
+	 *           The stream to write to. Note that the stream will be flushed but not closed by the parser upon completion.
+	 * @since 3.2.0
+	 */
+	void encodeResourceToOutputStream(IBaseResource theResource, OutputStream theOutputStream) throws IOException, DataFormatException;
+
 	/**
 	 * See {@link #setEncodeElements(Set)}
 	 */
@@ -127,6 +141,22 @@ public interface IParser {
 	 */
 	<T extends IBaseResource> T parseResource(Class<T> theResourceType, Reader theReader) throws DataFormatException;
 
+	/**
+	 * Parses a resource from a byte stream. XML content is decoded using the character encoding given in its
+	 * XML declaration (UTF-8 if none is given), and JSON content is decoded as UTF-8.
+	 *
+	 * @param theResourceType
+	 *           The resource type to use. This can be used to explicitly specify a class which extends a built-in type
+	 *           (e.g. a custom type extending the default Patient class)
+	 * @param theInputStream
+	 *           The stream to parse input from. Note that the stream will not be closed by the parser upon completion.
+	 * @return A parsed resource
+	 * @throws DataFormatException
+	 *            If the resource can not be parsed because the data is not recognized or invalid for any reason
+	 * @since 3.2.0
+	 */
+	<T extends IBaseResource> T parseResource(Class<T> theResourceType, InputStream theInputStream) throws DataFormatException;
+
 	/**
 	 * Parses a resource
 	 * 
@@ -153,6 +183,20 @@ public interface IParser {
 	 */
 	IBaseResource parseResource(Reader theReader) throws ConfigurationException, DataFormatException;
 
+	/**
+	 * Parses a resource from a byte stream. XML content is decoded using the character encoding given in its
+	 * XML declaration (UTF-8 if none is given), and JSON content is decoded as UTF-8.
+	 *
+	 * @param theInputStream
+	 *           The stream to parse input from. Note that the stream will not be closed by the parser upon completion.
+	 * @return A parsed resource. Note that the returned object will be an instance of {@link IResource} or
+	 *         {@link IAnyResource} depending on the specific FhirContext which created this parser.
+	 * @throws DataFormatException
+	 *            If the resource can not be parsed because the data is not recognized or invalid for any reason
+	 * @since 3.2.0
+	 */
+	IBaseResource parseResource(InputStream theInputStream) throws ConfigurationException, DataFormatException;
+
 	/**
 	 * Parses a resource
 	 * 
@@ -165,6 +209,24 @@ public interface IParser {
 	 */
 	IBaseResource parseResource(String theMessageString) throws ConfigurationException, DataFormatException;
 
+	/**
+	 * Parses a Bundle incrementally, returning an iterator which reads and parses each entry only
+	 * when it is requested. This can be used to process very large Bundles while keeping only one
+	 * entry in memory at a time. See {@link BundleEntryIterator} for details.
+	 *
+	 * @param theBundleType
+	 *           The Bundle resource type for the structure version being parsed (e.g. <code>org.hl7.fhir.r4.model.Bundle.class</code>)
+	 * @param theReader
+	 *           The reader to parse input from. Note that the Reader will not be closed by the parser upon completion.
+	 * @return An iterator over the entries. The type parameter is the entry type of the given Bundle type
+	 *         (e.g. <code>org.hl7.fhir.r4.model.Bundle.BundleEntryComponent</code>).
+	 * @throws DataFormatException
+	 *            If the Bundle can not be parsed. Note that since parsing happens as the iterator is used,
+	 *            this may also be thrown by the iterator's methods.
+	 * @since 3.2.0
+	 */
+	<T extends IBase> BundleEntryIterator<T> parseBundleEntries(Class<? extends IBaseBundle> theBundleType, Reader theReader) throws DataFormatException;
+
 	/**
 	 * If provided, specifies the elements which should NOT be encoded. Valid values for this
 	 * field would include:
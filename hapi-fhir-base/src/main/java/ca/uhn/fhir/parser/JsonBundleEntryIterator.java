@@ -0,0 +1,129 @@
+package ca.uhn.fhir.parser;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.json.GsonStructure;
+
+/**
+ * JSON implementation of {@link BundleEntryIterator}. The Bundle is read from a Gson token
+ * stream, and each entry is loaded as a tree and parsed on its own when it is reached.
+ */
+class JsonBundleEntryIterator<T extends IBase> extends BundleEntryIterator<T> {
+
+	private IBaseBundle myBundle;
+	private final JsonObject myBundleElements = new JsonObject();
+	private boolean myInEntryArray;
+	private final JsonParser myParser;
+	private final JsonReader myReader;
+	private boolean myStarted;
+	private final com.google.gson.JsonParser myTreeReader = new com.google.gson.JsonParser();
+
+	JsonBundleEntryIterator(JsonParser theParser, FhirContext theContext, Class<? extends IBaseBundle> theBundleType, Reader theReader) {
+		super(theContext, theBundleType);
+		myParser = theParser;
+		myReader = new JsonReader(theReader);
+		myReader.setLenient(true);
+		myBundleElements.addProperty("resourceType", getBundleTypeName());
+	}
+
+	@Override
+	public IBaseBundle getBundle() {
+		if (myBundle == null) {
+			myBundle = myParser.parseResource(getBundleType(), new GsonStructure(myBundleElements));
+		}
+		return myBundle;
+	}
+
+	@Override
+	T readNextEntry() {
+		try {
+			if (!myStarted) {
+				if (myReader.peek() != JsonToken.BEGIN_OBJECT) {
+					throw new DataFormatException("Content does not appear to be FHIR JSON, expected an object but found: " + myReader.peek());
+				}
+				myReader.beginObject();
+				myStarted = true;
+			}
+
+			while (true) {
+				if (myInEntryArray) {
+					if (!myReader.hasNext()) {
+						myReader.endArray();
+						myInEntryArray = false;
+						continue;
+					}
+
+					JsonArray entries = new JsonArray();
+					entries.add(myTreeReader.parse(myReader));
+					JsonObject singleEntryBundle = new JsonObject();
+					singleEntryBundle.addProperty("resourceType", getBundleTypeName());
+					singleEntryBundle.add("entry", entries);
+
+					T retVal = extractEntry(myParser.parseResource(getBundleType(), new GsonStructure(singleEntryBundle)));
+					if (retVal != null) {
+						return retVal;
+					}
+					continue;
+				}
+
+				if (!myReader.hasNext()) {
+					myReader.endObject();
+					return null;
+				}
+
+				String nextName = myReader.nextName();
+				if ("entry".equals(nextName) && myReader.peek() == JsonToken.BEGIN_ARRAY) {
+					myReader.beginArray();
+					myInEntryArray = true;
+					continue;
+				}
+
+				JsonElement nextValue = myTreeReader.parse(myReader);
+				if ("resourceType".equals(nextName)) {
+					if (!nextValue.isJsonPrimitive() || !getBundleTypeName().equals(nextValue.getAsString())) {
+						throw new DataFormatException("Incorrect resource type found, expected \"" + getBundleTypeName() + "\" but found \"" + nextValue + "\"");
+					}
+				}
+				myBundleElements.add(nextName, nextValue);
+				myBundle = null;
+			}
+		} catch (IOException e) {
+			throw new DataFormatException("Failed to parse JSON encoded FHIR content: " + e.getMessage(), e);
+		} catch (JsonParseException e) {
+			throw new DataFormatException("Failed to parse JSON encoded FHIR content: " + e.getMessage(), e);
+		}
+	}
+
+}
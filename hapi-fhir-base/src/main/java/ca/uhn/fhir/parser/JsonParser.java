@@ -161,8 +161,17 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 		doEncodeResourceToJsonLikeWriter(theResource, eventWriter);
 	}
 
+	@Override
+	protected <T extends IBase> BundleEntryIterator<T> newBundleEntryIterator(Class<? extends IBaseBundle> theBundleType, Reader theReader) {
+		return new JsonBundleEntryIterator<T>(this, myContext, theBundleType, theReader);
+	}
+
 	@Override
 	public <T extends IBaseResource> T doParseResource(Class<T> theResourceType, Reader theReader) {
+		if (myContext.getParserOptions().isUseStreamingJsonParser()) {
+			return new JsonStreamParser(this, myContext).parseResource(theResourceType, theReader);
+		}
+
 		JsonLikeStructure jsonStructure = new GsonStructure();
 		jsonStructure.load(theReader);
 
@@ -843,7 +852,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 	// return object;
 	// }
 
-	private void parseAlternates(JsonLikeValue theAlternateVal, ParserState<?> theState, String theElementName, String theAlternateName) {
+	void parseAlternates(JsonLikeValue theAlternateVal, ParserState<?> theState, String theElementName, String theAlternateName) {
 		if (theAlternateVal == null || theAlternateVal.isNull()) {
 			return;
 		}
@@ -889,7 +898,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 		}
 	}
 
-	private void parseChildren(JsonLikeObject theObject, ParserState<?> theState) {
+	void parseChildren(JsonLikeObject theObject, ParserState<?> theState) {
 		Set<String> keySet = theObject.keySet();
 
 		int allUnderscoreNames = 0;
@@ -962,7 +971,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 
 	}
 
-	private void parseChildren(ParserState<?> theState, String theName, JsonLikeValue theJsonVal, JsonLikeValue theAlternateVal, String theAlternateName, boolean theInArray) {
+	void parseChildren(ParserState<?> theState, String theName, JsonLikeValue theJsonVal, JsonLikeValue theAlternateVal, String theAlternateName, boolean theInArray) {
 		if (theName.equals("id")) {
 			if (!theJsonVal.isString()) {
 				getErrorHandler().incorrectJsonType(null, "id", ValueType.SCALAR, ScalarType.STRING, theJsonVal.getJsonType(), theJsonVal.getDataType());
@@ -1022,7 +1031,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 		}
 	}
 
-	private void parseExtension(ParserState<?> theState, JsonLikeArray theValues, boolean theIsModifier) {
+	void parseExtension(ParserState<?> theState, JsonLikeArray theValues, boolean theIsModifier) {
 		int allUnderscoreNames = 0;
 		int handledUnderscoreNames = 0;
 
@@ -1095,7 +1104,7 @@ public class JsonParser extends BaseParser implements IJsonLikeParser {
 		}
 	}
 
-	private void parseFhirComments(JsonLikeValue theObject, ParserState<?> theState) {
+	void parseFhirComments(JsonLikeValue theObject, ParserState<?> theState) {
 		if (theObject.isArray()) {
 			JsonLikeArray comments = theObject.getAsArray();
 			for (int i = 0; i < comments.size(); i++) {
@@ -0,0 +1,319 @@
+package ca.uhn.fhir.parser;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.json.GsonStructure;
+import ca.uhn.fhir.parser.json.JsonLikeObject;
+import ca.uhn.fhir.parser.json.JsonLikeValue;
+import ca.uhn.fhir.parser.json.JsonLikeValue.ScalarType;
+import ca.uhn.fhir.parser.json.JsonLikeValue.ValueType;
+
+/**
+ * Parses a JSON resource by reading directly from a Gson {@link JsonReader} token stream and
+ * feeding the {@link ParserState} as elements are encountered, instead of first loading the whole
+ * document into a tree. This is used by {@link JsonParser} when
+ * {@link ca.uhn.fhir.context.ParserOptions#setUseStreamingJsonParser(boolean)} is enabled.
+ * <p>
+ * Extensions, <code>fhir_comments</code> and the <code>_name</code> properties which carry
+ * primitive element metadata are small, so these are still read as (small) trees and handed to
+ * the regular {@link JsonParser} logic. Primitive values are held back until the end of their
+ * parent object, since their <code>_name</code> property is allowed to follow them.
+ * </p>
+ */
+class JsonStreamParser {
+
+	private static final String MISSING_RESOURCE_TYPE_ROOT = "Invalid JSON content detected, missing required element: 'resourceType'";
+	private static final String MISSING_RESOURCE_TYPE_NESTED = "Missing required element 'resourceType' from JSON resource object, unable to parse";
+
+	private final FhirContext myContext;
+	private final JsonParser myParser;
+	private final com.google.gson.JsonParser myTreeReader = new com.google.gson.JsonParser();
+
+	JsonStreamParser(JsonParser theParser, FhirContext theContext) {
+		myParser = theParser;
+		myContext = theContext;
+	}
+
+	<T extends IBaseResource> T parseResource(Class<T> theResourceType, Reader theReader) {
+		PushbackReader pbr = new PushbackReader(theReader);
+		ParserState<? extends IBaseResource> state;
+		try {
+			while (true) {
+				int nextInt = pbr.read();
+				if (nextInt == -1) {
+					throw new DataFormatException("Did not find any content to parse");
+				}
+				if (nextInt == '{') {
+					pbr.unread(nextInt);
+					break;
+				}
+				if (Character.isWhitespace(nextInt)) {
+					continue;
+				}
+				throw new DataFormatException("Content does not appear to be FHIR JSON, first non-whitespace character was: '" + (char) nextInt + "' (must be '{')");
+			}
+
+			JsonReader reader = new JsonReader(pbr);
+			reader.setLenient(true);
+
+			state = ParserState.getPreResourceInstance(myParser, theResourceType, myContext, true, myParser.getErrorHandler());
+			reader.beginObject();
+			parseResource(reader, state, MISSING_RESOURCE_TYPE_ROOT);
+			state.endingElement();
+
+			if (reader.peek() != JsonToken.END_DOCUMENT) {
+				throw new DataFormatException("Failed to parse JSON content, error was: JSON document was not fully consumed.");
+			}
+		} catch (IOException e) {
+			throw new DataFormatException("Failed to parse JSON encoded FHIR content: " + e.getMessage(), e);
+		} catch (JsonParseException e) {
+			throw new DataFormatException("Failed to parse JSON encoded FHIR content: " + e.getMessage(), e);
+		}
+
+		@SuppressWarnings("unchecked")
+		T retVal = (T) state.getObject();
+
+		return retVal;
+	}
+
+	/**
+	 * Parses the body of a resource object. The reader must be positioned just after the opening brace,
+	 * and the object is consumed up to and including its closing brace.
+	 */
+	private void parseResource(JsonReader theReader, ParserState<?> theState, String theMissingResourceTypeMessage) throws IOException {
+		if (!theReader.hasNext()) {
+			throw new DataFormatException(theMissingResourceTypeMessage);
+		}
+
+		String firstName = theReader.nextName();
+		if ("resourceType".equals(firstName) && theReader.peek() == JsonToken.STRING) {
+			String resourceType = theReader.nextString();
+			if (isBlank(resourceType)) {
+				throw new DataFormatException(theMissingResourceTypeMessage);
+			}
+			theState.enteringNewElement(null, resourceType);
+			parseObjectChildren(theReader, theState);
+			theState.endingElement();
+			return;
+		}
+
+		/*
+		 * The resource type is needed before any of the children can be handled, so if it isn't
+		 * the first property we read this resource as a tree instead
+		 */
+		JsonObject object = new JsonObject();
+		object.add(firstName, readTree(theReader));
+		while (theReader.hasNext()) {
+			String nextName = theReader.nextName();
+			object.add(nextName, readTree(theReader));
+		}
+		theReader.endObject();
+
+		JsonLikeObject likeObject = new GsonStructure(object).getRootObject();
+		JsonLikeValue resourceTypeObj = likeObject.get("resourceType");
+		if (resourceTypeObj == null || !resourceTypeObj.isString() || isBlank(resourceTypeObj.getAsString())) {
+			throw new DataFormatException(theMissingResourceTypeMessage);
+		}
+		theState.enteringNewElement(null, resourceTypeObj.getAsString());
+		myParser.parseChildren(likeObject, theState);
+		theState.endingElement();
+	}
+
+	/**
+	 * Parses the properties of an object. The reader must be positioned inside the object, and the
+	 * object is consumed up to and including its closing brace.
+	 */
+	private void parseObjectChildren(JsonReader theReader, ParserState<?> theState) throws IOException {
+		Set<String> allNames = new HashSet<String>();
+		Set<String> elementNames = new HashSet<String>();
+		Map<String, JsonElement> primitives = new LinkedHashMap<String, JsonElement>();
+		Map<String, JsonElement> alternates = new LinkedHashMap<String, JsonElement>();
+
+		while (theReader.hasNext()) {
+			String nextName = theReader.nextName();
+			allNames.add(nextName);
+
+			if ("resourceType".equals(nextName)) {
+				theReader.skipValue();
+			} else if ("extension".equals(nextName) || "modifierExtension".equals(nextName)) {
+				JsonLikeValue value = GsonStructure.wrap(readTree(theReader));
+				if (value.isNull()) {
+					continue;
+				}
+				if (!value.isArray()) {
+					throw new DataFormatException("Syntax error parsing JSON FHIR structure: Expected ARRAY at element '" + nextName + "', found '" + value.getJsonType() + "'");
+				}
+				myParser.parseExtension(theState, value.getAsArray(), "modifierExtension".equals(nextName));
+			} else if ("fhir_comments".equals(nextName)) {
+				myParser.parseFhirComments(GsonStructure.wrap(readTree(theReader)), theState);
+			} else if (nextName.charAt(0) == '_') {
+				alternates.put(nextName, readTree(theReader));
+			} else {
+				elementNames.add(nextName);
+				String alternateName = '_' + nextName;
+				JsonToken nextToken = theReader.peek();
+				if (nextToken == JsonToken.BEGIN_OBJECT) {
+					parseObjectValue(theReader, theState, nextName, alternates.get(alternateName), false);
+				} else if (nextToken == JsonToken.BEGIN_ARRAY) {
+					theReader.beginArray();
+					if (theReader.peek() == JsonToken.BEGIN_OBJECT) {
+						parseObjectArray(theReader, theState, nextName, alternates.get(alternateName));
+					} else {
+						com.google.gson.JsonArray array = new com.google.gson.JsonArray();
+						while (theReader.hasNext()) {
+							array.add(readTree(theReader));
+						}
+						theReader.endArray();
+						primitives.put(nextName, array);
+					}
+				} else {
+					primitives.put(nextName, readTree(theReader));
+				}
+			}
+		}
+		theReader.endObject();
+
+		int handledUnderscoreNames = 0;
+		for (String nextAlternateName : alternates.keySet()) {
+			if (elementNames.contains(nextAlternateName.substring(1))) {
+				handledUnderscoreNames++;
+			}
+		}
+
+		for (Entry<String, JsonElement> next : primitives.entrySet()) {
+			String alternateName = '_' + next.getKey();
+			myParser.parseChildren(theState, next.getKey(), GsonStructure.wrap(next.getValue()), wrap(alternates.get(alternateName)), alternateName, false);
+		}
+
+		/*
+		 * This happens if an element has an extension but no actual value, see
+		 * JsonParser#parseChildren(JsonLikeObject, ParserState)
+		 */
+		if (alternates.size() > handledUnderscoreNames) {
+			for (Entry<String, JsonElement> next : alternates.entrySet()) {
+				String alternateName = next.getKey();
+				if (alternateName.length() > 1) {
+					JsonLikeValue nextValue = GsonStructure.wrap(next.getValue());
+					if (nextValue.isObject()) {
+						String nextName = alternateName.substring(1);
+						if (!allNames.contains(nextName)) {
+							theState.enteringNewElement(null, nextName);
+							myParser.parseAlternates(nextValue, theState, alternateName, alternateName);
+							theState.endingElement();
+						}
+					} else {
+						myParser.getErrorHandler().incorrectJsonType(null, alternateName, ValueType.OBJECT, null, nextValue.getJsonType(), null);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses an array whose first entry is an object. The reader must be positioned just after the
+	 * opening bracket, and the array is consumed up to and including its closing bracket.
+	 */
+	private void parseObjectArray(JsonReader theReader, ParserState<?> theState, String theName, JsonElement theAlternate) throws IOException {
+		String alternateName = '_' + theName;
+		if ("id".equals(theName)) {
+			myParser.getErrorHandler().incorrectJsonType(null, "id", ValueType.SCALAR, ScalarType.STRING, ValueType.ARRAY, null);
+		}
+
+		com.google.gson.JsonArray alternateArray = null;
+		if (theAlternate != null) {
+			if (theAlternate.isJsonArray()) {
+				alternateArray = theAlternate.getAsJsonArray();
+			} else {
+				myParser.getErrorHandler().incorrectJsonType(null, alternateName, ValueType.ARRAY, null, GsonStructure.wrap(theAlternate).getJsonType(), null);
+			}
+		}
+
+		int index = 0;
+		while (theReader.hasNext()) {
+			JsonElement nextAlternate = null;
+			if (alternateArray != null && index < alternateArray.size()) {
+				nextAlternate = alternateArray.get(index);
+			}
+			if (theReader.peek() == JsonToken.BEGIN_OBJECT) {
+				parseObjectValue(theReader, theState, theName, nextAlternate, true);
+			} else {
+				myParser.parseChildren(theState, theName, GsonStructure.wrap(readTree(theReader)), wrap(nextAlternate), alternateName, true);
+			}
+			index++;
+		}
+		theReader.endArray();
+	}
+
+	/**
+	 * Parses an object valued element. The reader must be positioned at the opening brace.
+	 */
+	private void parseObjectValue(JsonReader theReader, ParserState<?> theState, String theName, JsonElement theAlternate, boolean theInArray) throws IOException {
+		String alternateName = '_' + theName;
+		if ("id".equals(theName)) {
+			myParser.getErrorHandler().incorrectJsonType(null, "id", ValueType.SCALAR, ScalarType.STRING, ValueType.OBJECT, null);
+		}
+		if (!theInArray && theState.elementIsRepeating(theName)) {
+			myParser.getErrorHandler().incorrectJsonType(null, theName, ValueType.ARRAY, null, ValueType.OBJECT, null);
+		}
+
+		theState.enteringNewElement(null, theName);
+		myParser.parseAlternates(wrap(theAlternate), theState, alternateName, alternateName);
+		theReader.beginObject();
+		if (theState.isPreResource()) {
+			parseResource(theReader, theState, MISSING_RESOURCE_TYPE_NESTED);
+		} else {
+			parseObjectChildren(theReader, theState);
+		}
+		theState.endingElement();
+	}
+
+	private JsonElement readTree(JsonReader theReader) {
+		return myTreeReader.parse(theReader);
+	}
+
+	private static JsonLikeValue wrap(JsonElement theElement) {
+		if (theElement == null) {
+			return null;
+		}
+		return GsonStructure.wrap(theElement);
+	}
+
+}
@@ -51,15 +51,19 @@ class ParserState<T> {
 	private final IParserErrorHandler myErrorHandler;
 	private final boolean myJsonMode;
 	private T myObject;
+	private final List<IBaseReference> myParsedReferences = new ArrayList<IBaseReference>();
+	private final List<IBaseResource> myParsedResources = new ArrayList<IBaseResource>();
 	private final IParser myParser;
 	private IBase myPreviousElement;
 	private BaseState myState;
+	private final boolean myStitchBundleCrossReferences;
 
 	private ParserState(IParser theParser, FhirContext theContext, boolean theJsonMode, IParserErrorHandler theErrorHandler) {
 		myParser = theParser;
 		myContext = theContext;
 		myJsonMode = theJsonMode;
 		myErrorHandler = theErrorHandler;
+		myStitchBundleCrossReferences = theContext.getParserOptions().isStitchBundleCrossReferences();
 	}
 
 	public void attributeValue(String theName, String theValue) throws DataFormatException {
@@ -475,6 +479,10 @@ class ParserState<T> {
 			myDefinition = theDef;
 			myInstance = theInstance;
 			myElementName = theElementName;
+
+			if (theInstance instanceof IBaseReference && thePreResourceState != null) {
+				thePreResourceState.addReference((IBaseReference) theInstance);
+			}
 		}
 
 		@Override
@@ -875,8 +883,11 @@ class ParserState<T> {
 	private abstract class PreResourceState extends BaseState {
 
 		private Map<String, IBaseResource> myContainedResources;
+		private final int myFirstParsedReferenceIndex;
+		private final int myFirstParsedResourceIndex;
 		private IBaseResource myInstance;
 		private FhirVersionEnum myParentVersion;
+		private List<IBaseReference> myReferences;
 		private boolean myRequireResourceType = true;
 		private Class<? extends IBaseResource> myResourceType;
 
@@ -884,6 +895,9 @@ class ParserState<T> {
 			super(null);
 			myResourceType = theResourceType;
 			myContainedResources = new HashMap<String, IBaseResource>();
+			myReferences = new ArrayList<IBaseReference>();
+			myFirstParsedReferenceIndex = myParsedReferences.size();
+			myFirstParsedResourceIndex = myParsedResources.size();
 			if (theResourceType != null) {
 				myParentVersion = myContext.getResourceDefinition(theResourceType).getStructureVersion();
 			} else {
@@ -896,6 +910,21 @@ class ParserState<T> {
 			Validate.notNull(theParentVersion);
 			myParentVersion = theParentVersion;
 			myContainedResources = thePreResourcesState.getContainedResources();
+			myReferences = new ArrayList<IBaseReference>();
+			myFirstParsedReferenceIndex = myParsedReferences.size();
+			myFirstParsedResourceIndex = myParsedResources.size();
+		}
+
+		/**
+		 * Called for each reference which is created while parsing this resource (including any
+		 * resources it contains), so that local and Bundle references can be resolved afterwards
+		 * without walking the parsed resources again
+		 */
+		void addReference(IBaseReference theReference) {
+			myReferences.add(theReference);
+			if (myStitchBundleCrossReferences) {
+				myParsedReferences.add(theReference);
+			}
 		}
 
 		@Override
@@ -1003,46 +1032,60 @@ class ParserState<T> {
 						IParser parser = myContext.newJsonParser();
 						String asString = parser.encodeResourceToString(myInstance);
 						myInstance = parser.parseResource(wantedProfileType, asString);
+
+						/*
+						 * The references collected so far belong to the instance we just threw away. Local
+						 * references in the new instance were already resolved when it was parsed.
+						 */
+						myReferences = new ArrayList<IBaseReference>();
+						if (myStitchBundleCrossReferences) {
+							myParsedReferences.addAll(myContext.newTerser().getAllPopulatedChildElementsOfType(myInstance, IBaseReference.class));
+						}
 					}
 				}
 			}
 
 			populateTarget();
+
+			if (myStitchBundleCrossReferences) {
+				myParsedResources.add(myInstance);
+			}
 		}
 
 		private void stitchBundleCrossReferences() {
 			final boolean bundle = "Bundle".equals(myContext.getResourceDefinition(myInstance).getName());
 			if (bundle) {
 
-				FhirTerser t = myContext.newTerser();
-
-				Map<String, IBaseResource> idToResource = new HashMap<String, IBaseResource>();
-				List<IBase> entries = t.getValues(myInstance, "Bundle.entry", IBase.class);
-				for (IBase nextEntry : entries) {
-					IPrimitiveType<?> fullUrl = t.getSingleValueOrNull(nextEntry, "fullUrl", IPrimitiveType.class);
-					if (fullUrl != null && isNotBlank(fullUrl.getValueAsString())) {
-						IBaseResource resource = t.getSingleValueOrNull(nextEntry, "resource", IBaseResource.class);
-						if (resource != null) {
-							idToResource.put(fullUrl.getValueAsString(), resource);
+				if (myStitchBundleCrossReferences) {
+					FhirTerser t = myContext.newTerser();
+
+					Map<String, IBaseResource> idToResource = new HashMap<String, IBaseResource>();
+					List<IBase> entries = t.getValues(myInstance, "Bundle.entry", IBase.class);
+					for (IBase nextEntry : entries) {
+						IPrimitiveType<?> fullUrl = t.getSingleValueOrNull(nextEntry, "fullUrl", IPrimitiveType.class);
+						if (fullUrl != null && isNotBlank(fullUrl.getValueAsString())) {
+							IBaseResource resource = t.getSingleValueOrNull(nextEntry, "resource", IBaseResource.class);
+							if (resource != null) {
+								idToResource.put(fullUrl.getValueAsString(), resource);
+							}
 						}
 					}
-				}
 
-				/*
-				 * Stitch together resource references
-				 */
-				List<IBaseResource> resources = t.getAllPopulatedChildElementsOfType(myInstance, IBaseResource.class);
-				for (IBaseResource next : resources) {
-					IIdType id = next.getIdElement();
-					if (id != null && id.isEmpty() == false) {
-						String resName = myContext.getResourceDefinition(next).getName();
-						IIdType idType = id.withResourceType(resName).toUnqualifiedVersionless();
-						idToResource.put(idType.getValueAsString(), next);
+					/*
+					 * Stitch together resource references. Every resource and reference within this
+					 * Bundle was parsed after this state was created, so they are at the end of the lists.
+					 */
+					List<IBaseResource> resources = myParsedResources.subList(myFirstParsedResourceIndex, myParsedResources.size());
+					for (IBaseResource next : resources) {
+						IIdType id = next.getIdElement();
+						if (id != null && id.isEmpty() == false) {
+							String resName = myContext.getResourceDefinition(next).getName();
+							IIdType idType = id.withResourceType(resName).toUnqualifiedVersionless();
+							idToResource.put(idType.getValueAsString(), next);
+						}
 					}
-				}
 
-				for (IBaseResource next : resources) {
-					List<IBaseReference> refs = myContext.newTerser().getAllPopulatedChildElementsOfType(next, IBaseReference.class);
+					List<IBaseReference> refs = myParsedReferences.subList(myFirstParsedReferenceIndex, myParsedReferences.size());
 					for (IBaseReference nextRef : refs) {
 						if (nextRef.isEmpty() == false && nextRef.getReferenceElement() != null) {
 							IIdType unqualifiedVersionless = nextRef.getReferenceElement().toUnqualifiedVersionless();
@@ -1070,43 +1113,25 @@ class ParserState<T> {
 		}
 
 		protected void weaveContainedResources() {
-			FhirTerser terser = myContext.newTerser();
-			terser.visit(myInstance, new IModelVisitor() {
-
-				@Override
-				public void acceptElement(IBaseResource theResource, IBase theElement, List<String> thePathToElement, BaseRuntimeChildDefinition theChildDefinition,
-						BaseRuntimeElementDefinition<?> theDefinition) {
-					if (theElement instanceof BaseResourceReferenceDt) {
-						BaseResourceReferenceDt nextRef = (BaseResourceReferenceDt) theElement;
-						String ref = nextRef.getReference().getValue();
-						if (isNotBlank(ref)) {
-							if (ref.startsWith("#")) {
-								IResource target = (IResource) myContainedResources.get(ref);
-								if (target != null) {
-									ourLog.debug("Resource contains local ref {} in field {}", ref, thePathToElement);
-									nextRef.setResource(target);
-								} else {
-									myErrorHandler.unknownReference(null, ref);
-								}
-							}
-						}
-					} else if (theElement instanceof IBaseReference) {
-						IBaseReference nextRef = (IBaseReference) theElement;
-						String ref = nextRef.getReferenceElement().getValue();
-						if (isNotBlank(ref)) {
-							if (ref.startsWith("#")) {
-								IBaseResource target = myContainedResources.get(ref);
-								if (target != null) {
-									ourLog.debug("Resource contains local ref {} in field {}", ref, thePathToElement);
-									nextRef.setResource(target);
-								} else {
-									myErrorHandler.unknownReference(null, ref);
-								}
-							}
+			for (IBaseReference nextRef : myReferences) {
+				String ref;
+				if (nextRef instanceof BaseResourceReferenceDt) {
+					ref = ((BaseResourceReferenceDt) nextRef).getReference().getValue();
+				} else {
+					ref = nextRef.getReferenceElement().getValue();
+				}
+				if (isNotBlank(ref)) {
+					if (ref.startsWith("#")) {
+						IBaseResource target = myContainedResources.get(ref);
+						if (target != null) {
+							ourLog.debug("Resource contains local ref {}", ref);
+							nextRef.setResource(target);
+						} else {
+							myErrorHandler.unknownReference(null, ref);
 						}
 					}
 				}
-			});
+			}
 		}
 
 		@Override
@@ -0,0 +1,177 @@
+package ca.uhn.fhir.parser;
+
+/*
+ * #%L
+ * HAPI FHIR - Core Library
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.stream.FactoryConfigurationError;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+
+import ca.uhn.fhir.context.ConfigurationException;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.XmlUtil;
+
+/**
+ * XML implementation of {@link BundleEntryIterator}. The Bundle is read from a StAX event
+ * stream, and the events making up each entry are collected and parsed on their own when
+ * the entry is reached.
+ */
+class XmlBundleEntryIterator<T extends IBase> extends BundleEntryIterator<T> {
+
+	private static final XMLEventFactory ourEventFactory = XMLEventFactory.newInstance();
+
+	private IBaseBundle myBundle;
+	private final List<XMLEvent> myBundleElements = new ArrayList<XMLEvent>();
+	private final XmlParser myParser;
+	private final XMLEventReader myReader;
+	private StartElement myRoot;
+
+	XmlBundleEntryIterator(XmlParser theParser, FhirContext theContext, Class<? extends IBaseBundle> theBundleType, Reader theReader) {
+		super(theContext, theBundleType);
+		myParser = theParser;
+		try {
+			myReader = XmlUtil.createXmlReader(theReader);
+		} catch (FactoryConfigurationError e) {
+			throw new ConfigurationException("Failed to initialize STaX event factory", e);
+		} catch (XMLStreamException e) {
+			throw new DataFormatException(e);
+		}
+	}
+
+	@Override
+	public IBaseBundle getBundle() {
+		if (myBundle == null) {
+			if (myRoot == null) {
+				readRoot();
+			}
+			myBundle = parse(myBundleElements);
+		}
+		return myBundle;
+	}
+
+	private IBaseBundle parse(List<XMLEvent> theChildEvents) {
+		StringWriter writer = new StringWriter();
+		try {
+			XMLEventWriter eventWriter = XmlUtil.createXmlWriter(writer);
+			String prefix = myRoot.getName().getPrefix();
+			String namespace = myRoot.getName().getNamespaceURI();
+			String localName = myRoot.getName().getLocalPart();
+			eventWriter.add(ourEventFactory.createStartElement(prefix, namespace, localName, Collections.<Attribute> emptyList().iterator(), myRoot.getNamespaces()));
+			for (XMLEvent next : theChildEvents) {
+				eventWriter.add(next);
+			}
+			eventWriter.add(ourEventFactory.createEndElement(prefix, namespace, localName));
+			eventWriter.flush();
+		} catch (XMLStreamException e) {
+			throw new DataFormatException(e);
+		}
+		return myParser.parseResource(getBundleType(), writer.toString());
+	}
+
+	/**
+	 * Reads the events making up an element whose start event has just been read
+	 */
+	private List<XMLEvent> readElement(StartElement theStart) throws XMLStreamException {
+		List<XMLEvent> retVal = new ArrayList<XMLEvent>();
+		retVal.add(theStart);
+		int depth = 1;
+		while (depth > 0) {
+			XMLEvent next = myReader.nextEvent();
+			if (next.isStartElement()) {
+				depth++;
+			} else if (next.isEndElement()) {
+				depth--;
+			}
+			retVal.add(next);
+		}
+		return retVal;
+	}
+
+	@Override
+	T readNextEntry() {
+		try {
+			if (myRoot == null) {
+				readRoot();
+			}
+
+			while (myReader.hasNext()) {
+				XMLEvent next = myReader.nextEvent();
+				if (next.isEndElement()) {
+					// This is the end of the Bundle, since child elements are read completely
+					return null;
+				}
+				if (!next.isStartElement()) {
+					continue;
+				}
+
+				StartElement start = next.asStartElement();
+				List<XMLEvent> events = readElement(start);
+				if ("entry".equals(start.getName().getLocalPart())) {
+					T retVal = extractEntry(parse(events));
+					if (retVal != null) {
+						return retVal;
+					}
+				} else {
+					myBundleElements.addAll(events);
+					myBundle = null;
+				}
+			}
+			return null;
+		} catch (XMLStreamException e) {
+			throw new DataFormatException(e);
+		}
+	}
+
+	private void readRoot() {
+		try {
+			while (myReader.hasNext()) {
+				XMLEvent next = myReader.nextEvent();
+				if (next.isStartElement()) {
+					myRoot = next.asStartElement();
+					break;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new DataFormatException(e);
+		}
+
+		if (myRoot == null) {
+			throw new DataFormatException("Did not find any content to parse");
+		}
+		if (!XmlParser.FHIR_NS.equals(myRoot.getName().getNamespaceURI()) || !getBundleTypeName().equals(myRoot.getName().getLocalPart())) {
+			throw new DataFormatException("Incorrect resource type found, expected \"" + getBundleTypeName() + "\" but found \"" + myRoot.getName().getLocalPart() + "\"");
+		}
+	}
+
+}
@@ -23,6 +23,8 @@ package ca.uhn.fhir.parser;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.Writer;
@@ -84,6 +86,16 @@ public class XmlParser extends BaseParser /* implements IParser */ {
 		}
 	}
 
+	private XMLEventReader createStreamReader(InputStream theInputStream) {
+		try {
+			return XmlUtil.createXmlReader(theInputStream);
+		} catch (FactoryConfigurationError e1) {
+			throw new ConfigurationException("Failed to initialize STaX event factory", e1);
+		} catch (XMLStreamException e1) {
+			throw new DataFormatException(e1);
+		}
+	}
+
 	private XMLStreamWriter createXmlWriter(Writer theWriter) throws XMLStreamException {
 		XMLStreamWriter eventWriter;
 		eventWriter = XmlUtil.createXmlStreamWriter(theWriter);
@@ -91,6 +103,13 @@ public class XmlParser extends BaseParser /* implements IParser */ {
 		return eventWriter;
 	}
 
+	private XMLStreamWriter createXmlWriter(OutputStream theOutputStream) throws XMLStreamException {
+		XMLStreamWriter eventWriter;
+		eventWriter = XmlUtil.createXmlStreamWriter(theOutputStream);
+		eventWriter = decorateStreamWriter(eventWriter);
+		return eventWriter;
+	}
+
 	private XMLStreamWriter decorateStreamWriter(XMLStreamWriter eventWriter) {
 		if (myPrettyPrint) {
 			PrettyPrintWriterWrapper retVal = new PrettyPrintWriterWrapper(eventWriter);
@@ -113,6 +132,30 @@ public class XmlParser extends BaseParser /* implements IParser */ {
 		}
 	}
 
+	@Override
+	protected <T extends IBase> BundleEntryIterator<T> newBundleEntryIterator(Class<? extends IBaseBundle> theBundleType, Reader theReader) {
+		return new XmlBundleEntryIterator<T>(this, myContext, theBundleType, theReader);
+	}
+
+	@Override
+	protected void doEncodeResourceToOutputStream(IBaseResource theResource, OutputStream theOutputStream) throws DataFormatException {
+		XMLStreamWriter eventWriter;
+		try {
+			eventWriter = createXmlWriter(theOutputStream);
+
+			encodeResourceToXmlStreamWriter(theResource, eventWriter, false, false);
+			eventWriter.flush();
+		} catch (XMLStreamException e) {
+			throw new ConfigurationException("Failed to initialize STaX event factory", e);
+		}
+	}
+
+	@Override
+	protected <T extends IBaseResource> T doParseResource(Class<T> theResourceType, InputStream theInputStream) {
+		XMLEventReader streamReader = createStreamReader(theInputStream);
+		return parseResource(theResourceType, streamReader);
+	}
+
 	@Override
 	public <T extends IBaseResource> T doParseResource(Class<T> theResourceType, Reader theReader) {
 		XMLEventReader streamReader = createStreamReader(theReader);
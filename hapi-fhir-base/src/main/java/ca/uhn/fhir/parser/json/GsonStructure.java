@@ -164,6 +164,14 @@ public class GsonStructure implements JsonLikeStructure {
 		throw new DataFormatException("Content must be a valid JSON Array. It must start with '['.");
 	}
 
+	/**
+	 * Wraps a single Gson element (e.g. one read from a streaming
+	 * {@link com.google.gson.stream.JsonReader}) as a {@link JsonLikeValue}
+	 */
+	public static JsonLikeValue wrap(JsonElement theElement) {
+		return new GsonJsonValue(theElement);
+	}
+
 	private static class GsonJsonObject extends JsonLikeObject {
 		private JsonObject nativeObject;
 		private Set<String> keySet = null;
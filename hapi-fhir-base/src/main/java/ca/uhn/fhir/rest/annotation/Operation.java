@@ -80,4 +80,28 @@ public @interface Operation {
 	 */
 	BundleTypeEnum bundleType() default BundleTypeEnum.COLLECTION;
 
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the body of a
+	 * <code>HTTP POST</code> to this operation is not parsed as a <code>Parameters</code>
+	 * resource. Instead the method is expected to read the body itself, for example through
+	 * a <code>javax.servlet.http.HttpServletRequest</code> parameter. This is useful for
+	 * operations which accept large payloads that should be streamed rather than held in memory.
+	 * <p>
+	 * This value has no effect when used on client implementations.
+	 * </p>
+	 */
+	boolean manualRequest() default false;
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), the method is expected to
+	 * write the complete HTTP response itself, for example through a
+	 * <code>javax.servlet.http.HttpServletResponse</code> parameter, and should have a return
+	 * type of <code>void</code>. This is useful for operations which return large or non-FHIR
+	 * content that should be streamed to the client rather than held in memory.
+	 * <p>
+	 * This value has no effect when used on client implementations.
+	 * </p>
+	 */
+	boolean manualResponse() default false;
+
 }
@@ -125,7 +125,7 @@ public class FhirTerser {
 	public <T extends IBase> List<T> getAllPopulatedChildElementsOfType(IBaseResource theResource, final Class<T> theType) {
 		final ArrayList<T> retVal = new ArrayList<T>();
 		BaseRuntimeElementCompositeDefinition<?> def = myContext.getResourceDefinition(theResource);
-		visit(new IdentityHashMap<Object, Object>(), theResource, theResource, null, null, def, new IModelVisitor() {
+		visit(new IdentityHashMap<Object, Object>(), theResource, theResource, null, null, def, theType, new IModelVisitor() {
 			@SuppressWarnings("unchecked")
 			@Override
 			public void acceptElement(IBaseResource theOuterResource, IBase theElement, List<String> thePathToElement, BaseRuntimeChildDefinition theChildDefinition, BaseRuntimeElementDefinition<?> theDefinition) {
@@ -144,7 +144,7 @@ public class FhirTerser {
 	public List<ResourceReferenceInfo> getAllResourceReferences(final IBaseResource theResource) {
 		final ArrayList<ResourceReferenceInfo> retVal = new ArrayList<ResourceReferenceInfo>();
 		BaseRuntimeElementCompositeDefinition<?> def = myContext.getResourceDefinition(theResource);
-		visit(new IdentityHashMap<Object, Object>(), theResource, theResource, null, null, def, new IModelVisitor() {
+		visit(new IdentityHashMap<Object, Object>(), theResource, theResource, null, null, def, IBaseReference.class, new IModelVisitor() {
 			@Override
 			public void acceptElement(IBaseResource theOuterResource, IBase theElement, List<String> thePathToElement, BaseRuntimeChildDefinition theChildDefinition, BaseRuntimeElementDefinition<?> theDefinition) {
 				if (theElement == null || theElement.isEmpty()) {
@@ -453,7 +453,7 @@ public class FhirTerser {
 	 */
 	public void visit(IBaseResource theResource, IModelVisitor theVisitor) {
 		BaseRuntimeElementCompositeDefinition<?> def = myContext.getResourceDefinition(theResource);
-		visit(new IdentityHashMap<Object, Object>(), theResource, theResource, null, null, def, theVisitor);
+		visit(new IdentityHashMap<Object, Object>(), theResource, theResource, null, null, def, null, theVisitor);
 	}
 
 	/**
@@ -476,8 +476,13 @@ public class FhirTerser {
 		visit(theResource, null, def, theVisitor, new ArrayList<IBase>(), new ArrayList<BaseRuntimeChildDefinition>(), new ArrayList<BaseRuntimeElementDefinition<?>>());
 	}
 
+	/**
+	 * @param theTypeFilter
+	 *           If not null, the callback is only interested in elements of this type, so elements which can not be of this
+	 *           type (and can not contain it) may be passed over without being given to the callback
+	 */
 	private void visit(IdentityHashMap<Object, Object> theStack, IBaseResource theResource, IBase theElement, List<String> thePathToElement, BaseRuntimeChildDefinition theChildDefinition,
-			BaseRuntimeElementDefinition<?> theDefinition, IModelVisitor theCallback) {
+			BaseRuntimeElementDefinition<?> theDefinition, Class<?> theTypeFilter, IModelVisitor theCallback) {
 		List<String> pathToElement = addNameToList(thePathToElement, theChildDefinition);
 
 		if (theStack.put(theElement, theElement) != null) {
@@ -496,7 +501,7 @@ public class FhirTerser {
 			if (target != null) {
 				if (target.getIdElement().hasIdPart() == false || target.getIdElement().isLocal()) {
 					RuntimeResourceDefinition targetDef = myContext.getResourceDefinition(target);
-					visit(theStack, target, target, pathToElement, null, targetDef, theCallback);
+					visit(theStack, target, target, pathToElement, null, targetDef, theTypeFilter, theCallback);
 				}
 			}
 		}
@@ -511,48 +516,14 @@ public class FhirTerser {
 		case RESOURCE:
 		case RESOURCE_BLOCK:
 		case COMPOSITE_DATATYPE: {
-			BaseRuntimeElementCompositeDefinition<?> childDef = (BaseRuntimeElementCompositeDefinition<?>) def;
-			for (BaseRuntimeChildDefinition nextChild : childDef.getChildrenAndExtension()) {
-				
-				List<?> values = nextChild.getAccessor().getValues(theElement);
-				if (values != null) {
-					for (Object nextValueObject : values) {
-						IBase nextValue;
-						try {
-							nextValue = (IBase) nextValueObject;
-						} catch (ClassCastException e) {
-							String s = "Found instance of " + nextValueObject.getClass() + " - Did you set a field value to the incorrect type? Expected " + IBase.class.getName();
-							throw new ClassCastException(s);
-						}
-						if (nextValue == null) {
-							continue;
-						}
-						if (nextValue.isEmpty()) {
-							continue;
-						}
-						BaseRuntimeElementDefinition<?> childElementDef;
-						childElementDef = nextChild.getChildElementDefinitionByDatatype(nextValue.getClass());
-
-						if (childElementDef == null) {
-							childElementDef = myContext.getElementDefinition(nextValue.getClass());
-						}
-
-						if (nextChild instanceof RuntimeChildDirectResource) {
-							// Don't descend into embedded resources
-							theCallback.acceptElement(theResource, nextValue, null, nextChild, childElementDef);
-						} else {
-							visit(theStack, theResource, nextValue, pathToElement, nextChild, childElementDef, theCallback);
-						}
-					}
-				}
-			}
+			visitChildren(theStack, theResource, theElement, pathToElement, (BaseRuntimeElementCompositeDefinition<?>) def, theTypeFilter, theCallback);
 			break;
 		}
 		case CONTAINED_RESOURCES: {
 			BaseContainedDt value = (BaseContainedDt) theElement;
 			for (IResource next : value.getContainedResources()) {
 				def = myContext.getResourceDefinition(next);
-				visit(theStack, next, next, pathToElement, null, def, theCallback);
+				visit(theStack, next, next, pathToElement, null, def, theTypeFilter, theCallback);
 			}
 			break;
 		}
@@ -567,4 +538,57 @@ public class FhirTerser {
 		
 	}
 
+	private void visitChildren(IdentityHashMap<Object, Object> theStack, IBaseResource theResource, IBase theElement, List<String> thePathToElement,
+			BaseRuntimeElementCompositeDefinition<?> theDefinition, Class<?> theTypeFilter, IModelVisitor theCallback) {
+		List<BaseRuntimeChildDefinition> children = theDefinition.getChildrenAndExtension();
+		BitSet childrenToVisit = theTypeFilter != null ? theDefinition.getChildrenWhichMayContainType(theTypeFilter) : null;
+		for (int i = 0; i < children.size(); i++) {
+			if (childrenToVisit != null && !childrenToVisit.get(i)) {
+				continue;
+			}
+			BaseRuntimeChildDefinition nextChild = children.get(i);
+
+			List<?> values = nextChild.getAccessor().getValues(theElement);
+			if (values != null) {
+				for (Object nextValueObject : values) {
+					IBase nextValue;
+					try {
+						nextValue = (IBase) nextValueObject;
+					} catch (ClassCastException e) {
+						String s = "Found instance of " + nextValueObject.getClass() + " - Did you set a field value to the incorrect type? Expected " + IBase.class.getName();
+						throw new ClassCastException(s);
+					}
+					if (nextValue == null) {
+						continue;
+					}
+					if (nextValue.isEmpty()) {
+						continue;
+					}
+					BaseRuntimeElementDefinition<?> childElementDef;
+					childElementDef = nextChild.getChildElementDefinitionByDatatype(nextValue.getClass());
+
+					if (childElementDef == null) {
+						childElementDef = myContext.getElementDefinition(nextValue.getClass());
+					}
+
+					if (nextChild instanceof RuntimeChildDirectResource) {
+						// Don't descend into embedded resources
+						theCallback.acceptElement(theResource, nextValue, null, nextChild, childElementDef);
+					} else if (theTypeFilter != null && nextValue instanceof IPrimitiveType && !theTypeFilter.isInstance(nextValue)) {
+						// Primitives have no children, so there is nothing here for the callback
+						continue;
+					} else if (theTypeFilter != null && childElementDef instanceof BaseRuntimeElementCompositeDefinition && !((BaseRuntimeElementCompositeDefinition<?>) childElementDef).mayContainType(theTypeFilter)) {
+						/*
+						 * Nothing of the wanted type can be found here except inside extensions, so skip
+						 * straight to the children without handing this element to the callback
+						 */
+						visitChildren(theStack, theResource, nextValue, addNameToList(thePathToElement, nextChild), (BaseRuntimeElementCompositeDefinition<?>) childElementDef, theTypeFilter, theCallback);
+					} else {
+						visit(theStack, theResource, nextValue, thePathToElement, nextChild, childElementDef, theTypeFilter, theCallback);
+					}
+				}
+			}
+		}
+	}
+
 }
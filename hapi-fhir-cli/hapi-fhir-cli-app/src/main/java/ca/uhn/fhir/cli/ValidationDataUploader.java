@@ -6,6 +6,8 @@ import ca.uhn.fhir.model.dstu2.resource.Bundle;
 import ca.uhn.fhir.model.dstu2.resource.Bundle.Entry;
 import ca.uhn.fhir.model.dstu2.resource.StructureDefinition;
 import ca.uhn.fhir.model.dstu2.resource.ValueSet;
+import ca.uhn.fhir.parser.BundleEntryIterator;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
 import org.apache.commons.cli.CommandLine;
@@ -23,6 +25,9 @@ import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.core.io.support.ResourcePatternResolver;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -342,91 +347,70 @@ public class ValidationDataUploader extends BaseCommand {
 		ourLog.info("Uploading definitions to server: " + theTargetServer);
 
 		long start = System.currentTimeMillis();
-		int total = 0;
-		int count = 0;
-		org.hl7.fhir.r4.model.Bundle bundle;
-		String vsContents;
-
-		try {
-			theCtx.getVersion().getPathToSchemaDefinitions();
-			vsContents = IOUtils.toString(ValidationDataUploader.class.getResourceAsStream("/org/hl7/fhir/r4/model/valueset/" + "valuesets.xml"), "UTF-8");
-		} catch (IOException e) {
-			throw new CommandFailureException(e.toString());
-		}
-		bundle = theCtx.newXmlParser().parseResource(org.hl7.fhir.r4.model.Bundle.class, vsContents);
-		filterBundle(bundle);
 
-		total = bundle.getEntry().size();
-		count = 1;
-		for (org.hl7.fhir.r4.model.Bundle.BundleEntryComponent i : bundle.getEntry()) {
-			org.hl7.fhir.r4.model.Resource next = i.getResource();
-			next.setId(next.getIdElement().toUnqualifiedVersionless());
+		/*
+		 * These Bundles are large, so they are read one entry at a time and
+		 * each ValueSet is uploaded as soon as it has been parsed
+		 */
+		uploadR4ValueSets(theCtx, client, "valuesets.xml", "ValueSet", false);
+		uploadR4ValueSets(theCtx, client, "v3-codesystems.xml", "v3-codesystems ValueSet", false);
+		uploadR4ValueSets(theCtx, client, "v2-tables.xml", "v2-tables ValueSet", true);
 
-			int bytes = theCtx.newXmlParser().encodeResourceToString(next).length();
+		uploadR4Profiles(theCtx, client, "profiles-resources");
+		uploadR4Profiles(theCtx, client, "profiles-types");
+		uploadR4Profiles(theCtx, client, "profiles-others");
 
-			ourLog.info("Uploading ValueSet {}/{} : {} ({} bytes}", new Object[]{count, total, next.getIdElement().getValue(), bytes});
-			try {
-				IIdType id = client.update().resource(next).execute().getId();
-				ourLog.info("  - Got ID: {}", id.getValue());
-			} catch (UnprocessableEntityException e) {
-				ourLog.warn("UnprocessableEntityException: " + e.toString());
-			}
-			count++;
-		}
+		ourLog.info("Finished uploading ValueSets");
 
-		try {
-			vsContents = IOUtils.toString(ValidationDataUploader.class.getResourceAsStream("/org/hl7/fhir/r4/model/valueset/" + "v3-codesystems.xml"), "UTF-8");
-		} catch (IOException e) {
-			throw new CommandFailureException(e.toString());
-		}
+		long delay = System.currentTimeMillis() - start;
 
-		bundle = theCtx.newXmlParser().parseResource(org.hl7.fhir.r4.model.Bundle.class, vsContents);
-		filterBundle(bundle);
-		total = bundle.getEntry().size();
-		count = 1;
-		for (org.hl7.fhir.r4.model.Bundle.BundleEntryComponent i : bundle.getEntry()) {
-			org.hl7.fhir.r4.model.Resource next = i.getResource();
-			next.setId(next.getIdElement().toUnqualifiedVersionless());
+		ourLog.info("Finished uploading definitions to server (took {} ms)", delay);
+	}
 
-			ourLog.info("Uploading v3-codesystems ValueSet {}/{} : {}", new Object[]{count, total, next.getIdElement().getValue()});
-			client.update().resource(next).execute();
+	private boolean isExcluded(IBaseResource theResource) {
+		for (IIdType nextExclude : myExcludes) {
+			if (nextExclude.hasResourceType() && nextExclude.toUnqualifiedVersionless().getValue().equals(theResource.getIdElement().toUnqualifiedVersionless().getValue())) {
+				return true;
+			} else if (nextExclude.getIdPart().equals(theResource.getIdElement().getIdPart())) {
+				return true;
+			}
+		}
+		return false;
+	}
 
-			count++;
+	private void uploadR4ValueSets(FhirContext theCtx, IGenericClient theClient, String theFileName, String theDescription, boolean theV2Tables) throws CommandFailureException {
+		InputStream stream = ValidationDataUploader.class.getResourceAsStream("/org/hl7/fhir/r4/model/valueset/" + theFileName);
+		if (stream == null) {
+			throw new CommandFailureException("Unable to find " + theFileName + " on the classpath");
 		}
 
+		Reader reader = new InputStreamReader(stream, Constants.CHARSET_UTF8);
 		try {
-			vsContents = IOUtils.toString(ValidationDataUploader.class.getResourceAsStream("/org/hl7/fhir/r4/model/valueset/" + "v2-tables.xml"), "UTF-8");
-		} catch (IOException e) {
-			throw new CommandFailureException(e.toString());
-		}
-		bundle = theCtx.newXmlParser().parseResource(org.hl7.fhir.r4.model.Bundle.class, vsContents);
-		filterBundle(bundle);
-		total = bundle.getEntry().size();
-		count = 1;
-		for (org.hl7.fhir.r4.model.Bundle.BundleEntryComponent i : bundle.getEntry()) {
-			org.hl7.fhir.r4.model.Resource next = i.getResource();
-			if (next.getIdElement().isIdPartValidLong()) {
-				next.setIdElement(new org.hl7.fhir.r4.model.IdType("v2-" + next.getIdElement().getIdPart()));
-			}
-			next.setId(next.getIdElement().toUnqualifiedVersionless());
+			BundleEntryIterator<org.hl7.fhir.r4.model.Bundle.BundleEntryComponent> entries = theCtx.newXmlParser().parseBundleEntries(org.hl7.fhir.r4.model.Bundle.class, reader);
+			int count = 1;
+			while (entries.hasNext()) {
+				org.hl7.fhir.r4.model.Resource next = entries.next().getResource();
+				if (next == null || isExcluded(next)) {
+					continue;
+				}
 
-			ourLog.info("Uploading v2-tables ValueSet {}/{} : {}", new Object[]{count, total, next.getIdElement().getValue()});
-			client.update().resource(next).execute();
-			count++;
+				if (theV2Tables && next.getIdElement().isIdPartValidLong()) {
+					next.setIdElement(new org.hl7.fhir.r4.model.IdType("v2-" + next.getIdElement().getIdPart()));
+				}
+				next.setId(next.getIdElement().toUnqualifiedVersionless());
+
+				ourLog.info("Uploading {} {} : {}", new Object[]{theDescription, count, next.getIdElement().getValue()});
+				try {
+					IIdType id = theClient.update().resource(next).execute().getId();
+					ourLog.info("  - Got ID: {}", id.getValue());
+				} catch (UnprocessableEntityException e) {
+					ourLog.warn("UnprocessableEntityException: " + e.toString());
+				}
+				count++;
+			}
+		} finally {
+			IOUtils.closeQuietly(reader);
 		}
-
-		ourLog.info("Finished uploading ValueSets");
-
-
-		uploadR4Profiles(theCtx, client, "profiles-resources");
-		uploadR4Profiles(theCtx, client, "profiles-types");
-		uploadR4Profiles(theCtx, client, "profiles-others");
-
-		ourLog.info("Finished uploading ValueSets");
-
-		long delay = System.currentTimeMillis() - start;
-
-		ourLog.info("Finished uploading definitions to server (took {} ms)", delay);
 	}
 
 	private void uploadDstu3Profiles(FhirContext ctx, IGenericClient client, String name) throws CommandFailureException {
@@ -76,6 +76,27 @@ public class JaxRsResponse extends RestfulResponse<JaxRsRequest> {
 		return retVal;
 	}
 
+	/**
+	 * The response stream is a simple byte array stream. All output is configured
+	 * by the server, and the encoded bytes are returned as the entity as-is.
+	 */
+	@Override
+	public OutputStream getResponseOutputStream(int theStatusCode, String theStatusMessage, String theContentType, String theCharset, boolean theRespondGzip) throws IOException {
+		return new ByteArrayOutputStream();
+	}
+
+	@Override
+	public Response sendOutputStreamResponse(int theStatus, String theContentType, String theCharset, OutputStream theOutputStream) throws IOException {
+		String charset = StringUtils.defaultIfBlank(theCharset, Constants.CHARSET_NAME_UTF8);
+		ResponseBuilder builder = buildResponse(theStatus);
+		if (isNotBlank(theContentType)) {
+			builder.header(Constants.HEADER_CONTENT_TYPE, theContentType + "; charset=" + charset);
+		}
+		builder.entity(((ByteArrayOutputStream) theOutputStream).toByteArray());
+		Response retVal = builder.build();
+		return retVal;
+	}
+
 	@Override
 	public Response sendAttachmentResponse(IBaseBinary bin, int statusCode, String contentType) throws IOException {
 		ResponseBuilder response = buildResponse(statusCode);
@@ -67,10 +67,10 @@ public class AbstractJaxRsConformanceProviderDstu2Hl7OrgTest {
 		providers.put(TestJaxRsMockPatientRestProviderDstu2Hl7Org.class, new TestJaxRsMockPatientRestProviderDstu2Hl7Org());
 		Response response = createConformanceProvider(providers).conformance();
 		assertEquals(Constants.STATUS_HTTP_200_OK, response.getStatus());
-		assertTrue(response.getEntity().toString().contains("\"type\": \"Patient\""));
-		assertTrue(response.getEntity().toString().contains("someCustomOperation"));
+		assertTrue(new String((byte[]) response.getEntity(), Constants.CHARSET_UTF8).contains("\"type\": \"Patient\""));
+		assertTrue(new String((byte[]) response.getEntity(), Constants.CHARSET_UTF8).contains("someCustomOperation"));
 		System.out.println(response);
-		System.out.println(response.getEntity());
+		System.out.println(new String((byte[]) response.getEntity(), Constants.CHARSET_UTF8));
 	}
 
 	@Test
@@ -80,10 +80,10 @@ public class AbstractJaxRsConformanceProviderDstu2Hl7OrgTest {
 		providers.put(TestJaxRsMockPatientRestProviderDstu2Hl7Org.class, new TestJaxRsMockPatientRestProviderDstu2Hl7Org());
 		Response response = createConformanceProvider(providers).conformance();
 		assertEquals(Constants.STATUS_HTTP_200_OK, response.getStatus());
-		System.out.println(response.getEntity());
-		assertTrue(response.getEntity().toString().contains(" <type value=\"Patient\"/>"));
-		assertTrue(response.getEntity().toString().contains("someCustomOperation"));
-		System.out.println(response.getEntity());
+		System.out.println(new String((byte[]) response.getEntity(), Constants.CHARSET_UTF8));
+		assertTrue(new String((byte[]) response.getEntity(), Constants.CHARSET_UTF8).contains(" <type value=\"Patient\"/>"));
+		assertTrue(new String((byte[]) response.getEntity(), Constants.CHARSET_UTF8).contains("someCustomOperation"));
+		System.out.println(new String((byte[]) response.getEntity(), Constants.CHARSET_UTF8));
 	}
 
 	private AbstractJaxRsConformanceProvider createConformanceProvider(final ConcurrentHashMap<Class<? extends IResourceProvider>, IResourceProvider> providers)
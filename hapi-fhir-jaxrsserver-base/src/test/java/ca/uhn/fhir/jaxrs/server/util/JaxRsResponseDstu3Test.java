@@ -44,8 +44,8 @@ public class JaxRsResponseDstu3Test {
 		Response result = (Response) RestfulServerUtils.streamResponseAsResource(request.getServer(), bundle, theSummaryMode, 200, theAddContentLocationHeader, respondGzip, request);
 		assertEquals(200, result.getStatus());
 		assertEquals(Constants.CT_FHIR_JSON_NEW+Constants.CHARSET_UTF8_CTSUFFIX, result.getHeaderString(Constants.HEADER_CONTENT_TYPE));
-		assertTrue(result.getEntity().toString().contains("Patient"));
-		assertTrue(result.getEntity().toString().contains("15"));
+		assertTrue(new String((byte[]) result.getEntity(), Constants.CHARSET_UTF8).contains("Patient"));
+		assertTrue(new String((byte[]) result.getEntity(), Constants.CHARSET_UTF8).contains("15"));
 	}
 
 	@Test
@@ -102,8 +102,8 @@ public class JaxRsResponseDstu3Test {
 		Response result = (Response) RestfulServerUtils.streamResponseAsResource(request.getServer(), createPatient(), theSummaryMode, 200, addContentLocationHeader, respondGzip, this.request);
 		assertEquals(200, result.getStatus());
 		assertEquals(Constants.CT_FHIR_JSON_NEW+"; charset=UTF-8", result.getHeaderString(Constants.HEADER_CONTENT_TYPE));
-		assertTrue(result.getEntity().toString().contains("resourceType\": \"Patient"));
-		assertTrue(result.getEntity().toString().contains("15"));
+		assertTrue(new String((byte[]) result.getEntity(), Constants.CHARSET_UTF8).contains("resourceType\": \"Patient"));
+		assertTrue(new String((byte[]) result.getEntity(), Constants.CHARSET_UTF8).contains("15"));
 		
 	}
 	
@@ -120,8 +120,8 @@ public class JaxRsResponseDstu3Test {
 		Response result = (Response) RestfulServerUtils.streamResponseAsResource(request.getServer(), createPatient(), theSummaryMode, 200, addContentLocationHeader, respondGzip, this.request);
 		assertEquals(200, result.getStatus());
 		assertEquals("application/xml+fhir; charset=UTF-8", result.getHeaderString(Constants.HEADER_CONTENT_TYPE));
-		assertTrue(result.getEntity().toString().contains("<Patient"));
-		assertTrue(result.getEntity().toString().contains("15"));
+		assertTrue(new String((byte[]) result.getEntity(), Constants.CHARSET_UTF8).contains("<Patient"));
+		assertTrue(new String((byte[]) result.getEntity(), Constants.CHARSET_UTF8).contains("15"));
 	}
 	
 	@Test
@@ -80,9 +80,9 @@ public class JaxRsResponseTest {
 		Response result = (Response) RestfulServerUtils.streamResponseAsResource(request.getServer(), createPatient(), theSummaryMode, 200, addContentLocationHeader, respondGzip, this.request);
 		assertEquals(200, result.getStatus());
 		assertEquals("application/json+fhir; charset=UTF-8", result.getHeaderString(Constants.HEADER_CONTENT_TYPE));
-		System.out.println(result.getEntity().toString());
-		assertTrue(result.getEntity().toString().contains("resourceType\": \"Patient"));
-		assertTrue(result.getEntity().toString().contains("15"));
+		System.out.println(new String((byte[]) result.getEntity(), Constants.CHARSET_UTF8));
+		assertTrue(new String((byte[]) result.getEntity(), Constants.CHARSET_UTF8).contains("resourceType\": \"Patient"));
+		assertTrue(new String((byte[]) result.getEntity(), Constants.CHARSET_UTF8).contains("15"));
 
 	}
 
@@ -94,8 +94,8 @@ public class JaxRsResponseTest {
 		Response result = (Response) RestfulServerUtils.streamResponseAsResource(request.getServer(), createPatient(), theSummaryMode, 200, addContentLocationHeader, respondGzip, this.request);
 		assertEquals(200, result.getStatus());
 		assertEquals("application/xml+fhir; charset=UTF-8", result.getHeaderString(Constants.HEADER_CONTENT_TYPE));
-		assertTrue(result.getEntity().toString().contains("<Patient"));
-		assertTrue(result.getEntity().toString().contains("15"));
+		assertTrue(new String((byte[]) result.getEntity(), Constants.CHARSET_UTF8).contains("<Patient"));
+		assertTrue(new String((byte[]) result.getEntity(), Constants.CHARSET_UTF8).contains("15"));
 	}
 
 	@Test
@@ -0,0 +1,472 @@
+package ca.uhn.fhir.jpa.bulk;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.GZipUtil;
+import ca.uhn.fhir.jpa.dao.IFhirSystemDao;
+import ca.uhn.fhir.jpa.dao.data.IBulkExportFileDao;
+import ca.uhn.fhir.jpa.dao.data.IBulkExportJobDao;
+import ca.uhn.fhir.jpa.entity.BulkExportFileEntity;
+import ca.uhn.fhir.jpa.entity.BulkExportJobEntity;
+import ca.uhn.fhir.jpa.entity.BulkExportJobStatusEnum;
+import ca.uhn.fhir.jpa.entity.ResourceTable;
+import ca.uhn.fhir.jpa.util.StopWatch;
+import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.query.Query;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContextType;
+import javax.persistence.TypedQuery;
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.apache.commons.lang3.StringUtils.join;
+
+public class BulkDataExportSvcImpl implements IBulkDataExportSvc {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BulkDataExportSvcImpl.class);
+	private static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private int myBatchSize = DEFAULT_BATCH_SIZE;
+	@Autowired
+	private FhirContext myContext;
+	@Autowired
+	private DaoConfig myDaoConfig;
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION)
+	private EntityManager myEntityManager;
+	@Autowired
+	private IBulkExportFileDao myFileDao;
+	@Autowired
+	private IBulkExportJobDao myJobDao;
+	@Autowired
+	private IFhirSystemDao<?, ?> mySystemDao;
+	@Autowired
+	private PlatformTransactionManager myTxManager;
+
+	@Override
+	@Transactional(propagation = Propagation.NEVER)
+	public int buildExportFiles() {
+		int retVal = 0;
+		while (true) {
+			final Long jobPid = newTxTemplate().execute(new TransactionCallback<Long>() {
+				@Override
+				public Long doInTransaction(TransactionStatus theStatus) {
+					List<Long> submitted = myJobDao.findIdsByStatus(new PageRequest(0, 1), BulkExportJobStatusEnum.SUBMITTED).getContent();
+					if (submitted.isEmpty()) {
+						return null;
+					}
+
+					/*
+					 * Claim the job, so that another thread (or another server
+					 * sharing the same database) doesn't also start building it
+					 */
+					Long pid = submitted.get(0);
+					if (myJobDao.updateStatusIfCurrent(pid, BulkExportJobStatusEnum.SUBMITTED, BulkExportJobStatusEnum.BUILDING) == 0) {
+						return -1L;
+					}
+					return pid;
+				}
+			});
+
+			if (jobPid == null) {
+				return retVal;
+			}
+			if (jobPid < 0) {
+				continue;
+			}
+
+			buildJob(jobPid);
+			retVal++;
+		}
+	}
+
+	private void buildJob(final Long theJobPid) {
+		BulkExportJobEntity job = newTxTemplate().execute(new TransactionCallback<BulkExportJobEntity>() {
+			@Override
+			public BulkExportJobEntity doInTransaction(TransactionStatus theStatus) {
+				return myJobDao.findOne(theJobPid);
+			}
+		});
+
+		StopWatch sw = new StopWatch();
+		ourLog.info("Building bulk export job {}", job.getJobId());
+
+		String status;
+		BulkExportJobStatusEnum newStatus;
+		final List<BulkExportFileEntity> files = new ArrayList<>();
+		try {
+			File directory = new File(myDaoConfig.getBulkExportDirectory(), job.getJobId());
+			if (!directory.exists() && !directory.mkdirs()) {
+				throw new InternalErrorException("Unable to create directory: " + directory.getAbsolutePath());
+			}
+
+			Set<String> resourceTypes;
+			if (isNotBlank(job.getResourceTypes())) {
+				resourceTypes = new TreeSet<>(Arrays.asList(job.getResourceTypes().split(",")));
+			} else if (job.isPatientCompartment()) {
+				resourceTypes = getPatientCompartmentResourceTypes();
+			} else {
+				resourceTypes = new TreeSet<>(myContext.getResourceNames());
+			}
+
+			long total = 0;
+			for (String nextType : resourceTypes) {
+				List<String> compartmentPaths = null;
+				if (job.isPatientCompartment() && !"Patient".equals(nextType)) {
+					compartmentPaths = getPatientCompartmentPaths(nextType);
+					if (compartmentPaths.isEmpty()) {
+						ourLog.info("Skipping resource type {} as it is not part of the Patient compartment", nextType);
+						continue;
+					}
+				}
+				BulkExportFileEntity file = exportResourceType(directory, nextType, job.getSince(), compartmentPaths);
+				if (file != null) {
+					total += file.getResourceCount();
+					files.add(file);
+				}
+			}
+
+			newStatus = BulkExportJobStatusEnum.COMPLETE;
+			status = "Exported " + total + " resources in " + files.size() + " files";
+			ourLog.info("Bulk export job {} complete in {}ms: {}", job.getJobId(), sw.getMillis(), status);
+		} catch (Exception e) {
+			ourLog.error("Failed to build bulk export job " + job.getJobId(), e);
+			newStatus = BulkExportJobStatusEnum.ERROR;
+			status = e.toString();
+			files.clear();
+		}
+
+		final BulkExportJobStatusEnum finalStatus = newStatus;
+		final String finalStatusMessage = status;
+		newTxTemplate().execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus theStatus) {
+				BulkExportJobEntity job = myJobDao.findOne(theJobPid);
+				for (BulkExportFileEntity next : files) {
+					next.setJob(job);
+					myFileDao.save(next);
+				}
+				job.setStatus(finalStatus);
+				job.setStatusMessage(finalStatusMessage);
+				myJobDao.save(job);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Writes one line of NDJSON for the given resource.
+	 * <p>
+	 * Where possible, the stored resource text is written as-is, with only the ID
+	 * and version metadata (which are not part of the stored text) spliced in. This
+	 * avoids parsing and re-encoding every resource. Resources with tags or which
+	 * were stored by a different FHIR version have their metadata stored separately,
+	 * so those are loaded and encoded normally.
+	 * </p>
+	 */
+	private void encodeResource(ResourceTable theEntity, Writer theWriter) throws IOException {
+		String text = null;
+		if (!theEntity.isHasTags() && theEntity.getFhirVersion() == myContext.getVersion().getVersion()) {
+			String stored;
+			switch (theEntity.getEncoding()) {
+				case JSON:
+					stored = new String(theEntity.getResource(), Charsets.UTF_8);
+					break;
+				case JSONC:
+					stored = GZipUtil.decompress(theEntity.getResource());
+					break;
+				default:
+					stored = null;
+					break;
+			}
+
+			String prefix = "{\"resourceType\":\"" + theEntity.getResourceType() + "\"";
+			if (stored != null && stored.startsWith(prefix)) {
+				StringBuilder b = new StringBuilder(stored.length() + 100);
+				b.append(prefix);
+				b.append(",\"id\":\"").append(theEntity.getIdDt().getIdPart()).append('"');
+				b.append(",\"meta\":{\"versionId\":\"").append(theEntity.getVersion()).append('"');
+				b.append(",\"lastUpdated\":\"").append(new InstantDt(theEntity.getUpdatedDate()).getValueAsString()).append("\"}");
+				b.append(stored, prefix.length(), stored.length());
+				text = b.toString();
+			}
+		}
+
+		if (text == null) {
+			IBaseResource resource = mySystemDao.toResource(theEntity, false);
+			text = myContext.newJsonParser().setPrettyPrint(false).encodeResourceToString(resource);
+		}
+
+		theWriter.write(text);
+		theWriter.write('\n');
+	}
+
+	/**
+	 * Exports all resources of the given type into a file in the given directory
+	 *
+	 * @param theCompartmentPaths If not <code>null</code>, only resources with a reference to a Patient along
+	 *                            one of these search parameter paths are exported
+	 * @return Returns the file details, or <code>null</code> if there were no resources to export
+	 */
+	private BulkExportFileEntity exportResourceType(File theDirectory, final String theResourceType, final Date theSince, final List<String> theCompartmentPaths) throws IOException {
+		final String fileName = theResourceType + (myDaoConfig.isBulkExportGzipFiles() ? ".ndjson.gz" : ".ndjson");
+		final File file = new File(theDirectory, fileName);
+		final Writer[] writer = new Writer[1];
+		final long[] count = new long[1];
+		long lastPid = -1;
+
+		try {
+			/*
+			 * Resources are read in batches by PID range, each using a forward-only
+			 * cursor in its own short read-only transaction. Each resource is
+			 * detached as soon as it is written, so no more than a single
+			 * batch is ever held in memory.
+			 */
+			while (true) {
+				final long lowPid = lastPid;
+				Long newLastPid = newReadOnlyTxTemplate().execute(new TransactionCallback<Long>() {
+					@Override
+					public Long doInTransaction(TransactionStatus theStatus) {
+						String sql = "SELECT t FROM ResourceTable t WHERE t.myResourceType = :type AND t.myDeleted IS NULL AND t.myId > :low";
+						if (theSince != null) {
+							sql += " AND t.myUpdated >= :since";
+						}
+						if (theCompartmentPaths != null) {
+							sql += " AND EXISTS (SELECT l.myId FROM ResourceLink l WHERE l.mySourceResourcePid = t.myId AND l.myTargetResourceType = 'Patient' AND l.mySourcePath IN (:paths))";
+						}
+						sql += " ORDER BY t.myId ASC";
+
+						TypedQuery<ResourceTable> query = myEntityManager.createQuery(sql, ResourceTable.class);
+						query.setParameter("type", theResourceType);
+						query.setParameter("low", lowPid);
+						if (theSince != null) {
+							query.setParameter("since", theSince);
+						}
+						if (theCompartmentPaths != null) {
+							query.setParameter("paths", theCompartmentPaths);
+						}
+						query.setMaxResults(myBatchSize);
+
+						@SuppressWarnings("unchecked")
+						Query<ResourceTable> hibernateQuery = query.unwrap(Query.class);
+						hibernateQuery.setFetchSize(myBatchSize);
+						ScrollableResults scroll = hibernateQuery.scroll(ScrollMode.FORWARD_ONLY);
+						Long retVal = null;
+						try {
+							while (scroll.next()) {
+								ResourceTable next = (ResourceTable) scroll.get(0);
+								if (writer[0] == null) {
+									writer[0] = openWriter(file);
+								}
+								encodeResource(next, writer[0]);
+								count[0]++;
+								retVal = next.getId();
+								myEntityManager.detach(next);
+							}
+						} catch (IOException e) {
+							throw new InternalErrorException("Failed to write to file " + file.getAbsolutePath(), e);
+						} finally {
+							scroll.close();
+						}
+						return retVal;
+					}
+				});
+
+				if (newLastPid == null) {
+					break;
+				}
+				lastPid = newLastPid;
+			}
+		} finally {
+			if (writer[0] != null) {
+				writer[0].close();
+			}
+		}
+
+		if (count[0] == 0) {
+			return null;
+		}
+
+		ourLog.info("Exported {} {} resources to {}", count[0], theResourceType, file.getAbsolutePath());
+		BulkExportFileEntity retVal = new BulkExportFileEntity();
+		retVal.setResourceType(theResourceType);
+		retVal.setResourceCount(count[0]);
+		retVal.setFilePath(file.getAbsolutePath());
+		return retVal;
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public JobInfo getJobStatusOrThrowResourceNotFound(String theJobId) {
+		BulkExportJobEntity job = myJobDao.findByJobId(theJobId);
+		if (job == null) {
+			throw new ResourceNotFoundException("Unknown bulk export job: " + theJobId);
+		}
+
+		JobInfo retVal = toJobInfo(job);
+		if (job.getStatus() == BulkExportJobStatusEnum.COMPLETE) {
+			for (BulkExportFileEntity next : myFileDao.findForJob(job.getId())) {
+				retVal.getFiles().add(toFileInfo(next));
+			}
+		}
+		return retVal;
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public FileInfo getFileOrThrowResourceNotFound(String theJobId, Long theFileId) {
+		BulkExportJobEntity job = myJobDao.findByJobId(theJobId);
+		BulkExportFileEntity file = theFileId != null ? myFileDao.findOne(theFileId) : null;
+		if (job == null || job.getStatus() != BulkExportJobStatusEnum.COMPLETE || file == null || !file.getJob().getId().equals(job.getId())) {
+			throw new ResourceNotFoundException("Unknown bulk export file " + theFileId + " for job: " + theJobId);
+		}
+		return toFileInfo(file);
+	}
+
+	/**
+	 * Returns the paths of the search parameters which place a resource of the
+	 * given type into a Patient compartment
+	 */
+	private List<String> getPatientCompartmentPaths(String theResourceType) {
+		List<String> retVal = new ArrayList<>();
+		RuntimeResourceDefinition def = myContext.getResourceDefinition(theResourceType);
+		for (RuntimeSearchParam next : def.getSearchParamsForCompartmentName("Patient")) {
+			retVal.addAll(next.getPathsSplit());
+		}
+		return retVal;
+	}
+
+	@Override
+	public Set<String> getPatientCompartmentResourceTypes() {
+		Set<String> retVal = new TreeSet<>();
+		retVal.add("Patient");
+		for (String next : myContext.getResourceNames()) {
+			RuntimeResourceDefinition def = myContext.getResourceDefinition(next);
+			if (!def.getSearchParamsForCompartmentName("Patient").isEmpty()) {
+				retVal.add(next);
+			}
+		}
+		return retVal;
+	}
+
+	private TransactionTemplate newReadOnlyTxTemplate() {
+		TransactionTemplate retVal = newTxTemplate();
+		retVal.setReadOnly(true);
+		return retVal;
+	}
+
+	private TransactionTemplate newTxTemplate() {
+		TransactionTemplate retVal = new TransactionTemplate(myTxManager);
+		retVal.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		return retVal;
+	}
+
+	private Writer openWriter(File theFile) throws IOException {
+		OutputStream os = new FileOutputStream(theFile);
+		if (myDaoConfig.isBulkExportGzipFiles()) {
+			os = new GZIPOutputStream(os);
+		}
+		return new BufferedWriter(new OutputStreamWriter(os, Charsets.UTF_8));
+	}
+
+	@Override
+	@Scheduled(fixedDelay = 10 * DateUtils.MILLIS_PER_SECOND)
+	@Transactional(propagation = Propagation.NEVER)
+	public void scheduleBuildExportFiles() {
+		if (myDaoConfig.isSchedulingDisabled()) {
+			return;
+		}
+		buildExportFiles();
+	}
+
+	@VisibleForTesting
+	void setBatchSizeForUnitTest(int theBatchSize) {
+		myBatchSize = theBatchSize;
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.REQUIRED)
+	public JobInfo submitJob(Set<String> theResourceTypes, Date theSince, boolean thePatientCompartment) {
+		String resourceTypes = null;
+		if (theResourceTypes != null && !theResourceTypes.isEmpty()) {
+			Set<String> knownTypes = myContext.getResourceNames();
+			for (String next : theResourceTypes) {
+				if (!knownTypes.contains(next)) {
+					throw new InvalidRequestException("Unknown or unsupported resource type: " + next);
+				}
+			}
+			resourceTypes = join(new TreeSet<>(theResourceTypes), ',');
+		}
+
+		BulkExportJobEntity job = new BulkExportJobEntity();
+		job.setJobId(UUID.randomUUID().toString());
+		job.setResourceTypes(resourceTypes);
+		job.setSince(theSince);
+		job.setPatientCompartment(thePatientCompartment);
+		job.setCreated(new Date());
+		job.setStatus(BulkExportJobStatusEnum.SUBMITTED);
+		job = myJobDao.save(job);
+
+		ourLog.info("Submitted bulk export job {} for resource types: {} (patient compartment: {})", job.getJobId(), resourceTypes != null ? resourceTypes : "(all)", thePatientCompartment);
+		return toJobInfo(job);
+	}
+
+	private static FileInfo toFileInfo(BulkExportFileEntity theFile) {
+		return new FileInfo(theFile.getId(), theFile.getResourceType(), theFile.getResourceCount(), theFile.getFilePath());
+	}
+
+	private static JobInfo toJobInfo(BulkExportJobEntity theJob) {
+		return new JobInfo()
+			.setJobId(theJob.getJobId())
+			.setSince(theJob.getSince())
+			.setStatus(theJob.getStatus())
+			.setStatusMessage(theJob.getStatusMessage())
+			.setStatusTime(theJob.getStatusTime())
+			.setTransactionTime(theJob.getCreated());
+	}
+
+}
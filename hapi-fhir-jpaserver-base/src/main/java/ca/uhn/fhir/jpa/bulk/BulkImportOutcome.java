@@ -0,0 +1,117 @@
+package ca.uhn.fhir.jpa.bulk;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of a bulk NDJSON import
+ *
+ * @see ca.uhn.fhir.jpa.dao.IFhirSystemDao#bulkImport(java.io.Reader, ca.uhn.fhir.rest.api.server.RequestDetails)
+ */
+public class BulkImportOutcome {
+
+	private final List<Failure> myFailures = new ArrayList<>();
+	private int myDeferredReferenceCount;
+	private long myMillis;
+	private int myResourceCount;
+
+	public void addFailure(int theLineNumber, String theMessage) {
+		myFailures.add(new Failure(theLineNumber, theMessage));
+	}
+
+	/**
+	 * Returns the number of stored resources which contained references to resources that
+	 * did not exist yet when they were stored, and which were therefore resolved by a
+	 * second (reindexing) pass
+	 */
+	public int getDeferredReferenceCount() {
+		return myDeferredReferenceCount;
+	}
+
+	public void setDeferredReferenceCount(int theDeferredReferenceCount) {
+		myDeferredReferenceCount = theDeferredReferenceCount;
+	}
+
+	/**
+	 * Returns the lines which could not be imported, in line order
+	 */
+	public List<Failure> getFailures() {
+		return myFailures;
+	}
+
+	/**
+	 * Returns the total time taken by the import, including resolving references
+	 */
+	public long getMillis() {
+		return myMillis;
+	}
+
+	public void setMillis(long theMillis) {
+		myMillis = theMillis;
+	}
+
+	/**
+	 * Returns the number of resources which were stored
+	 */
+	public int getResourceCount() {
+		return myResourceCount;
+	}
+
+	public void setResourceCount(int theResourceCount) {
+		myResourceCount = theResourceCount;
+	}
+
+	/**
+	 * Returns the number of resources stored per second
+	 */
+	public long getResourcesPerSecond() {
+		return (myResourceCount * 1000L) / Math.max(myMillis, 1);
+	}
+
+	public static class Failure {
+		private final int myLineNumber;
+		private final String myMessage;
+
+		public Failure(int theLineNumber, String theMessage) {
+			myLineNumber = theLineNumber;
+			myMessage = theMessage;
+		}
+
+		/**
+		 * Returns the line number (1-based) within the NDJSON input
+		 */
+		public int getLineNumber() {
+			return myLineNumber;
+		}
+
+		public String getMessage() {
+			return myMessage;
+		}
+
+		@Override
+		public String toString() {
+			return "Line " + myLineNumber + ": " + myMessage;
+		}
+	}
+
+}
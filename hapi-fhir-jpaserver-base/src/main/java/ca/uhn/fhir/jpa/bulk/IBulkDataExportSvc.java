@@ -0,0 +1,197 @@
+package ca.uhn.fhir.jpa.bulk;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.entity.BulkExportJobStatusEnum;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Service which performs NDJSON bulk data exports (the <code>$export</code>
+ * operation). Jobs are submitted by the operation and the output files
+ * are built asynchronously.
+ */
+public interface IBulkDataExportSvc {
+
+	/**
+	 * Builds the files for any submitted jobs. This is called automatically
+	 * on a schedule, but may also be called directly (e.g. from tests).
+	 *
+	 * @return Returns the number of jobs which were built
+	 */
+	int buildExportFiles();
+
+	/**
+	 * Returns an output file belonging to a completed job. The file is only returned if
+	 * it belongs to the given job, so the (unguessable) job ID is needed in order to
+	 * fetch any file.
+	 *
+	 * @throws ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException If the job is not complete, or no such file exists for the job
+	 */
+	FileInfo getFileOrThrowResourceNotFound(String theJobId, Long theFileId);
+
+	/**
+	 * Returns the status of the job with the given ID
+	 *
+	 * @throws ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException If no job exists with the given ID
+	 */
+	JobInfo getJobStatusOrThrowResourceNotFound(String theJobId);
+
+	/**
+	 * Returns the resource types which belong in the Patient compartment, which
+	 * is what is exported by a Patient level export
+	 */
+	Set<String> getPatientCompartmentResourceTypes();
+
+	/**
+	 * Called automatically on a schedule to build any submitted jobs
+	 */
+	void scheduleBuildExportFiles();
+
+	/**
+	 * Submits a new export job
+	 *
+	 * @param theResourceTypes The resource types to export, or <code>null</code> to export every type in the repository
+	 * @param theSince         If not <code>null</code>, only resources updated at or after this time are exported
+	 * @param thePatientCompartment If <code>true</code>, only resources in the compartment of at least one Patient are
+	 *                              exported, and if no resource types are given every type in {@link #getPatientCompartmentResourceTypes()}
+	 *                              is exported
+	 */
+	JobInfo submitJob(Set<String> theResourceTypes, Date theSince, boolean thePatientCompartment);
+
+	class JobInfo {
+		private final List<FileInfo> myFiles = new ArrayList<>();
+		private String myJobId;
+		private Date mySince;
+		private BulkExportJobStatusEnum myStatus;
+		private String myStatusMessage;
+		private Date myStatusTime;
+		private Date myTransactionTime;
+
+		public List<FileInfo> getFiles() {
+			return myFiles;
+		}
+
+		public String getJobId() {
+			return myJobId;
+		}
+
+		public JobInfo setJobId(String theJobId) {
+			myJobId = theJobId;
+			return this;
+		}
+
+		public Date getSince() {
+			return mySince;
+		}
+
+		public JobInfo setSince(Date theSince) {
+			mySince = theSince;
+			return this;
+		}
+
+		public BulkExportJobStatusEnum getStatus() {
+			return myStatus;
+		}
+
+		public JobInfo setStatus(BulkExportJobStatusEnum theStatus) {
+			myStatus = theStatus;
+			return this;
+		}
+
+		public String getStatusMessage() {
+			return myStatusMessage;
+		}
+
+		public JobInfo setStatusMessage(String theStatusMessage) {
+			myStatusMessage = theStatusMessage;
+			return this;
+		}
+
+		public Date getStatusTime() {
+			return myStatusTime;
+		}
+
+		public JobInfo setStatusTime(Date theStatusTime) {
+			myStatusTime = theStatusTime;
+			return this;
+		}
+
+		/**
+		 * The time that the job was submitted. Changes made after this time may or
+		 * may not be included in the output.
+		 */
+		public Date getTransactionTime() {
+			return myTransactionTime;
+		}
+
+		public JobInfo setTransactionTime(Date theTransactionTime) {
+			myTransactionTime = theTransactionTime;
+			return this;
+		}
+	}
+
+	class FileInfo {
+		private final Long myFileId;
+		private final String myFilePath;
+		private final long myResourceCount;
+		private final String myResourceType;
+
+		public FileInfo(Long theFileId, String theResourceType, long theResourceCount, String theFilePath) {
+			myFileId = theFileId;
+			myResourceType = theResourceType;
+			myResourceCount = theResourceCount;
+			myFilePath = theFilePath;
+		}
+
+		/**
+		 * The ID used to fetch this file through the server. Unlike {@link #getFilePath()} this
+		 * is safe to expose to clients.
+		 */
+		public Long getFileId() {
+			return myFileId;
+		}
+
+		/**
+		 * The location of this file on the server's local filesystem. This should not be
+		 * exposed to clients.
+		 */
+		public String getFilePath() {
+			return myFilePath;
+		}
+
+		public boolean isGzipped() {
+			return myFilePath.endsWith(".gz");
+		}
+
+		public long getResourceCount() {
+			return myResourceCount;
+		}
+
+		public String getResourceType() {
+			return myResourceType;
+		}
+	}
+
+}
@@ -20,10 +20,20 @@ package ca.uhn.fhir.jpa.config;
  * #L%
  */
 
+import ca.uhn.fhir.jpa.bulk.BulkDataExportSvcImpl;
+import ca.uhn.fhir.jpa.bulk.IBulkDataExportSvc;
+import ca.uhn.fhir.jpa.dao.ForcedIdCache;
+import ca.uhn.fhir.jpa.dao.ParallelResourceLoader;
+import ca.uhn.fhir.jpa.dao.ResourceCountCache;
+import ca.uhn.fhir.jpa.dao.TagDefinitionCache;
+import ca.uhn.fhir.jpa.dao.ResourceTextCache;
 import ca.uhn.fhir.jpa.graphql.JpaStorageServices;
 import ca.uhn.fhir.jpa.search.*;
+import ca.uhn.fhir.jpa.search.reindex.IResourceReindexingSvc;
+import ca.uhn.fhir.jpa.search.reindex.ResourceReindexingSvcImpl;
 import ca.uhn.fhir.jpa.sp.ISearchParamPresenceSvc;
 import ca.uhn.fhir.jpa.sp.SearchParamPresenceSvcImpl;
+import ca.uhn.fhir.jpa.subscription.InMemorySubscriptionMatcher;
 import ca.uhn.fhir.jpa.subscription.email.SubscriptionEmailInterceptor;
 import ca.uhn.fhir.jpa.subscription.resthook.SubscriptionRestHookInterceptor;
 import ca.uhn.fhir.jpa.subscription.websocket.SubscriptionWebsocketInterceptor;
@@ -61,6 +71,11 @@ public class BaseConfig implements SchedulingConfigurer {
 		theTaskRegistrar.setTaskScheduler(taskScheduler());
 	}
 
+	@Bean
+	public IBulkDataExportSvc bulkDataExportSvc() {
+		return new BulkDataExportSvcImpl();
+	}
+
 	@Bean(autowire = Autowire.BY_TYPE)
 	public DatabaseBackedPagingProvider databaseBackedPagingProvider() {
 		DatabaseBackedPagingProvider retVal = new DatabaseBackedPagingProvider();
@@ -84,6 +99,50 @@ public class BaseConfig implements SchedulingConfigurer {
 		return new SearchCoordinatorSvcImpl();
 	}
 
+	/**
+	 * Override this bean in order to deliver search progress
+	 * notifications across nodes in a clustered environment
+	 */
+	@Bean
+	public ISearchProgressNotifier searchProgressNotifier() {
+		return new SearchProgressNotifierLocal();
+	}
+
+	@Bean
+	public IResourceReindexingSvc resourceReindexingSvc() {
+		return new ResourceReindexingSvcImpl();
+	}
+
+	@Bean
+	public ResourceTextCache resourceTextCache() {
+		return new ResourceTextCache();
+	}
+
+	@Bean
+	public ResourceCountCache resourceCountCache() {
+		return new ResourceCountCache();
+	}
+
+	@Bean
+	public ParallelResourceLoader parallelResourceLoader() {
+		return new ParallelResourceLoader();
+	}
+
+	@Bean
+	public ForcedIdCache forcedIdCache() {
+		return new ForcedIdCache();
+	}
+
+	@Bean
+	public TagDefinitionCache tagDefinitionCache() {
+		return new TagDefinitionCache();
+	}
+
+	@Bean
+	public InMemorySubscriptionMatcher inMemorySubscriptionMatcher() {
+		return new InMemorySubscriptionMatcher();
+	}
+
 	@Bean
 	public ISearchParamPresenceSvc searchParamPresenceSvc() {
 		return new SearchParamPresenceSvcImpl();
@@ -50,8 +50,8 @@ import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor.ActionRequestDetails;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import ca.uhn.fhir.util.*;
-import com.google.common.base.Charsets;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
@@ -60,6 +60,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URLEncodedUtils;
+import org.hibernate.exception.ConstraintViolationException;
 import org.hl7.fhir.instance.model.api.*;
 import org.hl7.fhir.r4.model.BaseResource;
 import org.hl7.fhir.r4.model.Bundle.HTTPVerb;
@@ -73,10 +74,13 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.xml.stream.events.Characters;
 import javax.xml.stream.events.XMLEvent;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.text.Normalizer;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.zip.GZIPOutputStream;
 
 import static org.apache.commons.lang3.StringUtils.*;
 
@@ -128,6 +132,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 	protected EntityManager myEntityManager;
 	@Autowired
 	protected IForcedIdDao myForcedIdDao;
+	@Autowired
+	private ForcedIdCache myForcedIdCache;
 	@Autowired(required = false)
 	protected IFulltextSearchSvc myFulltextSearchSvc;
 	@Autowired()
@@ -147,6 +153,12 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 	private List<IFhirResourceDao<?>> myResourceDaos;
 	@Autowired
 	private IResourceHistoryTableDao myResourceHistoryTableDao;
+	@Autowired
+	private ResourceTextCache myResourceTextCache;
+	@Autowired
+	private ParallelResourceLoader myParallelResourceLoader;
+	@Autowired
+	private ResourceCountCache myResourceCountCache;
 	private Map<Class<? extends IBaseResource>, IFhirResourceDao<?>> myResourceTypeToDao;
 	@Autowired
 	private ISearchDao mySearchDao;
@@ -159,6 +171,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 	@Autowired
 	private ISearchResultDao mySearchResultDao;
 	@Autowired
+	private TagDefinitionCache myTagDefinitionCache;
+	@Autowired
 	private IResourceIndexedCompositeStringUniqueDao myResourceIndexedCompositeStringUniqueDao;
 
 	protected void clearRequestAsProcessingSubRequest(ServletRequestDetails theRequestDetails) {
@@ -405,6 +419,11 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 				try {
 					valueOf = translateForcedIdToPid(typeString, id);
 				} catch (ResourceNotFoundException e) {
+					if (theEntity.isDeferUnresolvedReferences()) {
+						// The target may be created later in the same import, so this is resolved by reindexing
+						theEntity.setHasUnresolvedReferences(true);
+						continue;
+					}
 					if (myConfig.isEnforceReferentialIntegrityOnWrite() == false) {
 						continue;
 					}
@@ -708,6 +727,46 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 			return null;
 		}
 
+		TagDefinition retVal = myTagDefinitionCache.get(theTagType, theScheme, theTerm);
+		if (retVal != null) {
+			return retVal;
+		}
+
+		retVal = findTagDefinition(theTagType, theScheme, theTerm);
+		if (retVal == null) {
+			retVal = createTagDefinition(theTagType, theScheme, theTerm, theLabel);
+		}
+
+		myTagDefinitionCache.put(theTagType, theScheme, theTerm, retVal);
+		return retVal;
+	}
+
+	/**
+	 * Creates a new tag definition in the current transaction. Anything already pending is
+	 * flushed first, so that a failure of the flush which follows the insert can only come from
+	 * the new row. If another writer has created the same tag definition in the meantime, the
+	 * insert fails on the unique constraint and the current transaction can't continue, so
+	 * this is reported as a version conflict which the client can retry. The retry will find
+	 * the definition created by the other writer.
+	 */
+	private TagDefinition createTagDefinition(TagTypeEnum theTagType, String theScheme, String theTerm, String theLabel) {
+		myEntityManager.flush();
+
+		TagDefinition retVal = new TagDefinition(theTagType, theScheme, theTerm, theLabel);
+		try {
+			myEntityManager.persist(retVal);
+			myEntityManager.flush();
+		} catch (PersistenceException e) {
+			if (e.getCause() instanceof ConstraintViolationException) {
+				ourLog.info("Failed to create tag definition {}|{}, it was probably created by a concurrent writer: {}", theScheme, theTerm, e.toString());
+				throw new ResourceVersionConflictException("Tag definition " + theScheme + "|" + theTerm + " was created by a concurrent request, please retry");
+			}
+			throw e;
+		}
+		return retVal;
+	}
+
+	private TagDefinition findTagDefinition(TagTypeEnum theTagType, String theScheme, String theTerm) {
 		CriteriaBuilder builder = myEntityManager.getCriteriaBuilder();
 		CriteriaQuery<TagDefinition> cq = builder.createQuery(TagDefinition.class);
 		Root<TagDefinition> from = cq.from(TagDefinition.class);
@@ -726,14 +785,14 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 					builder.equal(from.get("myCode"), theTerm)));
 		}
 
+		/*
+		 * The unique constraint on HFJ_TAG_DEF does not prevent duplicates when the
+		 * system is null on most databases, so don't insist on a single result here
+		 */
 		TypedQuery<TagDefinition> q = myEntityManager.createQuery(cq);
-		try {
-			return q.getSingleResult();
-		} catch (NoResultException e) {
-			TagDefinition retVal = new TagDefinition(theTagType, theScheme, theTerm, theLabel);
-			myEntityManager.persist(retVal);
-			return retVal;
-		}
+		q.setMaxResults(1);
+		List<TagDefinition> results = q.getResultList();
+		return results.isEmpty() ? null : results.get(0);
 	}
 
 	protected TagList getTags(Class<? extends IBaseResource> theResourceType, IIdType theResourceId) {
@@ -850,8 +909,7 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 	@Override
 	public SearchBuilder newSearchBuilder() {
 		SearchBuilder builder = new SearchBuilder(getContext(), myEntityManager, myFulltextSearchSvc, this, myResourceIndexedSearchParamUriDao,
-			myForcedIdDao,
-			myTerminologySvc, mySerarchParamRegistry);
+			myTerminologySvc, mySerarchParamRegistry, myParallelResourceLoader);
 		return builder;
 	}
 
@@ -927,18 +985,17 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 
 		IParser parser = encoding.newParser(myContext);
 		parser.setDontEncodeElements(EXCLUDE_ELEMENTS_IN_ENCODED);
-		String encoded = parser.encodeResourceToString(theResource);
 
 		theEntity.setEncoding(encoding);
 		theEntity.setFhirVersion(myContext.getVersion().getVersion());
 		byte[] bytes;
 		switch (encoding) {
 			case JSON:
-				bytes = encoded.getBytes(Charsets.UTF_8);
+				bytes = encodeResourceToBytes(parser, theResource, false);
 				break;
 			default:
 			case JSONC:
-				bytes = GZipUtil.compress(encoded);
+				bytes = encodeResourceToBytes(parser, theResource, true);
 				break;
 		}
 
@@ -1189,6 +1246,12 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		myPlatformTransactionManager = thePlatformTransactionManager;
 	}
 
+	private void calculateHashes(Collection<? extends BaseResourceIndexedSearchParam> theParams) {
+		for (BaseResourceIndexedSearchParam nextSearchParam : theParams) {
+			nextSearchParam.calculateHashes();
+		}
+	}
+
 	private void setUpdatedTime(Collection<? extends BaseResourceIndexedSearchParam> theParams, Date theUpdateTime) {
 		for (BaseResourceIndexedSearchParam nextSearchParam : theParams) {
 			nextSearchParam.setUpdated(theUpdateTime);
@@ -1233,25 +1296,30 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 	@SuppressWarnings("unchecked")
 	@Override
 	public <R extends IBaseResource> R toResource(Class<R> theResourceType, BaseHasResource theEntity, boolean theForHistoryOperation) {
-		String resourceText = null;
-		switch (theEntity.getEncoding()) {
-			case JSON:
-				try {
-					resourceText = new String(theEntity.getResource(), "UTF-8");
-				} catch (UnsupportedEncodingException e) {
-					throw new Error("Should not happen", e);
-				}
-				break;
-			case JSONC:
-				resourceText = GZipUtil.decompress(theEntity.getResource());
-				break;
+		String resourceText = myResourceTextCache.get(theEntity);
+		if (resourceText == null) {
+			switch (theEntity.getEncoding()) {
+				case JSON:
+					try {
+						resourceText = new String(theEntity.getResource(), "UTF-8");
+					} catch (UnsupportedEncodingException e) {
+						throw new Error("Should not happen", e);
+					}
+					break;
+				case JSONC:
+					resourceText = GZipUtil.decompress(theEntity.getResource());
+					break;
+			}
+			if (resourceText != null) {
+				myResourceTextCache.put(theEntity, resourceText);
+			}
 		}
 
 		/*
 		 * Use the appropriate custom type if one is specified in the context
 		 */
 		Class<R> resourceType = theResourceType;
-		if (myContext.hasDefaultTypeForProfile()) {
+		if (myContext.hasDefaultTypeForProfile() && theEntity.isHasTags()) {
 			for (BaseTag nextTag : theEntity.getTags()) {
 				if (nextTag.getTag().getTagType() == TagTypeEnum.PROFILE) {
 					String profile = nextTag.getTag().getCode();
@@ -1308,19 +1376,91 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		return myContext.getResourceDefinition(theResource).getName();
 	}
 
+	/**
+	 * Looks up the PIDs for any client assigned (forced) IDs in the given collection which
+	 * are not already cached, using one query per resource type instead of one query per
+	 * ID. This should be called before resolving a large number of IDs at once (e.g. the
+	 * references in a transaction).
+	 */
+	protected void preloadForcedIds(Collection<? extends IIdType> theIds) {
+		Map<String, Set<String>> resourceTypeToForcedIds = new HashMap<>();
+		for (IIdType next : theIds) {
+			if (!next.hasResourceType() || !next.hasIdPart() || next.hasBaseUrl() || isValidPid(next)) {
+				continue;
+			}
+			if (myForcedIdCache.getPid(next.getResourceType(), next.getIdPart()) != null) {
+				continue;
+			}
+			Set<String> forcedIds = resourceTypeToForcedIds.get(next.getResourceType());
+			if (forcedIds == null) {
+				forcedIds = new HashSet<>();
+				resourceTypeToForcedIds.put(next.getResourceType(), forcedIds);
+			}
+			forcedIds.add(next.getIdPart());
+		}
+
+		for (Entry<String, Set<String>> nextEntry : resourceTypeToForcedIds.entrySet()) {
+			for (List<String> nextChunk : Lists.partition(new ArrayList<>(nextEntry.getValue()), 500)) {
+				for (ForcedId nextForcedId : myForcedIdDao.findByTypeAndForcedIds(nextEntry.getKey(), nextChunk)) {
+					myForcedIdCache.putPid(nextForcedId.getResourceType(), nextForcedId.getForcedId(), nextForcedId.getResourcePid());
+				}
+			}
+		}
+	}
+
 	protected Long translateForcedIdToPid(String theResourceName, String theResourceId) {
-		return translateForcedIdToPids(new IdDt(theResourceName, theResourceId), myForcedIdDao).get(0);
+		return translateForcedIdToPids(new IdDt(theResourceName, theResourceId)).get(0);
 	}
 
 	protected List<Long> translateForcedIdToPids(IIdType theId) {
-		return translateForcedIdToPids(theId, myForcedIdDao);
+		Validate.isTrue(theId.hasIdPart());
+
+		if (isValidPid(theId)) {
+			return Collections.singletonList(theId.getIdPartAsLong());
+		}
+
+		List<ForcedId> forcedId;
+		if (theId.hasResourceType()) {
+			Long cached = myForcedIdCache.getPid(theId.getResourceType(), theId.getIdPart());
+			if (cached != null) {
+				return Collections.singletonList(cached);
+			}
+			forcedId = myForcedIdDao.findByTypeAndForcedId(theId.getResourceType(), theId.getIdPart());
+			if (forcedId.size() == 1) {
+				myForcedIdCache.putPid(theId.getResourceType(), theId.getIdPart(), forcedId.get(0).getResourcePid());
+			}
+		} else {
+			forcedId = myForcedIdDao.findByForcedId(theId.getIdPart());
+		}
+
+		if (forcedId.isEmpty() == false) {
+			List<Long> retVal = new ArrayList<Long>(forcedId.size());
+			for (ForcedId next : forcedId) {
+				retVal.add(next.getResourcePid());
+			}
+			return retVal;
+		} else {
+			throw new ResourceNotFoundException(theId);
+		}
 	}
 
 	protected String translatePidIdToForcedId(String theResourceType, Long theId) {
+		String cached = myForcedIdCache.getForcedId(theId);
+		if (cached != null) {
+			if (cached.equals(ForcedIdCache.NO_FORCED_ID)) {
+				return theResourceType + '/' + theId.toString();
+			}
+			return cached;
+		}
+
 		ForcedId forcedId = myForcedIdDao.findByResourcePid(theId);
 		if (forcedId != null) {
+			if (isNotBlank(forcedId.getResourceType())) {
+				myForcedIdCache.putPid(forcedId.getResourceType(), forcedId.getForcedId(), theId);
+			}
 			return forcedId.getResourceType() + '/' + forcedId.getForcedId();
 		} else {
+			myForcedIdCache.putNoForcedId(theId);
 			return theResourceType + '/' + theId.toString();
 		}
 	}
@@ -1344,6 +1484,8 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 			}
 		}
 
+		boolean wasLive = theEntity.getId() != null && theEntity.getDeleted() == null;
+
 		if (theEntity.getPublished() == null) {
 			ourLog.debug("Entity has published time: {}", new InstantDt(theUpdateTime));
 
@@ -1461,6 +1603,14 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 				setUpdatedTime(coordsParams, theUpdateTime);
 				setUpdatedTime(tokenParams, theUpdateTime);
 
+				/*
+				 * Populate the hash columns used by the search builder as the
+				 * primary predicate for token, string and URI searches
+				 */
+				calculateHashes(stringParams);
+				calculateHashes(uriParams);
+				calculateHashes(tokenParams);
+
 				/*
 				 * Handle references within the resource that are match URLs, for example references like "Patient?identifier=foo". These match URLs are resolved and replaced with the ID of the
 				 * matching resource.
@@ -1583,6 +1733,12 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 			theEntity.setVersion(theEntity.getVersion() + 1);
 		}
 
+		/*
+		 * The stored text for this version is about to change (or this version
+		 * number is being reused after a rolled back transaction)
+		 */
+		myResourceTextCache.invalidate(theEntity);
+
 		/*
 		 * Save the resource itself
 		 */
@@ -1601,6 +1757,11 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 			postUpdate(theEntity, (T) theResource);
 		}
 
+		boolean isLive = theEntity.getDeleted() == null;
+		if (isLive != wasLive) {
+			myResourceCountCache.recordChange(theEntity.getResourceType(), isLive ? 1 : -1);
+		}
+
 		/*
 		 * Update the "search param present" table which is used for the
 		 * ?foo:missing=true queries
@@ -2034,6 +2195,22 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		return new String(out).toUpperCase();
 	}
 
+	private static byte[] encodeResourceToBytes(IParser theParser, IBaseResource theResource, boolean theGzip) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			if (theGzip) {
+				GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+				theParser.encodeResourceToOutputStream(theResource, gzip);
+				gzip.close();
+			} else {
+				theParser.encodeResourceToOutputStream(theResource, bytes);
+			}
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to encode resource", e);
+		}
+		return bytes.toByteArray();
+	}
+
 	private static String parseNarrativeTextIntoWords(IBaseResource theResource) {
 
 		StringBuilder b = new StringBuilder();
@@ -2077,35 +2254,6 @@ public abstract class BaseHapiFhirDao<T extends IBaseResource> implements IDao {
 		return retVal;
 	}
 
-	protected static Long translateForcedIdToPid(String theResourceName, String theResourceId, IForcedIdDao theForcedIdDao) {
-		return translateForcedIdToPids(new IdDt(theResourceName, theResourceId), theForcedIdDao).get(0);
-	}
-
-	static List<Long> translateForcedIdToPids(IIdType theId, IForcedIdDao theForcedIdDao) {
-		Validate.isTrue(theId.hasIdPart());
-
-		if (isValidPid(theId)) {
-			return Collections.singletonList(theId.getIdPartAsLong());
-		} else {
-			List<ForcedId> forcedId;
-			if (theId.hasResourceType()) {
-				forcedId = theForcedIdDao.findByTypeAndForcedId(theId.getResourceType(), theId.getIdPart());
-			} else {
-				forcedId = theForcedIdDao.findByForcedId(theId.getIdPart());
-			}
-
-			if (forcedId.isEmpty() == false) {
-				List<Long> retVal = new ArrayList<Long>(forcedId.size());
-				for (ForcedId next : forcedId) {
-					retVal.add(next.getResourcePid());
-				}
-				return retVal;
-			} else {
-				throw new ResourceNotFoundException(theId);
-			}
-		}
-	}
-
 	public static SearchParameterMap translateMatchUrl(IDao theCallingDao, FhirContext theContext, String theMatchUrl, RuntimeResourceDefinition resourceDef) {
 		SearchParameterMap paramMap = new SearchParameterMap();
 		List<NameValuePair> parameters = translateMatchUrl(theMatchUrl);
@@ -42,6 +42,8 @@ import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.ParameterUtil;
 import ca.uhn.fhir.rest.param.QualifierDetails;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import ca.uhn.fhir.rest.server.SimpleBundleProvider;
 import ca.uhn.fhir.rest.server.exceptions.*;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor.ActionRequestDetails;
@@ -56,8 +58,11 @@ import org.hl7.fhir.instance.model.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Required;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.NoResultException;
@@ -85,6 +90,8 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 	private IResourceHistoryTableDao myResourceHistoryTableDao;
 	@Autowired
 	private IResourceLinkDao myResourceLinkDao;
+	@Autowired
+	private ResourceCountCache myResourceCountCache;
 	private String myResourceName;
 	private Class<T> myResourceType;
 	private String mySecondaryPrimaryKeyParamName;
@@ -888,6 +895,17 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		ourLog.info("Processed remove tag {}/{} on {} in {}ms", new Object[]{theScheme, theTerm, theId.getValue(), w.getMillisAndRestart()});
 	}
 
+	/**
+	 * Is this a search for every resource of this type, with nothing that would filter the results?
+	 */
+	private static boolean isUnfilteredSearch(SearchParameterMap theParams) {
+		return theParams.isEmpty()
+			&& theParams.getIncludes().isEmpty()
+			&& theParams.getRevIncludes().isEmpty()
+			&& theParams.getLastUpdated() == null
+			&& theParams.getEverythingMode() == null;
+	}
+
 	@Transactional(propagation = Propagation.SUPPORTS)
 	@Override
 	public IBundleProvider search(final SearchParameterMap theParams) {
@@ -934,12 +952,35 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 			}
 		}
 
+		/*
+		 * If the client only wants the total, count the matches directly instead
+		 * of running the search and storing every matching ID
+		 */
+		if (theRequestDetails != null && theParams.getEverythingMode() == null) {
+			Set<SummaryEnum> summaryMode = RestfulServerUtils.determineSummaryMode(theRequestDetails);
+			if (summaryMode != null && summaryMode.contains(SummaryEnum.COUNT)) {
+				final long count;
+				if (myDaoConfig.isUseResourceCountsForSummaryCount() && isUnfilteredSearch(theParams)) {
+					count = myResourceCountCache.getCount(getResourceName());
+					ourLog.debug("Returning {} {} resources from resource counts for _summary=count", count, getResourceName());
+				} else {
+					count = countSearchResults(theParams);
+				}
+				return new SimpleBundleProvider() {
+					@Override
+					public Integer size() {
+						return (int) Math.min(count, Integer.MAX_VALUE);
+					}
+				};
+			}
+		}
+
 		CacheControlDirective cacheControlDirective = new CacheControlDirective();
 		if (theRequestDetails != null) {
 			cacheControlDirective.parse(theRequestDetails.getHeaders(Constants.HEADER_CACHE_CONTROL));
 		}
 
-		IBundleProvider retVal = mySearchCoordinatorSvc.registerSearch(this, theParams, getResourceName(), cacheControlDirective);
+		IBundleProvider retVal = mySearchCoordinatorSvc.registerSearch(this, theParams, getResourceName(), cacheControlDirective, theRequestDetails);
 
 		if (retVal instanceof PersistedJpaBundleProvider) {
 			PersistedJpaBundleProvider provider = (PersistedJpaBundleProvider) retVal;
@@ -954,6 +995,21 @@ public abstract class BaseHapiFhirResourceDao<T extends IBaseResource> extends B
 		return retVal;
 	}
 
+	private long countSearchResults(final SearchParameterMap theParams) {
+		final String searchUuid = UUID.randomUUID().toString();
+		TransactionTemplate txTemplate = new TransactionTemplate(myPlatformTransactionManager);
+		txTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRED);
+		txTemplate.setReadOnly(true);
+		return txTemplate.execute(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus theStatus) {
+				SearchBuilder builder = newSearchBuilder();
+				builder.setType(getResourceType(), getResourceName());
+				return builder.createCountQuery(theParams, searchUuid, myDaoConfig.getSummaryCountUpTo());
+			}
+		});
+	}
+
 	@Override
 	public Set<Long> searchForIds(SearchParameterMap theParams) {
 
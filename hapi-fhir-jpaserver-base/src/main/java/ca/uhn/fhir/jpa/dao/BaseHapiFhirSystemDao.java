@@ -1,6 +1,5 @@
 package ca.uhn.fhir.jpa.dao;
 
-import static org.apache.commons.lang3.StringUtils.isBlank;
 
 /*
  * #%L
@@ -21,32 +20,40 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
  * limitations under the License.
  * #L%
  */
-import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 
-import javax.persistence.*;
-import javax.persistence.criteria.*;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
 
+import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.jpa.bulk.BulkImportOutcome;
 import ca.uhn.fhir.jpa.dao.data.*;
-import ca.uhn.fhir.jpa.entity.ForcedId;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
-import ca.uhn.fhir.jpa.util.ReindexFailureException;
+import ca.uhn.fhir.jpa.search.reindex.IResourceReindexingSvc;
 import ca.uhn.fhir.jpa.util.StopWatch;
 import ca.uhn.fhir.model.api.TagList;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor.ActionRequestDetails;
 
@@ -55,9 +62,13 @@ public abstract class BaseHapiFhirSystemDao<T, MT> extends BaseHapiFhirDao<IBase
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BaseHapiFhirSystemDao.class);
 
 	@Autowired
-	private IForcedIdDao myForcedIdDao;
+	private IResourceReindexingSvc myReindexingSvc;
 
-	private ReentrantLock myReindexLock = new ReentrantLock(false);
+	@Autowired
+	private ResourceCountCache myResourceCountCache;
+
+	@Autowired
+	private IResourceTableDao myResourceTableDao;
 
 	@Autowired
 	private ITermConceptDao myTermConceptDao;
@@ -65,92 +76,193 @@ public abstract class BaseHapiFhirSystemDao<T, MT> extends BaseHapiFhirDao<IBase
 	@Autowired
 	private PlatformTransactionManager myTxManager;
 
-	@Transactional(propagation = Propagation.REQUIRED)
 	@Override
-	public void deleteAllTagsOnServer(RequestDetails theRequestDetails) {
-		// Notify interceptors
-		ActionRequestDetails requestDetails = new ActionRequestDetails(theRequestDetails);
-		notifyInterceptors(RestOperationTypeEnum.DELETE_TAGS, requestDetails);
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public BulkImportOutcome bulkImport(Reader theNdjson, RequestDetails theRequestDetails) {
+		Validate.notNull(theNdjson, "theNdjson must not be null");
+		StopWatch sw = new StopWatch();
+
+		BulkImportOutcome retVal = new BulkImportOutcome();
+		Map<Long, Integer> deferredPidToLineNumber = new HashMap<>();
+		int batchSize = getConfig().getBulkImportBatchSize();
+		List<ImportLine> batch = new ArrayList<>(batchSize);
+		IParser parser = getContext().newJsonParser();
+
+		BufferedReader reader = new BufferedReader(theNdjson);
+		int lineNumber = 0;
+		try {
+			String nextLine;
+			while ((nextLine = reader.readLine()) != null) {
+				lineNumber++;
+				if (isBlank(nextLine)) {
+					continue;
+				}
 
-		myEntityManager.createQuery("DELETE from ResourceTag t").executeUpdate();
-	}
+				IBaseResource resource;
+				try {
+					resource = parser.parseResource(nextLine);
+				} catch (DataFormatException e) {
+					retVal.addFailure(lineNumber, e.getMessage());
+					continue;
+				}
 
-	private int doPerformReindexingPass(final Integer theCount) {
-		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
-		txTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRED);
-		int retVal = doPerformReindexingPassForResources(theCount, txTemplate);
+				batch.add(new ImportLine(lineNumber, resource));
+				if (batch.size() >= batchSize) {
+					importBatch(batch, retVal, deferredPidToLineNumber, theRequestDetails);
+					batch.clear();
+				}
+			}
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to read NDJSON input at line " + lineNumber + ": " + e.toString(), e);
+		}
+		if (!batch.isEmpty()) {
+			importBatch(batch, retVal, deferredPidToLineNumber, theRequestDetails);
+		}
+
+		long storeMillis = sw.getMillis();
+		ourLog.info("Stored {} resources from {} lines in {}ms ({}/sec), {} have references to resolve", retVal.getResourceCount(), lineNumber, storeMillis, (retVal.getResourceCount() * 1000L) / Math.max(storeMillis, 1), deferredPidToLineNumber.size());
+
+		retVal.setDeferredReferenceCount(deferredPidToLineNumber.size());
+		if (!deferredPidToLineNumber.isEmpty()) {
+			resolveDeferredReferences(deferredPidToLineNumber, retVal);
+		}
+
+		Collections.sort(retVal.getFailures(), new Comparator<BulkImportOutcome.Failure>() {
+			@Override
+			public int compare(BulkImportOutcome.Failure theO1, BulkImportOutcome.Failure theO2) {
+				return theO1.getLineNumber() - theO2.getLineNumber();
+			}
+		});
+
+		retVal.setMillis(sw.getMillis());
+		ourLog.info("Bulk import complete: {} resources stored in {}ms ({}/sec), {} lines failed", retVal.getResourceCount(), retVal.getMillis(), retVal.getResourcesPerSecond(), retVal.getFailures().size());
 		return retVal;
 	}
 
-	@Autowired
-	private IResourceTableDao myResourceTableDao;
-	
-	private int doPerformReindexingPassForResources(final Integer theCount, TransactionTemplate txTemplate) {
-		return txTemplate.execute(new TransactionCallback<Integer>() {
+	/**
+	 * Stores a batch of resources in a single transaction. If the batch fails, it is retried
+	 * one resource per transaction in order to find the line(s) which caused the failure.
+	 */
+	private void importBatch(List<ImportLine> theBatch, BulkImportOutcome theOutcome, Map<Long, Integer> theDeferredPidToLineNumber, RequestDetails theRequestDetails) {
+		try {
+			theDeferredPidToLineNumber.putAll(importLinesInNewTransaction(theBatch, theRequestDetails));
+			theOutcome.setResourceCount(theOutcome.getResourceCount() + theBatch.size());
+			return;
+		} catch (Exception e) {
+			ourLog.warn("Failed to import batch of {} resources starting at line {}, retrying individually: {}", theBatch.size(), theBatch.get(0).getLineNumber(), e.toString());
+		}
+
+		for (ImportLine next : theBatch) {
+			try {
+				theDeferredPidToLineNumber.putAll(importLinesInNewTransaction(Collections.singletonList(next), theRequestDetails));
+				theOutcome.setResourceCount(theOutcome.getResourceCount() + 1);
+			} catch (Exception e) {
+				ourLog.debug("Failed to import line " + next.getLineNumber(), e);
+				theOutcome.addFailure(next.getLineNumber(), e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * This works in the same way as a transaction: the resources are all stored first without
+	 * indexing, and then indexed once they all exist so that references between them resolve.
+	 *
+	 * @return Returns the PIDs (and line numbers) of resources with references which could not be resolved yet
+	 */
+	private Map<Long, Integer> importLinesInNewTransaction(final List<ImportLine> theLines, final RequestDetails theRequestDetails) {
+		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		return txTemplate.execute(new TransactionCallback<Map<Long, Integer>>() {
 			@SuppressWarnings("unchecked")
 			@Override
-			public Integer doInTransaction(TransactionStatus theStatus) {
+			public Map<Long, Integer> doInTransaction(TransactionStatus theStatus) {
+				Date updateTime = new Date();
+
+				List<DaoMethodOutcome> outcomes = new ArrayList<>(theLines.size());
+				for (ImportLine next : theLines) {
+					IBaseResource resource = next.getResource();
+					IFhirResourceDao<IBaseResource> dao = (IFhirResourceDao<IBaseResource>) getDao(resource.getClass());
+					if (dao == null) {
+						throw new InvalidRequestException("Resource type " + getContext().getResourceDefinition(resource).getName() + " is not supported by this server");
+					}
 
-				int maxResult = 500;
-				if (theCount != null) {
-					maxResult = Math.min(theCount, 2000);
+					/*
+					 * Storing the resource assigns it an ID, so put the original one back
+					 * in case this is a retry of a batch which failed
+					 */
+					resource.setId(next.getOriginalId());
+					if (next.getOriginalId() != null) {
+						outcomes.add(dao.update(resource, null, false, theRequestDetails));
+					} else {
+						outcomes.add(dao.create(resource, null, false, theRequestDetails));
+					}
 				}
-				maxResult = Math.max(maxResult, 10);
-
-				TypedQuery<Long> q = myEntityManager.createQuery("SELECT t.myId FROM ResourceTable t WHERE t.myIndexStatus IS NULL", Long.class);
-
-				ourLog.debug("Beginning indexing query with maximum {}", maxResult);
-				q.setMaxResults(maxResult);
-				Collection<Long> resources = q.getResultList();
-
-				int count = 0;
-				long start = System.currentTimeMillis();
-
-				for (Long nextId : resources) {
-					ResourceTable resourceTable = myResourceTableDao.findOne(nextId);
-					
-					try {
-						/*
-						 * This part is because from HAPI 1.5 - 1.6 we changed the format of forced ID to be "type/id" instead of just "id"
-						 */
-						ForcedId forcedId = resourceTable.getForcedId();
-						if (forcedId != null) {
-							if (isBlank(forcedId.getResourceType())) {
-								ourLog.info("Updating resource {} forcedId type to {}", forcedId.getForcedId(), resourceTable.getResourceType());
-								forcedId.setResourceType(resourceTable.getResourceType());
-								myForcedIdDao.save(forcedId);
-							}
-						}
-
-						final IBaseResource resource = toResource(resourceTable, false);
-
-						@SuppressWarnings("rawtypes")
-						final IFhirResourceDao dao = getDao(resource.getClass());
-
-						dao.reindex(resource, resourceTable);
-					} catch (Exception e) {
-						ourLog.error("Failed to index resource {}: {}", new Object[] { resourceTable.getIdDt(), e.toString(), e });
-						throw new ReindexFailureException(resourceTable.getId());
+
+				Map<Long, Integer> retVal = new HashMap<>();
+				for (int i = 0; i < theLines.size(); i++) {
+					ResourceTable entity = (ResourceTable) outcomes.get(i).getEntity();
+					if (entity.isUnchangedInCurrentOperation()) {
+						continue;
 					}
-					count++;
-					
-					if (count >= maxResult) {
-						break;
+					entity.setDeferUnresolvedReferences(true);
+					updateEntity(theLines.get(i).getResource(), entity, null, true, false, updateTime, false, true);
+					if (entity.isHasUnresolvedReferences()) {
+						entity.setIndexStatus(null);
+						retVal.put(entity.getId(), theLines.get(i).getLineNumber());
 					}
 				}
 
-				long delay = System.currentTimeMillis() - start;
-				long avg;
-				if (count > 0) {
-					avg = (delay / count);
-					ourLog.info("Indexed {} resources in {}ms - Avg {}ms / resource", new Object[] { count, delay, avg });
-				} else {
-					ourLog.debug("Indexed 0 resources in {}ms", delay);
+				myEntityManager.flush();
+				return retVal;
+			}
+		});
+	}
+
+	/**
+	 * Every line has been stored, so any reference targets from the input now exist. Reindexing
+	 * the resources which were marked as requiring it resolves their references. Only the
+	 * resources from this import are reindexed, so that any unrelated reindexing jobs are
+	 * left to the scheduler.
+	 */
+	private void resolveDeferredReferences(Map<Long, Integer> theDeferredPidToLineNumber, BulkImportOutcome theOutcome) {
+		Integer reindexed = myReindexingSvc.reindexResources(new ArrayList<>(theDeferredPidToLineNumber.keySet()));
+		if (reindexed == null) {
+			ourLog.info("A reindexing pass is already running, references for {} imported resources will be resolved by a later pass", theDeferredPidToLineNumber.size());
+			for (Integer next : theDeferredPidToLineNumber.values()) {
+				theOutcome.addFailure(next, "Resource was stored but its references could not be resolved because another reindexing pass was running, they will be resolved by a later pass");
+			}
+			return;
+		}
+
+		final List<Long> pids = new ArrayList<>(theDeferredPidToLineNumber.keySet());
+		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		txTemplate.setReadOnly(true);
+		List<Long> failedPids = txTemplate.execute(new TransactionCallback<List<Long>>() {
+			@Override
+			public List<Long> doInTransaction(TransactionStatus theStatus) {
+				List<Long> retVal = new ArrayList<>();
+				for (int from = 0; from < pids.size(); from += 500) {
+					List<Long> nextPids = pids.subList(from, Math.min(from + 500, pids.size()));
+					retVal.addAll(myResourceTableDao.findIdsWithIndexStatus(nextPids, INDEX_STATUS_INDEXING_FAILED));
 				}
-				
-				return count;
+				return retVal;
 			}
 		});
+
+		for (Long next : failedPids) {
+			theOutcome.addFailure(theDeferredPidToLineNumber.get(next), "Resource was stored but one or more of its references could not be resolved");
+		}
+	}
+
+	@Transactional(propagation = Propagation.REQUIRED)
+	@Override
+	public void deleteAllTagsOnServer(RequestDetails theRequestDetails) {
+		// Notify interceptors
+		ActionRequestDetails requestDetails = new ActionRequestDetails(theRequestDetails);
+		notifyInterceptors(RestOperationTypeEnum.DELETE_TAGS, requestDetails);
+
+		myEntityManager.createQuery("DELETE from ResourceTag t").executeUpdate();
 	}
 
 	@Override
@@ -165,24 +277,14 @@ public abstract class BaseHapiFhirSystemDao<T, MT> extends BaseHapiFhirDao<IBase
 		return retVal;
 	}
 
-	@Transactional(propagation = Propagation.REQUIRED, readOnly=true)
+	@Override
+	public Map<String, Map<String, RuntimeSearchParam>> getActiveSearchParams() {
+		return mySerarchParamRegistry.getActiveSearchParams();
+	}
+
 	@Override
 	public Map<String, Long> getResourceCounts() {
-		CriteriaBuilder builder = myEntityManager.getCriteriaBuilder();
-		CriteriaQuery<Tuple> cq = builder.createTupleQuery();
-		Root<?> from = cq.from(ResourceTable.class);
-		cq.multiselect(from.get("myResourceType").as(String.class), builder.count(from.get("myResourceType")).as(Long.class));
-		cq.groupBy(from.get("myResourceType"));
-
-		TypedQuery<Tuple> q = myEntityManager.createQuery(cq);
-
-		Map<String, Long> retVal = new HashMap<String, Long>();
-		for (Tuple next : q.getResultList()) {
-			String resourceName = next.get(0, String.class);
-			Long count = next.get(1, Long.class);
-			retVal.put(resourceName, count);
-		}
-		return retVal;
+		return myResourceCountCache.getCounts();
 	}
 
 	protected boolean hasValue(InstantDt theInstantDt) {
@@ -211,8 +313,7 @@ public abstract class BaseHapiFhirSystemDao<T, MT> extends BaseHapiFhirDao<IBase
 	@Override
 	public int markAllResourcesForReindexing() {
 		
-		ourLog.info("Marking all resources as needing reindexing");
-		int retVal = myEntityManager.createQuery("UPDATE " + ResourceTable.class.getSimpleName() + " t SET t.myIndexStatus = null").executeUpdate();
+		int retVal = myReindexingSvc.markAllResourcesForReindexing();
 		
 		ourLog.info("Marking all concepts as needing reindexing");
 		retVal += myTermConceptDao.markAllForReindexing();
@@ -221,78 +322,10 @@ public abstract class BaseHapiFhirSystemDao<T, MT> extends BaseHapiFhirDao<IBase
 		return retVal;
 	}
 
-	private void markResourceAsIndexingFailed(final long theId) {
-		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
-		txTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
-		txTemplate.execute(new TransactionCallback<Void>() {
-			@Override
-			public Void doInTransaction(TransactionStatus theStatus) {
-				ourLog.info("Marking resource with PID {} as indexing_failed", new Object[] { theId });
-				Query q = myEntityManager.createQuery("UPDATE ResourceTable t SET t.myIndexStatus = :status WHERE t.myId = :id");
-				q.setParameter("status", INDEX_STATUS_INDEXING_FAILED);
-				q.setParameter("id", theId);
-				q.executeUpdate();
-				
-				q = myEntityManager.createQuery("DELETE FROM ResourceTag t WHERE t.myResourceId = :id");
-				q.setParameter("id", theId);
-				q.executeUpdate();
-
-				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamCoords t WHERE t.myResourcePid = :id");
-				q.setParameter("id", theId);
-				q.executeUpdate();
-
-				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamDate t WHERE t.myResourcePid = :id");
-				q.setParameter("id", theId);
-				q.executeUpdate();
-
-				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamNumber t WHERE t.myResourcePid = :id");
-				q.setParameter("id", theId);
-				q.executeUpdate();
-
-				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamQuantity t WHERE t.myResourcePid = :id");
-				q.setParameter("id", theId);
-				q.executeUpdate();
-
-				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamString t WHERE t.myResourcePid = :id");
-				q.setParameter("id", theId);
-				q.executeUpdate();
-
-				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamToken t WHERE t.myResourcePid = :id");
-				q.setParameter("id", theId);
-				q.executeUpdate();
-
-				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamUri t WHERE t.myResourcePid = :id");
-				q.setParameter("id", theId);
-				q.executeUpdate();
-
-				q = myEntityManager.createQuery("DELETE FROM ResourceLink t WHERE t.mySourceResourcePid = :id");
-				q.setParameter("id", theId);
-				q.executeUpdate();
-
-				q = myEntityManager.createQuery("DELETE FROM ResourceLink t WHERE t.myTargetResourcePid = :id");
-				q.setParameter("id", theId);
-				q.executeUpdate();
-
-				return null;
-			}
-		});
-	}
-	
 	@Override
 	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public Integer performReindexingPass(final Integer theCount) {
-		if (!myReindexLock.tryLock()) {
-			return null;
-		}
-		try {
-			return doPerformReindexingPass(theCount);
-		} catch (ReindexFailureException e) {
-			ourLog.warn("Reindexing failed for resource {}", e.getResourceId());
-			markResourceAsIndexingFailed(e.getResourceId());
-			return -1;
-		} finally {
-			myReindexLock.unlock();
-		}
+		return myReindexingSvc.runReindexingPass(theCount);
 	}
 
 	public void setTxManager(PlatformTransactionManager theTxManager) {
@@ -310,5 +343,31 @@ public abstract class BaseHapiFhirSystemDao<T, MT> extends BaseHapiFhirDao<IBase
 		return entity;
 	}
 
+	private static class ImportLine {
+		private final int myLineNumber;
+		private final String myOriginalId;
+		private final IBaseResource myResource;
+
+		ImportLine(int theLineNumber, IBaseResource theResource) {
+			myLineNumber = theLineNumber;
+			myResource = theResource;
+			myOriginalId = theResource.getIdElement().hasIdPart() ? theResource.getIdElement().toVersionless().getValue() : null;
+		}
+
+		int getLineNumber() {
+			return myLineNumber;
+		}
+
+		/**
+		 * Returns the versionless ID from the input, or <code>null</code> if the resource did not have one
+		 */
+		String getOriginalId() {
+			return myOriginalId;
+		}
+
+		IBaseResource getResource() {
+			return myResource;
+		}
+	}
 
 }
@@ -24,6 +24,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.ObjectUtils;
@@ -47,6 +49,8 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 	
 	@Autowired
 	private ISearchParamRegistry mySearchParamRegistry;
+
+	private final ConcurrentHashMap<String, Map<String, RuntimeSearchParam>> myResourceNameToLastSeenActiveSearchParams = new ConcurrentHashMap<String, Map<String, RuntimeSearchParam>>();
 	
 	public BaseSearchParamExtractor() {
 		super();
@@ -95,12 +99,32 @@ public abstract class BaseSearchParamExtractor implements ISearchParamExtractor
 
 	public Collection<RuntimeSearchParam> getSearchParams(IBaseResource theResource) {
 		RuntimeResourceDefinition def = getContext().getResourceDefinition(theResource);
-		Collection<RuntimeSearchParam> retVal = mySearchParamRegistry.getActiveSearchParams(def.getName()).values();
+		Map<String, RuntimeSearchParam> activeSearchParams = mySearchParamRegistry.getActiveSearchParams(def.getName());
+
+		/*
+		 * The registry replaces its maps whenever the active search parameters are
+		 * refreshed, so a different instance means that something may have changed
+		 */
+		Map<String, RuntimeSearchParam> lastSeen = myResourceNameToLastSeenActiveSearchParams.put(def.getName(), activeSearchParams);
+		if (lastSeen != null && lastSeen != activeSearchParams) {
+			searchParamsChanged();
+		}
+
+		Collection<RuntimeSearchParam> retVal = activeSearchParams.values();
 		List<RuntimeSearchParam> defaultList= Collections.emptyList();
 		retVal = ObjectUtils.defaultIfNull(retVal, defaultList);
 		return retVal;
 	}
 
+	/**
+	 * Called when the active search parameters for a resource type may have changed.
+	 * Subclasses which cache anything derived from search parameter paths
+	 * should clear those caches here.
+	 */
+	protected void searchParamsChanged() {
+		// nothing by default
+	}
+
 	@VisibleForTesting
 	void setContextForUnitTest(FhirContext theContext) {
 		myContext = theContext;
@@ -6,6 +6,7 @@ import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.time.DateUtils;
 
+import java.io.File;
 import java.util.*;
 
 /*
@@ -65,12 +66,41 @@ public class DaoConfig {
 	 */
 	private boolean myAllowInlineMatchUrlReferences = true;
 	private boolean myAllowMultipleDelete;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private String myBulkExportDirectory = new File(System.getProperty("java.io.tmpdir"), "hapi-fhir-bulk-export").getAbsolutePath();
+	private boolean myBulkExportGzipFiles = false;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private int myBulkImportBatchSize = 1000;
 	private boolean myDefaultSearchParamsCanBeOverridden = false;
 	/**
 	 * update setter javadoc if default changes
 	 */
 	private int myDeferIndexingForCodesystemsOfSize = 2000;
 	private boolean myDeleteStaleSearches = true;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private boolean myDisableHashBasedSearches;
+	private long myResourceTextCacheMaxBytes = 0;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private int myReindexBatchSize = 500;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private int myReindexThreadCount = 4;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private int myResourceLoadingThreadCount = 1;
+	private boolean myUseResourceCountsForSummaryCount;
+	private boolean myKeysetPagingEnabled;
+	private Integer mySummaryCountUpTo;
 	private boolean myEnforceReferentialIntegrityOnDelete = true;
 	private boolean myUniqueIndexesEnabled = true;
 	private boolean myUniqueIndexesCheckedBeforeSave = true;
@@ -84,6 +114,10 @@ public class DaoConfig {
 	 * update setter javadoc if default changes
 	 */
 	private Integer myFetchSizeDefaultMaximum = null;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private int myForcedIdCacheSize = 10000;
 	private int myHardTagListLimit = 1000;
 	private int myIncludeLimit = 2000;
 	/**
@@ -91,10 +125,18 @@ public class DaoConfig {
 	 */
 	private boolean myIndexContainedResources = true;
 	private List<IServerInterceptor> myInterceptors;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private int myMaximumConcurrentSearches = 20;
 	/**
 	 * update setter javadoc if default changes
 	 */
 	private int myMaximumExpansionSize = 5000;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private int myMaximumQueuedSearches = 1000;
 	private Integer myMaximumSearchResultCountInTransaction = DEFAULT_MAXIMUM_SEARCH_RESULT_COUNT_IN_TRANSACTION;
 	private ResourceEncodingEnum myResourceEncoding = ResourceEncodingEnum.JSONC;
 	/**
@@ -103,7 +145,31 @@ public class DaoConfig {
 	private Integer myResourceMetaCountHardLimit = 1000;
 	private Long myReuseCachedSearchResultsForMillis = DEFAULT_REUSE_CACHED_SEARCH_RESULTS_FOR_MILLIS;
 	private boolean mySchedulingDisabled;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private SearchQueueFullPolicyEnum mySearchQueueFullPolicy = SearchQueueFullPolicyEnum.REJECT;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private long mySearchQueueMaxWaitMillis = DateUtils.MILLIS_PER_MINUTE;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private int mySearchResultBlockSize = 2000;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private SearchResultStorageEnum mySearchResultStorage = SearchResultStorageEnum.ROW_PER_RESULT;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private int mySearchRetryAfterSeconds = 10;
 	private boolean mySuppressUpdatesWithNoChange = true;
+	/**
+	 * update setter javadoc if default changes
+	 */
+	private int myTagDefinitionCacheSize = 10000;
 	private Set<String> myTreatBaseUrlsAsLocal = new HashSet<String>();
 	private Set<String> myTreatReferencesAsLogical = new HashSet<String>(DEFAULT_LOGICAL_BASE_URLS);
 	private boolean myAutoCreatePlaceholderReferenceTargets;
@@ -133,6 +199,78 @@ public class DaoConfig {
 		myTreatReferencesAsLogical.add(theTreatReferencesAsLogical);
 	}
 
+	/**
+	 * The local directory into which bulk export (<code>$export</code>) jobs write their
+	 * NDJSON files. Each job writes into its own subdirectory. The default is a
+	 * directory called <code>hapi-fhir-bulk-export</code> within the system
+	 * temporary directory.
+	 *
+	 * @since 3.2.0
+	 */
+	public String getBulkExportDirectory() {
+		return myBulkExportDirectory;
+	}
+
+	/**
+	 * The local directory into which bulk export (<code>$export</code>) jobs write their
+	 * NDJSON files. Each job writes into its own subdirectory. The default is a
+	 * directory called <code>hapi-fhir-bulk-export</code> within the system
+	 * temporary directory.
+	 *
+	 * @since 3.2.0
+	 */
+	public void setBulkExportDirectory(String theBulkExportDirectory) {
+		Validate.notBlank(theBulkExportDirectory, "theBulkExportDirectory must not be blank");
+		myBulkExportDirectory = theBulkExportDirectory;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>) the NDJSON files
+	 * written by bulk export (<code>$export</code>) jobs are GZip compressed, and
+	 * are named with a <code>.ndjson.gz</code> extension.
+	 *
+	 * @since 3.2.0
+	 */
+	public boolean isBulkExportGzipFiles() {
+		return myBulkExportGzipFiles;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>) the NDJSON files
+	 * written by bulk export (<code>$export</code>) jobs are GZip compressed, and
+	 * are named with a <code>.ndjson.gz</code> extension.
+	 *
+	 * @since 3.2.0
+	 */
+	public void setBulkExportGzipFiles(boolean theBulkExportGzipFiles) {
+		myBulkExportGzipFiles = theBulkExportGzipFiles;
+	}
+
+	/**
+	 * The number of resources which will be stored in each database transaction
+	 * by bulk import (<code>$import</code>). If any resource in a batch can not be
+	 * stored, the batch is retried one resource at a time so that the failure can
+	 * be reported against the line it came from. The default is 1000.
+	 *
+	 * @since 3.2.0
+	 */
+	public int getBulkImportBatchSize() {
+		return myBulkImportBatchSize;
+	}
+
+	/**
+	 * The number of resources which will be stored in each database transaction
+	 * by bulk import (<code>$import</code>). If any resource in a batch can not be
+	 * stored, the batch is retried one resource at a time so that the failure can
+	 * be reported against the line it came from. The default is 1000.
+	 *
+	 * @since 3.2.0
+	 */
+	public void setBulkImportBatchSize(int theBulkImportBatchSize) {
+		Validate.isTrue(theBulkImportBatchSize > 0, "theBulkImportBatchSize must be greater than 0");
+		myBulkImportBatchSize = theBulkImportBatchSize;
+	}
+
 	/**
 	 * Specifies the highest number that a client is permitted to use in a
 	 * <code>Cache-Control: nostore, max-results=NNN</code>
@@ -329,6 +467,37 @@ public class DaoConfig {
 		myFetchSizeDefaultMaximum = theFetchSizeDefaultMaximum;
 	}
 
+	/**
+	 * The maximum number of client assigned (forced) resource IDs whose
+	 * resource PIDs are held in memory, so that resolving a client assigned ID
+	 * (e.g. on a read, or in a reference) does not need a database query
+	 * each time. The same number of reverse mappings (PID to forced ID) are
+	 * also held. Because a forced ID can never be reassigned to a different
+	 * resource, these entries never become stale. The default is 10000, and
+	 * <code>0</code> disables the cache.
+	 *
+	 * @since 3.2.0
+	 */
+	public int getForcedIdCacheSize() {
+		return myForcedIdCacheSize;
+	}
+
+	/**
+	 * The maximum number of client assigned (forced) resource IDs whose
+	 * resource PIDs are held in memory, so that resolving a client assigned ID
+	 * (e.g. on a read, or in a reference) does not need a database query
+	 * each time. The same number of reverse mappings (PID to forced ID) are
+	 * also held. Because a forced ID can never be reassigned to a different
+	 * resource, these entries never become stale. The default is 10000, and
+	 * <code>0</code> disables the cache.
+	 *
+	 * @since 3.2.0
+	 */
+	public void setForcedIdCacheSize(int theForcedIdCacheSize) {
+		Validate.isTrue(theForcedIdCacheSize >= 0, "theForcedIdCacheSize must not be negative");
+		myForcedIdCacheSize = theForcedIdCacheSize;
+	}
+
 	/**
 	 * Gets the maximum number of results to return in a GetTags query (DSTU1 only)
 	 */
@@ -412,6 +581,33 @@ public class DaoConfig {
 		myInterceptors = theInterceptors;
 	}
 
+	/**
+	 * The maximum number of searches which may execute against the database at the
+	 * same time. Synchronous searches run in the requesting thread but must wait for
+	 * a free slot, and asynchronous (paged) searches are queued until one is available.
+	 * The default is 20.
+	 *
+	 * @see #setSearchQueueFullPolicy(SearchQueueFullPolicyEnum)
+	 * @since 3.2.0
+	 */
+	public int getMaximumConcurrentSearches() {
+		return myMaximumConcurrentSearches;
+	}
+
+	/**
+	 * The maximum number of searches which may execute against the database at the
+	 * same time. Synchronous searches run in the requesting thread but must wait for
+	 * a free slot, and asynchronous (paged) searches are queued until one is available.
+	 * The default is 20.
+	 *
+	 * @see #setSearchQueueFullPolicy(SearchQueueFullPolicyEnum)
+	 * @since 3.2.0
+	 */
+	public void setMaximumConcurrentSearches(int theMaximumConcurrentSearches) {
+		Validate.isTrue(theMaximumConcurrentSearches > 0, "theMaximumConcurrentSearches must be greater than 0");
+		myMaximumConcurrentSearches = theMaximumConcurrentSearches;
+	}
+
 	/**
 	 * See {@link #setMaximumExpansionSize(int)}
 	 */
@@ -428,6 +624,33 @@ public class DaoConfig {
 		myMaximumExpansionSize = theMaximumExpansionSize;
 	}
 
+	/**
+	 * The maximum number of searches which may be waiting for one of the
+	 * {@link #setMaximumConcurrentSearches(int) concurrent search slots} to become
+	 * free. What happens when a search arrives and the queue is full is controlled by
+	 * the {@link #setSearchQueueFullPolicy(SearchQueueFullPolicyEnum) queue full policy}.
+	 * The default is 1000.
+	 *
+	 * @since 3.2.0
+	 */
+	public int getMaximumQueuedSearches() {
+		return myMaximumQueuedSearches;
+	}
+
+	/**
+	 * The maximum number of searches which may be waiting for one of the
+	 * {@link #setMaximumConcurrentSearches(int) concurrent search slots} to become
+	 * free. What happens when a search arrives and the queue is full is controlled by
+	 * the {@link #setSearchQueueFullPolicy(SearchQueueFullPolicyEnum) queue full policy}.
+	 * The default is 1000.
+	 *
+	 * @since 3.2.0
+	 */
+	public void setMaximumQueuedSearches(int theMaximumQueuedSearches) {
+		Validate.isTrue(theMaximumQueuedSearches >= 0, "theMaximumQueuedSearches must not be negative");
+		myMaximumQueuedSearches = theMaximumQueuedSearches;
+	}
+
 	/**
 	 * Provides the maximum number of results which may be returned by a search (HTTP GET) which
 	 * is executed as a sub-operation within within a FHIR <code>transaction</code> or
@@ -458,6 +681,221 @@ public class DaoConfig {
 		myMaximumSearchResultCountInTransaction = theMaximumSearchResultCountInTransaction;
 	}
 
+	/**
+	 * The number of resources which will be reindexed in each database transaction
+	 * by the reindexing worker threads. The default is 500.
+	 *
+	 * @see #setReindexThreadCount(int)
+	 * @since 3.2.0
+	 */
+	public int getReindexBatchSize() {
+		return myReindexBatchSize;
+	}
+
+	/**
+	 * The number of resources which will be reindexed in each database transaction
+	 * by the reindexing worker threads. The default is 500.
+	 *
+	 * @see #setReindexThreadCount(int)
+	 * @since 3.2.0
+	 */
+	public void setReindexBatchSize(int theReindexBatchSize) {
+		Validate.isTrue(theReindexBatchSize > 0, "theReindexBatchSize must be greater than 0");
+		myReindexBatchSize = theReindexBatchSize;
+	}
+
+	/**
+	 * The number of worker threads which will be used to reindex resources
+	 * (e.g. after a search parameter has been added or changed, or after
+	 * the <code>$mark-all-resources-for-reindexing</code> operation has
+	 * been invoked). The default is 4.
+	 *
+	 * @see #setReindexBatchSize(int)
+	 * @since 3.2.0
+	 */
+	public int getReindexThreadCount() {
+		return myReindexThreadCount;
+	}
+
+	/**
+	 * The number of worker threads which will be used to reindex resources
+	 * (e.g. after a search parameter has been added or changed, or after
+	 * the <code>$mark-all-resources-for-reindexing</code> operation has
+	 * been invoked). The default is 4.
+	 *
+	 * @see #setReindexBatchSize(int)
+	 * @since 3.2.0
+	 */
+	public void setReindexThreadCount(int theReindexThreadCount) {
+		Validate.isTrue(theReindexThreadCount > 0, "theReindexThreadCount must be greater than 0");
+		myReindexThreadCount = theReindexThreadCount;
+	}
+
+	/**
+	 * If set to a positive value, the decoded text of recently loaded resource
+	 * versions will be held in memory (up to approximately this many bytes)
+	 * so that resources which are read frequently do not need to be decompressed
+	 * each time they are loaded from the database. The default is <code>0</code>,
+	 * meaning that this cache is disabled.
+	 *
+	 * @since 3.2.0
+	 */
+	public long getResourceTextCacheMaxBytes() {
+		return myResourceTextCacheMaxBytes;
+	}
+
+	/**
+	 * If set to a positive value, the decoded text of recently loaded resource
+	 * versions will be held in memory (up to approximately this many bytes)
+	 * so that resources which are read frequently do not need to be decompressed
+	 * each time they are loaded from the database. The default is <code>0</code>,
+	 * meaning that this cache is disabled.
+	 *
+	 * @since 3.2.0
+	 */
+	public void setResourceTextCacheMaxBytes(long theResourceTextCacheMaxBytes) {
+		Validate.isTrue(theResourceTextCacheMaxBytes >= 0, "theResourceTextCacheMaxBytes must not be negative");
+		myResourceTextCacheMaxBytes = theResourceTextCacheMaxBytes;
+	}
+
+	/**
+	 * The number of threads which will be used to decompress and parse the
+	 * resources in a page of search results (or a set of included resources).
+	 * The default is <code>1</code>, meaning that resources are parsed one
+	 * after another on the thread which is loading the page.
+	 *
+	 * @since 3.2.0
+	 */
+	public int getResourceLoadingThreadCount() {
+		return myResourceLoadingThreadCount;
+	}
+
+	/**
+	 * The number of threads which will be used to decompress and parse the
+	 * resources in a page of search results (or a set of included resources).
+	 * The default is <code>1</code>, meaning that resources are parsed one
+	 * after another on the thread which is loading the page.
+	 * <p>
+	 * Setting this to a higher value can speed up loading large pages of large
+	 * resources, since parsing usually takes longer than fetching the rows.
+	 * </p>
+	 *
+	 * @since 3.2.0
+	 */
+	public void setResourceLoadingThreadCount(int theResourceLoadingThreadCount) {
+		Validate.isTrue(theResourceLoadingThreadCount > 0, "theResourceLoadingThreadCount must be greater than 0");
+		myResourceLoadingThreadCount = theResourceLoadingThreadCount;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), a search for all
+	 * resources of a given type with no search parameters and
+	 * <code>_summary=count</code> (e.g. <code>GET /Patient?_summary=count</code>)
+	 * will be answered from the in-memory resource counts used by the server's
+	 * CapabilityStatement instead of by running the search.
+	 * <p>
+	 * The in-memory counts are only adjusted for writes made by this server, and are
+	 * reloaded from the database every 10 minutes. This setting should therefore
+	 * only be enabled if a briefly inaccurate total is acceptable, or if only one
+	 * server writes to the database.
+	 * </p>
+	 *
+	 * @since 3.2.0
+	 */
+	public boolean isUseResourceCountsForSummaryCount() {
+		return myUseResourceCountsForSummaryCount;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), a search for all
+	 * resources of a given type with no search parameters and
+	 * <code>_summary=count</code> (e.g. <code>GET /Patient?_summary=count</code>)
+	 * will be answered from the in-memory resource counts used by the server's
+	 * CapabilityStatement instead of by running the search.
+	 * <p>
+	 * The in-memory counts are only adjusted for writes made by this server, and are
+	 * reloaded from the database every 10 minutes. This setting should therefore
+	 * only be enabled if a briefly inaccurate total is acceptable, or if only one
+	 * server writes to the database.
+	 * </p>
+	 *
+	 * @since 3.2.0
+	 */
+	public void setUseResourceCountsForSummaryCount(boolean theUseResourceCountsForSummaryCount) {
+		myUseResourceCountsForSummaryCount = theUseResourceCountsForSummaryCount;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), searches which are
+	 * sorted only by <code>_lastUpdated</code> (e.g. <code>GET /Patient?_sort=-_lastUpdated</code>)
+	 * are paged using the last returned <code>_lastUpdated</code> value and resource ID
+	 * instead of by collecting every matching resource ID into the search result tables.
+	 * Each page is then fetched using its own small query, which is much cheaper
+	 * for large result sets where clients typically only read the first few pages.
+	 * <p>
+	 * Searches paged this way do not report a total, and are not guaranteed to
+	 * return a stable snapshot if resources are updated while the client is paging.
+	 * </p>
+	 *
+	 * @since 3.2.0
+	 */
+	public boolean isKeysetPagingEnabled() {
+		return myKeysetPagingEnabled;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>), searches which are
+	 * sorted only by <code>_lastUpdated</code> (e.g. <code>GET /Patient?_sort=-_lastUpdated</code>)
+	 * are paged using the last returned <code>_lastUpdated</code> value and resource ID
+	 * instead of by collecting every matching resource ID into the search result tables.
+	 * Each page is then fetched using its own small query, which is much cheaper
+	 * for large result sets where clients typically only read the first few pages.
+	 * <p>
+	 * Searches paged this way do not report a total, and are not guaranteed to
+	 * return a stable snapshot if resources are updated while the client is paging.
+	 * </p>
+	 *
+	 * @since 3.2.0
+	 */
+	public void setKeysetPagingEnabled(boolean theKeysetPagingEnabled) {
+		myKeysetPagingEnabled = theKeysetPagingEnabled;
+	}
+
+	/**
+	 * Searches using <code>_summary=count</code> (e.g. <code>GET /Patient?family=smith&amp;_summary=count</code>)
+	 * are answered using a single counting query instead of by running the search and
+	 * storing its results. If this setting is set to a non-null value (default is <code>null</code>),
+	 * counting stops once this many matches have been found and the total is reported
+	 * as this value.
+	 * <p>
+	 * This gives an estimated (lower bound) total for very large result sets, which
+	 * can be considerably cheaper than counting every match.
+	 * </p>
+	 *
+	 * @since 3.2.0
+	 */
+	public Integer getSummaryCountUpTo() {
+		return mySummaryCountUpTo;
+	}
+
+	/**
+	 * Searches using <code>_summary=count</code> (e.g. <code>GET /Patient?family=smith&amp;_summary=count</code>)
+	 * are answered using a single counting query instead of by running the search and
+	 * storing its results. If this setting is set to a non-null value (default is <code>null</code>),
+	 * counting stops once this many matches have been found and the total is reported
+	 * as this value.
+	 * <p>
+	 * This gives an estimated (lower bound) total for very large result sets, which
+	 * can be considerably cheaper than counting every match.
+	 * </p>
+	 *
+	 * @since 3.2.0
+	 */
+	public void setSummaryCountUpTo(Integer theSummaryCountUpTo) {
+		Validate.isTrue(theSummaryCountUpTo == null || theSummaryCountUpTo > 0, "theSummaryCountUpTo must be null or greater than 0");
+		mySummaryCountUpTo = theSummaryCountUpTo;
+	}
+
 	public ResourceEncodingEnum getResourceEncoding() {
 		return myResourceEncoding;
 	}
@@ -536,6 +974,160 @@ public class DaoConfig {
 		myReuseCachedSearchResultsForMillis = theReuseCachedSearchResultsForMillis;
 	}
 
+	/**
+	 * Controls what happens when a search arrives and the
+	 * {@link #setMaximumQueuedSearches(int) search queue} is full, or a synchronous
+	 * search has waited longer than {@link #setSearchQueueMaxWaitMillis(long)} for a
+	 * slot. The default is {@link SearchQueueFullPolicyEnum#REJECT}.
+	 *
+	 * @since 3.2.0
+	 */
+	public SearchQueueFullPolicyEnum getSearchQueueFullPolicy() {
+		return mySearchQueueFullPolicy;
+	}
+
+	/**
+	 * Controls what happens when a search arrives and the
+	 * {@link #setMaximumQueuedSearches(int) search queue} is full, or a synchronous
+	 * search has waited longer than {@link #setSearchQueueMaxWaitMillis(long)} for a
+	 * slot. The default is {@link SearchQueueFullPolicyEnum#REJECT}.
+	 *
+	 * @since 3.2.0
+	 */
+	public void setSearchQueueFullPolicy(SearchQueueFullPolicyEnum theSearchQueueFullPolicy) {
+		Validate.notNull(theSearchQueueFullPolicy, "theSearchQueueFullPolicy must not be null");
+		mySearchQueueFullPolicy = theSearchQueueFullPolicy;
+	}
+
+	/**
+	 * The longest time that a synchronous search will wait for a
+	 * {@link #setMaximumConcurrentSearches(int) search slot} before it is rejected,
+	 * when the {@link #setSearchQueueFullPolicy(SearchQueueFullPolicyEnum) queue full policy}
+	 * is {@link SearchQueueFullPolicyEnum#REJECT}. The default is one minute.
+	 *
+	 * @since 3.2.0
+	 */
+	public long getSearchQueueMaxWaitMillis() {
+		return mySearchQueueMaxWaitMillis;
+	}
+
+	/**
+	 * The longest time that a synchronous search will wait for a
+	 * {@link #setMaximumConcurrentSearches(int) search slot} before it is rejected,
+	 * when the {@link #setSearchQueueFullPolicy(SearchQueueFullPolicyEnum) queue full policy}
+	 * is {@link SearchQueueFullPolicyEnum#REJECT}. The default is one minute.
+	 *
+	 * @since 3.2.0
+	 */
+	public void setSearchQueueMaxWaitMillis(long theSearchQueueMaxWaitMillis) {
+		Validate.isTrue(theSearchQueueMaxWaitMillis >= 0, "theSearchQueueMaxWaitMillis must not be negative");
+		mySearchQueueMaxWaitMillis = theSearchQueueMaxWaitMillis;
+	}
+
+	/**
+	 * When {@link #setSearchResultStorage(SearchResultStorageEnum) search result storage}
+	 * is set to {@link SearchResultStorageEnum#COMPRESSED_BLOCKS}, this is the maximum
+	 * number of search results which will be stored in each block. The default
+	 * is 2000.
+	 */
+	public int getSearchResultBlockSize() {
+		return mySearchResultBlockSize;
+	}
+
+	/**
+	 * When {@link #setSearchResultStorage(SearchResultStorageEnum) search result storage}
+	 * is set to {@link SearchResultStorageEnum#COMPRESSED_BLOCKS}, this is the maximum
+	 * number of search results which will be stored in each block. The default
+	 * is 2000.
+	 */
+	public void setSearchResultBlockSize(int theSearchResultBlockSize) {
+		Validate.isTrue(theSearchResultBlockSize > 0, "theSearchResultBlockSize must be greater than 0");
+		mySearchResultBlockSize = theSearchResultBlockSize;
+	}
+
+	/**
+	 * Specifies how the results of searches are persisted in the database
+	 * so that they can be paged through by clients. The default is
+	 * {@link SearchResultStorageEnum#ROW_PER_RESULT}.
+	 * <p>
+	 * Changing this setting only affects searches which are started after the
+	 * change. Searches which have already been stored will continue to be read
+	 * using the mode they were stored with.
+	 * </p>
+	 *
+	 * @see SearchResultStorageEnum
+	 */
+	public SearchResultStorageEnum getSearchResultStorage() {
+		return mySearchResultStorage;
+	}
+
+	/**
+	 * Specifies how the results of searches are persisted in the database
+	 * so that they can be paged through by clients. The default is
+	 * {@link SearchResultStorageEnum#ROW_PER_RESULT}.
+	 * <p>
+	 * Changing this setting only affects searches which are started after the
+	 * change. Searches which have already been stored will continue to be read
+	 * using the mode they were stored with.
+	 * </p>
+	 *
+	 * @see SearchResultStorageEnum
+	 */
+	public void setSearchResultStorage(SearchResultStorageEnum theSearchResultStorage) {
+		Validate.notNull(theSearchResultStorage, "theSearchResultStorage must not be null");
+		mySearchResultStorage = theSearchResultStorage;
+	}
+
+	/**
+	 * The number of seconds sent to clients in the <code>Retry-After</code> header
+	 * when a search is rejected because the server is too busy. The default is 10.
+	 *
+	 * @see #setSearchQueueFullPolicy(SearchQueueFullPolicyEnum)
+	 * @since 3.2.0
+	 */
+	public int getSearchRetryAfterSeconds() {
+		return mySearchRetryAfterSeconds;
+	}
+
+	/**
+	 * The number of seconds sent to clients in the <code>Retry-After</code> header
+	 * when a search is rejected because the server is too busy. The default is 10.
+	 *
+	 * @see #setSearchQueueFullPolicy(SearchQueueFullPolicyEnum)
+	 * @since 3.2.0
+	 */
+	public void setSearchRetryAfterSeconds(int theSearchRetryAfterSeconds) {
+		Validate.isTrue(theSearchRetryAfterSeconds >= 0, "theSearchRetryAfterSeconds must not be negative");
+		mySearchRetryAfterSeconds = theSearchRetryAfterSeconds;
+	}
+
+	/**
+	 * The maximum number of tag definitions (tags, security labels and profiles)
+	 * which are held in memory, so that storing a resource which uses a tag that
+	 * has been seen before does not need a database query to find it. Tag
+	 * definitions are never modified once created, so these entries never become
+	 * stale. The default is 10000, and <code>0</code> disables the cache.
+	 *
+	 * @since 3.2.0
+	 */
+	public int getTagDefinitionCacheSize() {
+		return myTagDefinitionCacheSize;
+	}
+
+	/**
+	 * The maximum number of tag definitions (tags, security labels and profiles)
+	 * which are held in memory, so that storing a resource which uses a tag that
+	 * has been seen before does not need a database query to find it. Tag
+	 * definitions are never modified once created, so these entries never become
+	 * stale. The default is 10000, and <code>0</code> disables the cache.
+	 *
+	 * @since 3.2.0
+	 */
+	public void setTagDefinitionCacheSize(int theTagDefinitionCacheSize) {
+		Validate.isTrue(theTagDefinitionCacheSize >= 0, "theTagDefinitionCacheSize must not be negative");
+		myTagDefinitionCacheSize = theTagDefinitionCacheSize;
+	}
+
 	/**
 	 * This setting may be used to advise the server that any references found in
 	 * resources that have any of the base URLs given here will be replaced with
@@ -802,6 +1394,44 @@ public class DaoConfig {
 		myDefaultSearchParamsCanBeOverridden = theDefaultSearchParamsCanBeOverridden;
 	}
 
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>) the search builder will
+	 * not use the precomputed hash columns on the token, string and URI index tables
+	 * when searching, and will instead use the (much wider) resource type, parameter name
+	 * and value columns.
+	 * <p>
+	 * Hash columns were introduced in HAPI FHIR 3.2.0. Databases created with an earlier
+	 * version of HAPI FHIR will not have these columns populated for existing resources, so
+	 * this setting should be enabled after upgrading until all resources have been reindexed
+	 * (e.g. using the <code>$mark-all-resources-for-reindexing</code> operation) at which
+	 * point it can be disabled again.
+	 * </p>
+	 *
+	 * @since 3.2.0
+	 */
+	public boolean isDisableHashBasedSearches() {
+		return myDisableHashBasedSearches;
+	}
+
+	/**
+	 * If set to <code>true</code> (default is <code>false</code>) the search builder will
+	 * not use the precomputed hash columns on the token, string and URI index tables
+	 * when searching, and will instead use the (much wider) resource type, parameter name
+	 * and value columns.
+	 * <p>
+	 * Hash columns were introduced in HAPI FHIR 3.2.0. Databases created with an earlier
+	 * version of HAPI FHIR will not have these columns populated for existing resources, so
+	 * this setting should be enabled after upgrading until all resources have been reindexed
+	 * (e.g. using the <code>$mark-all-resources-for-reindexing</code> operation) at which
+	 * point it can be disabled again.
+	 * </p>
+	 *
+	 * @since 3.2.0
+	 */
+	public void setDisableHashBasedSearches(boolean theDisableHashBasedSearches) {
+		myDisableHashBasedSearches = theDisableHashBasedSearches;
+	}
+
 	/**
 	 * If set to <code>false</code> (default is <code>true</code>) resources will be permitted to be
 	 * deleted even if other resources currently contain references to them.
@@ -1062,4 +1692,39 @@ public class DaoConfig {
 		DISABLED
 	}
 
+	public enum SearchQueueFullPolicyEnum {
+
+		/**
+		 * The search fails with an HTTP 503 (Service Unavailable) response
+		 * including a <code>Retry-After</code> header
+		 */
+		REJECT,
+
+		/**
+		 * The requesting thread waits until there is room in the queue (or for
+		 * synchronous searches, until a search slot is free), however long that takes
+		 */
+		WAIT
+
+	}
+
+	public enum SearchResultStorageEnum {
+
+		/**
+		 * Each search result is stored as an individual row in the
+		 * <code>HFJ_SEARCH_RESULT</code> table
+		 */
+		ROW_PER_RESULT,
+
+		/**
+		 * Search results are stored as compressed blocks of resource
+		 * PIDs in the <code>HFJ_SEARCH_RESULT_BLOCK</code> table, with
+		 * each row holding up to {@link DaoConfig#getSearchResultBlockSize()}
+		 * results. This greatly reduces the number of rows which need to be
+		 * written (and later deleted) for searches with many results.
+		 */
+		COMPRESSED_BLOCKS
+
+	}
+
 }
@@ -20,42 +20,23 @@ package ca.uhn.fhir.jpa.dao;
  * #L%
  */
 
-import org.apache.commons.lang3.time.DateUtils;
+import ca.uhn.fhir.jpa.search.reindex.IResourceReindexingSvc;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
 
-import ca.uhn.fhir.model.dstu2.composite.MetaDt;
-import ca.uhn.fhir.model.dstu2.resource.Bundle;
 import ca.uhn.fhir.model.dstu2.resource.SearchParameter;
 
 public class FhirResourceDaoSearchParameterDstu2 extends FhirResourceDaoDstu2<SearchParameter>implements IFhirResourceDaoSearchParameter<SearchParameter> {
 
 	@Autowired
-	private IFhirSystemDao<Bundle, MetaDt> mySystemDao;
-	
+	private IResourceReindexingSvc myReindexingSvc;
+
 	/**
-	 * This method is called once per minute to perform any required re-indexing. During most passes this will
-	 * just check and find that there are no resources requiring re-indexing. In that case the method just returns
-	 * immediately. If the search finds that some resources require reindexing, the system will do a bunch of
-	 * reindexing and then return.
+	 * Reindexing is scheduled by the {@link IResourceReindexingSvc}, so this
+	 * just runs a pass immediately.
 	 */
 	@Override
-	@Scheduled(fixedDelay=DateUtils.MILLIS_PER_MINUTE)
 	public void performReindexingPass() {
-		if (getConfig().isSchedulingDisabled()) {
-			return;
-		}
-
-		Integer count = mySystemDao.performReindexingPass(100);
-		for (int i = 0; i < 50 && count != null && count != 0; i++) {
-			count = mySystemDao.performReindexingPass(100);
-			try {
-				Thread.sleep(DateUtils.MILLIS_PER_SECOND);
-			} catch (InterruptedException e) {
-				break;
-			}
-		}
-		
+		myReindexingSvc.runReindexingPass(null);
 	}
-	
+
 }
@@ -26,6 +26,7 @@ import java.util.*;
 import javax.persistence.TypedQuery;
 
 import org.apache.http.NameValuePair;
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -75,6 +76,18 @@ public class FhirSystemDaoDstu2 extends BaseHapiFhirSystemDao<Bundle, MetaDt> {
 
 	private Bundle batch(final RequestDetails theRequestDetails, Bundle theRequest) {
 		ourLog.info("Beginning batch with {} resources", theRequest.getEntry().size());
+		return batch(theRequestDetails, theRequest.getEntry().iterator(), false);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Transactional(propagation = Propagation.NEVER)
+	@Override
+	public Bundle batch(RequestDetails theRequestDetails, Iterator<? extends IBase> theEntries) {
+		ourLog.info("Beginning streamed batch");
+		return batch(theRequestDetails, (Iterator<Entry>) theEntries, true);
+	}
+
+	private Bundle batch(final RequestDetails theRequestDetails, Iterator<Entry> theEntries, boolean theNotifyInterceptorsForEachEntry) {
 		long start = System.currentTimeMillis();
 
 		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
@@ -87,7 +100,8 @@ public class FhirSystemDaoDstu2 extends BaseHapiFhirSystemDao<Bundle, MetaDt> {
 		 * For batch, we handle each entry as a mini-transaction in its own database transaction so that if one fails, it doesn't prevent others
 		 */
 
-		for (final Entry nextRequestEntry : theRequest.getEntry()) {
+		while (theEntries.hasNext()) {
+			final Entry nextRequestEntry = theEntries.next();
 
 			TransactionCallback<Bundle> callback = new TransactionCallback<Bundle>() {
 				@Override
@@ -103,6 +117,14 @@ public class FhirSystemDaoDstu2 extends BaseHapiFhirSystemDao<Bundle, MetaDt> {
 
 			BaseServerResponseException caughtEx;
 			try {
+				if (theNotifyInterceptorsForEachEntry && theRequestDetails != null) {
+					Bundle entryRequestBundle = new Bundle();
+					entryRequestBundle.setType(BundleTypeEnum.BATCH);
+					entryRequestBundle.addEntry(nextRequestEntry);
+					ActionRequestDetails requestDetails = new ActionRequestDetails(theRequestDetails, entryRequestBundle, "Bundle", null);
+					notifyInterceptors(RestOperationTypeEnum.TRANSACTION, requestDetails);
+				}
+
 				Bundle nextResponseBundle = txTemplate.execute(callback);
 				caughtEx = null;
 
@@ -136,7 +158,7 @@ public class FhirSystemDaoDstu2 extends BaseHapiFhirSystemDao<Bundle, MetaDt> {
 		}
 
 		long delay = System.currentTimeMillis() - start;
-		ourLog.info("Batch completed in {}ms", new Object[] { delay });
+		ourLog.info("Batch of {} entries completed in {}ms", new Object[] { resp.getEntry().size(), delay });
 
 		return resp;
 	}
@@ -445,6 +467,7 @@ public class FhirSystemDaoDstu2 extends BaseHapiFhirSystemDao<Bundle, MetaDt> {
 		 */
 
 		FhirTerser terser = getContext().newTerser();
+		List<IIdType> referencedIds = new ArrayList<IIdType>();
 		for (DaoMethodOutcome nextOutcome : idToPersistedOutcome.values()) {
 			IResource nextResource = (IResource) nextOutcome.getResource();
 			if (nextResource == null) {
@@ -464,6 +487,20 @@ public class FhirSystemDaoDstu2 extends BaseHapiFhirSystemDao<Bundle, MetaDt> {
 				} else {
 					ourLog.debug(" * Reference [{}] does not exist in bundle", nextId);
 				}
+				referencedIds.add(nextRef.getReference());
+			}
+		}
+
+		/*
+		 * Resolve any client assigned IDs in the references all at once
+		 * instead of one at a time as each resource is indexed
+		 */
+		preloadForcedIds(referencedIds);
+
+		for (DaoMethodOutcome nextOutcome : idToPersistedOutcome.values()) {
+			IResource nextResource = (IResource) nextOutcome.getResource();
+			if (nextResource == null) {
+				continue;
 			}
 
 			InstantDt deletedInstantOrNull = ResourceMetadataKeyEnum.DELETED_AT.get(nextResource);
@@ -0,0 +1,251 @@
+package ca.uhn.fhir.jpa.dao;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.lang3.Validate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the mapping between client assigned (forced) resource IDs and resource
+ * PIDs in both directions, so that they do not need to be looked up in the
+ * database every time a client assigned ID is read, searched for or referenced.
+ * <p>
+ * A forced ID is never reassigned to a different resource (deleting a resource
+ * leaves its forced ID in place), so entries never need to be invalidated. In
+ * order to avoid caching the ID of a resource which is created in a transaction
+ * that later rolls back, mappings which are found inside a transaction are only
+ * visible to that transaction until it commits.
+ * </p>
+ * <p>
+ * The size of the cache is controlled by {@link DaoConfig#setForcedIdCacheSize(int)}.
+ * </p>
+ */
+public class ForcedIdCache {
+
+	/**
+	 * Returned by {@link #getForcedId(Long)} for resources which are known
+	 * not to have a forced ID
+	 */
+	public static final String NO_FORCED_ID = "";
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ForcedIdCache.class);
+
+	/**
+	 * Replaced (never modified) whenever the configured size changes, so that
+	 * lookups only need a volatile read rather than a lock
+	 */
+	private volatile SizedCaches myCaches = new SizedCaches(0);
+	@Autowired
+	private DaoConfig myDaoConfig;
+
+	/**
+	 * Returns the current caches, or <code>null</code> if caching is disabled
+	 */
+	private SizedCaches getCaches() {
+		int cacheSize = myDaoConfig.getForcedIdCacheSize();
+		SizedCaches caches = myCaches;
+		if (caches.myCacheSize != cacheSize) {
+			caches = resize(cacheSize);
+		}
+		return caches.myForcedIdToPid != null ? caches : null;
+	}
+
+	private synchronized SizedCaches resize(int theCacheSize) {
+		if (myCaches.myCacheSize != theCacheSize) {
+			ourLog.info("Resizing forced ID cache from {} to {} entries", myCaches.myCacheSize, theCacheSize);
+			myCaches = new SizedCaches(theCacheSize);
+		}
+		return myCaches;
+	}
+
+	/**
+	 * Returns the forced ID (in the form <code>ResourceType/id</code>) of the resource
+	 * with the given PID, {@link #NO_FORCED_ID} if the resource is known not to have
+	 * one, or <code>null</code> if it is not in the cache
+	 */
+	public String getForcedId(Long thePid) {
+		Validate.notNull(thePid, "thePid must not be null");
+		SizedCaches caches = getCaches();
+		if (caches == null) {
+			return null;
+		}
+		String retVal = caches.myPidToForcedId.getIfPresent(thePid);
+		if (retVal == null) {
+			Pending pending = getPendingForCurrentTransaction(false);
+			if (pending != null) {
+				retVal = pending.myPidToForcedId.get(thePid);
+			}
+		}
+		return retVal;
+	}
+
+	private Pending getPendingForCurrentTransaction(boolean theCreate) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return null;
+		}
+		Pending retVal = (Pending) TransactionSynchronizationManager.getResource(this);
+		if (retVal == null && theCreate) {
+			retVal = new Pending();
+			TransactionSynchronizationManager.bindResource(this, retVal);
+			TransactionSynchronizationManager.registerSynchronization(retVal);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the PID of the resource with the given type and forced ID, or
+	 * <code>null</code> if it is not in the cache
+	 */
+	public Long getPid(String theResourceType, String theForcedId) {
+		SizedCaches caches = getCaches();
+		if (caches == null) {
+			return null;
+		}
+		String key = toKey(theResourceType, theForcedId);
+		Long retVal = caches.myForcedIdToPid.getIfPresent(key);
+		if (retVal == null) {
+			Pending pending = getPendingForCurrentTransaction(false);
+			if (pending != null) {
+				retVal = pending.myForcedIdToPid.get(key);
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Removes all entries from the cache
+	 */
+	public void invalidateAll() {
+		SizedCaches caches = getCaches();
+		if (caches != null) {
+			caches.myForcedIdToPid.invalidateAll();
+			caches.myPidToForcedId.invalidateAll();
+		}
+	}
+
+	/**
+	 * Records that the resource with the given PID has no forced ID
+	 */
+	public void putNoForcedId(Long thePid) {
+		Validate.notNull(thePid, "thePid must not be null");
+		put(null, thePid, NO_FORCED_ID);
+	}
+
+	/**
+	 * Records the forced ID of the resource with the given PID
+	 */
+	public void putPid(String theResourceType, String theForcedId, Long thePid) {
+		Validate.notNull(thePid, "thePid must not be null");
+		String key = toKey(theResourceType, theForcedId);
+		put(key, thePid, key);
+	}
+
+	private void put(String theKey, Long thePid, String theForcedId) {
+		SizedCaches caches = getCaches();
+		if (caches == null) {
+			return;
+		}
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			if (theKey != null) {
+				caches.myForcedIdToPid.put(theKey, thePid);
+			}
+			caches.myPidToForcedId.put(thePid, theForcedId);
+			return;
+		}
+
+		Pending pending = getPendingForCurrentTransaction(true);
+		if (pending != null) {
+			if (theKey != null) {
+				pending.myForcedIdToPid.put(theKey, thePid);
+			}
+			pending.myPidToForcedId.put(thePid, theForcedId);
+		}
+	}
+
+	void setDaoConfigForUnitTest(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
+	private static String toKey(String theResourceType, String theForcedId) {
+		Validate.notBlank(theResourceType, "theResourceType must not be blank");
+		Validate.notBlank(theForcedId, "theForcedId must not be blank");
+		return theResourceType + '/' + theForcedId;
+	}
+
+	/**
+	 * Mappings found during a transaction, which are added to the
+	 * shared cache only once the transaction commits. This is bound as a
+	 * transaction resource, and is unbound while the transaction is suspended
+	 * so that an inner transaction does not see it.
+	 */
+	private class Pending extends TransactionSynchronizationAdapter {
+		private final Map<String, Long> myForcedIdToPid = new HashMap<String, Long>();
+		private final Map<Long, String> myPidToForcedId = new HashMap<Long, String>();
+
+		@Override
+		public void afterCommit() {
+			SizedCaches caches = getCaches();
+			if (caches != null) {
+				caches.myForcedIdToPid.putAll(myForcedIdToPid);
+				caches.myPidToForcedId.putAll(myPidToForcedId);
+			}
+		}
+
+		@Override
+		public void afterCompletion(int theStatus) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(ForcedIdCache.this);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(ForcedIdCache.this, this);
+		}
+
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResourceIfPossible(ForcedIdCache.this);
+		}
+	}
+
+	private static class SizedCaches {
+		private final int myCacheSize;
+		private final Cache<String, Long> myForcedIdToPid;
+		private final Cache<Long, String> myPidToForcedId;
+
+		SizedCaches(int theCacheSize) {
+			myCacheSize = theCacheSize;
+			if (theCacheSize > 0) {
+				myForcedIdToPid = CacheBuilder.newBuilder().maximumSize(theCacheSize).build();
+				myPidToForcedId = CacheBuilder.newBuilder().maximumSize(theCacheSize).build();
+			} else {
+				myForcedIdToPid = null;
+				myPidToForcedId = null;
+			}
+		}
+	}
+
+}
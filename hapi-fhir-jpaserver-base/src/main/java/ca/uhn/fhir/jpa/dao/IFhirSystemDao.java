@@ -20,11 +20,16 @@ package ca.uhn.fhir.jpa.dao;
  * #L%
  */
 
+import java.io.Reader;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.Map;
 
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.jpa.bulk.BulkImportOutcome;
 import ca.uhn.fhir.model.api.TagList;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
@@ -37,6 +42,38 @@ import ca.uhn.fhir.rest.api.server.RequestDetails;
  */
 public interface IFhirSystemDao<T, MT> extends IDao {
 
+	/**
+	 * Imports resources from NDJSON (one JSON encoded resource per line). The input is read
+	 * as a stream and stored in batches of {@link DaoConfig#getBulkImportBatchSize()} resources,
+	 * one database transaction per batch. Resources with an ID are stored with that ID (as an update),
+	 * and resources without one are created.
+	 * <p>
+	 * References to resources which do not exist yet (e.g. because they appear later in the
+	 * input) do not cause a failure. Instead the resource is marked as requiring reindexing, and
+	 * these references are resolved by a reindexing pass once all lines have been stored, so
+	 * the order of the resources in the input does not matter.
+	 * </p>
+	 *
+	 * @return Returns the outcome, including any lines which could not be imported
+	 */
+	BulkImportOutcome bulkImport(Reader theNdjson, RequestDetails theRequestDetails);
+
+	/**
+	 * Processes a batch whose entries are supplied one at a time by an iterator, such as a
+	 * {@link ca.uhn.fhir.parser.BundleEntryIterator} reading a very large request Bundle
+	 * incrementally, so that the complete request Bundle never needs to be held in memory.
+	 * Each entry is processed in its own database transaction, just as for a Bundle of type
+	 * <code>batch</code> passed to {@link #transaction(RequestDetails, Object)}. Since the
+	 * complete request Bundle is never available, interceptors are notified once for each
+	 * entry with a batch Bundle containing only that entry.
+	 *
+	 * @param theEntries
+	 *           The entries, which must be of the Bundle entry type for the FHIR version of this DAO
+	 *           (e.g. <code>org.hl7.fhir.r4.model.Bundle.BundleEntryComponent</code>)
+	 * @return Returns the batch response Bundle
+	 */
+	T batch(RequestDetails theRequestDetails, Iterator<? extends IBase> theEntries);
+
 	/**
 	 * Use with caution! This deletes everything!!
 	 * 
@@ -45,6 +82,14 @@ public interface IFhirSystemDao<T, MT> extends IDao {
 	 */
 	void deleteAllTagsOnServer(RequestDetails theRequestDetails);
 
+	/**
+	 * Returns the active search parameters for every resource type, keyed by resource type
+	 * and then by parameter name. The returned map must not be modified. It is replaced
+	 * with a new map (rather than modified) whenever the active search parameters change,
+	 * so callers may compare it by identity to detect changes.
+	 */
+	Map<String, Map<String, RuntimeSearchParam>> getActiveSearchParams();
+
 	TagList getAllTags(RequestDetails theRequestDetails);
 
 	public <R extends IBaseResource> IFhirResourceDao<R> getDao(Class<R> theType);
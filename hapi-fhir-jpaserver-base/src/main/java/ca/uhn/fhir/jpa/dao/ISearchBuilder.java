@@ -21,12 +21,14 @@ package ca.uhn.fhir.jpa.dao;
  */
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
 import ca.uhn.fhir.context.FhirContext;
@@ -37,6 +39,25 @@ public interface ISearchBuilder {
 
 	Iterator<Long> createQuery(SearchParameterMap theParams, String theSearchUuid);
 
+	/**
+	 * Counts the resources matching a search without loading them or storing their IDs
+	 *
+	 * @param theMaximum If not <code>null</code>, counting stops once this many matches have been found
+	 * @return The number of matching resources, or <code>theMaximum</code> if there are at least that many
+	 */
+	long createCountQuery(SearchParameterMap theParams, String theSearchUuid, Integer theMaximum);
+
+	/**
+	 * Loads one page of results for a search which is sorted only by <code>_lastUpdated</code>,
+	 * without loading or storing any of the results before it
+	 *
+	 * @param theAfter The PID and last updated time of the last result before the page, or <code>null</code> to start at the first result
+	 * @param theSkip  The number of results after <code>theAfter</code> to skip before the page starts
+	 * @param theCount The maximum number of results to return
+	 * @return The PID and last updated time of each result in the page, in order
+	 */
+	List<Pair<Long, Date>> loadKeysetPage(SearchParameterMap theParams, Pair<Long, Date> theAfter, int theSkip, int theCount);
+
 	void setType(Class<? extends IBaseResource> theResourceType, String theResourceName);
 
 	void loadResourcesByPid(Collection<Long> theIncludePids, List<IBaseResource> theResourceListToPopulate, Set<Long> theRevIncludedPids, boolean theForHistoryOperation, EntityManager theEntityManager,
@@ -0,0 +1,170 @@
+package ca.uhn.fhir.jpa.dao;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.entity.ResourceTable;
+import ca.uhn.fhir.jpa.entity.ResourceTag;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import com.google.common.collect.Lists;
+import org.hibernate.Hibernate;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Converts loaded {@link ResourceTable} entities into resources, decompressing
+ * and parsing them on a bounded pool of worker threads when
+ * {@link DaoConfig#setResourceLoadingThreadCount(int)} is greater than 1.
+ * <p>
+ * Everything which needs the database (i.e. the lazily loaded tags and their
+ * definitions) is fetched on the calling thread before the work is handed off,
+ * since the entity manager may only be used by the thread which owns it. The
+ * worker threads only ever read from fully initialized entities, and
+ * {@link BaseHapiFhirDao#toResource(Class, ca.uhn.fhir.jpa.entity.BaseHasResource, boolean)}
+ * does not touch the tag collection of entities which have no tags.
+ * </p>
+ */
+public class ParallelResourceLoader {
+
+	/**
+	 * Pages smaller than this aren't worth handing off to other threads
+	 */
+	private static final int MINIMUM_RESOURCES_PER_THREAD = 10;
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ParallelResourceLoader.class);
+
+	@Autowired
+	private DaoConfig myDaoConfig;
+	private ThreadPoolExecutor myExecutor;
+
+	@PostConstruct
+	public void start() {
+		int threadCount = getWorkerThreadCount();
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("resource_loader_");
+		myExecutor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+	}
+
+	@PreDestroy
+	public void stop() {
+		myExecutor.shutdownNow();
+	}
+
+	/**
+	 * Returns the resources for the given entities, in the same order as the entities
+	 */
+	public List<IBaseResource> toResources(final IDao theDao, final FhirContext theContext, List<ResourceTable> theEntities, final boolean theForHistoryOperation) {
+		initializeLazyState(theEntities);
+
+		int threadCount = Math.min(myDaoConfig.getResourceLoadingThreadCount(), theEntities.size() / MINIMUM_RESOURCES_PER_THREAD);
+		if (threadCount <= 1) {
+			return doToResources(theDao, theContext, theEntities, theForHistoryOperation);
+		}
+		updateExecutorSize(getWorkerThreadCount());
+
+		int partitionSize = (theEntities.size() + threadCount - 1) / threadCount;
+		List<List<ResourceTable>> partitions = Lists.partition(theEntities, partitionSize);
+
+		/*
+		 * The calling thread parses the first partition itself instead of
+		 * sitting idle while it waits for the others
+		 */
+		List<Future<List<IBaseResource>>> futures = new ArrayList<>();
+		for (final List<ResourceTable> nextPartition : partitions.subList(1, partitions.size())) {
+			futures.add(myExecutor.submit(new Callable<List<IBaseResource>>() {
+				@Override
+				public List<IBaseResource> call() {
+					return doToResources(theDao, theContext, nextPartition, theForHistoryOperation);
+				}
+			}));
+		}
+
+		List<IBaseResource> retVal = new ArrayList<>(theEntities.size());
+		try {
+			retVal.addAll(doToResources(theDao, theContext, partitions.get(0), theForHistoryOperation));
+			for (Future<List<IBaseResource>> next : futures) {
+				retVal.addAll(next.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InternalErrorException("Interrupted while loading resources", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new InternalErrorException(e.getCause());
+		} finally {
+			for (Future<List<IBaseResource>> next : futures) {
+				next.cancel(true);
+			}
+		}
+
+		ourLog.debug("Loaded {} resources using {} threads", retVal.size(), threadCount);
+		return retVal;
+	}
+
+	/**
+	 * Loads the tags (including the tag definition each one points to) of the
+	 * given entities using the calling thread's session, so that converting the
+	 * entities never needs to go back to the database
+	 */
+	private static void initializeLazyState(List<ResourceTable> theEntities) {
+		for (ResourceTable next : theEntities) {
+			if (next.isHasTags()) {
+				for (ResourceTag nextTag : next.getTags()) {
+					Hibernate.initialize(nextTag.getTag());
+				}
+			}
+		}
+	}
+
+	/**
+	 * The calling thread does its share of the work, so the pool needs one thread fewer
+	 */
+	private int getWorkerThreadCount() {
+		return Math.max(1, myDaoConfig.getResourceLoadingThreadCount() - 1);
+	}
+
+	private synchronized void updateExecutorSize(int theThreadCount) {
+		if (myExecutor.getCorePoolSize() < theThreadCount) {
+			myExecutor.setMaximumPoolSize(theThreadCount);
+			myExecutor.setCorePoolSize(theThreadCount);
+		} else if (myExecutor.getCorePoolSize() > theThreadCount) {
+			myExecutor.setCorePoolSize(theThreadCount);
+			myExecutor.setMaximumPoolSize(theThreadCount);
+		}
+	}
+
+	private static List<IBaseResource> doToResources(IDao theDao, FhirContext theContext, List<ResourceTable> theEntities, boolean theForHistoryOperation) {
+		List<IBaseResource> retVal = new ArrayList<>(theEntities.size());
+		for (ResourceTable next : theEntities) {
+			Class<? extends IBaseResource> resourceType = theContext.getResourceDefinition(next.getResourceType()).getImplementingClass();
+			retVal.add(theDao.toResource(resourceType, next, theForHistoryOperation));
+		}
+		return retVal;
+	}
+
+}
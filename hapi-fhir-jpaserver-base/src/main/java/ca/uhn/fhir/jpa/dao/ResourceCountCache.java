@@ -0,0 +1,246 @@
+package ca.uhn.fhir.jpa.dao;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
+import org.apache.commons.lang3.time.DateUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the number of (non-deleted) resources of each type, so that the
+ * server's CapabilityStatement and the <code>$get-resource-counts</code>
+ * operation don't need to count every row in HFJ_RESOURCE each time
+ * they are requested.
+ * <p>
+ * The counts are loaded from the database the first time they are needed,
+ * and after that are adjusted as resources are created, deleted and
+ * un-deleted. Each adjustment is applied only once the transaction which
+ * made it has committed. The counts are periodically reloaded from the
+ * database, which corrects any drift caused by writes which committed while
+ * the counts were being loaded, or by other servers writing to the same
+ * database.
+ * </p>
+ */
+public class ResourceCountCache {
+
+	private static final long RECONCILE_INTERVAL = 10 * DateUtils.MILLIS_PER_MINUTE;
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ResourceCountCache.class);
+
+	private volatile ConcurrentHashMap<String, AtomicLong> myCounts;
+	@Autowired
+	private DaoConfig myDaoConfig;
+	@Autowired
+	private IResourceTableDao myResourceTableDao;
+	@Autowired
+	private PlatformTransactionManager myTxManager;
+
+	/**
+	 * Returns the number of non-deleted resources of the given type
+	 */
+	public long getCount(String theResourceType) {
+		AtomicLong retVal = getOrLoadCounts().get(theResourceType);
+		return retVal != null ? Math.max(0, retVal.get()) : 0;
+	}
+
+	/**
+	 * Returns the number of non-deleted resources of each type. Types with no
+	 * resources are not included in the map.
+	 */
+	public Map<String, Long> getCounts() {
+		Map<String, Long> retVal = new HashMap<>();
+		for (Map.Entry<String, AtomicLong> next : getOrLoadCounts().entrySet()) {
+			long count = next.getValue().get();
+			if (count > 0) {
+				retVal.put(next.getKey(), count);
+			}
+		}
+		return retVal;
+	}
+
+	private Map<String, AtomicLong> getOrLoadCounts() {
+		ConcurrentHashMap<String, AtomicLong> retVal = myCounts;
+		if (retVal == null) {
+			synchronized (this) {
+				retVal = myCounts;
+				if (retVal == null) {
+					retVal = loadCounts();
+					myCounts = retVal;
+				}
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Discards the current counts, so that they will be reloaded from the database
+	 * the next time they are needed
+	 */
+	public synchronized void invalidate() {
+		myCounts = null;
+	}
+
+	/**
+	 * Loads the counts using the current transaction if there is one (e.g. when a
+	 * <code>_summary=count</code> search is part of a transaction bundle), rather
+	 * than holding a second connection while the current one is suspended
+	 */
+	private ConcurrentHashMap<String, AtomicLong> loadCounts() {
+		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+		txTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRED);
+		txTemplate.setReadOnly(true);
+		List<Object[]> counts = txTemplate.execute(new TransactionCallback<List<Object[]>>() {
+			@Override
+			public List<Object[]> doInTransaction(TransactionStatus theStatus) {
+				return myResourceTableDao.getResourceCounts();
+			}
+		});
+
+		ConcurrentHashMap<String, AtomicLong> retVal = new ConcurrentHashMap<>();
+		for (Object[] next : counts) {
+			retVal.put((String) next[0], new AtomicLong(((Number) next[1]).longValue()));
+		}
+
+		/*
+		 * The counts include any writes made by the current transaction, which are
+		 * applied again when it commits, so leave them out of the loaded counts
+		 */
+		PendingChanges pending = getPendingForCurrentTransaction(false);
+		if (pending != null) {
+			for (Map.Entry<String, Integer> next : pending.myDeltas.entrySet()) {
+				AtomicLong count = retVal.get(next.getKey());
+				if (count == null) {
+					count = new AtomicLong();
+					retVal.put(next.getKey(), count);
+				}
+				count.addAndGet(-next.getValue());
+			}
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Reloads the counts from the database, if they have been loaded already
+	 */
+	@Scheduled(fixedDelay = RECONCILE_INTERVAL)
+	public void reconcile() {
+		if (myDaoConfig.isSchedulingDisabled() || myCounts == null) {
+			return;
+		}
+		reconcileNow();
+	}
+
+	private synchronized void reconcileNow() {
+		ConcurrentHashMap<String, AtomicLong> counts = loadCounts();
+		ourLog.debug("Reloaded resource counts for {} resource types", counts.size());
+		myCounts = counts;
+	}
+
+	/**
+	 * Records that the number of non-deleted resources of the given type will change
+	 * by the given amount if the current transaction commits
+	 */
+	public void recordChange(String theResourceType, int theDelta) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			applyChange(theResourceType, theDelta);
+			return;
+		}
+
+		PendingChanges pending = getPendingForCurrentTransaction(true);
+		Integer existing = pending.myDeltas.get(theResourceType);
+		pending.myDeltas.put(theResourceType, (existing != null ? existing : 0) + theDelta);
+	}
+
+	private PendingChanges getPendingForCurrentTransaction(boolean theCreate) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return null;
+		}
+		PendingChanges retVal = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+		if (retVal == null && theCreate) {
+			retVal = new PendingChanges();
+			TransactionSynchronizationManager.bindResource(this, retVal);
+			TransactionSynchronizationManager.registerSynchronization(retVal);
+		}
+		return retVal;
+	}
+
+	private void applyChange(String theResourceType, long theDelta) {
+		ConcurrentHashMap<String, AtomicLong> counts = myCounts;
+		if (counts == null || theDelta == 0) {
+			// Not loaded yet, so the change will be picked up when the counts are loaded
+			return;
+		}
+		AtomicLong count = counts.get(theResourceType);
+		if (count == null) {
+			count = new AtomicLong();
+			AtomicLong existing = counts.putIfAbsent(theResourceType, count);
+			if (existing != null) {
+				count = existing;
+			}
+		}
+		count.addAndGet(theDelta);
+	}
+
+	/**
+	 * Count changes made during a transaction, which are applied only once it commits.
+	 * This is bound as a transaction resource, and is unbound while the transaction is
+	 * suspended so that an inner transaction does not see it.
+	 */
+	private class PendingChanges extends TransactionSynchronizationAdapter {
+		private final Map<String, Integer> myDeltas = new HashMap<>();
+
+		@Override
+		public void afterCommit() {
+			for (Map.Entry<String, Integer> next : myDeltas.entrySet()) {
+				applyChange(next.getKey(), next.getValue());
+			}
+		}
+
+		@Override
+		public void afterCompletion(int theStatus) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(ResourceCountCache.this);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(ResourceCountCache.this, this);
+		}
+
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResourceIfPossible(ResourceCountCache.this);
+		}
+	}
+
+}
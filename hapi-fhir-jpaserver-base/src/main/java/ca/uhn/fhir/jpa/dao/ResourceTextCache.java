@@ -0,0 +1,195 @@
+package ca.uhn.fhir.jpa.dao;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.entity.BaseHasResource;
+import ca.uhn.fhir.jpa.entity.ResourceHistoryTable;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import org.apache.commons.lang3.Validate;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Holds the decoded (i.e. decompressed) text of recently loaded resource
+ * versions, keyed by resource PID and version, so that resources which are
+ * read often do not need to be decompressed every time they are loaded.
+ * <p>
+ * The text is cached rather than the parsed resource so that every caller
+ * still receives its own freshly parsed instance which it is free to modify.
+ * </p>
+ * <p>
+ * The cache is disabled unless {@link DaoConfig#setResourceTextCacheMaxBytes(long)}
+ * is set to a positive value.
+ * </p>
+ */
+public class ResourceTextCache {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ResourceTextCache.class);
+
+	/**
+	 * Replaced (never modified) whenever the configured size changes, so that
+	 * lookups only need a volatile read rather than a lock
+	 */
+	private volatile SizedCache mySizedCache = new SizedCache(0, null);
+	@Autowired
+	private DaoConfig myDaoConfig;
+
+	/**
+	 * Returns the cached text for the given resource version, or <code>null</code>
+	 * if it is not in the cache (or the cache is disabled)
+	 */
+	public String get(BaseHasResource theEntity) {
+		Cache<Key, String> cache = getCache();
+		if (cache == null || theEntity.getId() == null) {
+			return null;
+		}
+		return cache.getIfPresent(toKey(theEntity));
+	}
+
+	private Cache<Key, String> getCache() {
+		long maxBytes = myDaoConfig.getResourceTextCacheMaxBytes();
+		SizedCache sizedCache = mySizedCache;
+		if (sizedCache.myMaxBytes != maxBytes) {
+			sizedCache = resize(maxBytes);
+		}
+		return sizedCache.myCache;
+	}
+
+	private synchronized SizedCache resize(long theMaxBytes) {
+		if (mySizedCache.myMaxBytes != theMaxBytes) {
+			ourLog.info("Resizing resource text cache from {} to {} bytes", mySizedCache.myMaxBytes, theMaxBytes);
+			Cache<Key, String> cache = null;
+			if (theMaxBytes > 0) {
+				cache = CacheBuilder
+					.newBuilder()
+					.maximumWeight(theMaxBytes)
+					.weigher(new TextWeigher())
+					.recordStats()
+					.build();
+			}
+			mySizedCache = new SizedCache(theMaxBytes, cache);
+		}
+		return mySizedCache;
+	}
+
+	/**
+	 * Returns the hit/miss statistics for the cache. If the cache has been
+	 * disabled or resized, statistics are reset.
+	 */
+	public CacheStats getStatistics() {
+		Cache<Key, String> cache = getCache();
+		if (cache == null) {
+			return new CacheStats(0, 0, 0, 0, 0, 0);
+		}
+		return cache.stats();
+	}
+
+	/**
+	 * Removes the given resource version from the cache. This should be called whenever the
+	 * stored text for a version may change (e.g. the resource is updated or deleted).
+	 */
+	public void invalidate(BaseHasResource theEntity) {
+		Cache<Key, String> cache = getCache();
+		if (cache != null && theEntity.getId() != null) {
+			cache.invalidate(toKey(theEntity));
+		}
+	}
+
+	/**
+	 * Removes all entries from the cache
+	 */
+	public void invalidateAll() {
+		Cache<Key, String> cache = getCache();
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	public void put(BaseHasResource theEntity, String theResourceText) {
+		Validate.notNull(theResourceText, "theResourceText must not be null");
+		Cache<Key, String> cache = getCache();
+		if (cache != null && theEntity.getId() != null) {
+			cache.put(toKey(theEntity), theResourceText);
+		}
+	}
+
+	void setDaoConfigForUnitTest(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
+	private static Key toKey(BaseHasResource theEntity) {
+		Long resourcePid;
+		if (theEntity instanceof ResourceHistoryTable) {
+			resourcePid = ((ResourceHistoryTable) theEntity).getResourceId();
+		} else {
+			resourcePid = theEntity.getId();
+		}
+		return new Key(resourcePid, theEntity.getVersion());
+	}
+
+	private static class Key {
+		private final long myResourcePid;
+		private final long myVersion;
+
+		Key(long theResourcePid, long theVersion) {
+			myResourcePid = theResourcePid;
+			myVersion = theVersion;
+		}
+
+		@Override
+		public boolean equals(Object theO) {
+			if (!(theO instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) theO;
+			return myResourcePid == other.myResourcePid && myVersion == other.myVersion;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (myResourcePid ^ (myResourcePid >>> 32)) * 31 + (int) myVersion;
+		}
+	}
+
+	private static class SizedCache {
+		private final Cache<Key, String> myCache;
+		private final long myMaxBytes;
+
+		SizedCache(long theMaxBytes, Cache<Key, String> theCache) {
+			myMaxBytes = theMaxBytes;
+			myCache = theCache;
+		}
+	}
+
+	private static class TextWeigher implements Weigher<Key, String> {
+		/**
+		 * Approximate size in bytes: 2 bytes per char plus the
+		 * string, key, and cache entry object overhead
+		 */
+		@Override
+		public int weigh(Key theKey, String theValue) {
+			return 100 + (theValue.length() * 2);
+		}
+	}
+
+}
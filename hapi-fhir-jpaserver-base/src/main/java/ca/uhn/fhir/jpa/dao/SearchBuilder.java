@@ -21,7 +21,6 @@ package ca.uhn.fhir.jpa.dao;
  */
 
 import ca.uhn.fhir.context.*;
-import ca.uhn.fhir.jpa.dao.data.IForcedIdDao;
 import ca.uhn.fhir.jpa.dao.data.IResourceIndexedSearchParamUriDao;
 import ca.uhn.fhir.jpa.entity.*;
 import ca.uhn.fhir.jpa.search.JpaRuntimeSearchParam;
@@ -83,6 +82,11 @@ public class SearchBuilder implements ISearchBuilder {
 
 	private static final List<Long> EMPTY_LONG_LIST = Collections.unmodifiableList(new ArrayList<Long>());
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchBuilder.class);
+	/**
+	 * Oracle can't handle more than ~1000 IDs in a single IN clause, so PID
+	 * lists are broken up into chunks of this size
+	 */
+	private static final int MAXIMUM_PAGE_SIZE_FOR_PID_LOADS = 800;
 	private static Long NO_MORE = Long.valueOf(-1);
 	private static HandlerTypeEnum ourLastHandlerMechanismForUnitTest;
 	private List<Long> myAlsoIncludePids;
@@ -90,14 +94,14 @@ public class SearchBuilder implements ISearchBuilder {
 	private BaseHapiFhirDao<?> myCallingDao;
 	private FhirContext myContext;
 	private EntityManager myEntityManager;
-	private IForcedIdDao myForcedIdDao;
 	private IFulltextSearchSvc myFulltextSearchSvc;
 	private Map<JoinKey, Join<?, ?>> myIndexJoins = Maps.newHashMap();
+	private ParallelResourceLoader myParallelResourceLoader;
 	private SearchParameterMap myParams;
 	private ArrayList<Predicate> myPredicates;
 	private IResourceIndexedSearchParamUriDao myResourceIndexedSearchParamUriDao;
 	private String myResourceName;
-	private AbstractQuery<Long> myResourceTableQuery;
+	private AbstractQuery<?> myResourceTableQuery;
 	private Root<ResourceTable> myResourceTableRoot;
 	private Class<? extends IBaseResource> myResourceType;
 	private ISearchParamRegistry mySearchParamRegistry;
@@ -109,15 +113,16 @@ public class SearchBuilder implements ISearchBuilder {
 	 */
 	public SearchBuilder(FhirContext theFhirContext, EntityManager theEntityManager, IFulltextSearchSvc theFulltextSearchSvc,
 								BaseHapiFhirDao<?> theDao,
-								IResourceIndexedSearchParamUriDao theResourceIndexedSearchParamUriDao, IForcedIdDao theForcedIdDao, IHapiTerminologySvc theTerminologySvc, ISearchParamRegistry theSearchParamRegistry) {
+								IResourceIndexedSearchParamUriDao theResourceIndexedSearchParamUriDao, IHapiTerminologySvc theTerminologySvc, ISearchParamRegistry theSearchParamRegistry,
+								ParallelResourceLoader theParallelResourceLoader) {
 		myContext = theFhirContext;
 		myEntityManager = theEntityManager;
 		myFulltextSearchSvc = theFulltextSearchSvc;
 		myCallingDao = theDao;
 		myResourceIndexedSearchParamUriDao = theResourceIndexedSearchParamUriDao;
-		myForcedIdDao = theForcedIdDao;
 		myTerminologySvc = theTerminologySvc;
 		mySearchParamRegistry = theSearchParamRegistry;
+		myParallelResourceLoader = theParallelResourceLoader;
 	}
 
 	private void addPredicateComposite(String theResourceName, RuntimeSearchParam theParamDef, List<? extends IQueryParameterType> theNextAnd) {
@@ -812,12 +817,29 @@ public class SearchBuilder implements ISearchBuilder {
 						continue;
 					}
 
-					predicate = join.<Object>get("myUri").as(String.class).in(toFind);
+					if (isHashBasedSearchesEnabled()) {
+						In<Long> hashPredicate = myBuilder.in(join.<Long>get("myHashUri"));
+						for (String next : toFind) {
+							hashPredicate.value(ResourceIndexedSearchParamUri.calculateHashUri(theResourceName, theParamName, next));
+						}
+						predicate = hashPredicate;
+					} else {
+						predicate = join.<Object>get("myUri").as(String.class).in(toFind);
+					}
 
 				} else if (param.getQualifier() == UriParamQualifierEnum.BELOW) {
 					predicate = myBuilder.like(join.get("myUri").as(String.class), createLeftMatchLikeExpression(value));
+					if (isHashBasedSearchesEnabled()) {
+						long hash = BaseResourceIndexedSearchParam.calculateHashIdentity(theResourceName, theParamName);
+						predicate = myBuilder.and(myBuilder.equal(join.get("myHashIdentity"), hash), predicate);
+					}
 				} else {
-					predicate = myBuilder.equal(join.get("myUri").as(String.class), value);
+					if (isHashBasedSearchesEnabled()) {
+						long hash = ResourceIndexedSearchParamUri.calculateHashUri(theResourceName, theParamName, value);
+						predicate = myBuilder.equal(join.get("myHashUri"), hash);
+					} else {
+						predicate = myBuilder.equal(join.get("myUri").as(String.class), value);
+					}
 				}
 				codePredicates.add(predicate);
 			} else {
@@ -838,12 +860,21 @@ public class SearchBuilder implements ISearchBuilder {
 
 		Predicate orPredicate = myBuilder.or(toArray(codePredicates));
 
+		if (isHashBasedSearchesEnabled()) {
+			myPredicates.add(orPredicate);
+			return;
+		}
+
 		Predicate paramNamePredicate = myBuilder.equal(join.get("myParamName"), theParamName);
 		Predicate outerPredicate = myBuilder.and(paramNamePredicate, orPredicate);
 
 		myPredicates.add(outerPredicate);
 	}
 
+	private boolean isHashBasedSearchesEnabled() {
+		return !myCallingDao.getConfig().isDisableHashBasedSearches();
+	}
+
 	private Predicate combineParamIndexPredicateWithParamNamePredicate(String theResourceName, String theParamName, From<?, ? extends BaseResourceIndexedSearchParam> theFrom, Predicate thePredicate) {
 		Predicate resourceTypePredicate = myBuilder.equal(theFrom.get("myResourceType"), theResourceName);
 		Predicate paramNamePredicate = myBuilder.equal(theFrom.get("myParamName"), theParamName);
@@ -1106,6 +1137,20 @@ public class SearchBuilder implements ISearchBuilder {
 				+ ResourceIndexedSearchParamString.MAX_LENGTH + "): " + rawSearchTerm);
 		}
 
+		if (isHashBasedSearchesEnabled()) {
+			if (theParameter instanceof StringParam && ((StringParam) theParameter).isExact()) {
+				long hash = ResourceIndexedSearchParamString.calculateHashExact(theResourceName, theParamName, rawSearchTerm);
+				return theBuilder.equal(theFrom.get("myHashExact"), hash);
+			}
+
+			String likeExpression = BaseHapiFhirDao.normalizeString(rawSearchTerm);
+			likeExpression = createLeftMatchLikeExpression(likeExpression);
+			long hash = BaseResourceIndexedSearchParam.calculateHashIdentity(theResourceName, theParamName);
+			Predicate hashPredicate = theBuilder.equal(theFrom.get("myHashIdentity"), hash);
+			Predicate valuePredicate = theBuilder.like(theFrom.get("myValueNormalized").as(String.class), likeExpression);
+			return theBuilder.and(hashPredicate, valuePredicate);
+		}
+
 		String likeExpression = BaseHapiFhirDao.normalizeString(rawSearchTerm);
 		likeExpression = createLeftMatchLikeExpression(likeExpression);
 
@@ -1201,6 +1246,15 @@ public class SearchBuilder implements ISearchBuilder {
 					}
 					systemCodes.add(nextCode);
 				}
+				if (isHashBasedSearchesEnabled()) {
+					// Each system/code pair maps to exactly one hash, so a single "in" will do
+					In<Long> hashPredicate = theBuilder.in(theFrom.<Long>get("myHashSystemAndValue"));
+					for (VersionIndependentConcept nextCode : codes) {
+						hashPredicate.value(ResourceIndexedSearchParamToken.calculateHashSystemAndValue(theResourceName, theParamName, nextCode.getSystem(), nextCode.getCode()));
+					}
+					return hashPredicate;
+				}
+
 				// Use "in" in case of large numbers of codes due to param modifiers
 				final Path<String> systemExpression = theFrom.get("mySystem");
 				final Path<String> valueExpression = theFrom.get("myValue");
@@ -1222,6 +1276,10 @@ public class SearchBuilder implements ISearchBuilder {
 			 * Ok, this is a normal query
 			 */
 
+			if (isHashBasedSearchesEnabled()) {
+				return createPredicateTokenHash(theResourceName, theParamName, theBuilder, theFrom, system, code);
+			}
+
 			if (StringUtils.isNotBlank(system)) {
 				singleCodePredicates.add(theBuilder.equal(theFrom.get("mySystem"), system));
 			} else if (system == null) {
@@ -1248,6 +1306,36 @@ public class SearchBuilder implements ISearchBuilder {
 		return combineParamIndexPredicateWithParamNamePredicate(theResourceName, theParamName, theFrom, singleCode);
 	}
 
+	/**
+	 * Creates a token predicate against the precomputed hash columns. The hash
+	 * already includes the resource type and parameter name, so no separate
+	 * predicates are needed for those.
+	 */
+	private Predicate createPredicateTokenHash(String theResourceName, String theParamName, CriteriaBuilder theBuilder, From<?, ResourceIndexedSearchParamToken> theFrom, String theSystem, String theCode) {
+		if (StringUtils.isNotBlank(theCode)) {
+			if (theSystem == null) {
+				long hash = ResourceIndexedSearchParamToken.calculateHashValue(theResourceName, theParamName, theCode);
+				return theBuilder.equal(theFrom.get("myHashValue"), hash);
+			}
+			// If the system is "", this matches only on tokens with a null system
+			long hash = ResourceIndexedSearchParamToken.calculateHashSystemAndValue(theResourceName, theParamName, theSystem, theCode);
+			return theBuilder.equal(theFrom.get("myHashSystemAndValue"), hash);
+		}
+
+		if (StringUtils.isNotBlank(theSystem)) {
+			long hash = ResourceIndexedSearchParamToken.calculateHashSystem(theResourceName, theParamName, theSystem);
+			return theBuilder.equal(theFrom.get("myHashSystem"), hash);
+		}
+
+		long hash = BaseResourceIndexedSearchParam.calculateHashIdentity(theResourceName, theParamName);
+		Predicate identityPredicate = theBuilder.equal(theFrom.get("myHashIdentity"), hash);
+		if (theSystem != null) {
+			// If the system is "", we only match on null systems
+			return theBuilder.and(identityPredicate, theBuilder.isNull(theFrom.get("mySystem")));
+		}
+		return identityPredicate;
+	}
+
 	@Override
 	public Iterator<Long> createQuery(SearchParameterMap theParams, String theSearchUuid) {
 		myParams = theParams;
@@ -1343,6 +1431,26 @@ public class SearchBuilder implements ISearchBuilder {
 
 		}
 
+		createSearchPredicates();
+		myResourceTableQuery.where(myBuilder.and(SearchBuilder.toArray(myPredicates)));
+
+		/*
+		 * Now perform the search
+		 */
+		final TypedQuery<Long> query = myEntityManager.createQuery(outerQuery);
+
+		if (theMaximumResults != null) {
+			query.setMaxResults(theMaximumResults);
+		}
+
+		return query;
+	}
+
+	/**
+	 * Populates {@link #myPredicates} with the predicates for the search parameters, which
+	 * apply to {@link #myResourceTableRoot}
+	 */
+	private void createSearchPredicates() {
 		myPredicates = new ArrayList<Predicate>();
 
 		if (myParams.getEverythingMode() != null) {
@@ -1350,7 +1458,7 @@ public class SearchBuilder implements ISearchBuilder {
 
 			if (myParams.get(BaseResource.SP_RES_ID) != null) {
 				StringParam idParm = (StringParam) myParams.get(BaseResource.SP_RES_ID).get(0).get(0);
-				Long pid = BaseHapiFhirDao.translateForcedIdToPid(myResourceName, idParm.getValue(), myForcedIdDao);
+				Long pid = myCallingDao.translateForcedIdToPid(myResourceName, idParm.getValue());
 				if (myAlsoIncludePids == null) {
 					myAlsoIncludePids = new ArrayList<Long>(1);
 				}
@@ -1405,19 +1513,100 @@ public class SearchBuilder implements ISearchBuilder {
 		DateRangeParam lu = myParams.getLastUpdated();
 		List<Predicate> lastUpdatedPredicates = createLastUpdatedPredicates(lu, myBuilder, myResourceTableRoot);
 		myPredicates.addAll(lastUpdatedPredicates);
+	}
 
-		myResourceTableQuery.where(myBuilder.and(SearchBuilder.toArray(myPredicates)));
+	@Override
+	public long createCountQuery(SearchParameterMap theParams, String theSearchUuid, Integer theMaximum) {
+		myParams = theParams;
+		myBuilder = myEntityManager.getCriteriaBuilder();
+		mySearchUuid = theSearchUuid;
+		Validate.isTrue(theParams.getEverythingMode() == null, "Can not count the results of an $everything operation");
+
+		StopWatch sw = new StopWatch();
+		CriteriaQuery<Long> query = myBuilder.createQuery(Long.class);
+		myResourceTableQuery = query;
+		myResourceTableRoot = query.from(ResourceTable.class);
+		Expression<Long> idExpr = myResourceTableRoot.get("myId").as(Long.class);
+
+		createSearchPredicates();
+		query.where(myBuilder.and(SearchBuilder.toArray(myPredicates)));
+
+		long retVal;
+		if (theMaximum == null) {
+			query.select(myBuilder.countDistinct(idExpr));
+			retVal = myEntityManager.createQuery(query).getSingleResult();
+		} else {
+			/*
+			 * The database needs to find every match in order to count them, so
+			 * when we only need to count up to a limit we fetch the IDs instead,
+			 * which lets it stop as soon as it has found enough
+			 */
+			query.select(idExpr);
+			query.distinct(true);
+			TypedQuery<Long> typedQuery = myEntityManager.createQuery(query);
+			typedQuery.setMaxResults(theMaximum);
+			retVal = typedQuery.getResultList().size();
+		}
+
+		ourLog.info("Counted {} matches in {}ms for query {}", retVal, sw.getMillis(), theSearchUuid);
+		return retVal;
+	}
+
+	@Override
+	public List<Pair<Long, Date>> loadKeysetPage(SearchParameterMap theParams, Pair<Long, Date> theAfter, int theSkip, int theCount) {
+		myParams = theParams;
+		myBuilder = myEntityManager.getCriteriaBuilder();
+
+		SortSpec sort = theParams.getSort();
+		Validate.isTrue(sort != null && Constants.PARAM_LASTUPDATED.equals(sort.getParamName()) && sort.getChain() == null, "Keyset paging requires a search sorted only by " + Constants.PARAM_LASTUPDATED);
+		boolean ascending = sort.getOrder() == null || sort.getOrder() == SortOrderEnum.ASC;
 
 		/*
-		 * Now perform the search
+		 * There is no outer query here since the sort key is on the resource table
+		 * itself, but joins to the index tables can return the same resource more
+		 * than once so we need the results to be distinct
 		 */
-		final TypedQuery<Long> query = myEntityManager.createQuery(outerQuery);
+		CriteriaQuery<Object[]> query = myBuilder.createQuery(Object[].class);
+		myResourceTableQuery = query;
+		myResourceTableRoot = query.from(ResourceTable.class);
+		Path<Long> idPath = myResourceTableRoot.get("myId");
+		Path<Date> updatedPath = myResourceTableRoot.get("myUpdated");
+		query.multiselect(idPath, updatedPath);
+		query.distinct(true);
+
+		createSearchPredicates();
+
+		// The resource ID breaks ties between resources with the same last updated time
+		if (theAfter != null) {
+			Long afterPid = theAfter.getLeft();
+			Date afterUpdated = theAfter.getRight();
+			if (ascending) {
+				myPredicates.add(myBuilder.or(
+					myBuilder.greaterThan(updatedPath, afterUpdated),
+					myBuilder.and(myBuilder.equal(updatedPath, afterUpdated), myBuilder.greaterThan(idPath, afterPid))));
+			} else {
+				myPredicates.add(myBuilder.or(
+					myBuilder.lessThan(updatedPath, afterUpdated),
+					myBuilder.and(myBuilder.equal(updatedPath, afterUpdated), myBuilder.lessThan(idPath, afterPid))));
+			}
+		}
+		query.where(myBuilder.and(SearchBuilder.toArray(myPredicates)));
 
-		if (theMaximumResults != null) {
-			query.setMaxResults(theMaximumResults);
+		if (ascending) {
+			query.orderBy(myBuilder.asc(updatedPath), myBuilder.asc(idPath));
+		} else {
+			query.orderBy(myBuilder.desc(updatedPath), myBuilder.desc(idPath));
 		}
 
-		return query;
+		TypedQuery<Object[]> typedQuery = myEntityManager.createQuery(query);
+		typedQuery.setFirstResult(theSkip);
+		typedQuery.setMaxResults(theCount);
+
+		List<Pair<Long, Date>> retVal = new ArrayList<>();
+		for (Object[] next : typedQuery.getResultList()) {
+			retVal.add(Pair.of((Long) next[0], (Date) next[1]));
+		}
+		return retVal;
 	}
 
 	private Predicate createResourceLinkPathPredicate(String theResourceName, String theParamName, From<?, ? extends ResourceLink> from) {
@@ -1576,9 +1765,11 @@ public class SearchBuilder implements ISearchBuilder {
 		cq.where(from.get("myId").in(pids));
 		TypedQuery<ResourceTable> q = entityManager.createQuery(cq);
 
-		for (ResourceTable next : q.getResultList()) {
-			Class<? extends IBaseResource> resourceType = context.getResourceDefinition(next.getResourceType()).getImplementingClass();
-			IBaseResource resource = theDao.toResource(resourceType, next, theForHistoryOperation);
+		List<ResourceTable> entities = q.getResultList();
+		List<IBaseResource> resources = myParallelResourceLoader.toResources(theDao, context, entities, theForHistoryOperation);
+		for (int i = 0; i < entities.size(); i++) {
+			ResourceTable next = entities.get(i);
+			IBaseResource resource = resources.get(i);
 			Integer index = position.get(next.getId());
 			if (index == null) {
 				ourLog.warn("Got back unexpected resource PID {}", next.getId());
@@ -1627,10 +1818,9 @@ public class SearchBuilder implements ISearchBuilder {
 		 * if it's lots of IDs. I suppose maybe we should be doing this as a join anyhow
 		 * but this should work too. Sigh.
 		 */
-		int maxLoad = 800;
 		List<Long> pids = new ArrayList<>(theIncludePids);
-		for (int i = 0; i < pids.size(); i += maxLoad) {
-			int to = i + maxLoad;
+		for (int i = 0; i < pids.size(); i += MAXIMUM_PAGE_SIZE_FOR_PID_LOADS) {
+			int to = i + MAXIMUM_PAGE_SIZE_FOR_PID_LOADS;
 			to = Math.min(to, pids.size());
 			List<Long> pidsSubList = pids.subList(i, to);
 			doLoadPids(theResourceListToPopulate, theRevIncludedPids, theForHistoryOperation, entityManager, context, theDao, position, pidsSubList);
@@ -1653,6 +1843,7 @@ public class SearchBuilder implements ISearchBuilder {
 			return new HashSet<Long>();
 		}
 		String searchFieldName = theReverseMode ? "myTargetResourcePid" : "mySourceResourcePid";
+		String findFieldName = theReverseMode ? "mySourceResourcePid" : "myTargetResourcePid";
 
 		Collection<Long> nextRoundMatches = theMatches;
 		HashSet<Long> allAdded = new HashSet<>();
@@ -1665,94 +1856,102 @@ public class SearchBuilder implements ISearchBuilder {
 		boolean addedSomeThisRound;
 		do {
 			roundCounts++;
+			StopWatch roundSw = new StopWatch();
 
 			HashSet<Long> pidsToInclude = new HashSet<>();
 			Set<Long> nextRoundOmit = new HashSet<>();
 
+			/*
+			 * Paths which share the same target type restriction are looked up
+			 * together, so each round costs one query per restriction (per chunk
+			 * of PIDs) instead of one query per include path
+			 */
+			boolean matchAll = false;
+			Map<Set<String>, Set<String>> targetTypesToSourcePaths = new HashMap<>();
 			for (Iterator<Include> iter = includes.iterator(); iter.hasNext(); ) {
 				Include nextInclude = iter.next();
 				if (nextInclude.isRecurse() == false) {
 					iter.remove();
 				}
 
-				boolean matchAll = "*".equals(nextInclude.getValue());
-				if (matchAll) {
-					String sql;
-					sql = "SELECT r FROM ResourceLink r WHERE r." + searchFieldName + " IN (:target_pids)";
-					TypedQuery<ResourceLink> q = theEntityManager.createQuery(sql, ResourceLink.class);
-					q.setParameter("target_pids", nextRoundMatches);
-					List<ResourceLink> results = q.getResultList();
-					for (ResourceLink resourceLink : results) {
-						if (theReverseMode) {
-							pidsToInclude.add(resourceLink.getSourceResourcePid());
-						} else {
-							pidsToInclude.add(resourceLink.getTargetResourcePid());
-						}
-					}
+				if ("*".equals(nextInclude.getValue())) {
+					matchAll = true;
+					continue;
+				}
+
+				String resType = nextInclude.getParamType();
+				if (isBlank(resType)) {
+					continue;
+				}
+				RuntimeResourceDefinition def = theContext.getResourceDefinition(resType);
+				if (def == null) {
+					ourLog.warn("Unknown resource type in include/revinclude=" + nextInclude.getValue());
+					continue;
+				}
+
+				RuntimeSearchParam param;
+				String paramName = nextInclude.getParamName();
+				if (isNotBlank(paramName)) {
+					param = theCallingDao.getSearchParamByName(def, paramName);
 				} else {
+					param = null;
+				}
+				if (param == null) {
+					ourLog.warn("Unknown param name in include/revinclude=" + nextInclude.getValue());
+					continue;
+				}
 
-					List<String> paths;
-					RuntimeSearchParam param = null;
-					String resType = nextInclude.getParamType();
-					if (isBlank(resType)) {
-						continue;
-					}
-					RuntimeResourceDefinition def = theContext.getResourceDefinition(resType);
-					if (def == null) {
-						ourLog.warn("Unknown resource type in include/revinclude=" + nextInclude.getValue());
-						continue;
-					}
+				Set<String> targetResourceTypes = null;
+				String targetResourceType = defaultString(nextInclude.getParamTargetType(), null);
+				if (targetResourceType != null) {
+					targetResourceTypes = Collections.singleton(targetResourceType);
+				} else if (param.getTargets() != null && param.getTargets().isEmpty() == false) {
+					targetResourceTypes = new HashSet<>(param.getTargets());
+				}
 
-					String paramName = nextInclude.getParamName();
-					if (isNotBlank(paramName)) {
-						param = theCallingDao.getSearchParamByName(def, paramName);
-					} else {
-						param = null;
-					}
-					if (param == null) {
-						ourLog.warn("Unknown param name in include/revinclude=" + nextInclude.getValue());
-						continue;
-					}
+				Set<String> sourcePaths = targetTypesToSourcePaths.get(targetResourceTypes);
+				if (sourcePaths == null) {
+					sourcePaths = new HashSet<>();
+					targetTypesToSourcePaths.put(targetResourceTypes, sourcePaths);
+				}
+				sourcePaths.addAll(param.getPathsSplit());
+			}
 
-					paths = param.getPathsSplit();
+			int queryCount = 0;
+			List<Long> nextRoundMatchesList = new ArrayList<>(nextRoundMatches);
+			for (int i = 0; i < nextRoundMatchesList.size(); i += MAXIMUM_PAGE_SIZE_FOR_PID_LOADS) {
+				int to = Math.min(i + MAXIMUM_PAGE_SIZE_FOR_PID_LOADS, nextRoundMatchesList.size());
+				List<Long> pidsSubList = nextRoundMatchesList.subList(i, to);
 
-					String targetResourceType = defaultString(nextInclude.getParamTargetType(), null);
-					for (String nextPath : paths) {
-						String sql;
-						boolean haveTargetTypesDefinedByParam = param != null && param.getTargets() != null && param.getTargets().isEmpty() == false;
-						if (targetResourceType != null) {
-							sql = "SELECT r FROM ResourceLink r WHERE r.mySourcePath = :src_path AND r." + searchFieldName + " IN (:target_pids) AND r.myTargetResourceType = :target_resource_type";
-						} else if (haveTargetTypesDefinedByParam) {
-							sql = "SELECT r FROM ResourceLink r WHERE r.mySourcePath = :src_path AND r." + searchFieldName + " IN (:target_pids) AND r.myTargetResourceType in (:target_resource_types)";
-						} else {
-							sql = "SELECT r FROM ResourceLink r WHERE r.mySourcePath = :src_path AND r." + searchFieldName + " IN (:target_pids)";
-						}
-						TypedQuery<ResourceLink> q = theEntityManager.createQuery(sql, ResourceLink.class);
-						q.setParameter("src_path", nextPath);
-						q.setParameter("target_pids", nextRoundMatches);
-						if (targetResourceType != null) {
-							q.setParameter("target_resource_type", targetResourceType);
-						} else if (haveTargetTypesDefinedByParam) {
-							q.setParameter("target_resource_types", param.getTargets());
-						}
-						List<ResourceLink> results = q.getResultList();
-						for (ResourceLink resourceLink : results) {
-							if (theReverseMode) {
-								Long pid = resourceLink.getSourceResourcePid();
-								if (pid != null) {
-									pidsToInclude.add(pid);
-								}
-							} else {
-								Long pid = resourceLink.getTargetResourcePid();
-								if (pid != null) {
-									pidsToInclude.add(pid);
-								}
-							}
-						}
+				if (matchAll) {
+					// Matches every link, so there is no point in also querying the individual paths
+					String sql = "SELECT r." + findFieldName + " FROM ResourceLink r WHERE r." + searchFieldName + " IN (:target_pids)";
+					TypedQuery<Long> q = theEntityManager.createQuery(sql, Long.class);
+					q.setParameter("target_pids", pidsSubList);
+					addNonNullPids(q.getResultList(), pidsToInclude);
+					queryCount++;
+					continue;
+				}
+
+				for (Entry<Set<String>, Set<String>> nextEntry : targetTypesToSourcePaths.entrySet()) {
+					Set<String> targetResourceTypes = nextEntry.getKey();
+					String sql = "SELECT r." + findFieldName + " FROM ResourceLink r WHERE r.mySourcePath IN (:src_paths) AND r." + searchFieldName + " IN (:target_pids)";
+					if (targetResourceTypes != null) {
+						sql = sql + " AND r.myTargetResourceType IN (:target_resource_types)";
 					}
+					TypedQuery<Long> q = theEntityManager.createQuery(sql, Long.class);
+					q.setParameter("src_paths", nextEntry.getValue());
+					q.setParameter("target_pids", pidsSubList);
+					if (targetResourceTypes != null) {
+						q.setParameter("target_resource_types", targetResourceTypes);
+					}
+					addNonNullPids(q.getResultList(), pidsToInclude);
+					queryCount++;
 				}
 			}
 
+			ourLog.debug("Round {} of {} found {} PIDs from {} PIDs using {} queries in {}ms", new Object[]{roundCounts, theReverseMode ? "_revincludes" : "_includes", pidsToInclude.size(), nextRoundMatchesList.size(), queryCount, roundSw.getMillis()});
+
 			if (theLastUpdated != null && (theLastUpdated.getLowerBoundAsInstant() != null || theLastUpdated.getUpperBoundAsInstant() != null)) {
 				pidsToInclude = new HashSet<Long>(filterResourceIdsByLastUpdated(theEntityManager, theLastUpdated, pidsToInclude));
 			}
@@ -1773,6 +1972,14 @@ public class SearchBuilder implements ISearchBuilder {
 		return allAdded;
 	}
 
+	private static void addNonNullPids(List<Long> thePids, Set<Long> theTarget) {
+		for (Long next : thePids) {
+			if (next != null) {
+				theTarget.add(next);
+			}
+		}
+	}
+
 	private void searchForIdsWithAndOr(SearchParameterMap theParams) {
 		SearchParameterMap params = theParams;
 		if (params == null) {
@@ -2002,18 +2209,25 @@ public class SearchBuilder implements ISearchBuilder {
 		if (thePids.isEmpty()) {
 			return Collections.emptyList();
 		}
-		CriteriaBuilder builder = theEntityManager.getCriteriaBuilder();
-		CriteriaQuery<Long> cq = builder.createQuery(Long.class);
-		Root<ResourceTable> from = cq.from(ResourceTable.class);
-		cq.select(from.get("myId").as(Long.class));
+		List<Long> pids = new ArrayList<>(thePids);
+		List<Long> resultList = new ArrayList<>();
+		for (int i = 0; i < pids.size(); i += MAXIMUM_PAGE_SIZE_FOR_PID_LOADS) {
+			int to = Math.min(i + MAXIMUM_PAGE_SIZE_FOR_PID_LOADS, pids.size());
+			List<Long> pidsSubList = pids.subList(i, to);
 
-		List<Predicate> lastUpdatedPredicates = createLastUpdatedPredicates(theLastUpdated, builder, from);
-		lastUpdatedPredicates.add(from.get("myId").as(Long.class).in(thePids));
+			CriteriaBuilder builder = theEntityManager.getCriteriaBuilder();
+			CriteriaQuery<Long> cq = builder.createQuery(Long.class);
+			Root<ResourceTable> from = cq.from(ResourceTable.class);
+			cq.select(from.get("myId").as(Long.class));
 
-		cq.where(SearchBuilder.toArray(lastUpdatedPredicates));
-		TypedQuery<Long> query = theEntityManager.createQuery(cq);
+			List<Predicate> lastUpdatedPredicates = createLastUpdatedPredicates(theLastUpdated, builder, from);
+			lastUpdatedPredicates.add(from.get("myId").as(Long.class).in(pidsSubList));
 
-		List<Long> resultList = query.getResultList();
+			cq.where(SearchBuilder.toArray(lastUpdatedPredicates));
+			TypedQuery<Long> query = theEntityManager.createQuery(cq);
+
+			resultList.addAll(query.getResultList());
+		}
 		return resultList;
 	}
 
@@ -0,0 +1,210 @@
+package ca.uhn.fhir.jpa.dao;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.entity.TagDefinition;
+import ca.uhn.fhir.jpa.entity.TagTypeEnum;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.lang3.Validate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.commons.lang3.StringUtils.defaultString;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Holds recently used {@link TagDefinition tag definitions}, keyed by type,
+ * system and code, so that writing a resource with tags, security labels or
+ * profiles does not need to look each one up in the database.
+ * <p>
+ * Tag definitions are never modified or deleted once they have been created,
+ * so entries never need to be invalidated. Tag definitions which are found or
+ * created inside a transaction are only visible to that transaction until it
+ * commits, so that a definition whose creation is later rolled back is never
+ * handed to another writer.
+ * </p>
+ * <p>
+ * The size of the cache is controlled by {@link DaoConfig#setTagDefinitionCacheSize(int)}.
+ * </p>
+ */
+public class TagDefinitionCache {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(TagDefinitionCache.class);
+
+	/**
+	 * Replaced (never modified) whenever the configured size changes, so that
+	 * lookups only need a volatile read rather than a lock
+	 */
+	private volatile SizedCache myCache = new SizedCache(0);
+	@Autowired
+	private DaoConfig myDaoConfig;
+
+	/**
+	 * Returns the cached tag definition, or <code>null</code> if it is not in the cache. Note that
+	 * the returned entity may be detached, so it should only be used as the target of an association.
+	 */
+	public TagDefinition get(TagTypeEnum theTagType, String theSystem, String theCode) {
+		Cache<String, TagDefinition> cache = getCache();
+		if (cache == null) {
+			return null;
+		}
+		String key = toKey(theTagType, theSystem, theCode);
+		TagDefinition retVal = cache.getIfPresent(key);
+		if (retVal == null) {
+			Pending pending = getPendingForCurrentTransaction(false);
+			if (pending != null) {
+				retVal = pending.myEntries.get(key);
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the current cache, or <code>null</code> if caching is disabled
+	 */
+	private Cache<String, TagDefinition> getCache() {
+		int cacheSize = myDaoConfig.getTagDefinitionCacheSize();
+		SizedCache cache = myCache;
+		if (cache.myCacheSize != cacheSize) {
+			cache = resize(cacheSize);
+		}
+		return cache.myCache;
+	}
+
+	private Pending getPendingForCurrentTransaction(boolean theCreate) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return null;
+		}
+		Pending retVal = (Pending) TransactionSynchronizationManager.getResource(this);
+		if (retVal == null && theCreate) {
+			retVal = new Pending();
+			TransactionSynchronizationManager.bindResource(this, retVal);
+			TransactionSynchronizationManager.registerSynchronization(retVal);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Removes all entries from the cache
+	 */
+	public void invalidateAll() {
+		Cache<String, TagDefinition> cache = getCache();
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * Adds a tag definition which has been loaded or created in the current transaction
+	 */
+	public void put(TagTypeEnum theTagType, String theSystem, String theCode, TagDefinition theTagDefinition) {
+		Validate.notNull(theTagDefinition, "theTagDefinition must not be null");
+		Cache<String, TagDefinition> cache = getCache();
+		if (cache == null) {
+			return;
+		}
+		String key = toKey(theTagType, theSystem, theCode);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			cache.put(key, theTagDefinition);
+			return;
+		}
+
+		Pending pending = getPendingForCurrentTransaction(true);
+		if (pending != null) {
+			pending.myEntries.put(key, theTagDefinition);
+		}
+	}
+
+	private synchronized SizedCache resize(int theCacheSize) {
+		if (myCache.myCacheSize != theCacheSize) {
+			ourLog.info("Resizing tag definition cache from {} to {} entries", myCache.myCacheSize, theCacheSize);
+			myCache = new SizedCache(theCacheSize);
+		}
+		return myCache;
+	}
+
+	void setDaoConfigForUnitTest(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
+	/**
+	 * Blank systems are treated as equivalent since they are all looked up
+	 * as <code>null</code> in the database
+	 */
+	private static String toKey(TagTypeEnum theTagType, String theSystem, String theCode) {
+		Validate.notNull(theTagType, "theTagType must not be null");
+		String system = isBlank(theSystem) ? "" : theSystem;
+		return theTagType.ordinal() + "|" + system.length() + "|" + system + "|" + defaultString(theCode);
+	}
+
+	/**
+	 * Tag definitions found or created during a transaction, which are
+	 * added to the shared cache only once the transaction commits. This is
+	 * bound as a transaction resource, and is unbound while the transaction
+	 * is suspended so that an inner transaction does not see it.
+	 */
+	private class Pending extends TransactionSynchronizationAdapter {
+		private final Map<String, TagDefinition> myEntries = new HashMap<String, TagDefinition>();
+
+		@Override
+		public void afterCommit() {
+			Cache<String, TagDefinition> cache = getCache();
+			if (cache != null) {
+				cache.putAll(myEntries);
+			}
+		}
+
+		@Override
+		public void afterCompletion(int theStatus) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(TagDefinitionCache.this);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(TagDefinitionCache.this, this);
+		}
+
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResourceIfPossible(TagDefinitionCache.this);
+		}
+	}
+
+	private static class SizedCache {
+		private final Cache<String, TagDefinition> myCache;
+		private final int myCacheSize;
+
+		SizedCache(int theCacheSize) {
+			myCacheSize = theCacheSize;
+			if (theCacheSize > 0) {
+				myCache = CacheBuilder.newBuilder().maximumSize(theCacheSize).build();
+			} else {
+				myCache = null;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+package ca.uhn.fhir.jpa.dao.data;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.entity.BulkExportJobEntity;
+import ca.uhn.fhir.jpa.entity.BulkExportJobStatusEnum;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface IBulkExportJobDao extends JpaRepository<BulkExportJobEntity, Long> {
+
+	@Query("SELECT j FROM BulkExportJobEntity j WHERE j.myJobId = :jobid")
+	BulkExportJobEntity findByJobId(@Param("jobid") String theJobId);
+
+	@Query("SELECT j.myId FROM BulkExportJobEntity j WHERE j.myStatus = :status ORDER BY j.myId ASC")
+	Slice<Long> findIdsByStatus(Pageable thePage, @Param("status") BulkExportJobStatusEnum theStatus);
+
+	/**
+	 * Moves the job to a new status only if it is currently in the expected status. This
+	 * is used to claim a job so that it is only ever built by one thread.
+	 *
+	 * @return Returns the number of rows updated (0 or 1)
+	 */
+	@Modifying
+	@Query("UPDATE BulkExportJobEntity j SET j.myStatus = :newstatus, j.myStatusTime = CURRENT_TIMESTAMP WHERE j.myId = :pid AND j.myStatus = :oldstatus")
+	int updateStatusIfCurrent(@Param("pid") Long thePid, @Param("oldstatus") BulkExportJobStatusEnum theOldStatus, @Param("newstatus") BulkExportJobStatusEnum theNewStatus);
+
+}
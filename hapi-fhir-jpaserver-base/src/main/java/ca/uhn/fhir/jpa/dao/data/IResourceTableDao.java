@@ -24,6 +24,9 @@ import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
+
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 
 public interface IResourceTableDao extends JpaRepository<ResourceTable, Long> {
@@ -35,4 +38,32 @@ public interface IResourceTableDao extends JpaRepository<ResourceTable, Long> {
 	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myIndexStatus IS NULL")
 	Slice<Long> findUnindexed(Pageable thePageRequest);
 
+	@Query("SELECT MIN(t.myId) FROM ResourceTable t WHERE t.myIndexStatus IS NULL")
+	Long findMinUnindexedId();
+
+	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myIndexStatus IS NULL AND t.myId >= :low AND t.myId <= :high ORDER BY t.myId ASC")
+	Slice<Long> findUnindexedInRange(Pageable thePageRequest, @Param("low") long theLow, @Param("high") long theHigh);
+
+	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myIndexStatus IS NULL AND t.myResourceType = :restype AND t.myId >= :low AND t.myId <= :high ORDER BY t.myId ASC")
+	Slice<Long> findUnindexedInRange(Pageable thePageRequest, @Param("restype") String theResourceType, @Param("low") long theLow, @Param("high") long theHigh);
+
+	@Query("SELECT COUNT(t) FROM ResourceTable t WHERE t.myIndexStatus IS NULL AND t.myId >= :low AND t.myId <= :high")
+	long countUnindexedInRange(@Param("low") long theLow, @Param("high") long theHigh);
+
+	@Query("SELECT COUNT(t) FROM ResourceTable t WHERE t.myIndexStatus IS NULL AND t.myResourceType = :restype AND t.myId >= :low AND t.myId <= :high")
+	long countUnindexedInRange(@Param("restype") String theResourceType, @Param("low") long theLow, @Param("high") long theHigh);
+
+	@Query("SELECT t.myId FROM ResourceTable t WHERE t.myId IN (:pids) AND t.myIndexStatus = :status")
+	List<Long> findIdsWithIndexStatus(@Param("pids") Collection<Long> thePids, @Param("status") Long theIndexStatus);
+
+	@Query("SELECT t.myResourceType, COUNT(t) FROM ResourceTable t WHERE t.myDeleted IS NULL GROUP BY t.myResourceType")
+	List<Object[]> getResourceCounts();
+
+	@Query("SELECT MAX(t.myId) FROM ResourceTable t")
+	Long findMaxId();
+
+	@Modifying
+	@Query("UPDATE ResourceTable r SET r.myIndexStatus = null")
+	int markAllResourcesAsRequiringReindexing();
+
 }
@@ -51,4 +51,8 @@ public interface ISearchDao extends JpaRepository<Search, Long> {
 	@Query("UPDATE Search s SET s.mySearchLastReturned = :last WHERE s.myId = :pid")
 	public void updateSearchLastReturned(@Param("pid") long thePid, @Param("last") Date theDate);
 
+	@Modifying
+	@Query("UPDATE Search s SET s.myKeysetPageOffset = :offset, s.myKeysetPagePid = :resPid, s.myKeysetPageLastUpdated = :resLastUpdated WHERE s.myId = :pid")
+	public void updateKeysetPageBoundary(@Param("pid") long thePid, @Param("offset") int theOffset, @Param("resPid") long theResourcePid, @Param("resLastUpdated") Date theResourceLastUpdated);
+
 }
@@ -0,0 +1,44 @@
+package ca.uhn.fhir.jpa.dao.data;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.entity.SearchResultBlock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface ISearchResultBlockDao extends JpaRepository<SearchResultBlock, Long> {
+
+	/**
+	 * Returns the blocks which contain at least one result in the range
+	 * <code>[theFrom, theTo)</code>, ordered by offset
+	 */
+	@Query(value = "SELECT b FROM SearchResultBlock b WHERE b.mySearchPid = :search AND b.myOffset < :to AND (b.myOffset + b.myPidCount) > :from ORDER BY b.myOffset ASC")
+	List<SearchResultBlock> findForSearchInRange(@Param("search") Long theSearchPid, @Param("from") int theFrom, @Param("to") int theTo);
+
+	@Modifying
+	@Query(value = "DELETE FROM SearchResultBlock b WHERE b.mySearchPid = :search")
+	void deleteForSearch(@Param("search") Long theSearchPid);
+
+}
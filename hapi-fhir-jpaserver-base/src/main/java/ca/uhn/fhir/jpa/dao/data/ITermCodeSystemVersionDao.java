@@ -36,4 +36,7 @@ public interface ITermCodeSystemVersionDao  extends JpaRepository<TermCodeSystem
 	@Query("SELECT cs FROM TermCodeSystemVersion cs WHERE cs.myResource.myId = :resource_id AND cs.myResourceVersionId = :version_id")
 	TermCodeSystemVersion findByCodeSystemResourceAndVersion(@Param("resource_id") Long theCodeSystemResourcePid, @Param("version_id") Long theCodeSystemVersionPid);
 
+	@Query("SELECT cs.myId FROM TermCodeSystemVersion cs WHERE cs.myClosureComplete IS NULL OR cs.myClosureComplete = false ORDER BY cs.myId ASC")
+	List<Long> findIdsWithIncompleteClosure();
+
 }
@@ -0,0 +1,45 @@
+package ca.uhn.fhir.jpa.dao.data;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.entity.TermConceptClosure;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface ITermConceptClosureDao extends JpaRepository<TermConceptClosure, Long> {
+
+	@Query("SELECT COUNT(t) FROM TermConceptClosure t WHERE t.myAncestorPid = :ancestor_pid AND t.myDescendantPid = :descendant_pid")
+	long countByAncestorAndDescendant(@Param("ancestor_pid") Long theAncestorPid, @Param("descendant_pid") Long theDescendantPid);
+
+	@Query("SELECT COUNT(t) FROM TermConceptClosure t WHERE t.myDescendantPid = :descendant_pid")
+	long countByDescendant(@Param("descendant_pid") Long theDescendantPid);
+
+	@Query("DELETE FROM TermConceptClosure t WHERE t.myCodeSystemVersionPid = :cs_pid")
+	@Modifying
+	void deleteByCodeSystemVersion(@Param("cs_pid") Long theCodeSystemVersionPid);
+
+	@Query("DELETE FROM TermConceptClosure t WHERE t.myDescendantPid = :descendant_pid")
+	@Modifying
+	void deleteByDescendant(@Param("descendant_pid") Long theDescendantPid);
+
+}
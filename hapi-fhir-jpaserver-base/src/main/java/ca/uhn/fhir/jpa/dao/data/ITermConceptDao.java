@@ -38,6 +38,18 @@ public interface ITermConceptDao extends JpaRepository<TermConcept, Long> {
 	@Query("SELECT c FROM TermConcept c WHERE c.myCodeSystem = :code_system AND c.myCode = :code")
 	TermConcept findByCodeSystemAndCode(@Param("code_system") TermCodeSystemVersion theCodeSystem, @Param("code") String theCode);
 
+	/**
+	 * Returns the ancestors of the given concept, using {@link ca.uhn.fhir.jpa.entity.TermConceptClosure}
+	 */
+	@Query("SELECT c FROM TermConcept c WHERE c.myId IN (SELECT t.myAncestorPid FROM TermConceptClosure t WHERE t.myDescendantPid = :pid)")
+	List<TermConcept> findAncestors(@Param("pid") Long theConceptPid, Pageable thePageRequest);
+
+	/**
+	 * Returns the descendants of the given concept, using {@link ca.uhn.fhir.jpa.entity.TermConceptClosure}
+	 */
+	@Query("SELECT c FROM TermConcept c WHERE c.myId IN (SELECT t.myDescendantPid FROM TermConceptClosure t WHERE t.myAncestorPid = :pid)")
+	List<TermConcept> findDescendants(@Param("pid") Long theConceptPid, Pageable thePageRequest);
+
 	@Query("SELECT c FROM TermConcept c WHERE c.myCodeSystem = :code_system")
 	List<TermConcept> findByCodeSystemVersion(@Param("code_system") TermCodeSystemVersion theCodeSystem);
 
@@ -1,6 +1,7 @@
 package ca.uhn.fhir.jpa.dao.data;
 
 import java.util.Collection;
+import java.util.List;
 
 /*
  * #%L
@@ -37,5 +38,11 @@ public interface ITermConceptParentChildLinkDao extends JpaRepository<TermConcep
 
 	@Query("SELECT t.myParentPid FROM TermConceptParentChildLink t WHERE t.myChildPid = :child_pid")
 	Collection<Long> findAllWithChild(@Param("child_pid") Long theConceptPid);
+
+	/**
+	 * Returns the child and parent PIDs (in that order) of every link in the given code system version
+	 */
+	@Query("SELECT t.myChildPid, t.myParentPid FROM TermConceptParentChildLink t WHERE t.myCodeSystem.myId = :cs_pid")
+	List<Object[]> findChildAndParentPidsByCodeSystemVersion(@Param("cs_pid") Long theCodeSystemVersionPid);
 	
 }
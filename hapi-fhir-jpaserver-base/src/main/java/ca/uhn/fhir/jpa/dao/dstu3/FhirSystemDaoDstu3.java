@@ -78,6 +78,18 @@ public class FhirSystemDaoDstu3 extends BaseHapiFhirSystemDao<Bundle, Meta> {
 
 	private Bundle batch(final RequestDetails theRequestDetails, Bundle theRequest) {
 		ourLog.info("Beginning batch with {} resources", theRequest.getEntry().size());
+		return batch(theRequestDetails, theRequest.getEntry().iterator(), false);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Transactional(propagation = Propagation.NEVER)
+	@Override
+	public Bundle batch(RequestDetails theRequestDetails, Iterator<? extends IBase> theEntries) {
+		ourLog.info("Beginning streamed batch");
+		return batch(theRequestDetails, (Iterator<BundleEntryComponent>) theEntries, true);
+	}
+
+	private Bundle batch(final RequestDetails theRequestDetails, Iterator<BundleEntryComponent> theEntries, boolean theNotifyInterceptorsForEachEntry) {
 		long start = System.currentTimeMillis();
 
 		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
@@ -90,7 +102,8 @@ public class FhirSystemDaoDstu3 extends BaseHapiFhirSystemDao<Bundle, Meta> {
 		 * For batch, we handle each entry as a mini-transaction in its own database transaction so that if one fails, it doesn't prevent others
 		 */
 
-		for (final BundleEntryComponent nextRequestEntry : theRequest.getEntry()) {
+		while (theEntries.hasNext()) {
+			final BundleEntryComponent nextRequestEntry = theEntries.next();
 
 			BaseServerResponseExceptionHolder caughtEx = new BaseServerResponseExceptionHolder(); 
 			
@@ -107,6 +120,14 @@ public class FhirSystemDaoDstu3 extends BaseHapiFhirSystemDao<Bundle, Meta> {
 			};
 
 			try {
+				if (theNotifyInterceptorsForEachEntry && theRequestDetails != null) {
+					Bundle entryRequestBundle = new Bundle();
+					entryRequestBundle.setType(BundleType.BATCH);
+					entryRequestBundle.addEntry(nextRequestEntry);
+					ActionRequestDetails requestDetails = new ActionRequestDetails(theRequestDetails, entryRequestBundle, "Bundle", null);
+					notifyInterceptors(RestOperationTypeEnum.TRANSACTION, requestDetails);
+				}
+
 				Bundle nextResponseBundle = callback.doInTransaction(null);
 
 				BundleEntryComponent subResponseEntry = nextResponseBundle.getEntry().get(0);
@@ -138,7 +159,7 @@ public class FhirSystemDaoDstu3 extends BaseHapiFhirSystemDao<Bundle, Meta> {
 		}
 
 		long delay = System.currentTimeMillis() - start;
-		ourLog.info("Batch completed in {}ms", new Object[] { delay });
+		ourLog.info("Batch of {} entries completed in {}ms", new Object[] { resp.getEntry().size(), delay });
 
 		return resp;
 	}
@@ -490,6 +511,7 @@ public class FhirSystemDaoDstu3 extends BaseHapiFhirSystemDao<Bundle, Meta> {
 		 */
 
 		FhirTerser terser = getContext().newTerser();
+		List<IIdType> referencedIds = new ArrayList<IIdType>();
 		for (DaoMethodOutcome nextOutcome : idToPersistedOutcome.values()) {
 			IBaseResource nextResource = nextOutcome.getResource();
 			if (nextResource == null) {
@@ -511,6 +533,20 @@ public class FhirSystemDaoDstu3 extends BaseHapiFhirSystemDao<Bundle, Meta> {
 				} else {
 					ourLog.debug(" * Reference [{}] does not exist in bundle", nextId);
 				}
+				referencedIds.add(nextRef.getReferenceElement());
+			}
+		}
+
+		/*
+		 * Resolve any client assigned IDs in the references all at once
+		 * instead of one at a time as each resource is indexed
+		 */
+		preloadForcedIds(referencedIds);
+
+		for (DaoMethodOutcome nextOutcome : idToPersistedOutcome.values()) {
+			IBaseResource nextResource = nextOutcome.getResource();
+			if (nextResource == null) {
+				continue;
 			}
 
 			IPrimitiveType<Date> deletedInstantOrNull = ResourceMetadataKeyEnum.DELETED_AT.get((IAnyResource) nextResource);
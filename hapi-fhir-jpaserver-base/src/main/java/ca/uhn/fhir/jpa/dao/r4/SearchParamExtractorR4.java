@@ -24,6 +24,7 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.measure.unit.NonSI;
 import javax.measure.unit.Unit;
@@ -37,6 +38,7 @@ import org.hl7.fhir.r4.model.CapabilityStatement.CapabilityStatementRestSecurity
 import org.hl7.fhir.r4.model.Enumeration;
 import org.hl7.fhir.r4.model.Location.LocationPositionComponent;
 import org.hl7.fhir.r4.model.Patient.PatientCommunicationComponent;
+import org.hl7.fhir.r4.model.ExpressionNode;
 import org.hl7.fhir.r4.utils.FHIRPathEngine;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.hl7.fhir.instance.model.api.*;
@@ -57,6 +59,13 @@ public class SearchParamExtractorR4 extends BaseSearchParamExtractor implements
 	@Autowired
 	private org.hl7.fhir.r4.hapi.ctx.IValidationSupport myValidationSupport;
 
+	/*
+	 * Creating a FHIRPathEngine is expensive (it scans every StructureDefinition) and
+	 * neither it nor the worker context is thread safe, so each thread gets its own
+	 */
+	private ThreadLocal<FHIRPathEngine> myFhirPathEngine = newFhirPathEngineThreadLocal();
+	private final ConcurrentHashMap<String, ExpressionNode> myPathToParsedExpression = new ConcurrentHashMap<String, ExpressionNode>();
+
 	/**
 	 * Constructor
 	 */
@@ -680,14 +689,18 @@ public class SearchParamExtractorR4 extends BaseSearchParamExtractor implements
 	 */
 	@Override
 	protected List<Object> extractValues(String thePaths, IBaseResource theResource) {
-		IWorkerContext worker = new org.hl7.fhir.r4.hapi.ctx.HapiWorkerContext(getContext(), myValidationSupport);
-		FHIRPathEngine fp = new FHIRPathEngine(worker);
+		FHIRPathEngine fp = myFhirPathEngine.get();
 
 		List<Object> values = new ArrayList<Object>();
 		try {
 			String[] nextPathsSplit = SPLIT.split(thePaths);
 			for (String nextPath : nextPathsSplit) {
-				List<Base> allValues = fp.evaluate((Base) theResource, nextPath);
+				ExpressionNode parsed = myPathToParsedExpression.get(nextPath);
+				if (parsed == null) {
+					parsed = fp.parse(nextPath);
+					myPathToParsedExpression.put(nextPath, parsed);
+				}
+				List<Base> allValues = fp.evaluate((Base) theResource, parsed);
 				if (allValues.isEmpty() == false) {
 					values.addAll(allValues);
 				}
@@ -725,9 +738,30 @@ public class SearchParamExtractorR4 extends BaseSearchParamExtractor implements
 		return retVal;
 	}
 
+	private ThreadLocal<FHIRPathEngine> newFhirPathEngineThreadLocal() {
+		return new ThreadLocal<FHIRPathEngine>() {
+			@Override
+			protected FHIRPathEngine initialValue() {
+				IWorkerContext worker = new org.hl7.fhir.r4.hapi.ctx.HapiWorkerContext(getContext(), myValidationSupport);
+				return new FHIRPathEngine(worker);
+			}
+		};
+	}
+
+	@Override
+	protected void searchParamsChanged() {
+		myPathToParsedExpression.clear();
+	}
+
 	@VisibleForTesting
 	void setValidationSupportForTesting(org.hl7.fhir.r4.hapi.ctx.IValidationSupport theValidationSupport) {
 		myValidationSupport = theValidationSupport;
+		myFhirPathEngine = newFhirPathEngineThreadLocal();
+	}
+
+	@VisibleForTesting
+	int getParsedExpressionCountForUnitTest() {
+		return myPathToParsedExpression.size();
 	}
 
 	private static <T extends Enum<?>> String extractSystem(Enumeration<T> theBoundCode) {
@@ -21,6 +21,11 @@ package ca.uhn.fhir.jpa.entity;
  */
 
 import ca.uhn.fhir.model.api.IQueryParameterType;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.hibernate.search.annotations.ContainedIn;
 import org.hibernate.search.annotations.Field;
 
@@ -33,6 +38,16 @@ public abstract class BaseResourceIndexedSearchParam implements Serializable {
 
 	static final int MAX_SP_NAME = 100;
 
+	/**
+	 * Don't change this without careful consideration. You will break existing hashes!
+	 */
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128(0);
+
+	/**
+	 * Don't make this public 'cause nobody better be able to modify it!
+	 */
+	private static final byte[] DELIMITER_BYTES = "|".getBytes(Charsets.UTF_8);
+
 	private static final long serialVersionUID = 1L;
 
 	// TODO: make this nullable=false and a primitive (written may 2017)
@@ -61,6 +76,18 @@ public abstract class BaseResourceIndexedSearchParam implements Serializable {
 	@Temporal(TemporalType.TIMESTAMP)
 	private Date myUpdated;
 
+	/**
+	 * Subclasses which store precomputed hash columns should override this
+	 * method in order to populate them. This is called by the DAO once the
+	 * resource type, param name and values have all been set, and is also
+	 * invoked immediately prior to persisting the row as a safety net.
+	 */
+	@PrePersist
+	@PreUpdate
+	public void calculateHashes() {
+		// nothing by default
+	}
+
 	protected abstract Long getId();
 
 	public String getParamName() {
@@ -105,4 +132,29 @@ public abstract class BaseResourceIndexedSearchParam implements Serializable {
 	}
 
 	public abstract IQueryParameterType toQueryParameterType();
+
+	/**
+	 * Applies a fast and consistent hashing algorithm to a set of strings
+	 */
+	static long hash(String... theValues) {
+		Hasher hasher = HASH_FUNCTION.newHasher();
+
+		for (String next : theValues) {
+			if (next != null) {
+				hasher.putBytes(next.getBytes(Charsets.UTF_8));
+			}
+			hasher.putBytes(DELIMITER_BYTES);
+		}
+
+		HashCode hashCode = hasher.hash();
+		return hashCode.asLong();
+	}
+
+	/**
+	 * Calculates the hash of the resource type and parameter name. This is
+	 * used to find all index rows for a given search parameter.
+	 */
+	public static long calculateHashIdentity(String theResourceType, String theParamName) {
+		return hash(theResourceType, theParamName);
+	}
 }
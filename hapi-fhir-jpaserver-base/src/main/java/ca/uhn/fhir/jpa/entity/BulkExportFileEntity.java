@@ -0,0 +1,91 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * One NDJSON output file produced by a {@link BulkExportJobEntity bulk export job}
+ */
+@Entity
+@Table(name = "HFJ_BLK_EXPORT_FILE")
+public class BulkExportFileEntity implements Serializable {
+
+	public static final int FILE_PATH_LENGTH = 1000;
+	private static final long serialVersionUID = 1L;
+
+	@Column(name = "FILE_PATH", length = FILE_PATH_LENGTH, nullable = false, updatable = false)
+	private String myFilePath;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_BLKEX_FILE_PID")
+	@SequenceGenerator(name = "SEQ_BLKEX_FILE_PID", sequenceName = "SEQ_BLKEX_FILE_PID")
+	@Column(name = "PID")
+	private Long myId;
+
+	@ManyToOne
+	@JoinColumn(name = "JOB_PID", referencedColumnName = "PID", nullable = false, foreignKey = @ForeignKey(name = "FK_BLKEXFILE_JOB"))
+	private BulkExportJobEntity myJob;
+
+	@Column(name = "RES_COUNT", nullable = false, updatable = false)
+	private long myResourceCount;
+
+	@Column(name = "RES_TYPE", length = ResourceTable.RESTYPE_LEN, nullable = false, updatable = false)
+	private String myResourceType;
+
+	public String getFilePath() {
+		return myFilePath;
+	}
+
+	public void setFilePath(String theFilePath) {
+		myFilePath = theFilePath;
+	}
+
+	public Long getId() {
+		return myId;
+	}
+
+	public BulkExportJobEntity getJob() {
+		return myJob;
+	}
+
+	public void setJob(BulkExportJobEntity theJob) {
+		myJob = theJob;
+	}
+
+	public long getResourceCount() {
+		return myResourceCount;
+	}
+
+	public void setResourceCount(long theResourceCount) {
+		myResourceCount = theResourceCount;
+	}
+
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	public void setResourceType(String theResourceType) {
+		myResourceType = theResourceType;
+	}
+
+}
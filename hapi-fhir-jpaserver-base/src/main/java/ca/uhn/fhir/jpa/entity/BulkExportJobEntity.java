@@ -0,0 +1,163 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+
+import static org.apache.commons.lang3.StringUtils.left;
+
+/**
+ * A request to export resources from the repository as NDJSON files. Jobs are
+ * created when the export is requested and the files are built afterward
+ * by a background task.
+ */
+@Entity
+@Table(name = "HFJ_BLK_EXPORT_JOB", uniqueConstraints = {
+	@UniqueConstraint(name = "IDX_BLKEX_JOB_ID", columnNames = "JOB_ID")
+})
+public class BulkExportJobEntity implements Serializable {
+
+	public static final int RESOURCE_TYPES_LENGTH = 4000;
+	public static final int STATUS_MESSAGE_LENGTH = 500;
+	private static final long serialVersionUID = 1L;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "CREATED", nullable = false, updatable = false)
+	private Date myCreated;
+
+	@OneToMany(fetch = FetchType.LAZY, mappedBy = "myJob")
+	private Collection<BulkExportFileEntity> myFiles;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_BLKEX_JOB_PID")
+	@SequenceGenerator(name = "SEQ_BLKEX_JOB_PID", sequenceName = "SEQ_BLKEX_JOB_PID")
+	@Column(name = "PID")
+	private Long myId;
+
+	@Column(name = "JOB_ID", length = 40, nullable = false, updatable = false)
+	private String myJobId;
+
+	/**
+	 * If <code>true</code>, only resources which are in the compartment of
+	 * at least one Patient are exported (i.e. this is a Patient level export)
+	 */
+	@Column(name = "PATIENT_COMPARTMENT", nullable = true, updatable = false)
+	private Boolean myPatientCompartment;
+
+	/**
+	 * Comma separated list of resource types to export, or <code>null</code>
+	 * to export every resource type in the repository
+	 */
+	@Column(name = "RESOURCE_TYPES", length = RESOURCE_TYPES_LENGTH, nullable = true, updatable = false)
+	private String myResourceTypes;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "EXP_SINCE", nullable = true, updatable = false)
+	private Date mySince;
+
+	@Enumerated(EnumType.STRING)
+	@Column(name = "JOB_STATUS", length = 10, nullable = false)
+	private BulkExportJobStatusEnum myStatus;
+
+	@Column(name = "STATUS_MESSAGE", length = STATUS_MESSAGE_LENGTH, nullable = true)
+	private String myStatusMessage;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "STATUS_TIME", nullable = false)
+	private Date myStatusTime;
+
+	public Date getCreated() {
+		return myCreated;
+	}
+
+	public void setCreated(Date theCreated) {
+		myCreated = theCreated;
+	}
+
+	public Collection<BulkExportFileEntity> getFiles() {
+		if (myFiles == null) {
+			myFiles = new ArrayList<>();
+		}
+		return myFiles;
+	}
+
+	public Long getId() {
+		return myId;
+	}
+
+	public String getJobId() {
+		return myJobId;
+	}
+
+	public void setJobId(String theJobId) {
+		myJobId = theJobId;
+	}
+
+	public boolean isPatientCompartment() {
+		return Boolean.TRUE.equals(myPatientCompartment);
+	}
+
+	public void setPatientCompartment(boolean thePatientCompartment) {
+		myPatientCompartment = thePatientCompartment;
+	}
+
+	public String getResourceTypes() {
+		return myResourceTypes;
+	}
+
+	public void setResourceTypes(String theResourceTypes) {
+		myResourceTypes = theResourceTypes;
+	}
+
+	public Date getSince() {
+		return mySince;
+	}
+
+	public void setSince(Date theSince) {
+		mySince = theSince;
+	}
+
+	public BulkExportJobStatusEnum getStatus() {
+		return myStatus;
+	}
+
+	public void setStatus(BulkExportJobStatusEnum theStatus) {
+		myStatus = theStatus;
+		myStatusTime = new Date();
+	}
+
+	public String getStatusMessage() {
+		return myStatusMessage;
+	}
+
+	public void setStatusMessage(String theStatusMessage) {
+		myStatusMessage = left(theStatusMessage, STATUS_MESSAGE_LENGTH);
+	}
+
+	public Date getStatusTime() {
+		return myStatusTime;
+	}
+
+}
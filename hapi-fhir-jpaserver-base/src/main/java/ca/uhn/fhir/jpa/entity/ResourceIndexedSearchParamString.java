@@ -37,6 +37,8 @@ import javax.persistence.Index;
 @Entity
 @Table(name = "HFJ_SPIDX_STRING", indexes = {
 	@Index(name = "IDX_SP_STRING", columnList = "RES_TYPE,SP_NAME,SP_VALUE_NORMALIZED"),
+	@Index(name = "IDX_SP_STRING_HASH_IDENT", columnList = "HASH_IDENTITY,SP_VALUE_NORMALIZED"),
+	@Index(name = "IDX_SP_STRING_HASH_EXCT", columnList = "HASH_EXACT"),
 	@Index(name = "IDX_SP_STRING_UPDATED", columnList = "SP_UPDATED"),
 	@Index(name = "IDX_SP_STRING_RESID", columnList = "RES_ID")
 })
@@ -116,6 +118,16 @@ public class ResourceIndexedSearchParamString extends BaseResourceIndexedSearchP
 
 	@Column(name = "SP_VALUE_NORMALIZED", length = MAX_LENGTH, nullable = true)
 	private String myValueNormalized;
+	/**
+	 * @since 3.2.0
+	 */
+	@Column(name = "HASH_IDENTITY", nullable = true)
+	private Long myHashIdentity;
+	/**
+	 * @since 3.2.0
+	 */
+	@Column(name = "HASH_EXACT", nullable = true)
+	private Long myHashExact;
 
 	public ResourceIndexedSearchParamString() {
 		super();
@@ -128,6 +140,14 @@ public class ResourceIndexedSearchParamString extends BaseResourceIndexedSearchP
 		setValueExact(theValueExact);
 	}
 
+	@Override
+	public void calculateHashes() {
+		String resourceType = getResourceType();
+		String paramName = getParamName();
+		setHashIdentity(calculateHashIdentity(resourceType, paramName));
+		setHashExact(calculateHashExact(resourceType, paramName, getValueExact()));
+	}
+
 	@Override
 	public boolean equals(Object theObj) {
 		if (this == theObj) {
@@ -144,9 +164,26 @@ public class ResourceIndexedSearchParamString extends BaseResourceIndexedSearchP
 		b.append(getParamName(), obj.getParamName());
 		b.append(getResource(), obj.getResource());
 		b.append(getValueExact(), obj.getValueExact());
+		b.append(getHashExact(), obj.getHashExact());
 		return b.isEquals();
 	}
 
+	public Long getHashExact() {
+		return myHashExact;
+	}
+
+	public void setHashExact(Long theHashExact) {
+		myHashExact = theHashExact;
+	}
+
+	public Long getHashIdentity() {
+		return myHashIdentity;
+	}
+
+	public void setHashIdentity(Long theHashIdentity) {
+		myHashIdentity = theHashIdentity;
+	}
+
 	@Override
 	protected Long getId() {
 		return myId;
@@ -197,4 +234,8 @@ public class ResourceIndexedSearchParamString extends BaseResourceIndexedSearchP
 		return b.build();
 	}
 
+	public static long calculateHashExact(String theResourceType, String theParamName, String theValueExact) {
+		return hash(theResourceType, theParamName, theValueExact);
+	}
+
 }
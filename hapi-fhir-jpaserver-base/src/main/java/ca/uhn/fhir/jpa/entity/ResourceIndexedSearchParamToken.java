@@ -37,6 +37,10 @@ import javax.persistence.*;
 @Table(name = "HFJ_SPIDX_TOKEN", indexes = {
 	@Index(name = "IDX_SP_TOKEN", columnList = "RES_TYPE,SP_NAME,SP_SYSTEM,SP_VALUE"),
 	@Index(name = "IDX_SP_TOKEN_UNQUAL", columnList = "RES_TYPE,SP_NAME,SP_VALUE"),
+	@Index(name = "IDX_SP_TOKEN_HASH", columnList = "HASH_IDENTITY"),
+	@Index(name = "IDX_SP_TOKEN_HASH_S", columnList = "HASH_SYS"),
+	@Index(name = "IDX_SP_TOKEN_HASH_SV", columnList = "HASH_SYS_AND_VALUE"),
+	@Index(name = "IDX_SP_TOKEN_HASH_V", columnList = "HASH_VALUE"),
 	@Index(name = "IDX_SP_TOKEN_UPDATED", columnList = "SP_UPDATED"),
 	@Index(name = "IDX_SP_TOKEN_RESID", columnList = "RES_ID")
 })
@@ -57,6 +61,26 @@ public class ResourceIndexedSearchParamToken extends BaseResourceIndexedSearchPa
 	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_SPIDX_TOKEN")
 	@Column(name = "SP_ID")
 	private Long myId;
+	/**
+	 * @since 3.2.0
+	 */
+	@Column(name = "HASH_IDENTITY", nullable = true)
+	private Long myHashIdentity;
+	/**
+	 * @since 3.2.0
+	 */
+	@Column(name = "HASH_SYS", nullable = true)
+	private Long myHashSystem;
+	/**
+	 * @since 3.2.0
+	 */
+	@Column(name = "HASH_SYS_AND_VALUE", nullable = true)
+	private Long myHashSystemAndValue;
+	/**
+	 * @since 3.2.0
+	 */
+	@Column(name = "HASH_VALUE", nullable = true)
+	private Long myHashValue;
 
 	public ResourceIndexedSearchParamToken() {
 	}
@@ -67,6 +91,18 @@ public class ResourceIndexedSearchParamToken extends BaseResourceIndexedSearchPa
 		setValue(theValue);
 	}
 
+	@Override
+	public void calculateHashes() {
+		String resourceType = getResourceType();
+		String paramName = getParamName();
+		String system = getSystem();
+		String value = getValue();
+		setHashIdentity(calculateHashIdentity(resourceType, paramName));
+		setHashSystem(calculateHashSystem(resourceType, paramName, system));
+		setHashSystemAndValue(calculateHashSystemAndValue(resourceType, paramName, system, value));
+		setHashValue(calculateHashValue(resourceType, paramName, value));
+	}
+
 	@Override
 	public boolean equals(Object theObj) {
 		if (this == theObj) {
@@ -84,9 +120,42 @@ public class ResourceIndexedSearchParamToken extends BaseResourceIndexedSearchPa
 		b.append(getResource(), obj.getResource());
 		b.append(getSystem(), obj.getSystem());
 		b.append(getValue(), obj.getValue());
+		b.append(getHashSystemAndValue(), obj.getHashSystemAndValue());
 		return b.isEquals();
 	}
 
+	public Long getHashIdentity() {
+		return myHashIdentity;
+	}
+
+	public void setHashIdentity(Long theHashIdentity) {
+		myHashIdentity = theHashIdentity;
+	}
+
+	public Long getHashSystem() {
+		return myHashSystem;
+	}
+
+	public void setHashSystem(Long theHashSystem) {
+		myHashSystem = theHashSystem;
+	}
+
+	public Long getHashSystemAndValue() {
+		return myHashSystemAndValue;
+	}
+
+	public void setHashSystemAndValue(Long theHashSystemAndValue) {
+		myHashSystemAndValue = theHashSystemAndValue;
+	}
+
+	public Long getHashValue() {
+		return myHashValue;
+	}
+
+	public void setHashValue(Long theHashValue) {
+		myHashValue = theHashValue;
+	}
+
 	@Override
 	protected Long getId() {
 		return myId;
@@ -132,4 +201,16 @@ public class ResourceIndexedSearchParamToken extends BaseResourceIndexedSearchPa
 		b.append("value", getValue());
 		return b.build();
 	}
+
+	public static long calculateHashSystem(String theResourceType, String theParamName, String theSystem) {
+		return hash(theResourceType, theParamName, theSystem);
+	}
+
+	public static long calculateHashSystemAndValue(String theResourceType, String theParamName, String theSystem, String theValue) {
+		return hash(theResourceType, theParamName, theSystem, theValue);
+	}
+
+	public static long calculateHashValue(String theResourceType, String theParamName, String theValue) {
+		return hash(theResourceType, theParamName, theValue);
+	}
 }
@@ -36,6 +36,8 @@ import javax.persistence.*;
 @Table(name = "HFJ_SPIDX_URI", indexes = {
 	@Index(name = "IDX_SP_URI", columnList = "RES_TYPE,SP_NAME,SP_URI"),
 	@Index(name = "IDX_SP_URI_RESTYPE_NAME", columnList = "RES_TYPE,SP_NAME"),
+	@Index(name = "IDX_SP_URI_HASH_IDENTITY", columnList = "HASH_IDENTITY,SP_URI"),
+	@Index(name = "IDX_SP_URI_HASH_URI", columnList = "HASH_URI"),
 	@Index(name = "IDX_SP_URI_UPDATED", columnList = "SP_UPDATED"),
 	@Index(name = "IDX_SP_URI_COORDS", columnList = "RES_ID")
 })
@@ -56,6 +58,16 @@ public class ResourceIndexedSearchParamUri extends BaseResourceIndexedSearchPara
 	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_SPIDX_URI")
 	@Column(name = "SP_ID")
 	private Long myId;
+	/**
+	 * @since 3.2.0
+	 */
+	@Column(name = "HASH_IDENTITY", nullable = true)
+	private Long myHashIdentity;
+	/**
+	 * @since 3.2.0
+	 */
+	@Column(name = "HASH_URI", nullable = true)
+	private Long myHashUri;
 
 	public ResourceIndexedSearchParamUri() {
 	}
@@ -65,6 +77,14 @@ public class ResourceIndexedSearchParamUri extends BaseResourceIndexedSearchPara
 		setUri(theUri);
 	}
 
+	@Override
+	public void calculateHashes() {
+		String resourceType = getResourceType();
+		String paramName = getParamName();
+		setHashIdentity(calculateHashIdentity(resourceType, paramName));
+		setHashUri(calculateHashUri(resourceType, paramName, getUri()));
+	}
+
 	@Override
 	public boolean equals(Object theObj) {
 		if (this == theObj) {
@@ -81,9 +101,26 @@ public class ResourceIndexedSearchParamUri extends BaseResourceIndexedSearchPara
 		b.append(getParamName(), obj.getParamName());
 		b.append(getResource(), obj.getResource());
 		b.append(getUri(), obj.getUri());
+		b.append(getHashUri(), obj.getHashUri());
 		return b.isEquals();
 	}
 
+	public Long getHashIdentity() {
+		return myHashIdentity;
+	}
+
+	public void setHashIdentity(Long theHashIdentity) {
+		myHashIdentity = theHashIdentity;
+	}
+
+	public Long getHashUri() {
+		return myHashUri;
+	}
+
+	public void setHashUri(Long theHashUri) {
+		myHashUri = theHashUri;
+	}
+
 	@Override
 	protected Long getId() {
 		return myId;
@@ -121,4 +158,8 @@ public class ResourceIndexedSearchParamUri extends BaseResourceIndexedSearchPara
 		return b.toString();
 	}
 
+	public static long calculateHashUri(String theResourceType, String theParamName, String theUri) {
+		return hash(theResourceType, theParamName, theUri);
+	}
+
 }
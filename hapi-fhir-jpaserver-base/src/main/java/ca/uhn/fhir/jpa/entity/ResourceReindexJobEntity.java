@@ -0,0 +1,123 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Tracks the progress of a reindexing job. Resources requiring reindexing
+ * (i.e. with a null index status) are processed in ascending PID order, and
+ * {@link #getThresholdLow() the low threshold} is advanced as each chunk is
+ * completed, so that a job can resume where it left off after a restart.
+ */
+@Entity
+@Table(name = "HFJ_RES_REINDEX_JOB")
+public class ResourceReindexJobEntity implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_RES_REINDEX_JOB")
+	@SequenceGenerator(name = "SEQ_RES_REINDEX_JOB", sequenceName = "SEQ_RES_REINDEX_JOB")
+	@Id
+	@Column(name = "PID")
+	private Long myId;
+
+	@Column(name = "RES_TYPE", nullable = true, length = ResourceTable.RESTYPE_LEN)
+	private String myResourceType;
+
+	@Column(name = "THRESHOLD_LOW", nullable = false)
+	private long myThresholdLow;
+
+	@Column(name = "THRESHOLD_HIGH", nullable = false)
+	private long myThresholdHigh;
+
+	@Column(name = "REINDEX_COUNT", nullable = false)
+	private long myReindexCount;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "CREATED", nullable = false)
+	private Date myCreated;
+
+	public Date getCreated() {
+		return myCreated;
+	}
+
+	public void setCreated(Date theCreated) {
+		myCreated = theCreated;
+	}
+
+	public Long getId() {
+		return myId;
+	}
+
+	public long getReindexCount() {
+		return myReindexCount;
+	}
+
+	public void setReindexCount(long theReindexCount) {
+		myReindexCount = theReindexCount;
+	}
+
+	/**
+	 * The resource type to reindex, or <code>null</code> if this job covers all resource types
+	 */
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	/**
+	 * The resource type to reindex, or <code>null</code> if this job covers all resource types
+	 */
+	public void setResourceType(String theResourceType) {
+		myResourceType = theResourceType;
+	}
+
+	/**
+	 * The highest resource PID (inclusive) covered by this job
+	 */
+	public long getThresholdHigh() {
+		return myThresholdHigh;
+	}
+
+	/**
+	 * The highest resource PID (inclusive) covered by this job
+	 */
+	public void setThresholdHigh(long theThresholdHigh) {
+		myThresholdHigh = theThresholdHigh;
+	}
+
+	/**
+	 * The lowest resource PID (inclusive) which has not yet been processed by this job
+	 */
+	public long getThresholdLow() {
+		return myThresholdLow;
+	}
+
+	/**
+	 * The lowest resource PID (inclusive) which has not yet been processed by this job
+	 */
+	public void setThresholdLow(long theThresholdLow) {
+		myThresholdLow = theThresholdLow;
+	}
+
+}
@@ -195,6 +195,12 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 	@OptimisticLock(excluded = true)
 	private Set<ResourceTag> myTags;
 
+	@Transient
+	private transient boolean myDeferUnresolvedReferences;
+
+	@Transient
+	private transient boolean myHasUnresolvedReferences;
+
 	@Transient
 	private transient boolean myUnchangedInCurrentOperation;
 
@@ -428,6 +434,40 @@ public class ResourceTable extends BaseHasResource implements Serializable {
 		myVersion = theVersion;
 	}
 
+	/**
+	 * Transient (not saved in DB) flag indicating that references to resources which do not exist
+	 * yet should be skipped (and {@link #isHasUnresolvedReferences()} set) instead of failing
+	 * when this resource is indexed. This is used by bulk import, which resolves them in a later pass.
+	 */
+	public boolean isDeferUnresolvedReferences() {
+		return myDeferUnresolvedReferences;
+	}
+
+	/**
+	 * Transient (not saved in DB) flag indicating that references to resources which do not exist
+	 * yet should be skipped (and {@link #isHasUnresolvedReferences()} set) instead of failing
+	 * when this resource is indexed. This is used by bulk import, which resolves them in a later pass.
+	 */
+	public void setDeferUnresolvedReferences(boolean theDeferUnresolvedReferences) {
+		myDeferUnresolvedReferences = theDeferUnresolvedReferences;
+	}
+
+	/**
+	 * Transient (not saved in DB) flag indicating that at least one reference was skipped
+	 * during indexing because of {@link #isDeferUnresolvedReferences()}
+	 */
+	public boolean isHasUnresolvedReferences() {
+		return myHasUnresolvedReferences;
+	}
+
+	/**
+	 * Transient (not saved in DB) flag indicating that at least one reference was skipped
+	 * during indexing because of {@link #isDeferUnresolvedReferences()}
+	 */
+	public void setHasUnresolvedReferences(boolean theHasUnresolvedReferences) {
+		myHasUnresolvedReferences = theHasUnresolvedReferences;
+	}
+
 	public boolean isHasLinks() {
 		return myHasLinks;
 	}
@@ -71,6 +71,19 @@ public class Search implements Serializable {
 	@OneToMany(mappedBy="mySearch")
 	private Collection<SearchInclude> myIncludes;
 
+	@Column(name="KEYSET_PAGED", nullable=true)
+	private Boolean myKeysetPaged;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name="KEYSET_PAGE_LASTUPDATED", nullable=true)
+	private Date myKeysetPageLastUpdated;
+
+	@Column(name="KEYSET_PAGE_OFFSET", nullable=true)
+	private Integer myKeysetPageOffset;
+
+	@Column(name="KEYSET_PAGE_RES_PID", nullable=true)
+	private Long myKeysetPagePid;
+
 	@Temporal(TemporalType.TIMESTAMP)
 	@Column(name="LAST_UPDATED_HIGH", nullable=true, insertable=true, updatable=false)
 	private Date myLastUpdatedHigh;
@@ -94,6 +107,9 @@ public class Search implements Serializable {
 	@OneToMany(mappedBy="mySearch")
 	private Collection<SearchResult> myResults;
 
+	@Column(name="RESULTS_IN_BLOCKS", nullable=true)
+	private Boolean myResultsStoredInBlocks;
+
 	// TODO: change nullable to false after 2.5
 	@NotNull
 	@Temporal(TemporalType.TIMESTAMP)
@@ -252,6 +268,68 @@ public class Search implements Serializable {
 		myResourceType = theResourceType;
 	}
 
+	/**
+	 * Returns <code>true</code> if the results for this search are stored as
+	 * {@link SearchResultBlock compressed blocks} instead of as individual
+	 * {@link SearchResult} rows
+	 */
+	public boolean isResultsStoredInBlocks() {
+		return Boolean.TRUE.equals(myResultsStoredInBlocks);
+	}
+
+	public void setResultsStoredInBlocks(boolean theResultsStoredInBlocks) {
+		myResultsStoredInBlocks = theResultsStoredInBlocks;
+	}
+
+	/**
+	 * Returns <code>true</code> if the results for this search are not stored at
+	 * all, and each page is instead fetched by re-running the search starting after
+	 * the last result of the previous page
+	 */
+	public boolean isKeysetPaged() {
+		return Boolean.TRUE.equals(myKeysetPaged);
+	}
+
+	public void setKeysetPaged(boolean theKeysetPaged) {
+		myKeysetPaged = theKeysetPaged;
+	}
+
+	/**
+	 * For keyset paged searches, returns the last updated time of the last result
+	 * of the most recently served page
+	 */
+	public Date getKeysetPageLastUpdated() {
+		return myKeysetPageLastUpdated;
+	}
+
+	public void setKeysetPageLastUpdated(Date theKeysetPageLastUpdated) {
+		myKeysetPageLastUpdated = theKeysetPageLastUpdated;
+	}
+
+	/**
+	 * For keyset paged searches, returns the offset of the first result after
+	 * the most recently served page
+	 */
+	public Integer getKeysetPageOffset() {
+		return myKeysetPageOffset;
+	}
+
+	public void setKeysetPageOffset(Integer theKeysetPageOffset) {
+		myKeysetPageOffset = theKeysetPageOffset;
+	}
+
+	/**
+	 * For keyset paged searches, returns the PID of the last result of the most
+	 * recently served page
+	 */
+	public Long getKeysetPagePid() {
+		return myKeysetPagePid;
+	}
+
+	public void setKeysetPagePid(Long theKeysetPagePid) {
+		myKeysetPagePid = theKeysetPagePid;
+	}
+
 	public void setSearchLastReturned(Date theDate) {
 		mySearchLastReturned = theDate;
 	}
@@ -48,6 +48,10 @@ public class SearchParam {
 		myParamName = theParamName;
 	}
 
+	public String getResourceName() {
+		return myResourceName;
+	}
+
 	public void setResourceName(String theResourceName) {
 		myResourceName = theResourceName;
 	}
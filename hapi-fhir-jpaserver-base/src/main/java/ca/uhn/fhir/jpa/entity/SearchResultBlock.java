@@ -0,0 +1,115 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.util.PidListCodec;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Stores a contiguous block of the results of a search as a single
+ * compressed row. This is used instead of {@link SearchResult} (which
+ * stores one row per result) when the
+ * {@link ca.uhn.fhir.jpa.dao.DaoConfig#setSearchResultStorage(ca.uhn.fhir.jpa.dao.DaoConfig.SearchResultStorageEnum) search result storage}
+ * is set to {@link ca.uhn.fhir.jpa.dao.DaoConfig.SearchResultStorageEnum#COMPRESSED_BLOCKS}.
+ */
+@Entity
+@Table(name = "HFJ_SEARCH_RESULT_BLOCK", uniqueConstraints = {
+	@UniqueConstraint(name = "IDX_SEARCHRESBLK_OFFSET", columnNames = {"SEARCH_PID", "BLOCK_OFFSET"})
+})
+public class SearchResultBlock implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_SEARCH_RES_BLOCK")
+	@SequenceGenerator(name = "SEQ_SEARCH_RES_BLOCK", sequenceName = "SEQ_SEARCH_RES_BLOCK")
+	@Id
+	@Column(name = "PID")
+	private Long myId;
+
+	@Column(name = "BLOCK_OFFSET", nullable = false, updatable = false)
+	private int myOffset;
+
+	@Column(name = "PID_COUNT", nullable = false)
+	private int myPidCount;
+
+	@Lob
+	@Column(name = "PID_DATA", nullable = false)
+	private byte[] myPidData;
+
+	@ManyToOne
+	@JoinColumn(name = "SEARCH_PID", referencedColumnName = "PID", foreignKey = @ForeignKey(name = "FK_SEARCHRESBLK_SEARCH"))
+	private Search mySearch;
+
+	@Column(name = "SEARCH_PID", insertable = false, updatable = false, nullable = false)
+	private Long mySearchPid;
+
+	/**
+	 * Constructor
+	 */
+	public SearchResultBlock() {
+		// nothing
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param theSearch The search that this block belongs to
+	 * @param theOffset The index within the search results of the first PID in this block
+	 */
+	public SearchResultBlock(Search theSearch, int theOffset) {
+		mySearch = theSearch;
+		myOffset = theOffset;
+	}
+
+	public Long getId() {
+		return myId;
+	}
+
+	/**
+	 * Returns the index within the search results of the first PID in this block
+	 */
+	public int getOffset() {
+		return myOffset;
+	}
+
+	public int getPidCount() {
+		return myPidCount;
+	}
+
+	/**
+	 * Decodes and returns the PIDs stored in this block, in search result order
+	 */
+	public List<Long> getPids() {
+		return PidListCodec.decode(myPidData);
+	}
+
+	/**
+	 * Encodes and stores the given PIDs in this block, replacing any existing contents
+	 */
+	public void setPids(List<Long> thePids) {
+		myPidData = PidListCodec.encode(thePids);
+		myPidCount = thePids.size();
+	}
+
+}
@@ -49,6 +49,13 @@ import ca.uhn.fhir.util.CoverageIgnore;
 public class TermCodeSystemVersion implements Serializable {
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Nullable because code system versions stored before the concept closure
+	 * table existed have no closure at all
+	 */
+	@Column(name = "CLOSURE_COMPLETE", nullable = true)
+	private Boolean myClosureComplete;
+
 	@OneToMany(fetch = FetchType.LAZY, mappedBy = "myCodeSystem")
 	private Collection<TermConcept> myConcepts;
 
@@ -129,6 +136,18 @@ public class TermCodeSystemVersion implements Serializable {
 		return myResourceVersionId;
 	}
 
+	/**
+	 * Returns <code>true</code> once every row of the concept closure
+	 * ({@link TermConceptClosure}) for this version has been stored
+	 */
+	public boolean isClosureComplete() {
+		return Boolean.TRUE.equals(myClosureComplete);
+	}
+
+	public void setClosureComplete(boolean theClosureComplete) {
+		myClosureComplete = theClosureComplete;
+	}
+
 	public void setResource(ResourceTable theResource) {
 		myResource = theResource;
 	}
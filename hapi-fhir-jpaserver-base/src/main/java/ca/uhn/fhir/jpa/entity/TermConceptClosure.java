@@ -0,0 +1,94 @@
+package ca.uhn.fhir.jpa.entity;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * One row of the transitive closure of the concept hierarchy within a code
+ * system version, i.e. one row for every pair of concepts where one is an
+ * ancestor (a parent, a parent of a parent, etc.) of the other. This allows
+ * subsumption lookups to be performed as a single indexed query instead of
+ * walking {@link TermConceptParentChildLink} one level at a time.
+ * <p>
+ * A concept is not stored as its own ancestor.
+ * </p>
+ */
+@Entity
+@Table(name = "TRM_CONCEPT_CLOSURE", uniqueConstraints = {
+	@UniqueConstraint(name = "IDX_CONCEPTCLOSURE_ANC_DESC", columnNames = {"ANCESTOR_PID", "DESCENDANT_PID"})
+}, indexes = {
+	@Index(name = "IDX_CONCEPTCLOSURE_DESC", columnList = "DESCENDANT_PID"),
+	@Index(name = "IDX_CONCEPTCLOSURE_CS", columnList = "CODESYSTEM_PID")
+})
+public class TermConceptClosure implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Column(name = "ANCESTOR_PID", nullable = false, updatable = false)
+	private Long myAncestorPid;
+
+	@Column(name = "CODESYSTEM_PID", nullable = false, updatable = false)
+	private Long myCodeSystemVersionPid;
+
+	@Column(name = "DESCENDANT_PID", nullable = false, updatable = false)
+	private Long myDescendantPid;
+
+	@Id()
+	@SequenceGenerator(name = "SEQ_CONCEPT_CLOSURE_PID", sequenceName = "SEQ_CONCEPT_CLOSURE_PID")
+	@GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_CONCEPT_CLOSURE_PID")
+	@Column(name = "PID")
+	private Long myPid;
+
+	/**
+	 * Constructor
+	 */
+	public TermConceptClosure() {
+		super();
+	}
+
+	/**
+	 * Constructor
+	 */
+	public TermConceptClosure(Long theCodeSystemVersionPid, Long theAncestorPid, Long theDescendantPid) {
+		myCodeSystemVersionPid = theCodeSystemVersionPid;
+		myAncestorPid = theAncestorPid;
+		myDescendantPid = theDescendantPid;
+	}
+
+	public Long getAncestorPid() {
+		return myAncestorPid;
+	}
+
+	public Long getCodeSystemVersionPid() {
+		return myCodeSystemVersionPid;
+	}
+
+	public Long getDescendantPid() {
+		return myDescendantPid;
+	}
+
+	public Long getPid() {
+		return myPid;
+	}
+
+}
@@ -22,6 +22,7 @@ import java.util.Date;
  * #L%
  */
 
+import java.util.Date;
 import java.util.Enumeration;
 import java.util.Set;
 import java.util.TreeSet;
@@ -29,12 +30,20 @@ import java.util.TreeSet;
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseParameters;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.jboss.logging.MDC;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.bulk.IBulkDataExportSvc;
+import ca.uhn.fhir.model.primitive.DateTimeDt;
+import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.util.ParametersUtil;
 
 public class BaseJpaProvider {
 
@@ -56,6 +65,55 @@ public class BaseJpaProvider {
 		endRequest(theRequest.getServletRequest());
 	}
 
+	/**
+	 * Submits a bulk export job and builds the response to the <code>$export</code> operation
+	 *
+	 * @param theTypes        The <code>_type</code> parameter, a comma separated list of resource types (may be null)
+	 * @param theSince        The <code>_since</code> parameter (may be null)
+	 * @param thePatientCompartment If true, only resources in a Patient compartment are exported (i.e. this is <code>Patient/$export</code>)
+	 */
+	protected IBaseParameters doBulkExport(IBulkDataExportSvc theBulkDataExportSvc, String theTypes, String theSince, boolean thePatientCompartment, RequestDetails theRequestDetails) {
+		Set<String> allowedTypes = thePatientCompartment ? theBulkDataExportSvc.getPatientCompartmentResourceTypes() : null;
+		Set<String> types = null;
+		if (StringUtils.isNotBlank(theTypes)) {
+			types = new TreeSet<String>();
+			for (String next : theTypes.split(",")) {
+				next = next.trim();
+				if (StringUtils.isNotBlank(next)) {
+					if (allowedTypes != null && !allowedTypes.contains(next)) {
+						throw new InvalidRequestException("Resource type " + next + " can not be exported by this operation");
+					}
+					types.add(next);
+				}
+			}
+		}
+
+		Date since = null;
+		if (StringUtils.isNotBlank(theSince)) {
+			try {
+				since = new DateTimeDt(theSince).getValue();
+			} catch (Exception e) {
+				throw new InvalidRequestException("Invalid " + Constants.PARAM_SINCE + " value: " + theSince);
+			}
+		}
+
+		IBulkDataExportSvc.JobInfo job = theBulkDataExportSvc.submitJob(types, since, thePatientCompartment);
+
+		String pollLocation = theRequestDetails.getFhirServerBase() + "/" + BaseJpaSystemProvider.BULK_EXPORT_POLL_STATUS + "?" + BaseJpaSystemProvider.BULK_EXPORT_PARAM_JOB_ID + "=" + job.getJobId();
+		if (theRequestDetails.getResponse() != null) {
+			theRequestDetails.getResponse().addHeader(Constants.HEADER_CONTENT_LOCATION, pollLocation);
+		}
+
+		IBaseParameters retVal = ParametersUtil.newInstance(getContext());
+		IPrimitiveType<?> jobId = ParametersUtil.createString(getContext(), job.getJobId());
+		ParametersUtil.addParameterToParameters(getContext(), retVal, jobId, "jobId");
+		IPrimitiveType<?> location = ParametersUtil.createString(getContext(), pollLocation);
+		ParametersUtil.addParameterToParameters(getContext(), retVal, location, "pollLocation");
+		IPrimitiveType<?> transactionTime = ParametersUtil.createString(getContext(), new InstantDt(job.getTransactionTime()).getValueAsString());
+		ParametersUtil.addParameterToParameters(getContext(), retVal, transactionTime, "transactionTime");
+		return retVal;
+	}
+
 	public FhirContext getContext() {
 		return myContext;
 	}
@@ -34,8 +34,16 @@ import ca.uhn.fhir.rest.param.DateRangeParam;
 
 public class BaseJpaSystemProvider<T, MT> extends BaseJpaProvider {
 
+	public static final String BULK_EXPORT = "$export";
+	public static final String BULK_EXPORT_FILE = "$export-file";
+	public static final String BULK_EXPORT_PARAM_FILE_ID = "_fileId";
+	public static final String BULK_EXPORT_PARAM_JOB_ID = "_jobId";
+	public static final String BULK_EXPORT_PARAM_TYPE = "_type";
+	public static final String BULK_EXPORT_POLL_STATUS = "$export-poll-status";
+	public static final String BULK_IMPORT = "$import";
 	public static final String MARK_ALL_RESOURCES_FOR_REINDEXING = "$mark-all-resources-for-reindexing";
 	public static final String PERFORM_REINDEXING_PASS = "$perform-reindexing-pass";
+	public static final String REINDEXING_STATUS = "$reindexing-status";
 
 	private IFhirSystemDao<T, MT> myDao;
 
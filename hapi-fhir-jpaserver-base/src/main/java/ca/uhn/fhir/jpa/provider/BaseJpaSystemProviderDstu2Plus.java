@@ -20,16 +20,209 @@ package ca.uhn.fhir.jpa.provider;
  * #L%
  */
 
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
 import org.hl7.fhir.instance.model.api.IBaseParameters;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.common.base.Charsets;
 
+import ca.uhn.fhir.jpa.bulk.BulkImportOutcome;
+import ca.uhn.fhir.jpa.bulk.IBulkDataExportSvc;
+import ca.uhn.fhir.jpa.search.reindex.IResourceReindexingSvc;
+import ca.uhn.fhir.jpa.search.reindex.ReindexJobStatus;
+import ca.uhn.fhir.model.api.annotation.Description;
+import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.rest.annotation.Operation;
 import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.util.ParametersUtil;
 
 public abstract class BaseJpaSystemProviderDstu2Plus<T, MT> extends BaseJpaSystemProvider<T, MT> {
 
+	@Autowired
+	private IBulkDataExportSvc myBulkDataExportSvc;
+	@Autowired
+	private IResourceReindexingSvc myReindexingSvc;
+
+	/**
+	 * /$export
+	 */
+	@Operation(name=BULK_EXPORT, idempotent=true, returnParameters= {
+		@OperationParam(name="jobId"),
+		@OperationParam(name="pollLocation"),
+		@OperationParam(name="transactionTime")
+	})
+	@Description(shortDefinition="Starts an asynchronous export of the resources on this server as NDJSON files. Poll the returned location for the status and output.")
+	public IBaseResource bulkExport(
+		@Description(shortDefinition="A comma separated list of resource types to export (default is all types)")
+		@OperationParam(name=BULK_EXPORT_PARAM_TYPE, min=0, max=1)
+		String theTypes,
+
+		@Description(shortDefinition="Only export resources updated at or after this time")
+		@OperationParam(name=Constants.PARAM_SINCE, min=0, max=1)
+		String theSince,
+
+		RequestDetails theRequestDetails
+	) {
+		return doBulkExport(myBulkDataExportSvc, theTypes, theSince, false, theRequestDetails);
+	}
+
+	/**
+	 * /$export-poll-status
+	 */
+	@Operation(name=BULK_EXPORT_POLL_STATUS, idempotent=true, returnParameters= {
+		@OperationParam(name="status"),
+		@OperationParam(name="transactionTime"),
+		@OperationParam(name="message", min=0),
+		@OperationParam(name="output", min=0, max=OperationParam.MAX_UNLIMITED)
+	})
+	@Description(shortDefinition="Returns the status of a job started by the $export operation. Once the job is COMPLETE, each output parameter is the URL of one NDJSON file, which may be fetched using the $export-file operation.")
+	public IBaseResource bulkExportPollStatus(
+		@OperationParam(name=BULK_EXPORT_PARAM_JOB_ID, min=1, max=1)
+		String theJobId,
+
+		RequestDetails theRequestDetails
+	) {
+		if (isBlank(theJobId)) {
+			throw new InvalidRequestException("Parameter '" + BULK_EXPORT_PARAM_JOB_ID + "' must be provided");
+		}
+
+		IBulkDataExportSvc.JobInfo job = myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(theJobId);
+
+		IBaseParameters retVal = ParametersUtil.newInstance(getContext());
+		ParametersUtil.addParameterToParameters(getContext(), retVal, ParametersUtil.createString(getContext(), job.getStatus().name()), "status");
+		ParametersUtil.addParameterToParameters(getContext(), retVal, ParametersUtil.createString(getContext(), new InstantDt(job.getTransactionTime()).getValueAsString()), "transactionTime");
+		if (job.getStatusMessage() != null) {
+			ParametersUtil.addParameterToParameters(getContext(), retVal, ParametersUtil.createString(getContext(), job.getStatusMessage()), "message");
+		}
+		for (IBulkDataExportSvc.FileInfo next : job.getFiles()) {
+			String url = theRequestDetails.getFhirServerBase() + "/" + BULK_EXPORT_FILE + "?" + BULK_EXPORT_PARAM_JOB_ID + "=" + job.getJobId() + "&" + BULK_EXPORT_PARAM_FILE_ID + "=" + next.getFileId();
+			ParametersUtil.addParameterToParameters(getContext(), retVal, ParametersUtil.createString(getContext(), url), "output");
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * /$export-file
+	 */
+	@Operation(name=BULK_EXPORT_FILE, idempotent=true, manualResponse=true)
+	@Description(shortDefinition="Streams one output file of a completed $export job as NDJSON. The URLs for these files are returned by $export-poll-status.")
+	public void bulkExportFile(
+		@OperationParam(name=BULK_EXPORT_PARAM_JOB_ID, min=1, max=1)
+		String theJobId,
+
+		@OperationParam(name=BULK_EXPORT_PARAM_FILE_ID, min=1, max=1)
+		String theFileId,
+
+		HttpServletResponse theServletResponse
+	) {
+		if (isBlank(theJobId)) {
+			throw new InvalidRequestException("Parameter '" + BULK_EXPORT_PARAM_JOB_ID + "' must be provided");
+		}
+		Long fileId;
+		try {
+			fileId = Long.parseLong(theFileId);
+		} catch (NumberFormatException e) {
+			throw new InvalidRequestException("Invalid or missing parameter '" + BULK_EXPORT_PARAM_FILE_ID + "': " + theFileId);
+		}
+
+		IBulkDataExportSvc.FileInfo file = myBulkDataExportSvc.getFileOrThrowResourceNotFound(theJobId, fileId);
+		File source = new File(file.getFilePath());
+
+		/*
+		 * The file is copied straight from disk to the client so that large exports
+		 * are never held in memory. Gzipped files are sent as-is with a Content-Encoding
+		 * header, which HTTP clients decode transparently.
+		 */
+		theServletResponse.setStatus(Constants.STATUS_HTTP_200_OK);
+		theServletResponse.setContentType(Constants.CT_FHIR_NDJSON);
+		theServletResponse.setCharacterEncoding(Constants.CHARSET_NAME_UTF8);
+		if (file.isGzipped()) {
+			theServletResponse.addHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
+		}
+		theServletResponse.setContentLength((int) source.length());
+
+		InputStream inputStream = null;
+		try {
+			inputStream = new FileInputStream(source);
+			OutputStream outputStream = theServletResponse.getOutputStream();
+			IOUtils.copy(inputStream, outputStream);
+			outputStream.flush();
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to stream bulk export file " + theFileId + " for job " + theJobId, e);
+		} finally {
+			IOUtils.closeQuietly(inputStream);
+		}
+	}
+
+	/**
+	 * /$import
+	 * <p>
+	 * The request body is the NDJSON to import. It is read as a stream rather than as a
+	 * Parameters resource, so that the whole file never needs to be held in memory.
+	 * </p>
+	 */
+	@Operation(name=BULK_IMPORT, manualRequest=true, returnParameters= {
+		@OperationParam(name="resourceCount"),
+		@OperationParam(name="deferredReferenceCount"),
+		@OperationParam(name="resourcesPerSecond"),
+		@OperationParam(name="failure", min=0, max=OperationParam.MAX_UNLIMITED)
+	})
+	@Description(shortDefinition="Imports resources from the NDJSON request body (one JSON resource per line). References between the imported resources are resolved regardless of the order in which they appear.")
+	public IBaseResource bulkImport(RequestDetails theRequestDetails) {
+		if (theRequestDetails.getRequestType() != RequestTypeEnum.POST) {
+			throw new InvalidRequestException("The " + BULK_IMPORT + " operation must be invoked using a POST with the NDJSON content as the request body");
+		}
+
+		Charset charset = theRequestDetails.getCharset();
+		if (charset == null) {
+			charset = Charsets.UTF_8;
+		}
+
+		BulkImportOutcome outcome;
+		try {
+			Reader reader = new InputStreamReader(theRequestDetails.getInputStream(), charset);
+			try {
+				outcome = getDao().bulkImport(reader, theRequestDetails);
+			} finally {
+				IOUtils.closeQuietly(reader);
+			}
+		} catch (IOException e) {
+			throw new InternalErrorException("Failed to read the " + BULK_IMPORT + " request body: " + e.toString(), e);
+		}
+
+		IBaseParameters retVal = ParametersUtil.newInstance(getContext());
+		ParametersUtil.addParameterToParameters(getContext(), retVal, ParametersUtil.createString(getContext(), Integer.toString(outcome.getResourceCount())), "resourceCount");
+		ParametersUtil.addParameterToParameters(getContext(), retVal, ParametersUtil.createString(getContext(), Integer.toString(outcome.getDeferredReferenceCount())), "deferredReferenceCount");
+		ParametersUtil.addParameterToParameters(getContext(), retVal, ParametersUtil.createString(getContext(), Long.toString(outcome.getResourcesPerSecond())), "resourcesPerSecond");
+		for (BulkImportOutcome.Failure next : outcome.getFailures()) {
+			ParametersUtil.addParameterToParameters(getContext(), retVal, ParametersUtil.createString(getContext(), next.toString()), "failure");
+		}
+
+		return retVal;
+	}
+
 	@Operation(name=MARK_ALL_RESOURCES_FOR_REINDEXING, idempotent=true, returnParameters= {
 		@OperationParam(name="status")
 	})
@@ -63,4 +256,23 @@ public abstract class BaseJpaSystemProviderDstu2Plus<T, MT> extends BaseJpaSyste
 		return retVal;
 	}
 
+	@Operation(name=REINDEXING_STATUS, idempotent=true, returnParameters= {
+		@OperationParam(name="status", max=OperationParam.MAX_UNLIMITED)
+	})
+	public IBaseResource reindexingStatus() {
+		IBaseParameters retVal = ParametersUtil.newInstance(getContext());
+
+		List<ReindexJobStatus> jobs = myReindexingSvc.getJobStatus();
+		if (jobs.isEmpty()) {
+			IPrimitiveType<?> string = ParametersUtil.createString(getContext(), "No active reindexing jobs");
+			ParametersUtil.addParameterToParameters(getContext(), retVal, string, "status");
+		}
+		for (ReindexJobStatus next : jobs) {
+			IPrimitiveType<?> string = ParametersUtil.createString(getContext(), next.toString());
+			ParametersUtil.addParameterToParameters(getContext(), retVal, string, "status");
+		}
+
+		return retVal;
+	}
+
 }
@@ -23,6 +23,8 @@ import java.util.*;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.commons.lang3.tuple.Pair;
+
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.context.RuntimeSearchParam;
@@ -46,7 +48,7 @@ import ca.uhn.fhir.util.ExtensionConstants;
 
 public class JpaConformanceProviderDstu2 extends ServerConformanceProvider {
 
-	private volatile Conformance myCachedValue;
+	private volatile Pair<List<Object>, Conformance> myCachedValue;
 	private DaoConfig myDaoConfig;
 	private String myImplementationDescription;
 	private boolean myIncludeResourceCounts;
@@ -75,18 +77,21 @@ public class JpaConformanceProviderDstu2 extends ServerConformanceProvider {
 		setIncludeResourceCounts(true);
 	}
 
-	@Override
-	public Conformance getServerConformance(HttpServletRequest theRequest) {
-		Conformance retVal = myCachedValue;
-
-		Map<String, Long> counts = Collections.emptyMap();
-		if (myIncludeResourceCounts) {
-			counts = mySystemDao.getResourceCounts();
+	private void addResourceCounts(Conformance theConformance, Map<String, Long> theCounts) {
+		for (Rest nextRest : theConformance.getRest()) {
+			for (RestResource nextResource : nextRest.getResource()) {
+				Long count = theCounts.get(nextResource.getTypeElement().getValueAsString());
+				if (count != null) {
+					nextResource.addUndeclaredExtension(false, ExtensionConstants.CONF_RESOURCE_COUNT, new DecimalDt(count));
+				}
+			}
 		}
+	}
 
+	private Conformance buildServerConformance(HttpServletRequest theRequest) {
 		FhirContext ctx = myRestfulServer.getFhirContext();
 
-		retVal = super.getServerConformance(theRequest);
+		Conformance retVal = super.getServerConformance(theRequest);
 		for (Rest nextRest : retVal.getRest()) {
 
 			for (RestResource nextResource : nextRest.getResource()) {
@@ -96,12 +101,6 @@ public class JpaConformanceProviderDstu2 extends ServerConformanceProvider {
 					nextResource.setConditionalDelete(ConditionalDeleteStatusEnum.SINGLE_DELETES_SUPPORTED);
 				}
 
-				// Add resource counts
-				Long count = counts.get(nextResource.getTypeElement().getValueAsString());
-				if (count != null) {
-					nextResource.addUndeclaredExtension(false, ExtensionConstants.CONF_RESOURCE_COUNT, new DecimalDt(count));
-				}
-
 				// Add chained params
 				for (RestResourceSearchParam nextParam : nextResource.getSearchParam()) {
 					if (nextParam.getTypeElement().getValueAsEnum() == SearchParamTypeEnum.REFERENCE) {
@@ -119,7 +118,41 @@ public class JpaConformanceProviderDstu2 extends ServerConformanceProvider {
 		}
 
 		retVal.getImplementation().setDescription(myImplementationDescription);
-		myCachedValue = retVal;
+
+		return retVal;
+	}
+
+	private List<Object> createCacheKey(HttpServletRequest theRequest) {
+		String serverBase = theRequest != null ? myRestfulServer.getServerBaseForRequest(theRequest) : null;
+		List<Object> retVal = new ArrayList<Object>();
+		retVal.add(serverBase);
+		retVal.add(new ArrayList<Object>(myRestfulServer.getResourceProviders()));
+		retVal.add(new ArrayList<Object>(myRestfulServer.getPlainProviders()));
+		retVal.add(myDaoConfig.isAllowMultipleDelete());
+		retVal.add(myImplementationDescription);
+		return retVal;
+	}
+
+	/**
+	 * Returns a copy of the cached statement, which is only rebuilt when the server base,
+	 * the registered providers or the relevant configuration have changed. The current
+	 * resource counts (if enabled) are added to the copy.
+	 */
+	@Override
+	public Conformance getServerConformance(HttpServletRequest theRequest) {
+		List<Object> cacheKey = createCacheKey(theRequest);
+		Pair<List<Object>, Conformance> cachedValue = myCachedValue;
+		if (cachedValue == null || !cachedValue.getKey().equals(cacheKey)) {
+			cachedValue = Pair.of(cacheKey, buildServerConformance(theRequest));
+			myCachedValue = cachedValue;
+		}
+
+		// Callers are free to modify the statement they are given, so the cached one is never handed out
+		Conformance retVal = new Conformance();
+		myRestfulServer.getFhirContext().newTerser().cloneInto(cachedValue.getValue(), retVal, false);
+		if (myIncludeResourceCounts) {
+			addResourceCounts(retVal, mySystemDao.getResourceCounts());
+		}
 		return retVal;
 	}
 
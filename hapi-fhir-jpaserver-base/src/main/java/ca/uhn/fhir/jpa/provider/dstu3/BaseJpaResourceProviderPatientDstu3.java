@@ -26,7 +26,11 @@ import org.hl7.fhir.dstu3.model.*;
  * #L%
  */
 
+import org.springframework.beans.factory.annotation.Autowired;
+
+import ca.uhn.fhir.jpa.bulk.IBulkDataExportSvc;
 import ca.uhn.fhir.jpa.dao.IFhirResourceDaoPatient;
+import ca.uhn.fhir.jpa.provider.BaseJpaSystemProvider;
 import ca.uhn.fhir.model.api.annotation.Description;
 import ca.uhn.fhir.model.valueset.BundleTypeEnum;
 import ca.uhn.fhir.rest.annotation.*;
@@ -38,6 +42,9 @@ import ca.uhn.fhir.rest.param.*;
 
 public class BaseJpaResourceProviderPatientDstu3 extends JpaResourceProviderDstu3<Patient> {
 
+	@Autowired
+	private IBulkDataExportSvc myBulkDataExportSvc;
+
 	/**
 	 * Patient/123/$everything
 	 * @param theRequestDetails 
@@ -124,6 +131,29 @@ public class BaseJpaResourceProviderPatientDstu3 extends JpaResourceProviderDstu
 
 	}
 
+	/**
+	 * /Patient/$export
+	 */
+	@Operation(name = BaseJpaSystemProvider.BULK_EXPORT, idempotent = true, returnParameters = {
+		@OperationParam(name = "jobId"),
+		@OperationParam(name = "pollLocation"),
+		@OperationParam(name = "transactionTime")
+	})
+	@Description(shortDefinition = "Starts an asynchronous export of all resources in the Patient compartment as NDJSON files. Poll the returned location for the status and output.")
+	public Parameters patientTypeExport(
+		@Description(shortDefinition = "A comma separated list of resource types to export (default is all types in the Patient compartment)")
+		@OperationParam(name = BaseJpaSystemProvider.BULK_EXPORT_PARAM_TYPE, min = 0, max = 1)
+		String theTypes,
+
+		@Description(shortDefinition = "Only export resources updated at or after this time")
+		@OperationParam(name = Constants.PARAM_SINCE, min = 0, max = 1)
+		String theSince,
+
+		RequestDetails theRequestDetails
+	) {
+		return (Parameters) doBulkExport(myBulkDataExportSvc, theTypes, theSince, true, theRequestDetails);
+	}
+
 	private StringAndListParam toStringAndList(List<StringType> theNarrative) {
 		StringAndListParam retVal = new StringAndListParam();
 		if (theNarrative != null) {
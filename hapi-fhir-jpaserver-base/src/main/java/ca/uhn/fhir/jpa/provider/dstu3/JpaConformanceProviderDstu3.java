@@ -19,14 +19,18 @@ package ca.uhn.fhir.jpa.provider.dstu3;
  * limitations under the License.
  * #L%
  */
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.hl7.fhir.dstu3.model.*;
 import org.hl7.fhir.dstu3.model.CapabilityStatement.*;
 import org.hl7.fhir.dstu3.model.Enumerations.SearchParamType;
 
+import com.google.common.hash.Hashing;
+
 import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.context.RuntimeSearchParam;
 import ca.uhn.fhir.jpa.dao.DaoConfig;
@@ -37,7 +41,7 @@ import ca.uhn.fhir.util.ExtensionConstants;
 
 public class JpaConformanceProviderDstu3 extends org.hl7.fhir.dstu3.hapi.rest.server.ServerCapabilityStatementProvider {
 
-	private volatile CapabilityStatement myCachedValue;
+	private volatile Pair<List<Object>, CapabilityStatement> myCachedValue;
 	private DaoConfig myDaoConfig;
 	private String myImplementationDescription;
 	private boolean myIncludeResourceCounts;
@@ -66,16 +70,19 @@ public class JpaConformanceProviderDstu3 extends org.hl7.fhir.dstu3.hapi.rest.se
 		setIncludeResourceCounts(true);
 	}
 
-	@Override
-	public CapabilityStatement getServerConformance(HttpServletRequest theRequest) {
-		CapabilityStatement retVal = myCachedValue;
-
-		Map<String, Long> counts = Collections.emptyMap();
-		if (myIncludeResourceCounts) {
-			counts = mySystemDao.getResourceCounts();
+	private void addResourceCounts(CapabilityStatement theStatement, Map<String, Long> theCounts) {
+		for (CapabilityStatementRestComponent nextRest : theStatement.getRest()) {
+			for (CapabilityStatementRestResourceComponent nextResource : nextRest.getResource()) {
+				Long count = theCounts.get(nextResource.getTypeElement().getValueAsString());
+				if (count != null) {
+					nextResource.addExtension(new Extension(ExtensionConstants.CONF_RESOURCE_COUNT, new DecimalType(count)));
+				}
+			}
 		}
+	}
 
-		retVal = super.getServerConformance(theRequest);
+	private CapabilityStatement buildServerConformance(HttpServletRequest theRequest) {
+		CapabilityStatement retVal = super.getServerConformance(theRequest);
 		for (CapabilityStatementRestComponent nextRest : retVal.getRest()) {
 
 			for (CapabilityStatementRestResourceComponent nextResource : nextRest.getResource()) {
@@ -87,12 +94,6 @@ public class JpaConformanceProviderDstu3 extends org.hl7.fhir.dstu3.hapi.rest.se
 					nextResource.setConditionalDelete(ConditionalDeleteStatus.SINGLE);
 				}
 
-				// Add resource counts
-				Long count = counts.get(nextResource.getTypeElement().getValueAsString());
-				if (count != null) {
-					nextResource.addExtension(new Extension(ExtensionConstants.CONF_RESOURCE_COUNT, new DecimalType(count)));
-				}
-
 				nextResource.getSearchParam().clear();
 				String resourceName = nextResource.getType();
 				RuntimeResourceDefinition resourceDef = myRestfulServer.getFhirContext().getResourceDefinition(resourceName);
@@ -141,7 +142,54 @@ public class JpaConformanceProviderDstu3 extends org.hl7.fhir.dstu3.hapi.rest.se
 		massage(retVal);
 		
 		retVal.getImplementation().setDescription(myImplementationDescription);
-		myCachedValue = retVal;
+
+		/*
+		 * Use a hash of the contents as the version so that the server can hand out
+		 * an ETag and answer conditional requests with a 304. The resource counts
+		 * aren't added yet at this point; they are folded into the version of each
+		 * copy as it is handed out.
+		 */
+		String encoded = myRestfulServer.getFhirContext().newJsonParser().encodeResourceToString(retVal);
+		retVal.getMeta().setVersionId(Hashing.murmur3_128().hashString(encoded, StandardCharsets.UTF_8).toString());
+
+		return retVal;
+	}
+
+	private List<Object> createCacheKey(HttpServletRequest theRequest) {
+		String serverBase = theRequest != null ? myRestfulServer.getServerBaseForRequest(theRequest) : null;
+		List<Object> retVal = new ArrayList<Object>();
+		retVal.add(serverBase);
+		retVal.add(mySystemDao.getActiveSearchParams());
+		retVal.add(new ArrayList<Object>(myRestfulServer.getResourceProviders()));
+		retVal.add(new ArrayList<Object>(myRestfulServer.getPlainProviders()));
+		retVal.add(myDaoConfig.isAllowMultipleDelete());
+		retVal.add(myImplementationDescription);
+		return retVal;
+	}
+
+	/**
+	 * Returns a copy of the cached statement, which is only rebuilt when the server base, the
+	 * active search parameters, the registered providers or the relevant configuration have
+	 * changed. The current resource counts (if enabled) are added to the copy, and are
+	 * included in its <code>meta.versionId</code> so that the ETag changes along with them.
+	 */
+	@Override
+	public CapabilityStatement getServerConformance(HttpServletRequest theRequest) {
+		List<Object> cacheKey = createCacheKey(theRequest);
+		Pair<List<Object>, CapabilityStatement> cachedValue = myCachedValue;
+		if (cachedValue == null || !cachedValue.getKey().equals(cacheKey)) {
+			cachedValue = Pair.of(cacheKey, buildServerConformance(theRequest));
+			myCachedValue = cachedValue;
+		}
+
+		// Callers are free to modify the statement they are given, so the cached one is never handed out
+		CapabilityStatement retVal = cachedValue.getValue().copy();
+		if (myIncludeResourceCounts) {
+			Map<String, Long> counts = new TreeMap<String, Long>(mySystemDao.getResourceCounts());
+			addResourceCounts(retVal, counts);
+			String versionId = retVal.getMeta().getVersionId() + counts;
+			retVal.getMeta().setVersionId(Hashing.murmur3_128().hashString(versionId, StandardCharsets.UTF_8).toString());
+		}
 		return retVal;
 	}
 
@@ -150,7 +198,10 @@ public class JpaConformanceProviderDstu3 extends org.hl7.fhir.dstu3.hapi.rest.se
 	}
 	
 	/**
-	 * Subclasses may override
+	 * Subclasses may override. Note that the statement is cached, so this method
+	 * is only called when the statement is rebuilt (i.e. when the active search
+	 * parameters or the registered providers have changed), and the resource counts
+	 * have not been added to the statement yet when it is called.
 	 */
 	protected void massage(CapabilityStatement theStatement) {
 		// nothing
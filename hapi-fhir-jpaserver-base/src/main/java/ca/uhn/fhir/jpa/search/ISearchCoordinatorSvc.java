@@ -22,8 +22,10 @@ package ca.uhn.fhir.jpa.search;
 
 import ca.uhn.fhir.jpa.dao.IDao;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
+import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.rest.api.CacheControlDirective;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 
 import java.util.List;
 
@@ -33,6 +35,14 @@ public interface ISearchCoordinatorSvc {
 
 	List<Long> getResources(String theUuid, int theFrom, int theTo);
 
-	IBundleProvider registerSearch(IDao theCallingDao, SearchParameterMap theParams, String theResourceType, CacheControlDirective theCacheControlDirective);
+	/**
+	 * Returns the PIDs for a page of a search whose results are not stored, by
+	 * running the search starting after the last result of the previous page
+	 *
+	 * @see Search#isKeysetPaged()
+	 */
+	List<Long> getResourcesForKeysetPagedSearch(IDao theCallingDao, Search theSearch, int theFrom, int theTo);
+
+	IBundleProvider registerSearch(IDao theCallingDao, SearchParameterMap theParams, String theResourceType, CacheControlDirective theCacheControlDirective, RequestDetails theRequestDetails);
 
 }
@@ -0,0 +1,63 @@
+package ca.uhn.fhir.jpa.search;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Notifies threads which are waiting for more results from a search that
+ * the search has made progress (i.e. more results have been stored
+ * in the database, or the search has completed or failed).
+ * <p>
+ * The search coordinator uses this when a page of results is requested
+ * for a search that is not running on the local node (e.g. in a clustered
+ * environment where a different node is performing the search). The default
+ * implementation, {@link SearchProgressNotifierLocal}, only delivers
+ * notifications within a single JVM. Clustered deployments may supply
+ * their own implementation (e.g. backed by a message broker) as a
+ * Spring bean of this type.
+ * </p>
+ * <p>
+ * Implementations are not required to guarantee delivery. Waiting threads
+ * always re-check the search in the database after being woken up, and
+ * will also wake up on their own after a timeout.
+ * </p>
+ */
+public interface ISearchProgressNotifier {
+
+	/**
+	 * Blocks the calling thread until {@link #notifySearchProgress(String)} is
+	 * called for the given search, or until the given number of milliseconds
+	 * have elapsed.
+	 *
+	 * @param theSearchUuid The search UUID
+	 * @param theMaxMillis  The maximum amount of time to wait
+	 */
+	void awaitSearchProgress(String theSearchUuid, long theMaxMillis) throws InterruptedException;
+
+	/**
+	 * Called by the node performing a search each time that new results
+	 * have been committed to the database, or when the search status
+	 * changes.
+	 *
+	 * @param theSearchUuid The search UUID
+	 */
+	void notifySearchProgress(String theSearchUuid);
+
+}
@@ -119,7 +119,12 @@ public class PersistedJpaBundleProvider implements IBundleProvider {
 		Class<? extends IBaseResource> resourceType = myContext.getResourceDefinition(resourceName).getImplementingClass();
 		sb.setType(resourceType, resourceName);
 
-		final List<Long> pidsSubList = mySearchCoordinatorSvc.getResources(myUuid, theFromIndex, theToIndex);
+		final List<Long> pidsSubList;
+		if (mySearchEntity.isKeysetPaged()) {
+			pidsSubList = mySearchCoordinatorSvc.getResourcesForKeysetPagedSearch(myDao, mySearchEntity, theFromIndex, theToIndex);
+		} else {
+			pidsSubList = mySearchCoordinatorSvc.getResources(myUuid, theFromIndex, theToIndex);
+		}
 
 		TransactionTemplate template = new TransactionTemplate(myPlatformTransactionManager);
 		template.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRED);
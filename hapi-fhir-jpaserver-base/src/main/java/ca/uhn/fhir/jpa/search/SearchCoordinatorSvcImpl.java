@@ -21,31 +21,41 @@ package ca.uhn.fhir.jpa.search;
  */
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.IDao;
 import ca.uhn.fhir.jpa.dao.ISearchBuilder;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
 import ca.uhn.fhir.jpa.dao.data.ISearchDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchIncludeDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultBlockDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
 import ca.uhn.fhir.jpa.entity.*;
 import ca.uhn.fhir.jpa.util.StopWatch;
+import ca.uhn.fhir.jpa.util.TimingStatistics;
 import ca.uhn.fhir.model.api.Include;
 import ca.uhn.fhir.rest.api.CacheControlDirective;
 import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SortOrderEnum;
+import ca.uhn.fhir.rest.api.SortSpec;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.SimpleBundleProvider;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
 import ca.uhn.fhir.rest.server.method.PageMethodBinding;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.commons.lang3.time.DateUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.http.NameValuePair;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -59,6 +69,8 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.persistence.EntityManager;
@@ -67,6 +79,12 @@ import java.util.concurrent.*;
 
 public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	public static final int DEFAULT_SYNC_SIZE = 250;
+	/**
+	 * When waiting for results from a search that is running on a different
+	 * node, this is the longest we'll wait before re-checking the database
+	 * in case a progress notification was not delivered
+	 */
+	public static final long DEFAULT_REMOTE_RESULTS_RECHECK_MILLIS = 500;
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchCoordinatorSvcImpl.class);
 	private final ConcurrentHashMap<String, SearchTask> myIdToSearchTask = new ConcurrentHashMap<String, SearchTask>();
@@ -80,6 +98,11 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	private Integer myLoadingThrottleForUnitTests = null;
 	private long myMaxMillisToWaitForRemoteResults = DateUtils.MILLIS_PER_MINUTE;
 	private boolean myNeverUseLocalSearchForUnitTests;
+	private final TimingStatistics myPageWaitStatistics = new TimingStatistics();
+	@Autowired(required = false)
+	private ISearchProgressNotifier mySearchProgressNotifier = new SearchProgressNotifierLocal();
+	private long myRemoteResultsRecheckMillis = DEFAULT_REMOTE_RESULTS_RECHECK_MILLIS;
+	private final SearchScheduler myScheduler;
 	@Autowired
 	private ISearchDao mySearchDao;
 	@Autowired
@@ -87,6 +110,8 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	@Autowired
 	private ISearchResultDao mySearchResultDao;
 	@Autowired
+	private ISearchResultBlockDao mySearchResultBlockDao;
+	@Autowired
 	private PlatformTransactionManager myManagedTxManager;
 
 	private int mySyncSize = DEFAULT_SYNC_SIZE;
@@ -97,6 +122,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	public SearchCoordinatorSvcImpl() {
 		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("search_coord_");
 		myExecutor = Executors.newCachedThreadPool(threadFactory);
+		myScheduler = new SearchScheduler(myExecutor);
 	}
 
 	@Override
@@ -126,6 +152,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 
 		Search search;
 		StopWatch sw = new StopWatch();
+		boolean waited = false;
 		while (true) {
 
 			search = txTemplate.execute(new TransactionCallback<Search>() {
@@ -151,24 +178,36 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 				break;
 			}
 
-			if (sw.getMillis() > myMaxMillisToWaitForRemoteResults) {
+			long remainingMillis = myMaxMillisToWaitForRemoteResults - sw.getMillis();
+			if (remainingMillis <= 0) {
+				myPageWaitStatistics.addTiming(sw.getMillis());
 				throw new InternalErrorException("Request timed out after " + sw.getMillis() + "ms");
 			}
 
+			waited = true;
 			try {
-				Thread.sleep(500);
+				mySearchProgressNotifier.awaitSearchProgress(theUuid, Math.min(remainingMillis, myRemoteResultsRecheckMillis));
 			} catch (InterruptedException e) {
 				// ignore
 			}
 		}
 
+		if (waited) {
+			myPageWaitStatistics.addTiming(sw.getMillis());
+			ourLog.debug("Waited {}ms for results from search {}", sw.getMillis(), theUuid);
+		}
+
+		final Search foundSearch = search;
+
+		if (foundSearch.isResultsStoredInBlocks()) {
+			return readResultsFromBlocks(txTemplate, foundSearch, theFrom, theTo);
+		}
+
 		final Pageable page = toPage(theFrom, theTo);
 		if (page == null) {
 			return Collections.emptyList();
 		}
 
-		final Search foundSearch = search;
-
 		List<Long> retVal = txTemplate.execute(new TransactionCallback<List<Long>>() {
 			@Override
 			public List<Long> doInTransaction(TransactionStatus theStatus) {
@@ -183,6 +222,177 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		return retVal;
 	}
 
+	@Override
+	public List<Long> getResourcesForKeysetPagedSearch(final IDao theCallingDao, final Search theSearch, int theFrom, int theTo) {
+		Validate.isTrue(theSearch.isKeysetPaged(), "Search %s is not keyset paged", theSearch.getUuid());
+		if (theTo <= theFrom) {
+			return Collections.emptyList();
+		}
+
+		/*
+		 * Start from the page boundary stored on the search, which is normally the end
+		 * of the previous page (no matter which server served it). If the requested page
+		 * starts before that boundary we start from the beginning and skip over the
+		 * results before the page.
+		 */
+		final Pair<Long, Date> after;
+		final int skip;
+		Integer boundaryOffset = theSearch.getKeysetPageOffset();
+		if (boundaryOffset != null && boundaryOffset <= theFrom) {
+			after = Pair.of(theSearch.getKeysetPagePid(), theSearch.getKeysetPageLastUpdated());
+			skip = theFrom - boundaryOffset;
+		} else {
+			after = null;
+			skip = theFrom;
+		}
+		final int count = theTo - theFrom;
+		final int from = theFrom;
+
+		TransactionTemplate txTemplate = new TransactionTemplate(myManagedTxManager);
+		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRED);
+		List<Pair<Long, Date>> page = txTemplate.execute(new TransactionCallback<List<Pair<Long, Date>>>() {
+			@Override
+			public List<Pair<Long, Date>> doInTransaction(TransactionStatus theStatus) {
+				SearchParameterMap params = parseKeysetPagedSearchParams(theCallingDao, theSearch.getResourceType(), theSearch.getSearchQueryString());
+				Class<? extends IBaseResource> resourceTypeClass = myContext.getResourceDefinition(theSearch.getResourceType()).getImplementingClass();
+				ISearchBuilder sb = theCallingDao.newSearchBuilder();
+				sb.setType(resourceTypeClass, theSearch.getResourceType());
+				List<Pair<Long, Date>> retVal = sb.loadKeysetPage(params, after, skip, count);
+
+				// Store the end of this page so that the next page can start from it
+				if (retVal.size() > 0) {
+					Pair<Long, Date> last = retVal.get(retVal.size() - 1);
+					theSearch.setKeysetPageOffset(from + retVal.size());
+					theSearch.setKeysetPagePid(last.getLeft());
+					theSearch.setKeysetPageLastUpdated(last.getRight());
+					mySearchDao.updateKeysetPageBoundary(theSearch.getId(), from + retVal.size(), last.getLeft(), last.getRight());
+				}
+
+				return retVal;
+			}
+		});
+
+		List<Long> retVal = new ArrayList<>(page.size());
+		for (Pair<Long, Date> next : page) {
+			retVal.add(next.getLeft());
+		}
+
+		ourLog.debug("Loaded {} results for keyset paged search {} starting {} after {}", retVal.size(), theSearch.getUuid(), skip, after);
+		return retVal;
+	}
+
+	/**
+	 * Returns statistics about how long page requests have spent waiting
+	 * for a search to find enough results to fill the requested page. Page
+	 * requests which did not need to wait are not included.
+	 */
+	public TimingStatistics getPageWaitStatistics() {
+		return myPageWaitStatistics;
+	}
+
+	/**
+	 * Returns the scheduler which limits how many searches may execute at the same time,
+	 * e.g. in order to expose its queue length and timing statistics
+	 */
+	public SearchScheduler getSearchScheduler() {
+		return getScheduler();
+	}
+
+	/**
+	 * Returns the scheduler, with the limits from the {@link DaoConfig} applied (these
+	 * may be changed at runtime)
+	 */
+	private SearchScheduler getScheduler() {
+		myScheduler.setLimits(myDaoConfig.getMaximumConcurrentSearches(), myDaoConfig.getMaximumQueuedSearches(), myDaoConfig.getSearchQueueMaxWaitMillis(), myDaoConfig.getSearchQueueFullPolicy(), myDaoConfig.getSearchRetryAfterSeconds());
+		return myScheduler;
+	}
+
+	/**
+	 * Queued asynchronous searches are started round-robin across these keys, so
+	 * that one client issuing many searches doesn't hold up everyone else
+	 */
+	private static String createFairnessKey(RequestDetails theRequestDetails, String theResourceType) {
+		String client = "";
+		if (theRequestDetails instanceof ServletRequestDetails) {
+			ServletRequestDetails servletRequestDetails = (ServletRequestDetails) theRequestDetails;
+			if (servletRequestDetails.getServletRequest() != null) {
+				client = ObjectUtils.defaultIfNull(servletRequestDetails.getServletRequest().getRemoteAddr(), "");
+			}
+		}
+		return client + "/" + theResourceType;
+	}
+
+	private List<Long> readResultsFromBlocks(TransactionTemplate theTxTemplate, final Search theSearch, final int theFrom, final int theTo) {
+		if (theTo <= theFrom) {
+			return Collections.emptyList();
+		}
+
+		return theTxTemplate.execute(new TransactionCallback<List<Long>>() {
+			@Override
+			public List<Long> doInTransaction(TransactionStatus theStatus) {
+				final List<Long> resultPids = new ArrayList<Long>();
+				List<SearchResultBlock> blocks = mySearchResultBlockDao.findForSearchInRange(theSearch.getId(), theFrom, theTo);
+				for (SearchResultBlock nextBlock : blocks) {
+					List<Long> nextPids = nextBlock.getPids();
+					int start = Math.max(theFrom - nextBlock.getOffset(), 0);
+					int end = Math.min(theTo - nextBlock.getOffset(), nextPids.size());
+					if (start < end) {
+						resultPids.addAll(nextPids.subList(start, end));
+					}
+				}
+				return resultPids;
+			}
+		});
+	}
+
+	/**
+	 * Keyset paged searches don't store anything but the normalized query string, so
+	 * we can only use keyset paging if the search parameters can be recreated from it
+	 */
+	private boolean isKeysetPagingSupported(IDao theCallingDao, SearchParameterMap theParams, String theResourceType, String theQueryString) {
+		SortSpec sort = theParams.getSort();
+		if (sort == null || !Constants.PARAM_LASTUPDATED.equals(sort.getParamName()) || sort.getChain() != null) {
+			return false;
+		}
+		if (theParams.getEverythingMode() != null) {
+			return false;
+		}
+		if (theParams.containsKey(Constants.PARAM_CONTENT) || theParams.containsKey(Constants.PARAM_TEXT)) {
+			return false;
+		}
+
+		SearchParameterMap parsed;
+		try {
+			parsed = parseKeysetPagedSearchParams(theCallingDao, theResourceType, theQueryString);
+		} catch (RuntimeException e) {
+			ourLog.debug("Can not use keyset paging for query {}: {}", theQueryString, e.toString());
+			return false;
+		}
+		parsed.setIncludes(theParams.getIncludes());
+		parsed.setRevIncludes(theParams.getRevIncludes());
+		return theQueryString.equals(parsed.toNormalizedQueryString(myContext));
+	}
+
+	/**
+	 * Recreates the search parameters for a keyset paged search from its normalized
+	 * query string. Includes are not recreated since they are stored separately.
+	 */
+	private SearchParameterMap parseKeysetPagedSearchParams(IDao theCallingDao, String theResourceType, String theQueryString) {
+		RuntimeResourceDefinition resourceDef = myContext.getResourceDefinition(theResourceType);
+		SearchParameterMap retVal = BaseHapiFhirDao.translateMatchUrl(theCallingDao, myContext, theQueryString, resourceDef);
+		for (NameValuePair next : BaseHapiFhirDao.translateMatchUrl(theQueryString)) {
+			if (Constants.PARAM_SORT.equals(next.getName())) {
+				String value = next.getValue();
+				if (value.startsWith("-")) {
+					retVal.setSort(new SortSpec(value.substring(1), SortOrderEnum.DESC));
+				} else {
+					retVal.setSort(new SortSpec(value, SortOrderEnum.ASC));
+				}
+			}
+		}
+		return retVal;
+	}
+
 	private void populateBundleProvider(PersistedJpaBundleProvider theRetVal) {
 		theRetVal.setContext(myContext);
 		theRetVal.setEntityManager(myEntityManager);
@@ -192,7 +402,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 	}
 
 	@Override
-	public IBundleProvider registerSearch(final IDao theCallingDao, final SearchParameterMap theParams, String theResourceType, CacheControlDirective theCacheControlDirective) {
+	public IBundleProvider registerSearch(final IDao theCallingDao, final SearchParameterMap theParams, String theResourceType, CacheControlDirective theCacheControlDirective, RequestDetails theRequestDetails) {
 		StopWatch w = new StopWatch();
 		final String searchUuid = UUID.randomUUID().toString();
 
@@ -223,42 +433,48 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			// Execute the query and make sure we return distinct results
 			TransactionTemplate txTemplate = new TransactionTemplate(myManagedTxManager);
 			txTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRED);
-			return txTemplate.execute(new TransactionCallback<SimpleBundleProvider>() {
-				@Override
-				public SimpleBundleProvider doInTransaction(TransactionStatus theStatus) {
+			SearchScheduler scheduler = getScheduler();
+			scheduler.beginSynchronous();
+			try {
+				return txTemplate.execute(new TransactionCallback<SimpleBundleProvider>() {
+					@Override
+					public SimpleBundleProvider doInTransaction(TransactionStatus theStatus) {
 
-					// Load the results synchronously
-					final List<Long> pids = new ArrayList<Long>();
+						// Load the results synchronously
+						final List<Long> pids = new ArrayList<Long>();
 
-					Iterator<Long> resultIter = sb.createQuery(theParams, searchUuid);
-					while (resultIter.hasNext()) {
-						pids.add(resultIter.next());
-						if (loadSynchronousUpTo != null && pids.size() >= loadSynchronousUpTo) {
-							break;
-						}
-						if (theParams.getLoadSynchronousUpTo() != null && pids.size() >= theParams.getLoadSynchronousUpTo()) {
-							break;
+						Iterator<Long> resultIter = sb.createQuery(theParams, searchUuid);
+						while (resultIter.hasNext()) {
+							pids.add(resultIter.next());
+							if (loadSynchronousUpTo != null && pids.size() >= loadSynchronousUpTo) {
+								break;
+							}
+							if (theParams.getLoadSynchronousUpTo() != null && pids.size() >= theParams.getLoadSynchronousUpTo()) {
+								break;
+							}
 						}
-					}
 
-					/*
-					 * For synchronous queries, we load all the includes right away
-					 * since we're returning a static bundle with all the results
-					 * pre-loaded. This is ok because syncronous requests are not
-					 * expected to be paged
-					 * 
-					 * On the other hand for async queries we load includes/revincludes
-					 * individually for pages as we return them to clients
-					 */
-					final Set<Long> includedPids = new HashSet<Long>();
-					includedPids.addAll(sb.loadReverseIncludes(theCallingDao, myContext, myEntityManager, pids, theParams.getRevIncludes(), true, theParams.getLastUpdated()));
-					includedPids.addAll(sb.loadReverseIncludes(theCallingDao, myContext, myEntityManager, pids, theParams.getIncludes(), false, theParams.getLastUpdated()));
-
-					List<IBaseResource> resources = new ArrayList<IBaseResource>();
-					sb.loadResourcesByPid(pids, resources, includedPids, false, myEntityManager, myContext, theCallingDao);
-					return new SimpleBundleProvider(resources);
-				}
-			});
+						/*
+						 * For synchronous queries, we load all the includes right away
+						 * since we're returning a static bundle with all the results
+						 * pre-loaded. This is ok because syncronous requests are not
+						 * expected to be paged
+						 * 
+						 * On the other hand for async queries we load includes/revincludes
+						 * individually for pages as we return them to clients
+						 */
+						final Set<Long> includedPids = new HashSet<Long>();
+						includedPids.addAll(sb.loadReverseIncludes(theCallingDao, myContext, myEntityManager, pids, theParams.getRevIncludes(), true, theParams.getLastUpdated()));
+						includedPids.addAll(sb.loadReverseIncludes(theCallingDao, myContext, myEntityManager, pids, theParams.getIncludes(), false, theParams.getLastUpdated()));
+
+						List<IBaseResource> resources = new ArrayList<IBaseResource>();
+						sb.loadResourcesByPid(pids, resources, includedPids, false, myEntityManager, myContext, theCallingDao);
+						return new SimpleBundleProvider(resources);
+					}
+				});
+			} finally {
+				scheduler.endSynchronous();
+			}
 		}
 
 		/*
@@ -324,6 +540,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		search.setLastUpdated(theParams.getLastUpdated());
 		search.setResourceType(theResourceType);
 		search.setStatus(SearchStatusEnum.LOADING);
+		search.setResultsStoredInBlocks(myDaoConfig.getSearchResultStorage() == DaoConfig.SearchResultStorageEnum.COMPRESSED_BLOCKS);
 
 		search.setSearchQueryString(queryString);
 		search.setSearchQueryStringHash(queryString.hashCode());
@@ -335,9 +552,45 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			search.getIncludes().add(new SearchInclude(search, next.getValue(), true, next.isRecurse()));
 		}
 
+		/*
+		 * Searches sorted only by _lastUpdated can be paged without storing their
+		 * results, since each page can be found by starting after the last
+		 * result of the page before it
+		 */
+		if (myDaoConfig.isKeysetPagingEnabled() && isKeysetPagingSupported(theCallingDao, theParams, theResourceType, queryString)) {
+			ourLog.debug("Search {} will be keyset paged", searchUuid);
+			search.setKeysetPaged(true);
+			search.setStatus(SearchStatusEnum.FINISHED);
+
+			final Search keysetSearch = search;
+			TransactionTemplate txTemplate = new TransactionTemplate(myManagedTxManager);
+			txTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+			txTemplate.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+					mySearchDao.save(keysetSearch);
+					for (SearchInclude next : keysetSearch.getIncludes()) {
+						mySearchIncludeDao.save(next);
+					}
+				}
+			});
+
+			PersistedJpaBundleProvider retVal = new PersistedJpaBundleProvider(searchUuid, theCallingDao);
+			populateBundleProvider(retVal);
+			retVal.setSearchEntity(keysetSearch);
+
+			ourLog.info("Search initial phase completed in {}ms", w.getMillis());
+			return retVal;
+		}
+
 		SearchTask task = new SearchTask(search, theCallingDao, theParams, theResourceType, searchUuid);
 		myIdToSearchTask.put(search.getUuid(), task);
-		myExecutor.submit(task);
+		try {
+			getScheduler().submitAsynchronous(createFairnessKey(theRequestDetails, theResourceType), task);
+		} catch (RuntimeException e) {
+			myIdToSearchTask.remove(search.getUuid());
+			throw e;
+		}
 
 		PersistedJpaSearchFirstPageBundleProvider retVal = new PersistedJpaSearchFirstPageBundleProvider(search, theCallingDao, task, sb, myManagedTxManager);
 		populateBundleProvider(retVal);
@@ -372,6 +625,16 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		myMaxMillisToWaitForRemoteResults = theMaxMillisToWaitForRemoteResults;
 	}
 
+	@VisibleForTesting
+	void setRemoteResultsRecheckMillisForUnitTest(long theRemoteResultsRecheckMillis) {
+		myRemoteResultsRecheckMillis = theRemoteResultsRecheckMillis;
+	}
+
+	@VisibleForTesting
+	void setSearchProgressNotifierForUnitTest(ISearchProgressNotifier theSearchProgressNotifier) {
+		mySearchProgressNotifier = theSearchProgressNotifier;
+	}
+
 	@VisibleForTesting
 	public void setNeverUseLocalSearchForUnitTests(boolean theNeverUseLocalSearchForUnitTests) {
 		myNeverUseLocalSearchForUnitTests = theNeverUseLocalSearchForUnitTests;
@@ -387,6 +650,11 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		mySearchIncludeDao = theSearchIncludeDao;
 	}
 
+	@VisibleForTesting
+	void setSearchDaoResultBlockForUnitTest(ISearchResultBlockDao theSearchResultBlockDao) {
+		mySearchResultBlockDao = theSearchResultBlockDao;
+	}
+
 	@VisibleForTesting
 	void setSearchDaoResultForUnitTest(ISearchResultDao theSearchResultDao) {
 		mySearchResultDao = theSearchResultDao;
@@ -457,6 +725,7 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		private final ArrayList<Long> myUnsyncedPids = new ArrayList<Long>();
 		private boolean myAbortRequested;
 		private int myCountSaved = 0;
+		private List<Long> myCurrentBlockPids;
 		private String mySearchUuid;
 
 		/**
@@ -558,6 +827,12 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			myIdToSearchTask.remove(mySearch.getUuid());
 			myInitialCollectionLatch.countDown();
 			myCompletionLatch.countDown();
+
+			synchronized (mySyncedPids) {
+				mySyncedPids.notifyAll();
+			}
+			mySearchProgressNotifier.notifySearchProgress(mySearch.getUuid());
+
 			return null;
 		}
 
@@ -623,28 +898,33 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 		public List<Long> getResourcePids(int theFromIndex, int theToIndex) {
 			ourLog.info("Requesting search PIDs from {}-{}", theFromIndex, theToIndex);
 
-			boolean keepWaiting;
-			do {
-				synchronized (mySyncedPids) {
-					keepWaiting = false;
-					if (mySyncedPids.size() < theToIndex && mySearch.getStatus() == SearchStatusEnum.LOADING) {
-						keepWaiting = true;
+			ArrayList<Long> retVal = new ArrayList<>();
+			synchronized (mySyncedPids) {
+
+				/*
+				 * The search thread calls notifyAll() on mySyncedPids each time
+				 * it syncs a batch of results and when the search completes or
+				 * fails, so we wake up as soon as enough results are available
+				 */
+				StopWatch sw = null;
+				while (mySyncedPids.size() < theToIndex && mySearch.getStatus() == SearchStatusEnum.LOADING) {
+					if (sw == null) {
+						sw = new StopWatch();
+						ourLog.info("Waiting, as we only have {} results", mySyncedPids.size());
 					}
-				}
-				if (keepWaiting) {
-					ourLog.info("Waiting, as we only have {} results", mySyncedPids.size());
 					try {
-						Thread.sleep(500);
+						mySyncedPids.wait();
 					} catch (InterruptedException theE) {
 						// ignore
 					}
 				}
-			} while (keepWaiting);
+				if (sw != null) {
+					myPageWaitStatistics.addTiming(sw.getMillis());
+					ourLog.debug("Waited {}ms for results from search {}", sw.getMillis(), mySearchUuid);
+				}
 
-			ourLog.info("Proceeding, as we have {} results", mySyncedPids.size());
+				ourLog.info("Proceeding, as we have {} results", mySyncedPids.size());
 
-			ArrayList<Long> retVal = new ArrayList<>();
-			synchronized (mySyncedPids) {
 				verifySearchHasntFailedOrThrowInternalErrorException(mySearch);
 
 				int toIndex = theToIndex;
@@ -680,6 +960,51 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 			});
 		}
 
+		/**
+		 * Returns the number of results which have actually been written to the
+		 * database, which excludes any results held back in a partially
+		 * filled block
+		 */
+		private int getCountPersisted() {
+			int retVal = myCountSaved;
+			if (myCurrentBlockPids != null) {
+				retVal -= myCurrentBlockPids.size();
+			}
+			return retVal;
+		}
+
+		/**
+		 * Appends the unsynced PIDs to the current block, writing each block
+		 * once it fills up. A partially filled block is only written once the
+		 * search has finished, so each block is serialized exactly once.
+		 */
+		private void saveUnsyncedAsBlocks(boolean theFinished) {
+			int blockSize = myDaoConfig.getSearchResultBlockSize();
+			for (Long nextPid : myUnsyncedPids) {
+				if (myCurrentBlockPids == null) {
+					myCurrentBlockPids = new ArrayList<Long>(blockSize);
+				}
+
+				myCurrentBlockPids.add(nextPid);
+				myCountSaved++;
+
+				if (myCurrentBlockPids.size() >= blockSize) {
+					saveCurrentBlock();
+				}
+			}
+
+			if (theFinished && myCurrentBlockPids != null) {
+				saveCurrentBlock();
+			}
+		}
+
+		private void saveCurrentBlock() {
+			SearchResultBlock block = new SearchResultBlock(mySearch, myCountSaved - myCurrentBlockPids.size());
+			block.setPids(myCurrentBlockPids);
+			mySearchResultBlockDao.save(block);
+			myCurrentBlockPids = null;
+		}
+
 		private void saveUnsynced(final Iterator<Long> theResultIter) {
 			TransactionTemplate txTemplate = new TransactionTemplate(myManagedTxManager);
 			txTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRED);
@@ -690,14 +1015,20 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 						doSaveSearch();
 					}
 
-					List<SearchResult> resultsToSave = Lists.newArrayList();
-					for (Long nextPid : myUnsyncedPids) {
-						SearchResult nextResult = new SearchResult(mySearch);
-						nextResult.setResourcePid(nextPid);
-						nextResult.setOrder(myCountSaved++);
-						resultsToSave.add(nextResult);
+					boolean finished = theResultIter.hasNext() == false;
+
+					if (mySearch.isResultsStoredInBlocks()) {
+						saveUnsyncedAsBlocks(finished);
+					} else {
+						List<SearchResult> resultsToSave = Lists.newArrayList();
+						for (Long nextPid : myUnsyncedPids) {
+							SearchResult nextResult = new SearchResult(mySearch);
+							nextResult.setResourcePid(nextPid);
+							nextResult.setOrder(myCountSaved++);
+							resultsToSave.add(nextResult);
+						}
+						mySearchResultDao.save(resultsToSave);
 					}
-					mySearchResultDao.save(resultsToSave);
 
 					synchronized (mySyncedPids) {
 						int numSyncedThisPass = myUnsyncedPids.size();
@@ -705,13 +1036,19 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 						mySyncedPids.addAll(myUnsyncedPids);
 						myUnsyncedPids.clear();
 
-						if (theResultIter.hasNext() == false) {
+						if (finished) {
 							mySearch.setTotalCount(myCountSaved);
 							mySearch.setStatus(SearchStatusEnum.FINISHED);
 						}
+
+						mySyncedPids.notifyAll();
 					}
 
-					mySearch.setNumFound(myCountSaved);
+					/*
+					 * Other servers read the results back from the database, so only
+					 * advertise the ones which have actually been written
+					 */
+					mySearch.setNumFound(getCountPersisted());
 
 					int numSynced;
 					synchronized (mySyncedPids) {
@@ -726,6 +1063,19 @@ public class SearchCoordinatorSvcImpl implements ISearchCoordinatorSvc {
 
 					doSaveSearch();
 
+					/*
+					 * Let any other nodes which are waiting on this search know
+					 * that there are more results, once they're actually visible
+					 */
+					if (TransactionSynchronizationManager.isSynchronizationActive()) {
+						TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+							@Override
+							public void afterCommit() {
+								mySearchProgressNotifier.notifySearchProgress(mySearch.getUuid());
+							}
+						});
+					}
+
 				}
 			});
 
@@ -0,0 +1,90 @@
+package ca.uhn.fhir.jpa.search;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Default {@link ISearchProgressNotifier} which only delivers
+ * notifications to threads within the same JVM
+ */
+public class SearchProgressNotifierLocal implements ISearchProgressNotifier {
+
+	private final ConcurrentHashMap<String, Waiters> mySearchUuidToWaiters = new ConcurrentHashMap<>();
+
+	@Override
+	public void awaitSearchProgress(String theSearchUuid, long theMaxMillis) throws InterruptedException {
+		if (theMaxMillis <= 0) {
+			return;
+		}
+
+		Waiters waiters;
+		while (true) {
+			waiters = mySearchUuidToWaiters.get(theSearchUuid);
+			if (waiters == null) {
+				Waiters newWaiters = new Waiters();
+				waiters = mySearchUuidToWaiters.putIfAbsent(theSearchUuid, newWaiters);
+				if (waiters == null) {
+					waiters = newWaiters;
+				}
+			}
+
+			synchronized (waiters) {
+				// The entry may have been removed by the last waiter leaving
+				if (mySearchUuidToWaiters.get(theSearchUuid) != waiters) {
+					continue;
+				}
+				waiters.myCount++;
+				try {
+					waiters.wait(theMaxMillis);
+				} finally {
+					waiters.myCount--;
+					if (waiters.myCount == 0) {
+						mySearchUuidToWaiters.remove(theSearchUuid, waiters);
+					}
+				}
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Returns the number of searches which currently have threads waiting on them
+	 */
+	int getWaitingSearchCount() {
+		return mySearchUuidToWaiters.size();
+	}
+
+	@Override
+	public void notifySearchProgress(String theSearchUuid) {
+		Waiters waiters = mySearchUuidToWaiters.get(theSearchUuid);
+		if (waiters != null) {
+			synchronized (waiters) {
+				waiters.notifyAll();
+			}
+		}
+	}
+
+	private static class Waiters {
+		private int myCount;
+	}
+
+}
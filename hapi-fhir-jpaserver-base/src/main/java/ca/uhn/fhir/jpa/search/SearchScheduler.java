@@ -0,0 +1,360 @@
+package ca.uhn.fhir.jpa.search;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.dao.DaoConfig.SearchQueueFullPolicyEnum;
+import ca.uhn.fhir.jpa.util.StopWatch;
+import ca.uhn.fhir.jpa.util.TimingStatistics;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of searches which may execute against the database at the
+ * same time.
+ * <p>
+ * Synchronous searches run in the calling thread, but must first acquire one of
+ * the available slots. Asynchronous (paged) searches are queued and run on the
+ * executor when a slot becomes free. Waiting synchronous searches always take
+ * priority over queued asynchronous ones, since a client is blocked on them and
+ * they are bounded in size. Queued asynchronous searches are started round-robin
+ * across their fairness keys (e.g. the client and resource type), so that a burst
+ * of searches from one client can't starve everyone else.
+ * </p>
+ * <p>
+ * When the queue is full (or a synchronous search has waited too long for a slot)
+ * the search is either rejected with an HTTP 503 including a <code>Retry-After</code>
+ * header, or the caller waits, depending on the {@link SearchQueueFullPolicyEnum policy}.
+ * </p>
+ */
+public class SearchScheduler {
+
+	static final String HEADER_RETRY_AFTER = "Retry-After";
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchScheduler.class);
+	private static final ThreadLocal<Integer> ourSlotDepth = new ThreadLocal<Integer>();
+	private static final ThreadLocal<StopWatch> ourSynchronousStopWatch = new ThreadLocal<StopWatch>();
+
+	private final ExecutorService myExecutor;
+	private final ReentrantLock myLock = new ReentrantLock();
+	private final Condition mySlotOrQueueSpaceAvailable = myLock.newCondition();
+	private final LinkedHashMap<String, ArrayDeque<QueuedSearch>> myKeyToQueuedSearches = new LinkedHashMap<String, ArrayDeque<QueuedSearch>>();
+	private final TimingStatistics myQueueTimeStatistics = new TimingStatistics();
+	private final TimingStatistics myRunTimeStatistics = new TimingStatistics();
+	private int myActiveCount;
+	private int myMaxConcurrentSearches = 20;
+	private int myMaxQueuedSearches = 1000;
+	private long myMaxSynchronousWaitMillis = 60000;
+	private SearchQueueFullPolicyEnum myQueueFullPolicy = SearchQueueFullPolicyEnum.REJECT;
+	private int myQueuedCount;
+	private long myRejectedCount;
+	private int myRetryAfterSeconds = 10;
+	private int myWaitingSynchronousCount;
+
+	/**
+	 * Constructor
+	 *
+	 * @param theExecutor The executor which asynchronous searches will be run on. The scheduler
+	 *                    never submits more than the maximum number of concurrent searches to it.
+	 */
+	public SearchScheduler(ExecutorService theExecutor) {
+		Validate.notNull(theExecutor, "theExecutor must not be null");
+		myExecutor = theExecutor;
+	}
+
+	/**
+	 * Acquires a slot for a synchronous search which will run in the calling thread,
+	 * waiting for one to become free if necessary. Every call must be followed by
+	 * a call to {@link #endSynchronous()}, typically in a <code>finally</code> block.
+	 *
+	 * @throws UnclassifiedServerFailureException (HTTP 503) if the search is rejected
+	 */
+	public void beginSynchronous() {
+		if (enterNested()) {
+			return;
+		}
+
+		StopWatch sw = new StopWatch();
+		myLock.lock();
+		try {
+			if (myActiveCount >= myMaxConcurrentSearches) {
+				if (myQueueFullPolicy == SearchQueueFullPolicyEnum.REJECT && getTotalQueuedCount() >= myMaxQueuedSearches) {
+					throw reject("Too many searches are already waiting to execute");
+				}
+
+				myWaitingSynchronousCount++;
+				try {
+					long deadline = System.currentTimeMillis() + myMaxSynchronousWaitMillis;
+					while (myActiveCount >= myMaxConcurrentSearches) {
+						if (myQueueFullPolicy == SearchQueueFullPolicyEnum.WAIT) {
+							mySlotOrQueueSpaceAvailable.await();
+						} else {
+							long remaining = deadline - System.currentTimeMillis();
+							if (remaining <= 0) {
+								throw reject("Timed out waiting for a search slot after " + myMaxSynchronousWaitMillis + "ms");
+							}
+							mySlotOrQueueSpaceAvailable.await(remaining, TimeUnit.MILLISECONDS);
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InternalErrorException(e);
+				} finally {
+					myWaitingSynchronousCount--;
+				}
+			}
+
+			myActiveCount++;
+		} finally {
+			myLock.unlock();
+		}
+
+		ourSlotDepth.set(1);
+		ourSynchronousStopWatch.set(new StopWatch());
+		myQueueTimeStatistics.addTiming(sw.getMillis());
+	}
+
+	private void dispatch() {
+		while (myActiveCount < myMaxConcurrentSearches && myWaitingSynchronousCount == 0 && !myKeyToQueuedSearches.isEmpty()) {
+
+			// Take the next search from the key at the head, and move that key to the back
+			Iterator<Map.Entry<String, ArrayDeque<QueuedSearch>>> iter = myKeyToQueuedSearches.entrySet().iterator();
+			Map.Entry<String, ArrayDeque<QueuedSearch>> next = iter.next();
+			iter.remove();
+			QueuedSearch search = next.getValue().poll();
+			if (!next.getValue().isEmpty()) {
+				myKeyToQueuedSearches.put(next.getKey(), next.getValue());
+			}
+
+			myQueuedCount--;
+			myActiveCount++;
+			mySlotOrQueueSpaceAvailable.signalAll();
+			try {
+				myExecutor.submit(search);
+			} catch (RuntimeException e) {
+				myActiveCount--;
+				ourLog.error("Failed to start search", e);
+			}
+		}
+	}
+
+	/**
+	 * Releases the slot acquired by {@link #beginSynchronous()}
+	 */
+	public void endSynchronous() {
+		Integer depth = ourSlotDepth.get();
+		if (depth != null && depth > 1) {
+			ourSlotDepth.set(depth - 1);
+			return;
+		}
+		ourSlotDepth.remove();
+		StopWatch sw = ourSynchronousStopWatch.get();
+		ourSynchronousStopWatch.remove();
+		if (sw != null) {
+			myRunTimeStatistics.addTiming(sw.getMillis());
+		}
+		release();
+	}
+
+	/**
+	 * Returns <code>true</code> if the current thread already holds a slot, in which
+	 * case the new search runs within it (otherwise nested searches could deadlock)
+	 */
+	private boolean enterNested() {
+		Integer depth = ourSlotDepth.get();
+		if (depth != null) {
+			ourSlotDepth.set(depth + 1);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of searches currently executing
+	 */
+	public int getActiveCount() {
+		myLock.lock();
+		try {
+			return myActiveCount;
+		} finally {
+			myLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of asynchronous searches waiting to start
+	 */
+	public int getQueuedCount() {
+		myLock.lock();
+		try {
+			return myQueuedCount;
+		} finally {
+			myLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns statistics about how long searches waited for a slot before starting
+	 */
+	public TimingStatistics getQueueTimeStatistics() {
+		return myQueueTimeStatistics;
+	}
+
+	/**
+	 * Returns the number of searches which have been rejected because the queue was full
+	 */
+	public long getRejectedCount() {
+		myLock.lock();
+		try {
+			return myRejectedCount;
+		} finally {
+			myLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns statistics about how long searches ran for once started
+	 */
+	public TimingStatistics getRunTimeStatistics() {
+		return myRunTimeStatistics;
+	}
+
+	private int getTotalQueuedCount() {
+		return myQueuedCount + myWaitingSynchronousCount;
+	}
+
+	private UnclassifiedServerFailureException reject(String theReason) {
+		myRejectedCount++;
+		ourLog.warn("Rejecting search: {} ({} active, {} queued, {} synchronous waiting)", new Object[] {theReason, myActiveCount, myQueuedCount, myWaitingSynchronousCount});
+		UnclassifiedServerFailureException retVal = new UnclassifiedServerFailureException(503, "The server is too busy to execute this search, please try again later. " + theReason);
+		retVal.addResponseHeader(HEADER_RETRY_AFTER, Integer.toString(myRetryAfterSeconds));
+		return retVal;
+	}
+
+	private void release() {
+		myLock.lock();
+		try {
+			myActiveCount--;
+			mySlotOrQueueSpaceAvailable.signalAll();
+			dispatch();
+		} finally {
+			myLock.unlock();
+		}
+	}
+
+	/**
+	 * Applies the given limits. Searches which are already running or queued are not affected,
+	 * but a larger limit takes effect immediately for queued searches.
+	 */
+	public void setLimits(int theMaxConcurrentSearches, int theMaxQueuedSearches, long theMaxSynchronousWaitMillis, SearchQueueFullPolicyEnum theQueueFullPolicy, int theRetryAfterSeconds) {
+		Validate.isTrue(theMaxConcurrentSearches > 0, "theMaxConcurrentSearches must be greater than 0");
+		Validate.notNull(theQueueFullPolicy, "theQueueFullPolicy must not be null");
+		myLock.lock();
+		try {
+			boolean changed = theMaxConcurrentSearches != myMaxConcurrentSearches || theMaxQueuedSearches != myMaxQueuedSearches;
+			myMaxConcurrentSearches = theMaxConcurrentSearches;
+			myMaxQueuedSearches = theMaxQueuedSearches;
+			myMaxSynchronousWaitMillis = theMaxSynchronousWaitMillis;
+			myQueueFullPolicy = theQueueFullPolicy;
+			myRetryAfterSeconds = theRetryAfterSeconds;
+			if (changed) {
+				mySlotOrQueueSpaceAvailable.signalAll();
+				dispatch();
+			}
+		} finally {
+			myLock.unlock();
+		}
+	}
+
+	/**
+	 * Queues an asynchronous search, which will be executed on the executor once a
+	 * slot is available
+	 *
+	 * @param theFairnessKey Searches with different keys are started round-robin
+	 * @throws UnclassifiedServerFailureException (HTTP 503) if the search is rejected
+	 */
+	public void submitAsynchronous(String theFairnessKey, Callable<?> theSearch) {
+		Validate.notNull(theFairnessKey, "theFairnessKey must not be null");
+		QueuedSearch queued = new QueuedSearch(theSearch);
+
+		myLock.lock();
+		try {
+			while (getTotalQueuedCount() >= myMaxQueuedSearches) {
+				if (myQueueFullPolicy == SearchQueueFullPolicyEnum.REJECT) {
+					throw reject("Too many searches are already waiting to execute");
+				}
+				try {
+					mySlotOrQueueSpaceAvailable.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InternalErrorException(e);
+				}
+			}
+
+			ArrayDeque<QueuedSearch> queue = myKeyToQueuedSearches.get(theFairnessKey);
+			if (queue == null) {
+				queue = new ArrayDeque<QueuedSearch>();
+				myKeyToQueuedSearches.put(theFairnessKey, queue);
+			}
+			queue.add(queued);
+			myQueuedCount++;
+
+			dispatch();
+		} finally {
+			myLock.unlock();
+		}
+	}
+
+	private class QueuedSearch implements Runnable {
+		private final Callable<?> mySearch;
+		private final StopWatch myQueueStopWatch = new StopWatch();
+
+		QueuedSearch(Callable<?> theSearch) {
+			mySearch = theSearch;
+		}
+
+		@Override
+		public void run() {
+			myQueueTimeStatistics.addTiming(myQueueStopWatch.getMillis());
+			StopWatch sw = new StopWatch();
+			ourSlotDepth.set(1);
+			try {
+				mySearch.call();
+			} catch (Exception e) {
+				ourLog.error("Failure during search", e);
+			} finally {
+				ourSlotDepth.remove();
+				myRunTimeStatistics.addTiming(sw.getMillis());
+				release();
+			}
+		}
+	}
+
+}
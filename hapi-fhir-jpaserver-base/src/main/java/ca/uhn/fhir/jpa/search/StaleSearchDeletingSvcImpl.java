@@ -23,6 +23,7 @@ package ca.uhn.fhir.jpa.search;
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.data.ISearchDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchIncludeDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultBlockDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
 import ca.uhn.fhir.jpa.entity.Search;
 import com.google.common.annotations.VisibleForTesting;
@@ -62,6 +63,8 @@ public class StaleSearchDeletingSvcImpl implements IStaleSearchDeletingSvc {
 	@Autowired
 	private ISearchResultDao mySearchResultDao;
 	@Autowired
+	private ISearchResultBlockDao mySearchResultBlockDao;
+	@Autowired
 	private PlatformTransactionManager myTransactionManager;
 
 	private void deleteSearch(final Long theSearchPid) {
@@ -69,7 +72,11 @@ public class StaleSearchDeletingSvcImpl implements IStaleSearchDeletingSvc {
 		if (searchToDelete != null) {
 			ourLog.info("Deleting search {}/{} - Created[{}] -- Last returned[{}]", searchToDelete.getId(), searchToDelete.getUuid(), searchToDelete.getCreated(), searchToDelete.getSearchLastReturned());
 			mySearchIncludeDao.deleteForSearch(searchToDelete.getId());
-			mySearchResultDao.deleteForSearch(searchToDelete.getId());
+			if (searchToDelete.isResultsStoredInBlocks()) {
+				mySearchResultBlockDao.deleteForSearch(searchToDelete.getId());
+			} else {
+				mySearchResultDao.deleteForSearch(searchToDelete.getId());
+			}
 			mySearchDao.delete(searchToDelete);
 		}
 	}
@@ -0,0 +1,94 @@
+package ca.uhn.fhir.jpa.search.reindex;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+
+/**
+ * Reindexes resources which have been marked as requiring reindexing (i.e. resources
+ * with a null index status).
+ * <p>
+ * Work is tracked as a set of persistent jobs, each of which covers a range of resource
+ * PIDs. Each job is processed in chunks in ascending PID order. Every chunk is split into
+ * batches of contiguous PIDs, which are reindexed in parallel by a pool of worker threads
+ * with one transaction per batch. Progress is saved after each chunk so that a job resumes
+ * where it left off if the server is restarted.
+ * </p>
+ *
+ * @see ca.uhn.fhir.jpa.dao.DaoConfig#setReindexThreadCount(int)
+ * @see ca.uhn.fhir.jpa.dao.DaoConfig#setReindexBatchSize(int)
+ */
+public interface IResourceReindexingSvc {
+
+	/**
+	 * Cancels all active reindexing jobs. Resources which have not yet been
+	 * reindexed remain marked as requiring reindexing.
+	 */
+	void cancelAndPurgeAllJobs();
+
+	/**
+	 * Returns the status of all active reindexing jobs
+	 */
+	List<ReindexJobStatus> getJobStatus();
+
+	/**
+	 * Marks all resources as requiring reindexing and creates a job to reindex them.
+	 * This joins the current transaction if there is one.
+	 *
+	 * @return Returns the number of resources which were marked
+	 */
+	int markAllResourcesForReindexing();
+
+	/**
+	 * Marks all resources of the given type as requiring reindexing and creates a job to reindex them.
+	 * This joins the current transaction if there is one.
+	 *
+	 * @return Returns the number of resources which were marked
+	 */
+	int markAllResourcesForReindexing(String theResourceType);
+
+	/**
+	 * Reindexes the given resources now, in batches using the reindexing worker threads. No
+	 * reindexing jobs are processed, and no job is created. Resources which fail to reindex
+	 * are marked with {@link ca.uhn.fhir.jpa.dao.BaseHapiFhirDao#INDEX_STATUS_INDEXING_FAILED}.
+	 *
+	 * @return Returns the number of resources which were reindexed, or <code>null</code> if a reindexing
+	 * pass was already in progress (in which case nothing is done, and any of the resources which are
+	 * marked as requiring reindexing are reindexed by a later pass)
+	 */
+	Integer reindexResources(List<Long> thePids);
+
+	/**
+	 * Reindexes up to the given number of resources
+	 *
+	 * @param theMaxResources The maximum number of resources to reindex, or <code>null</code> to
+	 *                        keep going until all active jobs are complete
+	 * @return Returns the number of resources which were reindexed, or <code>null</code> if a reindexing
+	 * pass was already in progress
+	 */
+	Integer runReindexingPass(Integer theMaxResources);
+
+	/**
+	 * Called automatically by the scheduler
+	 */
+	void scheduleReindexingPass();
+
+}
@@ -0,0 +1,109 @@
+package ca.uhn.fhir.jpa.search.reindex;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import java.util.Date;
+
+/**
+ * Progress of a single reindexing job
+ *
+ * @see IResourceReindexingSvc#getJobStatus()
+ */
+public class ReindexJobStatus {
+
+	private final Date myEstimatedCompletion;
+	private final Long myJobId;
+	private final long myReindexCount;
+	private final long myRemainingCount;
+	private final String myResourceType;
+	private final double myResourcesPerSecond;
+	private final Date myStarted;
+
+	public ReindexJobStatus(Long theJobId, String theResourceType, Date theStarted, long theReindexCount, long theRemainingCount, double theResourcesPerSecond, Date theEstimatedCompletion) {
+		myJobId = theJobId;
+		myResourceType = theResourceType;
+		myStarted = theStarted;
+		myReindexCount = theReindexCount;
+		myRemainingCount = theRemainingCount;
+		myResourcesPerSecond = theResourcesPerSecond;
+		myEstimatedCompletion = theEstimatedCompletion;
+	}
+
+	/**
+	 * Returns the estimated time that the job will complete, or <code>null</code>
+	 * if no estimate can be made yet
+	 */
+	public Date getEstimatedCompletion() {
+		return myEstimatedCompletion;
+	}
+
+	public Long getJobId() {
+		return myJobId;
+	}
+
+	/**
+	 * Returns the number of resources reindexed so far by this job
+	 */
+	public long getReindexCount() {
+		return myReindexCount;
+	}
+
+	/**
+	 * Returns the number of resources remaining to be reindexed by this job
+	 */
+	public long getRemainingCount() {
+		return myRemainingCount;
+	}
+
+	/**
+	 * Returns the resource type being reindexed, or <code>null</code> if the job covers all resource types
+	 */
+	public String getResourceType() {
+		return myResourceType;
+	}
+
+	/**
+	 * Returns the average throughput of this job since it was created
+	 */
+	public double getResourcesPerSecond() {
+		return myResourcesPerSecond;
+	}
+
+	public Date getStarted() {
+		return myStarted;
+	}
+
+	@Override
+	public String toString() {
+		ToStringBuilder b = new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE);
+		b.append("jobId", myJobId);
+		b.append("resourceType", myResourceType != null ? myResourceType : "(all)");
+		b.append("reindexed", myReindexCount);
+		b.append("remaining", myRemainingCount);
+		b.append("perSecond", String.format("%.1f", myResourcesPerSecond));
+		b.append("started", myStarted);
+		b.append("estimatedCompletion", myEstimatedCompletion);
+		return b.toString();
+	}
+}
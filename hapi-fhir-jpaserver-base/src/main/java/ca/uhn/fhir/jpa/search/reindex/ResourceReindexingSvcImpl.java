@@ -0,0 +1,503 @@
+package ca.uhn.fhir.jpa.search.reindex;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.dao.IFhirSystemDao;
+import ca.uhn.fhir.jpa.dao.data.IForcedIdDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceReindexJobDao;
+import ca.uhn.fhir.jpa.dao.data.IResourceTableDao;
+import ca.uhn.fhir.jpa.entity.ForcedId;
+import ca.uhn.fhir.jpa.entity.ResourceReindexJobEntity;
+import ca.uhn.fhir.jpa.entity.ResourceTable;
+import ca.uhn.fhir.jpa.util.StopWatch;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContextType;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static ca.uhn.fhir.jpa.dao.BaseHapiFhirDao.INDEX_STATUS_INDEXING_FAILED;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+public class ResourceReindexingSvcImpl implements IResourceReindexingSvc {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ResourceReindexingSvcImpl.class);
+
+	@Autowired
+	private DaoConfig myDaoConfig;
+	@PersistenceContext(type = PersistenceContextType.TRANSACTION)
+	private EntityManager myEntityManager;
+	private ThreadPoolExecutor myExecutor;
+	@Autowired
+	private IForcedIdDao myForcedIdDao;
+	private final ReentrantLock myIndexingLock = new ReentrantLock();
+	@Autowired
+	private IResourceReindexJobDao myReindexJobDao;
+	@Autowired
+	private IResourceTableDao myResourceTableDao;
+	@Autowired
+	private IFhirSystemDao<?, ?> mySystemDao;
+	@Autowired
+	private PlatformTransactionManager myTxManager;
+
+	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void cancelAndPurgeAllJobs() {
+		ourLog.info("Cancelling and purging all reindexing jobs");
+		newTxTemplate().execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus theStatus) {
+				myReindexJobDao.deleteAllInBatch();
+				return null;
+			}
+		});
+	}
+
+	private ResourceReindexJobEntity createJob(String theResourceType, long theThresholdLow) {
+		Long maxId = myResourceTableDao.findMaxId();
+		ResourceReindexJobEntity job = new ResourceReindexJobEntity();
+		job.setResourceType(theResourceType);
+		job.setThresholdLow(theThresholdLow);
+		job.setThresholdHigh(maxId != null ? maxId : 0L);
+		job.setCreated(new Date());
+		job = myReindexJobDao.save(job);
+		ourLog.info("Created reindexing job {} for resource type {} covering PIDs {} - {}", job.getId(), theResourceType != null ? theResourceType : "(all)", job.getThresholdLow(), job.getThresholdHigh());
+		return job;
+	}
+
+	private int doReindexingPass(Integer theMaxResources) {
+		List<ResourceReindexJobEntity> jobs = newTxTemplate().execute(new TransactionCallback<List<ResourceReindexJobEntity>>() {
+			@Override
+			public List<ResourceReindexJobEntity> doInTransaction(TransactionStatus theStatus) {
+				List<ResourceReindexJobEntity> retVal = myReindexJobDao.findAllOrderedById();
+
+				/*
+				 * Resources can also be marked as requiring reindexing directly in the
+				 * database, so if there is no job but there is work to do, create
+				 * a job to cover it
+				 */
+				if (retVal.isEmpty()) {
+					Long lowestUnindexed = myResourceTableDao.findMinUnindexedId();
+					if (lowestUnindexed != null) {
+						retVal = new ArrayList<>();
+						retVal.add(createJob(null, lowestUnindexed));
+					}
+				}
+
+				return retVal;
+			}
+		});
+
+		int count = 0;
+		for (ResourceReindexJobEntity nextJob : jobs) {
+			while (theMaxResources == null || count < theMaxResources) {
+				Integer remaining = theMaxResources != null ? theMaxResources - count : null;
+				int reindexed = reindexNextChunk(nextJob, remaining);
+				if (reindexed < 0) {
+					break;
+				}
+				count += reindexed;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public List<ReindexJobStatus> getJobStatus() {
+		return newTxTemplate().execute(new TransactionCallback<List<ReindexJobStatus>>() {
+			@Override
+			public List<ReindexJobStatus> doInTransaction(TransactionStatus theStatus) {
+				List<ReindexJobStatus> retVal = new ArrayList<>();
+				long now = System.currentTimeMillis();
+				for (ResourceReindexJobEntity next : myReindexJobDao.findAllOrderedById()) {
+					long remaining;
+					if (next.getResourceType() != null) {
+						remaining = myResourceTableDao.countUnindexedInRange(next.getResourceType(), next.getThresholdLow(), next.getThresholdHigh());
+					} else {
+						remaining = myResourceTableDao.countUnindexedInRange(next.getThresholdLow(), next.getThresholdHigh());
+					}
+
+					long elapsedMillis = Math.max(now - next.getCreated().getTime(), 1);
+					double perSecond = (next.getReindexCount() * (double) DateUtils.MILLIS_PER_SECOND) / elapsedMillis;
+					Date estimatedCompletion = null;
+					if (perSecond > 0) {
+						estimatedCompletion = new Date(now + (long) ((remaining / perSecond) * DateUtils.MILLIS_PER_SECOND));
+					}
+
+					retVal.add(new ReindexJobStatus(next.getId(), next.getResourceType(), next.getCreated(), next.getReindexCount(), remaining, perSecond, estimatedCompletion));
+				}
+				return retVal;
+			}
+		});
+	}
+
+	private void markResourceAsIndexingFailed(final long theId) {
+		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+		txTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+		txTemplate.execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus theStatus) {
+				ourLog.info("Marking resource with PID {} as indexing_failed", new Object[] {theId});
+				Query q = myEntityManager.createQuery("UPDATE ResourceTable t SET t.myIndexStatus = :status WHERE t.myId = :id");
+				q.setParameter("status", INDEX_STATUS_INDEXING_FAILED);
+				q.setParameter("id", theId);
+				q.executeUpdate();
+
+				q = myEntityManager.createQuery("DELETE FROM ResourceTag t WHERE t.myResourceId = :id");
+				q.setParameter("id", theId);
+				q.executeUpdate();
+
+				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamCoords t WHERE t.myResourcePid = :id");
+				q.setParameter("id", theId);
+				q.executeUpdate();
+
+				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamDate t WHERE t.myResourcePid = :id");
+				q.setParameter("id", theId);
+				q.executeUpdate();
+
+				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamNumber t WHERE t.myResourcePid = :id");
+				q.setParameter("id", theId);
+				q.executeUpdate();
+
+				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamQuantity t WHERE t.myResourcePid = :id");
+				q.setParameter("id", theId);
+				q.executeUpdate();
+
+				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamString t WHERE t.myResourcePid = :id");
+				q.setParameter("id", theId);
+				q.executeUpdate();
+
+				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamToken t WHERE t.myResourcePid = :id");
+				q.setParameter("id", theId);
+				q.executeUpdate();
+
+				q = myEntityManager.createQuery("DELETE FROM ResourceIndexedSearchParamUri t WHERE t.myResourcePid = :id");
+				q.setParameter("id", theId);
+				q.executeUpdate();
+
+				q = myEntityManager.createQuery("DELETE FROM ResourceLink t WHERE t.mySourceResourcePid = :id");
+				q.setParameter("id", theId);
+				q.executeUpdate();
+
+				q = myEntityManager.createQuery("DELETE FROM ResourceLink t WHERE t.myTargetResourcePid = :id");
+				q.setParameter("id", theId);
+				q.executeUpdate();
+
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public int markAllResourcesForReindexing() {
+		return markAllResourcesForReindexing(null);
+	}
+
+	@Override
+	public int markAllResourcesForReindexing(final String theResourceType) {
+		/*
+		 * This joins any existing transaction so that callers (e.g. a search parameter
+		 * being saved) mark the resources and create the job atomically
+		 */
+		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+		txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRED);
+		return txTemplate.execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus theStatus) {
+				int retVal;
+				if (theResourceType != null) {
+					ourLog.info("Marking all resources of type {} as needing reindexing", theResourceType);
+					retVal = myResourceTableDao.markResourcesOfTypeAsRequiringReindexing(theResourceType);
+				} else {
+					ourLog.info("Marking all resources as needing reindexing");
+					retVal = myResourceTableDao.markAllResourcesAsRequiringReindexing();
+				}
+				if (retVal > 0) {
+					createJob(theResourceType, 0L);
+				}
+				return retVal;
+			}
+		});
+	}
+
+	private TransactionTemplate newTxTemplate() {
+		TransactionTemplate retVal = new TransactionTemplate(myTxManager);
+		retVal.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		return retVal;
+	}
+
+	private int reindexBatch(final List<Long> thePids) {
+		try {
+			return newTxTemplate().execute(new TransactionCallback<Integer>() {
+				@Override
+				public Integer doInTransaction(TransactionStatus theStatus) {
+					for (Long next : thePids) {
+						reindexResource(next);
+					}
+					return thePids.size();
+				}
+			});
+		} catch (Exception e) {
+			ourLog.warn("Failed to reindex batch of {} resources starting with PID {}, retrying individually: {}", thePids.size(), thePids.get(0), e.toString());
+		}
+
+		/*
+		 * Something in the batch failed, so go through it one resource per
+		 * transaction in order to isolate the failure
+		 */
+		int retVal = 0;
+		for (final Long next : thePids) {
+			try {
+				newTxTemplate().execute(new TransactionCallback<Void>() {
+					@Override
+					public Void doInTransaction(TransactionStatus theStatus) {
+						reindexResource(next);
+						return null;
+					}
+				});
+				retVal++;
+			} catch (Exception e) {
+				ourLog.error("Failed to index resource with PID {}: {}", new Object[] {next, e.toString(), e});
+				markResourceAsIndexingFailed(next);
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Splits the PIDs into batches and reindexes them using the worker threads
+	 *
+	 * @return Returns the number of resources reindexed
+	 */
+	private int reindexInParallel(List<Long> thePids, int theBatchSize, int theThreadCount) {
+		updateExecutorSize(theThreadCount);
+
+		List<Future<Integer>> futures = new ArrayList<>();
+		for (int from = 0; from < thePids.size(); from += theBatchSize) {
+			final List<Long> batch = thePids.subList(from, Math.min(from + theBatchSize, thePids.size()));
+			futures.add(myExecutor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					return reindexBatch(batch);
+				}
+			}));
+		}
+
+		int count = 0;
+		for (Future<Integer> next : futures) {
+			try {
+				count += next.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InternalErrorException(e);
+			} catch (ExecutionException e) {
+				throw new InternalErrorException(e.getCause());
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return Returns the number of resources reindexed, or <code>-1</code> if the job is complete
+	 */
+	private int reindexNextChunk(final ResourceReindexJobEntity theJob, Integer theMaxResources) {
+		int batchSize = myDaoConfig.getReindexBatchSize();
+		int threadCount = myDaoConfig.getReindexThreadCount();
+		int chunkSize = batchSize * threadCount;
+		if (theMaxResources != null) {
+			chunkSize = Math.min(chunkSize, theMaxResources);
+		}
+		final PageRequest page = new PageRequest(0, chunkSize);
+
+		List<Long> pids = newTxTemplate().execute(new TransactionCallback<List<Long>>() {
+			@Override
+			public List<Long> doInTransaction(TransactionStatus theStatus) {
+				if (theJob.getResourceType() != null) {
+					return myResourceTableDao.findUnindexedInRange(page, theJob.getResourceType(), theJob.getThresholdLow(), theJob.getThresholdHigh()).getContent();
+				}
+				return myResourceTableDao.findUnindexedInRange(page, theJob.getThresholdLow(), theJob.getThresholdHigh()).getContent();
+			}
+		});
+
+		if (pids.isEmpty()) {
+			newTxTemplate().execute(new TransactionCallback<Void>() {
+				@Override
+				public Void doInTransaction(TransactionStatus theStatus) {
+					if (myReindexJobDao.exists(theJob.getId())) {
+						myReindexJobDao.delete(theJob.getId());
+					}
+					return null;
+				}
+			});
+			ourLog.info("Reindexing job {} is complete", theJob.getId());
+			return -1;
+		}
+
+		StopWatch sw = new StopWatch();
+
+		/*
+		 * The PIDs are in ascending order, so each batch covers a contiguous
+		 * range of the PIDs which need reindexing
+		 */
+		int count = reindexInParallel(pids, batchSize, threadCount);
+
+		final long newThresholdLow = pids.get(pids.size() - 1) + 1;
+		final int reindexedCount = count;
+		newTxTemplate().execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus theStatus) {
+				myReindexJobDao.updateProgress(theJob.getId(), newThresholdLow, reindexedCount);
+				return null;
+			}
+		});
+		theJob.setThresholdLow(newThresholdLow);
+		theJob.setReindexCount(theJob.getReindexCount() + reindexedCount);
+
+		long millis = sw.getMillis();
+		ourLog.info("Reindexed {} resources for job {} in {}ms ({}/sec) using {} threads", count, theJob.getId(), millis, (count * DateUtils.MILLIS_PER_SECOND) / Math.max(millis, 1), threadCount);
+		return count;
+	}
+
+	private void reindexResource(Long thePid) {
+		ResourceTable resourceTable = myResourceTableDao.findOne(thePid);
+		if (resourceTable == null) {
+			return;
+		}
+
+		/*
+		 * This part is because from HAPI 1.5 - 1.6 we changed the format of forced ID to be "type/id" instead of just "id"
+		 */
+		ForcedId forcedId = resourceTable.getForcedId();
+		if (forcedId != null) {
+			if (isBlank(forcedId.getResourceType())) {
+				ourLog.info("Updating resource {} forcedId type to {}", forcedId.getForcedId(), resourceTable.getResourceType());
+				forcedId.setResourceType(resourceTable.getResourceType());
+				myForcedIdDao.save(forcedId);
+			}
+		}
+
+		IBaseResource resource = mySystemDao.toResource(resourceTable, false);
+
+		@SuppressWarnings("rawtypes")
+		IFhirResourceDao dao = mySystemDao.getDao(resource.getClass());
+		@SuppressWarnings("unchecked")
+		IFhirResourceDao<IBaseResource> typedDao = dao;
+		typedDao.reindex(resource, resourceTable);
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public Integer reindexResources(List<Long> thePids) {
+		if (thePids.isEmpty()) {
+			return 0;
+		}
+		if (!myIndexingLock.tryLock()) {
+			return null;
+		}
+		try {
+			List<Long> pids = new ArrayList<>(thePids);
+			Collections.sort(pids);
+			StopWatch sw = new StopWatch();
+			int count = reindexInParallel(pids, myDaoConfig.getReindexBatchSize(), myDaoConfig.getReindexThreadCount());
+			ourLog.info("Reindexed {} of {} requested resources in {}ms", count, pids.size(), sw.getMillis());
+			return count;
+		} finally {
+			myIndexingLock.unlock();
+		}
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public Integer runReindexingPass(Integer theMaxResources) {
+		if (!myIndexingLock.tryLock()) {
+			return null;
+		}
+		try {
+			return doReindexingPass(theMaxResources);
+		} finally {
+			myIndexingLock.unlock();
+		}
+	}
+
+	@Override
+	@Scheduled(fixedDelay = 10 * DateUtils.MILLIS_PER_SECOND)
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void scheduleReindexingPass() {
+		if (myDaoConfig.isSchedulingDisabled()) {
+			return;
+		}
+		runReindexingPass(null);
+	}
+
+	@VisibleForTesting
+	void setDaoConfigForUnitTest(DaoConfig theDaoConfig) {
+		myDaoConfig = theDaoConfig;
+	}
+
+	@PostConstruct
+	public void start() {
+		int threadCount = myDaoConfig.getReindexThreadCount();
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("reindex_");
+		myExecutor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+	}
+
+	@PreDestroy
+	public void stop() {
+		myExecutor.shutdownNow();
+	}
+
+	private synchronized void updateExecutorSize(int theThreadCount) {
+		if (myExecutor.getCorePoolSize() < theThreadCount) {
+			myExecutor.setMaximumPoolSize(theThreadCount);
+			myExecutor.setCorePoolSize(theThreadCount);
+		} else if (myExecutor.getCorePoolSize() > theThreadCount) {
+			myExecutor.setCorePoolSize(theThreadCount);
+			myExecutor.setMaximumPoolSize(theThreadCount);
+		}
+	}
+
+}
@@ -27,18 +27,24 @@ import java.util.concurrent.ConcurrentHashMap;
 import ca.uhn.fhir.jpa.dao.DaoConfig;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import ca.uhn.fhir.jpa.dao.data.ISearchParamDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchParamPresentDao;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.entity.SearchParam;
 import ca.uhn.fhir.jpa.entity.SearchParamPresent;
+import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
 
 public class SearchParamPresenceSvcImpl implements ISearchParamPresenceSvc {
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchParamPresenceSvcImpl.class);
 
-	private Map<Pair<String, String>, SearchParam> myResourceTypeToSearchParamToEntity = new ConcurrentHashMap<Pair<String, String>, SearchParam>();
+	private volatile boolean myCacheLoaded;
+
+	private final Map<Pair<String, String>, SearchParam> myResourceTypeToSearchParamToEntity = new ConcurrentHashMap<Pair<String, String>, SearchParam>();
 
 	@Autowired
 	private ISearchParamDao mySearchParamDao;
@@ -80,19 +86,14 @@ public class SearchParamPresenceSvcImpl implements ISearchParamPresenceSvc {
 			String paramName = next.getKey();
 			Pair<String, String> key = Pair.of(resourceType, paramName);
 
-			SearchParam searchParam = myResourceTypeToSearchParamToEntity.get(key);
+			SearchParam searchParam = getSearchParam(key);
 			if (searchParam == null) {
 				searchParam = mySearchParamDao.findForResource(resourceType, paramName);
-				if (searchParam != null) {
-					myResourceTypeToSearchParamToEntity.put(key, searchParam);
-				} else {
-					searchParam = new SearchParam();
-					searchParam.setResourceName(resourceType);
-					searchParam.setParamName(paramName);
-					searchParam = mySearchParamDao.save(searchParam);
-					ourLog.info("Added search param {} with pid {}", paramName, searchParam.getId());
-					// Don't add the newly saved entity to the map in case the save fails
+				if (searchParam == null) {
+					searchParam = createSearchParam(resourceType, paramName);
 				}
+				// Don't add the entity to the map until the transaction commits, in case the save fails
+				putSearchParamAfterCommit(key, searchParam);
 			}
 
 			SearchParamPresent present = new SearchParamPresent();
@@ -108,9 +109,68 @@ public class SearchParamPresenceSvcImpl implements ISearchParamPresenceSvc {
 
 	}
 
+	/**
+	 * Creates the search param row in the current transaction. Anything already pending is
+	 * flushed first, so that a failure of the flush which follows the insert can only come from
+	 * the new row. If another writer has created the same row in the meantime, the insert fails
+	 * on the unique constraint and the current transaction can't continue, so this is reported
+	 * as a version conflict which the client can retry. The retry will find the row created by
+	 * the other writer.
+	 */
+	private SearchParam createSearchParam(String theResourceType, String theParamName) {
+		mySearchParamDao.flush();
+
+		SearchParam retVal = new SearchParam();
+		retVal.setResourceName(theResourceType);
+		retVal.setParamName(theParamName);
+		try {
+			retVal = mySearchParamDao.saveAndFlush(retVal);
+		} catch (DataIntegrityViolationException e) {
+			ourLog.info("Failed to add search param {}, it was probably added by a concurrent writer: {}", theParamName, e.toString());
+			throw new ResourceVersionConflictException("Search parameter " + theResourceType + ":" + theParamName + " was created by a concurrent request, please retry");
+		}
+		ourLog.info("Added search param {} with pid {}", theParamName, retVal.getId());
+		return retVal;
+	}
+
 	@Override
 	public void flushCachesForUnitTest() {
-		myResourceTypeToSearchParamToEntity.clear();
+		synchronized (myResourceTypeToSearchParamToEntity) {
+			myResourceTypeToSearchParamToEntity.clear();
+			myCacheLoaded = false;
+		}
+	}
+
+	/**
+	 * The search param table holds one row per resource type and reference
+	 * parameter, so the first time it is needed we just load the whole thing
+	 */
+	private SearchParam getSearchParam(Pair<String, String> theKey) {
+		if (!myCacheLoaded) {
+			synchronized (myResourceTypeToSearchParamToEntity) {
+				if (!myCacheLoaded) {
+					for (SearchParam next : mySearchParamDao.findAll()) {
+						myResourceTypeToSearchParamToEntity.put(Pair.of(next.getResourceName(), next.getParamName()), next);
+					}
+					ourLog.debug("Loaded {} search params", myResourceTypeToSearchParamToEntity.size());
+					myCacheLoaded = true;
+				}
+			}
+		}
+		return myResourceTypeToSearchParamToEntity.get(theKey);
+	}
+
+	private void putSearchParamAfterCommit(final Pair<String, String> theKey, final SearchParam theSearchParam) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			myResourceTypeToSearchParamToEntity.put(theKey, theSearchParam);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				myResourceTypeToSearchParamToEntity.put(theKey, theSearchParam);
+			}
+		});
 	}
 
 }
@@ -37,6 +37,7 @@ import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
 import ca.uhn.fhir.rest.server.interceptor.ServerOperationInterceptorAdapter;
 import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.hl7.fhir.exceptions.FHIRException;
@@ -80,6 +81,7 @@ public abstract class BaseSubscriptionInterceptor<S extends IBaseResource> exten
 	private SubscriptionActivatingSubscriber mySubscriptionActivatingSubscriber;
 	private MessageHandler mySubscriptionCheckingSubscriber;
 	private ConcurrentHashMap<String, CanonicalSubscription> myIdToSubscription = new ConcurrentHashMap<>();
+	private ConcurrentHashMap<String, ConcurrentHashMap<String, CanonicalSubscription>> myResourceTypeToIdToSubscription = new ConcurrentHashMap<>();
 	private Logger ourLog = LoggerFactory.getLogger(BaseSubscriptionInterceptor.class);
 	private ThreadPoolExecutor myDeliveryExecutor;
 	private LinkedBlockingQueue<Runnable> myProcessingExecutorQueue;
@@ -94,6 +96,8 @@ public abstract class BaseSubscriptionInterceptor<S extends IBaseResource> exten
 	private IFhirResourceDao<org.hl7.fhir.r4.model.EventDefinition> myEventDefinitionDaoR4;
 	@Autowired
 	private PlatformTransactionManager myTxManager;
+	@Autowired(required = false)
+	private InMemorySubscriptionMatcher myInMemorySubscriptionMatcher;
 
 	/**
 	 * Constructor
@@ -249,10 +253,34 @@ public abstract class BaseSubscriptionInterceptor<S extends IBaseResource> exten
 		return mySubscriptionDao;
 	}
 
+	/**
+	 * Returns the matcher used to test subscription criteria against modified resources
+	 * without a database search, or <code>null</code> if none is configured (in which
+	 * case a search is always performed)
+	 */
+	public InMemorySubscriptionMatcher getInMemorySubscriptionMatcher() {
+		return myInMemorySubscriptionMatcher;
+	}
+
+	public void setInMemorySubscriptionMatcher(InMemorySubscriptionMatcher theInMemorySubscriptionMatcher) {
+		myInMemorySubscriptionMatcher = theInMemorySubscriptionMatcher;
+	}
+
 	public List<CanonicalSubscription> getSubscriptions() {
 		return new ArrayList<>(myIdToSubscription.values());
 	}
 
+	/**
+	 * Returns only the subscriptions whose criteria apply to the given resource type
+	 */
+	public List<CanonicalSubscription> getSubscriptionsForResourceType(String theResourceType) {
+		ConcurrentHashMap<String, CanonicalSubscription> subscriptions = myResourceTypeToIdToSubscription.get(theResourceType);
+		if (subscriptions == null) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<>(subscriptions.values());
+	}
+
 	public boolean hasSubscription(IIdType theId) {
 		Validate.notNull(theId);
 		Validate.notBlank(theId.getIdPart());
@@ -293,7 +321,7 @@ public abstract class BaseSubscriptionInterceptor<S extends IBaseResource> exten
 			String next = keyEnum.nextElement();
 			if (!allIds.contains(next)) {
 				ourLog.info("Unregistering Subscription/{} as it no longer exists", next);
-				myIdToSubscription.remove(next);
+				removeSubscription(next);
 			}
 		}
 	}
@@ -313,7 +341,38 @@ public abstract class BaseSubscriptionInterceptor<S extends IBaseResource> exten
 		Validate.notBlank(theId.getIdPart());
 		Validate.notNull(theSubscription);
 
-		myIdToSubscription.put(theId.getIdPart(), canonicalize(theSubscription));
+		CanonicalSubscription subscription = canonicalize(theSubscription);
+		CanonicalSubscription previous = myIdToSubscription.put(theId.getIdPart(), subscription);
+		if (previous != null) {
+			removeFromResourceTypeIndex(theId.getIdPart(), previous);
+		}
+
+		String resourceType = getCriteriaResourceType(subscription);
+		if (resourceType != null) {
+			ConcurrentHashMap<String, CanonicalSubscription> subscriptions = myResourceTypeToIdToSubscription.get(resourceType);
+			if (subscriptions == null) {
+				myResourceTypeToIdToSubscription.putIfAbsent(resourceType, new ConcurrentHashMap<String, CanonicalSubscription>());
+				subscriptions = myResourceTypeToIdToSubscription.get(resourceType);
+			}
+			subscriptions.put(theId.getIdPart(), subscription);
+		}
+	}
+
+	private void removeFromResourceTypeIndex(String theId, CanonicalSubscription theSubscription) {
+		String resourceType = getCriteriaResourceType(theSubscription);
+		if (resourceType != null) {
+			ConcurrentHashMap<String, CanonicalSubscription> subscriptions = myResourceTypeToIdToSubscription.get(resourceType);
+			if (subscriptions != null) {
+				subscriptions.remove(theId, theSubscription);
+			}
+		}
+	}
+
+	private void removeSubscription(String theId) {
+		CanonicalSubscription previous = myIdToSubscription.remove(theId);
+		if (previous != null) {
+			removeFromResourceTypeIndex(theId, previous);
+		}
 	}
 
 	protected void registerSubscriptionCheckingSubscriber() {
@@ -481,7 +540,23 @@ public abstract class BaseSubscriptionInterceptor<S extends IBaseResource> exten
 		Validate.notNull(theId);
 		Validate.notBlank(theId.getIdPart());
 
-		myIdToSubscription.remove(theId.getIdPart());
+		removeSubscription(theId.getIdPart());
+	}
+
+	/**
+	 * Returns the resource type the subscription criteria apply to (e.g. <code>Observation</code>
+	 * for <code>Observation?code=123</code>), or <code>null</code> if there are no criteria
+	 */
+	static String getCriteriaResourceType(CanonicalSubscription theSubscription) {
+		String criteria = theSubscription.getCriteriaString();
+		if (StringUtils.isBlank(criteria)) {
+			return null;
+		}
+		int index = criteria.indexOf('?');
+		if (index != -1) {
+			criteria = criteria.substring(0, index);
+		}
+		return criteria.trim();
 	}
 
 
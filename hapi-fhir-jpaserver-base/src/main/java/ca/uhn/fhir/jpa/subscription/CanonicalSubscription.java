@@ -21,6 +21,7 @@ package ca.uhn.fhir.jpa.subscription;
  */
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.dao.SearchParameterMap;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -61,6 +62,8 @@ public class CanonicalSubscription implements Serializable {
 	private Subscription.SubscriptionStatus myStatus;
 	@JsonIgnore
 	private transient IBaseResource myBackingSubscription;
+	@JsonIgnore
+	private transient SearchParameterMap myParsedCriteria;
 	@JsonProperty("backingSubscription")
 	private String myBackingSubscriptionString;
 	@JsonProperty("triggerDefinition")
@@ -104,6 +107,18 @@ public class CanonicalSubscription implements Serializable {
 		myChannelType = theChannelType;
 	}
 
+	/**
+	 * Returns the criteria parsed by {@link SubscriptionCheckingSubscriber}, if they have
+	 * already been parsed. This is not serialized.
+	 */
+	public SearchParameterMap getParsedCriteria() {
+		return myParsedCriteria;
+	}
+
+	public void setParsedCriteria(SearchParameterMap theParsedCriteria) {
+		myParsedCriteria = theParsedCriteria;
+	}
+
 	public String getCriteriaString() {
 		return myCriteriaString;
 	}
@@ -0,0 +1,515 @@
+package ca.uhn.fhir.jpa.subscription;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.ISearchParamExtractor;
+import ca.uhn.fhir.jpa.dao.ISearchParamRegistry;
+import ca.uhn.fhir.jpa.dao.PathAndRef;
+import ca.uhn.fhir.jpa.dao.SearchParameterMap;
+import ca.uhn.fhir.jpa.entity.*;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.param.*;
+import org.hl7.fhir.instance.model.api.IAnyResource;
+import org.hl7.fhir.instance.model.api.IBaseExtension;
+import org.hl7.fhir.instance.model.api.IBaseReference;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.*;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Tests whether a resource matches subscription criteria by evaluating the criteria
+ * against the search parameter values extracted from the resource itself, instead of
+ * performing a database search.
+ * <p>
+ * Only token, string, date, URI and (unchained) reference parameters and <code>_id</code>
+ * are supported, without modifiers other than <code>:exact</code>. For anything else
+ * (e.g. chains, <code>_has</code>, <code>_lastUpdated</code>, <code>_tag</code>, numbers and quantities)
+ * {@link MatchResultEnum#UNSUPPORTED} is returned and the caller should fall back to a
+ * database search.
+ * </p>
+ */
+public class InMemorySubscriptionMatcher {
+
+	/**
+	 * Special parameters which the JPA server handles itself instead of through the extracted
+	 * search parameter values (e.g. using the tag tables or the fulltext index), so they can't
+	 * be evaluated here even if the registry contains a definition for them
+	 */
+	private static final Set<String> UNSUPPORTED_SPECIAL_PARAMS;
+
+	static {
+		Set<String> unsupportedSpecialParams = new HashSet<String>();
+		unsupportedSpecialParams.add(IAnyResource.SP_RES_LANGUAGE);
+		unsupportedSpecialParams.add(Constants.PARAM_TAG);
+		unsupportedSpecialParams.add(Constants.PARAM_PROFILE);
+		unsupportedSpecialParams.add(Constants.PARAM_SECURITY);
+		unsupportedSpecialParams.add(Constants.PARAM_HAS);
+		unsupportedSpecialParams.add(Constants.PARAM_CONTENT);
+		unsupportedSpecialParams.add(Constants.PARAM_TEXT);
+		UNSUPPORTED_SPECIAL_PARAMS = Collections.unmodifiableSet(unsupportedSpecialParams);
+	}
+
+	@Autowired
+	private FhirContext myContext;
+	@Autowired
+	private DaoConfig myDaoConfig;
+	@Autowired
+	private ISearchParamExtractor mySearchParamExtractor;
+	@Autowired
+	private ISearchParamRegistry mySearchParamRegistry;
+
+	/**
+	 * Returns the values to match against for the given resource. The values are
+	 * extracted lazily, and the returned object should be reused when testing the
+	 * same resource against multiple criteria.
+	 */
+	public ExtractedValues extractValues(IBaseResource theResource) {
+		return new ExtractedValues(theResource);
+	}
+
+	/**
+	 * Tests the given criteria (which must be for the same resource type as the resource)
+	 */
+	public MatchResultEnum match(SearchParameterMap theCriteria, ExtractedValues theValues) {
+		if (theCriteria.getLastUpdated() != null) {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+
+		boolean unsupported = false;
+		for (Map.Entry<String, List<List<? extends IQueryParameterType>>> nextEntry : theCriteria.entrySet()) {
+			for (List<? extends IQueryParameterType> nextAnd : nextEntry.getValue()) {
+				if (nextAnd.isEmpty()) {
+					continue;
+				}
+				MatchResultEnum result = matchOrList(nextEntry.getKey(), nextAnd, theValues);
+				if (result == MatchResultEnum.NO_MATCH) {
+					return MatchResultEnum.NO_MATCH;
+				}
+				if (result == MatchResultEnum.UNSUPPORTED) {
+					// Keep going, since another parameter may still rule out a match
+					unsupported = true;
+				}
+			}
+		}
+
+		return unsupported ? MatchResultEnum.UNSUPPORTED : MatchResultEnum.MATCH;
+	}
+
+	private MatchResultEnum matchOrList(String theParamName, List<? extends IQueryParameterType> theOrList, ExtractedValues theValues) {
+		if (UNSUPPORTED_SPECIAL_PARAMS.contains(theParamName)) {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+
+		for (IQueryParameterType next : theOrList) {
+			if (next.getMissing() != null) {
+				return MatchResultEnum.UNSUPPORTED;
+			}
+		}
+
+		RuntimeSearchParam paramDef = null;
+		if (!theParamName.equals(IAnyResource.SP_RES_ID)) {
+			paramDef = mySearchParamRegistry.getActiveSearchParam(theValues.getResourceType(), theParamName);
+			if (paramDef == null) {
+				return MatchResultEnum.UNSUPPORTED;
+			}
+		}
+
+		boolean unsupported = false;
+		for (IQueryParameterType next : theOrList) {
+			MatchResultEnum result;
+			if (paramDef == null) {
+				result = matchResourceId(next, theValues);
+			} else {
+				switch (paramDef.getParamType()) {
+					case TOKEN:
+						result = matchToken(theParamName, next, theValues);
+						break;
+					case STRING:
+						result = matchString(theParamName, next, theValues);
+						break;
+					case DATE:
+						result = matchDate(theParamName, next, theValues);
+						break;
+					case URI:
+						result = matchUri(theParamName, next, theValues);
+						break;
+					case REFERENCE:
+						result = matchReference(paramDef, next, theValues);
+						break;
+					default:
+						result = MatchResultEnum.UNSUPPORTED;
+						break;
+				}
+			}
+
+			if (result == MatchResultEnum.MATCH) {
+				return MatchResultEnum.MATCH;
+			}
+			if (result == MatchResultEnum.UNSUPPORTED) {
+				unsupported = true;
+			}
+		}
+
+		return unsupported ? MatchResultEnum.UNSUPPORTED : MatchResultEnum.NO_MATCH;
+	}
+
+	private MatchResultEnum matchDate(String theParamName, IQueryParameterType theParam, ExtractedValues theValues) {
+		DateRangeParam range;
+		if (theParam instanceof DateParam) {
+			DateParam date = (DateParam) theParam;
+			if (date.isEmpty()) {
+				return MatchResultEnum.UNSUPPORTED;
+			}
+			try {
+				range = new DateRangeParam(date);
+			} catch (RuntimeException e) {
+				return MatchResultEnum.UNSUPPORTED;
+			}
+		} else if (theParam instanceof DateRangeParam) {
+			range = (DateRangeParam) theParam;
+		} else {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+
+		Date lowerBound = range.getLowerBoundAsInstant();
+		Date upperBound = range.getUpperBoundAsInstant();
+		if (lowerBound == null && upperBound == null) {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+
+		/*
+		 * This follows the same logic as the predicates created by SearchBuilder
+		 */
+		for (ResourceIndexedSearchParamDate next : theValues.getDates()) {
+			if (!theParamName.equals(next.getParamName()) || next.getValueLow() == null || next.getValueHigh() == null) {
+				continue;
+			}
+			long low = next.getValueLow().getTime();
+			long high = next.getValueHigh().getTime();
+
+			boolean lb = true;
+			if (lowerBound != null) {
+				boolean gt = low >= lowerBound.getTime();
+				boolean lt = high >= lowerBound.getTime();
+				ParamPrefixEnum prefix = range.getLowerBound().getPrefix();
+				if (prefix == ParamPrefixEnum.STARTS_AFTER || prefix == ParamPrefixEnum.EQUAL) {
+					lb = gt;
+				} else {
+					lb = gt || lt;
+				}
+			}
+
+			boolean ub = true;
+			if (upperBound != null) {
+				boolean gt = low <= upperBound.getTime();
+				boolean lt = high <= upperBound.getTime();
+				ParamPrefixEnum prefix = range.getUpperBound().getPrefix();
+				if (prefix == ParamPrefixEnum.ENDS_BEFORE || prefix == ParamPrefixEnum.EQUAL) {
+					ub = lt;
+				} else {
+					ub = gt || lt;
+				}
+			}
+
+			if (lb && ub) {
+				return MatchResultEnum.MATCH;
+			}
+		}
+		return MatchResultEnum.NO_MATCH;
+	}
+
+	private MatchResultEnum matchReference(RuntimeSearchParam theParamDef, IQueryParameterType theParam, ExtractedValues theValues) {
+		if (!(theParam instanceof ReferenceParam)) {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+		ReferenceParam ref = (ReferenceParam) theParam;
+		if (isNotBlank(ref.getChain()) || isNotBlank(ref.getBaseUrl()) || isBlank(ref.getIdPart())) {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+
+		/*
+		 * If referential integrity isn't enforced, references to missing resources are
+		 * not indexed, so we can't tell from the resource alone whether it would match
+		 */
+		if (!myDaoConfig.isEnforceReferentialIntegrityOnWrite()) {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+
+		List<IIdType> targets = theValues.getReferenceTargets(theParamDef);
+		if (targets == null) {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+
+		for (IIdType next : targets) {
+			if (!ref.getIdPart().equals(next.getIdPart())) {
+				continue;
+			}
+			if (isBlank(ref.getResourceType()) || ref.getResourceType().equals(next.getResourceType())) {
+				return MatchResultEnum.MATCH;
+			}
+		}
+		return MatchResultEnum.NO_MATCH;
+	}
+
+	private MatchResultEnum matchResourceId(IQueryParameterType theParam, ExtractedValues theValues) {
+		String value = theParam.getValueAsQueryToken(myContext);
+		if (value != null && value.startsWith("|")) {
+			value = value.substring(1);
+		}
+		if (isBlank(value)) {
+			return MatchResultEnum.NO_MATCH;
+		}
+
+		String idPart = new IdDt(value).getIdPart();
+		if (idPart != null && idPart.equals(theValues.getResource().getIdElement().getIdPart())) {
+			return MatchResultEnum.MATCH;
+		}
+		return MatchResultEnum.NO_MATCH;
+	}
+
+	private MatchResultEnum matchString(String theParamName, IQueryParameterType theParam, ExtractedValues theValues) {
+		if (!(theParam instanceof StringParam)) {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+		StringParam param = (StringParam) theParam;
+		if (param.isContains() || param.getValue() == null) {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+
+		String rawValue = param.getValue();
+		String normalizedValue = BaseHapiFhirDao.normalizeString(rawValue);
+		if (normalizedValue.contains("%") || normalizedValue.contains("_")) {
+			// These are wildcards in the database LIKE expression
+			return MatchResultEnum.UNSUPPORTED;
+		}
+
+		for (ResourceIndexedSearchParamString next : theValues.getStrings()) {
+			if (!theParamName.equals(next.getParamName())) {
+				continue;
+			}
+			if (param.isExact()) {
+				if (rawValue.equals(next.getValueExact())) {
+					return MatchResultEnum.MATCH;
+				}
+			} else if (next.getValueNormalized() != null && next.getValueNormalized().startsWith(normalizedValue)) {
+				return MatchResultEnum.MATCH;
+			}
+		}
+		return MatchResultEnum.NO_MATCH;
+	}
+
+	private MatchResultEnum matchToken(String theParamName, IQueryParameterType theParam, ExtractedValues theValues) {
+		if (!(theParam instanceof TokenParam)) {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+		TokenParam param = (TokenParam) theParam;
+		if (param.getModifier() != null) {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+
+		String system = param.getSystem();
+		String code = param.getValue();
+		for (ResourceIndexedSearchParamToken next : theValues.getTokens()) {
+			if (!theParamName.equals(next.getParamName())) {
+				continue;
+			}
+			if (isNotBlank(system)) {
+				if (!system.equals(next.getSystem())) {
+					continue;
+				}
+			} else if (system != null) {
+				// If the system is "", we only match on tokens without a system
+				if (isNotBlank(next.getSystem())) {
+					continue;
+				}
+			}
+			if (isNotBlank(code) && !code.equals(next.getValue())) {
+				continue;
+			}
+			return MatchResultEnum.MATCH;
+		}
+		return MatchResultEnum.NO_MATCH;
+	}
+
+	private MatchResultEnum matchUri(String theParamName, IQueryParameterType theParam, ExtractedValues theValues) {
+		if (!(theParam instanceof UriParam)) {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+		UriParam param = (UriParam) theParam;
+		if (param.getQualifier() != null || param.getValue() == null) {
+			return MatchResultEnum.UNSUPPORTED;
+		}
+
+		for (ResourceIndexedSearchParamUri next : theValues.getUris()) {
+			if (theParamName.equals(next.getParamName()) && param.getValue().equals(next.getUri())) {
+				return MatchResultEnum.MATCH;
+			}
+		}
+		return MatchResultEnum.NO_MATCH;
+	}
+
+	public enum MatchResultEnum {
+		MATCH,
+		NO_MATCH,
+		/**
+		 * The criteria can not be evaluated in memory, so a database search is required
+		 */
+		UNSUPPORTED
+	}
+
+	/**
+	 * Search parameter values extracted from a single resource. Each type of value is
+	 * only extracted the first time it is needed.
+	 */
+	public class ExtractedValues {
+		private final ResourceTable myEntity;
+		private final IBaseResource myResource;
+		private final Map<String, List<IIdType>> myReferenceTargets = new HashMap<>();
+		private Set<ResourceIndexedSearchParamDate> myDates;
+		private Set<ResourceIndexedSearchParamString> myStrings;
+		private Set<ResourceIndexedSearchParamToken> myTokens;
+		private Set<ResourceIndexedSearchParamUri> myUris;
+
+		ExtractedValues(IBaseResource theResource) {
+			myResource = theResource;
+			myEntity = new ResourceTable();
+			myEntity.setResourceType(myContext.getResourceDefinition(theResource).getName());
+		}
+
+		Set<ResourceIndexedSearchParamDate> getDates() {
+			if (myDates == null) {
+				myDates = mySearchParamExtractor.extractSearchParamDates(myEntity, myResource);
+			}
+			return myDates;
+		}
+
+		/**
+		 * Returns the resources referenced by the given parameter, or <code>null</code>
+		 * if the resource contains references which can't be matched in memory
+		 */
+		List<IIdType> getReferenceTargets(RuntimeSearchParam theParamDef) {
+			if (myReferenceTargets.containsKey(theParamDef.getName())) {
+				return myReferenceTargets.get(theParamDef.getName());
+			}
+
+			List<IIdType> retVal = new ArrayList<>();
+			for (PathAndRef nextPathAndRef : mySearchParamExtractor.extractResourceLinks(myResource, theParamDef)) {
+				Object nextObject = nextPathAndRef.getRef();
+				if (nextObject instanceof IBaseExtension<?, ?>) {
+					nextObject = ((IBaseExtension<?, ?>) nextObject).getValue();
+				}
+
+				IIdType nextId;
+				if (nextObject instanceof IBaseReference) {
+					IBaseReference nextRef = (IBaseReference) nextObject;
+					if (nextRef.isEmpty()) {
+						continue;
+					}
+					nextId = nextRef.getReferenceElement();
+					if (nextId.isEmpty() && nextRef.getResource() != null) {
+						nextId = nextRef.getResource().getIdElement();
+					}
+					if (nextId.isEmpty() || nextId.getValue().startsWith("#")) {
+						// Blank or contained resource reference
+						continue;
+					}
+				} else if (nextObject instanceof IBaseResource) {
+					nextId = ((IBaseResource) nextObject).getIdElement();
+					if (nextId == null || !nextId.hasIdPart()) {
+						continue;
+					}
+				} else {
+					continue;
+				}
+
+				if (nextId.hasBaseUrl() || !nextId.hasResourceType()) {
+					retVal = null;
+					break;
+				}
+				Set<String> targets = theParamDef.getTargets();
+				if (targets != null && !targets.isEmpty() && !targets.contains(nextId.getResourceType())) {
+					continue;
+				}
+				retVal.add(nextId);
+			}
+
+			myReferenceTargets.put(theParamDef.getName(), retVal);
+			return retVal;
+		}
+
+		IBaseResource getResource() {
+			return myResource;
+		}
+
+		String getResourceType() {
+			return myEntity.getResourceType();
+		}
+
+		/**
+		 * Token parameters can also produce string values (e.g. the text of a CodeableConcept),
+		 * so these are included here too
+		 */
+		Set<ResourceIndexedSearchParamString> getStrings() {
+			if (myStrings == null) {
+				extractTokensAndStrings();
+			}
+			return myStrings;
+		}
+
+		Set<ResourceIndexedSearchParamToken> getTokens() {
+			if (myTokens == null) {
+				extractTokensAndStrings();
+			}
+			return myTokens;
+		}
+
+		Set<ResourceIndexedSearchParamUri> getUris() {
+			if (myUris == null) {
+				myUris = mySearchParamExtractor.extractSearchParamUri(myEntity, myResource);
+			}
+			return myUris;
+		}
+
+		private void extractTokensAndStrings() {
+			myStrings = new HashSet<>(mySearchParamExtractor.extractSearchParamStrings(myEntity, myResource));
+			myTokens = new HashSet<>();
+			for (BaseResourceIndexedSearchParam next : mySearchParamExtractor.extractSearchParamTokens(myEntity, myResource)) {
+				if (next instanceof ResourceIndexedSearchParamToken) {
+					myTokens.add((ResourceIndexedSearchParamToken) next);
+				} else if (next instanceof ResourceIndexedSearchParamString) {
+					myStrings.add((ResourceIndexedSearchParamString) next);
+				}
+			}
+		}
+	}
+
+}
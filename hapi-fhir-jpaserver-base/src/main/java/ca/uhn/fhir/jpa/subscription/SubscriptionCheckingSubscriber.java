@@ -69,9 +69,19 @@ public class SubscriptionCheckingSubscriber extends BaseSubscriptionSubscriber {
 		String resourceType = id.getResourceType();
 		String resourceId = id.getIdPart();
 
-		List<CanonicalSubscription> subscriptions = getSubscriptionInterceptor().getSubscriptions();
+		List<CanonicalSubscription> subscriptions = getSubscriptionInterceptor().getSubscriptionsForResourceType(resourceType);
 
-		ourLog.trace("Testing {} subscriptions for applicability");
+		ourLog.trace("Testing {} subscriptions for applicability", subscriptions.size());
+
+		InMemorySubscriptionMatcher matcher = getSubscriptionInterceptor().getInMemorySubscriptionMatcher();
+		InMemorySubscriptionMatcher.ExtractedValues extractedValues = null;
+		IBaseResource payload = null;
+		if (matcher != null && !subscriptions.isEmpty()) {
+			payload = msg.getNewPayload(getContext());
+			if (payload != null) {
+				extractedValues = matcher.extractValues(payload);
+			}
+		}
 
 		for (CanonicalSubscription nextSubscription : subscriptions) {
 
@@ -84,15 +94,24 @@ public class SubscriptionCheckingSubscriber extends BaseSubscriptionSubscriber {
 
 			// see if the criteria matches the created object
 			ourLog.trace("Checking subscription {} for {} with criteria {}", nextSubscriptionId, resourceType, nextCriteriaString);
-			String criteriaResource = nextCriteriaString;
-			int index = criteriaResource.indexOf("?");
-			if (index != -1) {
-				criteriaResource = criteriaResource.substring(0, criteriaResource.indexOf("?"));
-			}
 
-			if (resourceType != null && nextCriteriaString != null && !criteriaResource.equals(resourceType)) {
-				ourLog.trace("Skipping subscription search for {} because it does not match the criteria {}", resourceType, nextCriteriaString);
-				continue;
+			// first try to evaluate the criteria against the resource itself, which avoids a database search
+			if (extractedValues != null) {
+				InMemorySubscriptionMatcher.MatchResultEnum result = InMemorySubscriptionMatcher.MatchResultEnum.UNSUPPORTED;
+				SearchParameterMap criteriaMap = getParsedCriteria(nextSubscription);
+				if (criteriaMap != null) {
+					result = matcher.match(criteriaMap, extractedValues);
+				}
+
+				if (result == InMemorySubscriptionMatcher.MatchResultEnum.NO_MATCH) {
+					ourLog.trace("Subscription {} criteria do not match {}", nextSubscriptionId, id);
+					continue;
+				}
+				if (result == InMemorySubscriptionMatcher.MatchResultEnum.MATCH) {
+					ourLog.info("Found match: queueing rest-hook notification for resource: {}", payload.getIdElement());
+					deliver(nextSubscription, msg, payload);
+					continue;
+				}
 			}
 
 			// run the subscriptions query and look for matches, add the id as part of the criteria to avoid getting matches of previous resources rather than the recent resource
@@ -111,21 +130,44 @@ public class SubscriptionCheckingSubscriber extends BaseSubscriptionSubscriber {
 			// should just be one resource as it was filtered by the id
 			for (IBaseResource nextBase : results.getResources(0, results.size())) {
 				ourLog.info("Found match: queueing rest-hook notification for resource: {}", nextBase.getIdElement());
-
-				ResourceDeliveryMessage deliveryMsg = new ResourceDeliveryMessage();
-				deliveryMsg.setPayload(getContext(), nextBase);
-				deliveryMsg.setSubscription(nextSubscription);
-				deliveryMsg.setOperationType(msg.getOperationType());
-				deliveryMsg.setPayloadId(msg.getId(getContext()));
-
-				ResourceDeliveryJsonMessage wrappedMsg = new ResourceDeliveryJsonMessage(deliveryMsg);
-				getSubscriptionInterceptor().getDeliveryChannel().send(wrappedMsg);
+				deliver(nextSubscription, msg, nextBase);
 			}
 		}
 
 
 	}
 
+	private void deliver(CanonicalSubscription theSubscription, ResourceModifiedMessage theMsg, IBaseResource thePayload) {
+		ResourceDeliveryMessage deliveryMsg = new ResourceDeliveryMessage();
+		deliveryMsg.setPayload(getContext(), thePayload);
+		deliveryMsg.setSubscription(theSubscription);
+		deliveryMsg.setOperationType(theMsg.getOperationType());
+		deliveryMsg.setPayloadId(theMsg.getId(getContext()));
+
+		ResourceDeliveryJsonMessage wrappedMsg = new ResourceDeliveryJsonMessage(deliveryMsg);
+		getSubscriptionInterceptor().getDeliveryChannel().send(wrappedMsg);
+	}
+
+	/**
+	 * Returns the parsed criteria for the given subscription, or <code>null</code> if
+	 * they can't be parsed (in which case the search will report the problem)
+	 */
+	private SearchParameterMap getParsedCriteria(CanonicalSubscription theSubscription) {
+		SearchParameterMap retVal = theSubscription.getParsedCriteria();
+		if (retVal == null) {
+			try {
+				String criteria = massageCriteria(theSubscription.getCriteriaString());
+				RuntimeResourceDefinition resourceDef = getSubscriptionDao().validateCriteriaAndReturnResourceDefinition(criteria);
+				retVal = BaseHapiFhirDao.translateMatchUrl(getSubscriptionDao(), getSubscriptionDao().getContext(), criteria, resourceDef);
+				theSubscription.setParsedCriteria(retVal);
+			} catch (RuntimeException e) {
+				ourLog.debug("Unable to parse criteria for in-memory matching: {}", e.toString());
+				return null;
+			}
+		}
+		return retVal;
+	}
+
 	/**
 	 * Subclasses may override
 	 */
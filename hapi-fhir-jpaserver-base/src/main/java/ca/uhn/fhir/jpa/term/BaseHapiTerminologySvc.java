@@ -34,6 +34,7 @@ import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionTemplate;
 
@@ -58,8 +59,19 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BaseHapiTerminologySvc.class);
 	private static final Object PLACEHOLDER_OBJECT = new Object();
 
+	/**
+	 * Queued concept closure rows are flushed to the database in groups of
+	 * this size, so that they can be sent using JDBC batching
+	 */
+	private static final int CLOSURE_FLUSH_SIZE = 1000;
+
 	private ArrayListMultimap<Long, Long> myChildToParentPidCache;
 
+	/**
+	 * Code system versions whose concept closure still needs to be calculated
+	 */
+	private List<Long> myCodeSystemVersionsRequiringClosure = new ArrayList<Long>();
+
 	@Autowired
 	protected ITermCodeSystemDao myCodeSystemDao;
 
@@ -71,6 +83,20 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 
 	private List<TermConceptParentChildLink> myConceptLinksToSaveLater = new ArrayList<TermConceptParentChildLink>();
 
+	@Autowired
+	private ITermConceptClosureDao myConceptClosureDao;
+
+	private Long myConceptClosureInProgressVersionPid;
+
+	private ArrayDeque<PendingClosure> myConceptClosuresToSaveLater = new ArrayDeque<PendingClosure>();
+
+	/**
+	 * The queue of closures to calculate only lives in memory, so the first
+	 * deferred save after startup picks up any code system versions whose closure
+	 * was never completed (e.g. because the server was stopped part way through)
+	 */
+	private boolean myIncompleteClosuresQueued;
+
 	@Autowired
 	private ITermConceptParentChildLinkDao myConceptParentChildLinkDao;
 
@@ -95,13 +121,39 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		boolean retVal = theSetToPopulate.add(theConcept);
 		if (retVal) {
 			if (theSetToPopulate.size() >= myDaoConfig.getMaximumExpansionSize()) {
-				String msg = myContext.getLocalizer().getMessage(BaseHapiTerminologySvc.class, "expansionTooLarge", myDaoConfig.getMaximumExpansionSize());
-				throw new InvalidRequestException(msg);
+				throw newExpansionTooLargeException();
 			}
 		}
 		return retVal;
 	}
 
+	/**
+	 * Adds the results of a concept closure lookup to the set. The lookup is limited to
+	 * {@link DaoConfig#getMaximumExpansionSize()} rows, so a full page means that the
+	 * real result is at least that large and the expansion is rejected rather than being
+	 * silently truncated.
+	 */
+	private void addClosureResultsToSet(Set<TermConcept> theSetToPopulate, List<TermConcept> theClosureResults) {
+		if (theClosureResults.size() >= myDaoConfig.getMaximumExpansionSize()) {
+			throw newExpansionTooLargeException();
+		}
+		for (TermConcept next : theClosureResults) {
+			addToSet(theSetToPopulate, next);
+		}
+	}
+
+	/**
+	 * Forgets any closure calculation which is still pending for the given code system
+	 * version (e.g. because it is being deleted)
+	 */
+	private void discardPendingClosure(Long theCodeSystemVersionPid) {
+		myCodeSystemVersionsRequiringClosure.remove(theCodeSystemVersionPid);
+		if (theCodeSystemVersionPid.equals(myConceptClosureInProgressVersionPid)) {
+			myConceptClosuresToSaveLater.clear();
+			myConceptClosureInProgressVersionPid = null;
+		}
+	}
+
 	private int ensureParentsSaved(Collection<TermConceptParentChildLink> theParents) {
 		ourLog.trace("Checking {} parents", theParents.size());
 		int retVal = 0;
@@ -121,6 +173,27 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		return retVal;
 	}
 
+	/**
+	 * Adds the ancestors of the given concept to the set using the concept closure table
+	 *
+	 * @return Returns <code>false</code> if the closure is not available for this concept, in which
+	 * case nothing is added and the caller should walk the hierarchy instead
+	 */
+	private boolean fetchAncestorsUsingClosure(TermConcept theConcept, Set<TermConcept> theSetToPopulate) {
+		if (isClosureIncomplete(theConcept)) {
+			return false;
+		}
+
+		List<TermConcept> ancestors = myConceptDao.findAncestors(theConcept.getId(), new PageRequest(0, myDaoConfig.getMaximumExpansionSize()));
+		if (ancestors.isEmpty() && !theConcept.getParents().isEmpty()) {
+			// The concept was stored before its closure was (e.g. by an older version of HAPI)
+			return false;
+		}
+
+		addClosureResultsToSet(theSetToPopulate, ancestors);
+		return true;
+	}
+
 	private void fetchChildren(TermConcept theConcept, Set<TermConcept> theSetToPopulate) {
 		for (TermConceptParentChildLink nextChildLink : theConcept.getChildren()) {
 			TermConcept nextChild = nextChildLink.getChild();
@@ -130,6 +203,27 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		}
 	}
 
+	/**
+	 * Adds the descendants of the given concept to the set using the concept closure table
+	 *
+	 * @return Returns <code>false</code> if the closure is not available for this concept, in which
+	 * case nothing is added and the caller should walk the hierarchy instead
+	 */
+	private boolean fetchDescendantsUsingClosure(TermConcept theConcept, Set<TermConcept> theSetToPopulate) {
+		if (isClosureIncomplete(theConcept)) {
+			return false;
+		}
+
+		List<TermConcept> descendants = myConceptDao.findDescendants(theConcept.getId(), new PageRequest(0, myDaoConfig.getMaximumExpansionSize()));
+		if (descendants.isEmpty() && !theConcept.getChildren().isEmpty()) {
+			// The concept was stored before its closure was (e.g. by an older version of HAPI)
+			return false;
+		}
+
+		addClosureResultsToSet(theSetToPopulate, descendants);
+		return true;
+	}
+
 	private TermConcept fetchLoadedCode(Long theCodeSystemResourcePid, Long theCodeSystemVersionPid, String theCode) {
 		TermCodeSystemVersion codeSystem = myCodeSystemVersionDao.findByCodeSystemResourceAndVersion(theCodeSystemResourcePid, theCodeSystemVersionPid);
 		TermConcept concept = myConceptDao.findByCodeSystemAndCode(codeSystem, theCode);
@@ -169,7 +263,9 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		Set<TermConcept> retVal = new HashSet<TermConcept>();
 		retVal.add(concept);
 
-		fetchParents(concept, retVal);
+		if (!fetchAncestorsUsingClosure(concept, retVal)) {
+			fetchParents(concept, retVal);
+		}
 
 		ourLog.info("Fetched {} codes above code {} in {}ms", new Object[] { retVal.size(), theCode, stopwatch.elapsed(TimeUnit.MILLISECONDS) });
 		return retVal;
@@ -213,7 +309,9 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		Set<TermConcept> retVal = new HashSet<TermConcept>();
 		retVal.add(concept);
 
-		fetchChildren(concept, retVal);
+		if (!fetchDescendantsUsingClosure(concept, retVal)) {
+			fetchChildren(concept, retVal);
+		}
 
 		ourLog.info("Fetched {} codes below code {} in {}ms", new Object[] { retVal.size(), theCode, stopwatch.elapsed(TimeUnit.MILLISECONDS) });
 		return retVal;
@@ -253,11 +351,55 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		return csv;
 	}
 
+	/**
+	 * Returns the ancestors of the given concept by walking the child/parent links in the given
+	 * map, caching the result for each concept so that shared ancestors are only walked once
+	 */
+	private long[] findAncestorPids(Long theConceptPid, ArrayListMultimap<Long, Long> theChildToParentPids, Map<Long, long[]> theAncestorPidCache) {
+		long[] retVal = theAncestorPidCache.get(theConceptPid);
+		if (retVal != null) {
+			return retVal;
+		}
+
+		// Guards against infinite recursion if the hierarchy somehow contains a cycle
+		theAncestorPidCache.put(theConceptPid, new long[0]);
+
+		Set<Long> ancestorPids = new HashSet<Long>();
+		for (Long nextParentPid : theChildToParentPids.get(theConceptPid)) {
+			ancestorPids.add(nextParentPid);
+			for (long nextAncestorPid : findAncestorPids(nextParentPid, theChildToParentPids, theAncestorPidCache)) {
+				ancestorPids.add(nextAncestorPid);
+			}
+		}
+		ancestorPids.remove(theConceptPid);
+
+		retVal = new long[ancestorPids.size()];
+		int index = 0;
+		for (Long next : ancestorPids) {
+			retVal[index++] = next;
+		}
+		theAncestorPidCache.put(theConceptPid, retVal);
+		return retVal;
+	}
+
 	private TermCodeSystem getCodeSystem(String theSystem) {
 		TermCodeSystem cs = myCodeSystemDao.findByCodeSystemUri(theSystem);
 		return cs;
 	}
 
+	/**
+	 * Returns <code>true</code> if the concept closure of the concept's code system version is
+	 * not fully stored, meaning that hierarchy lookups need to walk the parent/child links instead
+	 */
+	private boolean isClosureIncomplete(TermConcept theConcept) {
+		return !theConcept.getCodeSystem().isClosureComplete();
+	}
+
+	private InvalidRequestException newExpansionTooLargeException() {
+		String msg = myContext.getLocalizer().getMessage(BaseHapiTerminologySvc.class, "expansionTooLarge", myDaoConfig.getMaximumExpansionSize());
+		return new InvalidRequestException(msg);
+	}
+
 	private void persistChildren(TermConcept theConcept, TermCodeSystemVersion theCodeSystem, IdentityHashMap<TermConcept, Object> theConceptsStack, int theTotalConcepts) {
 		if (theConceptsStack.put(theConcept, PLACEHOLDER_OBJECT) != null) {
 			return;
@@ -291,6 +433,33 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 
 	}
 
+	/**
+	 * Calculates the closure of all of the parent/child links in the given code system version,
+	 * and queues it to be saved
+	 */
+	private void populateClosure(Long theCodeSystemVersionPid) {
+		StopWatch stopwatch = new StopWatch();
+
+		// Remove any rows left behind by an earlier attempt which didn't finish
+		myConceptClosureDao.deleteByCodeSystemVersion(theCodeSystemVersionPid);
+
+		ArrayListMultimap<Long, Long> childToParentPids = ArrayListMultimap.create();
+		for (Object[] next : myConceptParentChildLinkDao.findChildAndParentPidsByCodeSystemVersion(theCodeSystemVersionPid)) {
+			childToParentPids.put((Long) next[0], (Long) next[1]);
+		}
+
+		Map<Long, long[]> ancestorPidCache = new HashMap<Long, long[]>();
+		int rowCount = 0;
+		for (Long nextChildPid : childToParentPids.keySet()) {
+			long[] ancestorPids = findAncestorPids(nextChildPid, childToParentPids, ancestorPidCache);
+			myConceptClosuresToSaveLater.add(new PendingClosure(theCodeSystemVersionPid, nextChildPid, ancestorPids));
+			rowCount += ancestorPids.length;
+		}
+
+		myConceptClosureInProgressVersionPid = theCodeSystemVersionPid;
+		ourLog.info("Calculated closure of {} concept relationships in code system version {} ({} rows) in {}ms", new Object[] { childToParentPids.size(), theCodeSystemVersionPid, rowCount, stopwatch.getMillis() });
+	}
+
 	private void populateVersion(TermConcept theNext, TermCodeSystemVersion theCodeSystemVersion) {
 		if (theNext.getCodeSystem() != null) {
 			return;
@@ -338,7 +507,14 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 					new Object[] { relCount, myConceptLinksToSaveLater.size(), stopwatch.getMillis(), stopwatch.getMillisPerOperation(codeCount) });
 		}
 
-		if ((myConceptsToSaveLater.size() + myConceptLinksToSaveLater.size()) == 0) {
+		if (codeCount == 0 && relCount == 0 && myConceptLinksToSaveLater.isEmpty()) {
+			int closureCount = saveClosures(myDaoConfig.getDeferIndexingForCodesystemsOfSize());
+			if (closureCount > 0) {
+				ourLog.info("Saved {} deferred concept closure rows ({} concepts remain) in {}ms", new Object[] { closureCount, myConceptClosuresToSaveLater.size(), stopwatch.getMillis() });
+			}
+		}
+
+		if ((myConceptsToSaveLater.size() + myConceptLinksToSaveLater.size()) == 0 && !hasPendingClosures()) {
 			ourLog.info("All deferred concepts and relationships have now been synchronized to the database");
 		}
 	}
@@ -410,6 +586,7 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 					nextConcept.setParentPids(parentsBuilder.toString());
 
 					saveConcept(nextConcept);
+					updateClosure(nextConcept, parentsBuilder.toString());
 					count++;
 				}
 
@@ -419,6 +596,69 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 
 	}
 
+	/**
+	 * Saves queued concept closure rows, calculating the closure for the next code system
+	 * version requiring it first if nothing is queued
+	 *
+	 * @return Returns the number of rows saved
+	 */
+	private int saveClosures(int theMaxRows) {
+		if (myConceptClosuresToSaveLater.isEmpty()) {
+			if (myCodeSystemVersionsRequiringClosure.isEmpty()) {
+				return 0;
+			}
+			populateClosure(myCodeSystemVersionsRequiringClosure.remove(0));
+		}
+
+		int retVal = 0;
+		List<TermConceptClosure> unflushed = new ArrayList<TermConceptClosure>();
+		while (retVal < theMaxRows && !myConceptClosuresToSaveLater.isEmpty()) {
+			PendingClosure next = myConceptClosuresToSaveLater.poll();
+			for (long nextAncestorPid : next.myAncestorPids) {
+				TermConceptClosure closure = new TermConceptClosure(next.myCodeSystemVersionPid, nextAncestorPid, next.myDescendantPid);
+				myEntityManager.persist(closure);
+				unflushed.add(closure);
+				retVal++;
+			}
+			if (unflushed.size() >= CLOSURE_FLUSH_SIZE) {
+				flushClosures(unflushed);
+			}
+		}
+		flushClosures(unflushed);
+
+		if (myConceptClosuresToSaveLater.isEmpty() && myConceptClosureInProgressVersionPid != null) {
+			ourLog.info("Concept closure for code system version {} is now complete", myConceptClosureInProgressVersionPid);
+			TermCodeSystemVersion codeSystemVersion = myCodeSystemVersionDao.findOne(myConceptClosureInProgressVersionPid);
+			if (codeSystemVersion != null) {
+				codeSystemVersion.setClosureComplete(true);
+				myCodeSystemVersionDao.save(codeSystemVersion);
+			}
+			myConceptClosureInProgressVersionPid = null;
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Writes the given newly persisted closure rows (along with anything else pending in the
+	 * persistence context) and then detaches them so that they aren't held until the
+	 * transaction ends
+	 */
+	private void flushClosures(List<TermConceptClosure> theClosures) {
+		if (theClosures.isEmpty()) {
+			return;
+		}
+		myEntityManager.flush();
+		for (TermConceptClosure next : theClosures) {
+			myEntityManager.detach(next);
+		}
+		theClosures.clear();
+	}
+
+	private boolean hasPendingClosures() {
+		return !myConceptClosuresToSaveLater.isEmpty() || !myCodeSystemVersionsRequiringClosure.isEmpty();
+	}
+
 	private int saveConcept(TermConcept theConcept) {
 		int retVal = 0;
 
@@ -446,13 +686,42 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		}
 	}
 
+	/**
+	 * Queues the closure of every code system version in the database which is not
+	 * marked as closure complete and isn't already queued or being saved. Any partial
+	 * rows for these versions are removed when their closure is calculated.
+	 */
+	private void queueIncompleteClosures() {
+		TransactionTemplate tt = new TransactionTemplate(myTransactionMgr);
+		tt.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+		tt.setReadOnly(true);
+		List<Long> incomplete = tt.execute(new TransactionCallback<List<Long>>() {
+			@Override
+			public List<Long> doInTransaction(TransactionStatus theStatus) {
+				return myCodeSystemVersionDao.findIdsWithIncompleteClosure();
+			}
+		});
+
+		for (Long next : incomplete) {
+			if (!myCodeSystemVersionsRequiringClosure.contains(next) && !next.equals(myConceptClosureInProgressVersionPid)) {
+				ourLog.info("Code system version {} does not have a complete concept closure, queueing it to be calculated", next);
+				myCodeSystemVersionsRequiringClosure.add(next);
+			}
+		}
+		myIncompleteClosuresQueued = true;
+	}
+
 	@Scheduled(fixedRate = 5000)
 	@Transactional(propagation = Propagation.NEVER)
 	@Override
 	public synchronized void saveDeferred() {
 		if (!myProcessDeferred) {
 			return;
-		} else if (myConceptsToSaveLater.isEmpty() && myConceptLinksToSaveLater.isEmpty()) {
+		}
+		if (!myIncompleteClosuresQueued) {
+			queueIncompleteClosures();
+		}
+		if (myConceptsToSaveLater.isEmpty() && myConceptLinksToSaveLater.isEmpty() && !hasPendingClosures()) {
 			processReindexing();
 			return;
 		}
@@ -491,12 +760,15 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		ourLog.info("Deleting old code system versions");
 		for (TermCodeSystemVersion next : existing) {
 			ourLog.info(" * Deleting code system version {}", next.getPid());
+			discardPendingClosure(next.getPid());
+			myConceptClosureDao.deleteByCodeSystemVersion(next.getPid());
 			myConceptParentChildLinkDao.deleteByCodeSystemVersion(next.getPid());
 			myConceptDao.deleteByCodeSystemVersion(next.getPid());
 		}
 
 		ourLog.info("Flushing...");
 
+		myConceptClosureDao.flush();
 		myConceptParentChildLinkDao.flush();
 		myConceptDao.flush();
 
@@ -535,6 +807,7 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 
 		ourLog.info("Saving version containing {} concepts", totalCodeCount);
 
+		theCodeSystemVersion.setClosureComplete(false);
 		TermCodeSystemVersion codeSystemVersion = myCodeSystemVersionDao.saveAndFlush(theCodeSystemVersion);
 
 		ourLog.info("Saving code system");
@@ -562,11 +835,57 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 
 		ourLog.info("Done deleting old code system versions");
 
-		if (myConceptsToSaveLater.size() > 0 || myConceptLinksToSaveLater.size() > 0) {
+		/*
+		 * The closure can only be calculated once all of the links have been saved, so if
+		 * anything was deferred the closure will be too
+		 */
+		myCodeSystemVersionsRequiringClosure.add(codeSystemVersion.getPid());
+		if (myConceptsToSaveLater.isEmpty() && myConceptLinksToSaveLater.isEmpty()) {
+			saveClosures(myDaoConfig.getDeferIndexingForCodesystemsOfSize());
+			myConceptClosureDao.flush();
+		}
+
+		if (myConceptsToSaveLater.size() > 0 || myConceptLinksToSaveLater.size() > 0 || hasPendingClosures()) {
 			ourLog.info("Note that some concept saving was deferred - still have {} concepts and {} relationships", myConceptsToSaveLater.size(), myConceptLinksToSaveLater.size());
 		}
 	}
 
+	@Transactional(propagation = Propagation.REQUIRED)
+	@Override
+	public boolean subsumes(String theSystem, String theCodeA, String theCodeB) {
+		TermCodeSystemVersion csv = findCurrentCodeSystemVersionForSystem(theSystem);
+		if (csv == null) {
+			for (VersionIndependentConcept next : findCodesBelowUsingBuiltInSystems(theSystem, theCodeA)) {
+				if (theCodeB.equals(next.getCode())) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		TermConcept codeA = myConceptDao.findByCodeSystemAndCode(csv, theCodeA);
+		TermConcept codeB = myConceptDao.findByCodeSystemAndCode(csv, theCodeB);
+		if (codeA == null || codeB == null) {
+			return false;
+		}
+		if (codeA.getId().equals(codeB.getId())) {
+			return true;
+		}
+
+		if (!isClosureIncomplete(codeB)) {
+			if (myConceptClosureDao.countByAncestorAndDescendant(codeA.getId(), codeB.getId()) > 0) {
+				return true;
+			}
+			if (codeB.getParents().isEmpty() || myConceptClosureDao.countByDescendant(codeB.getId()) > 0) {
+				return false;
+			}
+		}
+
+		Set<TermConcept> ancestors = new HashSet<TermConcept>();
+		fetchParents(codeB, ancestors);
+		return ancestors.contains(codeA);
+	}
+
 	@Override
 	public boolean supportsSystem(String theSystem) {
 		TermCodeSystem cs = getCodeSystem(theSystem);
@@ -581,6 +900,26 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		return retVal;
 	}
 
+	/**
+	 * Replaces the stored closure rows for the given concept with the given
+	 * (space separated) ancestor PIDs
+	 */
+	private void updateClosure(TermConcept theConcept, String theAncestorPids) {
+		myConceptClosureDao.deleteByDescendant(theConcept.getId());
+
+		Set<Long> ancestorPids = new HashSet<Long>();
+		for (String next : theAncestorPids.split(" ")) {
+			if (next.length() > 0) {
+				ancestorPids.add(Long.parseLong(next));
+			}
+		}
+		ancestorPids.remove(theConcept.getId());
+
+		for (Long next : ancestorPids) {
+			myConceptClosureDao.save(new TermConceptClosure(theConcept.getCodeSystem().getPid(), next, theConcept.getId()));
+		}
+	}
+
 	private int validateConceptForStorage(TermConcept theConcept, TermCodeSystemVersion theCodeSystem, ArrayList<String> theConceptsStack,
 			IdentityHashMap<TermConcept, Object> theAllConcepts) {
 		ValidateUtil.isTrueOrThrowInvalidRequest(theConcept.getCodeSystem() != null, "CodesystemValue is null");
@@ -610,6 +949,19 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 		return retVal;
 	}
 
+	/**
+	 * Forgets the in-memory queue of closures to calculate, the same as
+	 * happens when the server is restarted. This method is present only for
+	 * unit tests, do not call from client code.
+	 */
+	@VisibleForTesting
+	void clearClosureQueueForUnitTest() {
+		myCodeSystemVersionsRequiringClosure.clear();
+		myConceptClosuresToSaveLater.clear();
+		myConceptClosureInProgressVersionPid = null;
+		myIncompleteClosuresQueued = false;
+	}
+
 	/**
 	 * This method is present only for unit tests, do not call from client code
 	 */
@@ -622,6 +974,8 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 	public void deleteCodeSystem(TermCodeSystem theCodeSystem) {
 		ourLog.info(" * Deleting code system {}", theCodeSystem.getPid());
 		for (TermCodeSystemVersion next : myCodeSystemVersionDao.findByCodeSystemResource(theCodeSystem.getPid())) {
+			discardPendingClosure(next.getPid());
+			myConceptClosureDao.deleteByCodeSystemVersion(next.getPid());
 			myConceptParentChildLinkDao.deleteByCodeSystemVersion(next.getPid());
 			myConceptDao.deleteByCodeSystemVersion(next.getPid());
 		}
@@ -629,4 +983,17 @@ public abstract class BaseHapiTerminologySvc implements IHapiTerminologySvc {
 	}
 
 
+	private static class PendingClosure {
+		private final long[] myAncestorPids;
+		private final Long myCodeSystemVersionPid;
+		private final Long myDescendantPid;
+
+		PendingClosure(Long theCodeSystemVersionPid, Long theDescendantPid, long[] theAncestorPids) {
+			myCodeSystemVersionPid = theCodeSystemVersionPid;
+			myDescendantPid = theDescendantPid;
+			myAncestorPids = theAncestorPids;
+		}
+	}
+
+
 }
@@ -53,6 +53,13 @@ public interface IHapiTerminologySvc {
 
 	void saveDeferred();
 
+	/**
+	 * Returns <code>true</code> if code A subsumes code B in the current version of the
+	 * given code system, i.e. if A is the same concept as B or is one of its ancestors.
+	 * Where the concept closure has been stored this requires only a single indexed lookup.
+	 */
+	boolean subsumes(String theSystem, String theCodeA, String theCodeB);
+
 	/**
 	 * This is mostly for unit tests - we can disable processing of deferred concepts
 	 * by changing this flag
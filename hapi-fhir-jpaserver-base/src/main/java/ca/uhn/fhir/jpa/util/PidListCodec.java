@@ -0,0 +1,95 @@
+package ca.uhn.fhir.jpa.util;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes an ordered list of resource PIDs into a compact byte array
+ * and back again.
+ * <p>
+ * Each PID is stored as the difference from the previous PID (the first
+ * is stored as the difference from zero). Differences are zig-zag encoded
+ * so that negative differences (which are common, since search results are
+ * not generally sorted by PID) stay small, and then written as a variable
+ * length integer of 7 bits per byte. Resource PIDs which were created
+ * around the same time tend to be close together, so most PIDs end up
+ * taking between one and three bytes instead of the eight bytes required
+ * for a raw long.
+ * </p>
+ */
+public class PidListCodec {
+
+	/**
+	 * Non instantiable
+	 */
+	private PidListCodec() {
+		// nothing
+	}
+
+	public static List<Long> decode(byte[] theBytes) {
+		Validate.notNull(theBytes, "theBytes must not be null");
+
+		List<Long> retVal = new ArrayList<>();
+		long previous = 0;
+		int index = 0;
+		while (index < theBytes.length) {
+			long zigZag = 0;
+			int shift = 0;
+			byte next;
+			do {
+				Validate.isTrue(index < theBytes.length, "Truncated PID block");
+				next = theBytes[index++];
+				zigZag |= (long) (next & 0x7F) << shift;
+				shift += 7;
+			} while ((next & 0x80) != 0);
+
+			long delta = (zigZag >>> 1) ^ -(zigZag & 1);
+			previous = previous + delta;
+			retVal.add(previous);
+		}
+		return retVal;
+	}
+
+	public static byte[] encode(List<Long> thePids) {
+		Validate.notNull(thePids, "thePids must not be null");
+
+		ByteArrayOutputStream retVal = new ByteArrayOutputStream(thePids.size() * 3);
+		long previous = 0;
+		for (Long next : thePids) {
+			long delta = next - previous;
+			previous = next;
+
+			long zigZag = (delta << 1) ^ (delta >> 63);
+			while ((zigZag & ~0x7FL) != 0) {
+				retVal.write((int) ((zigZag & 0x7F) | 0x80));
+				zigZag >>>= 7;
+			}
+			retVal.write((int) zigZag);
+		}
+		return retVal.toByteArray();
+	}
+
+}
@@ -0,0 +1,99 @@
+package ca.uhn.fhir.jpa.util;
+
+/*-
+ * #%L
+ * HAPI FHIR JPA Server
+ * %%
+ * Copyright (C) 2014 - 2017 University Health Network
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A very simple thread safe accumulator for timings (e.g. how long
+ * a thread spent waiting for something). This is intended to be
+ * exposed by services so that it can be sampled by whatever monitoring
+ * system is in use.
+ */
+public class TimingStatistics {
+
+	private final AtomicLong myCount = new AtomicLong();
+	private final AtomicLong myMaxMillis = new AtomicLong();
+	private final AtomicLong myTotalMillis = new AtomicLong();
+
+	public void addTiming(long theMillis) {
+		myCount.incrementAndGet();
+		myTotalMillis.addAndGet(theMillis);
+
+		long currentMax;
+		do {
+			currentMax = myMaxMillis.get();
+			if (theMillis <= currentMax) {
+				break;
+			}
+		} while (!myMaxMillis.compareAndSet(currentMax, theMillis));
+	}
+
+	/**
+	 * Returns the number of timings that have been recorded
+	 */
+	public long getCount() {
+		return myCount.get();
+	}
+
+	/**
+	 * Returns the longest timing that has been recorded, in milliseconds
+	 */
+	public long getMaxMillis() {
+		return myMaxMillis.get();
+	}
+
+	/**
+	 * Returns the average timing, in milliseconds, or 0 if no timings have been recorded
+	 */
+	public long getMeanMillis() {
+		long count = myCount.get();
+		if (count == 0) {
+			return 0;
+		}
+		return myTotalMillis.get() / count;
+	}
+
+	/**
+	 * Returns the sum of all timings that have been recorded, in milliseconds
+	 */
+	public long getTotalMillis() {
+		return myTotalMillis.get();
+	}
+
+	public void reset() {
+		myCount.set(0);
+		myMaxMillis.set(0);
+		myTotalMillis.set(0);
+	}
+
+	@Override
+	public String toString() {
+		ToStringBuilder b = new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE);
+		b.append("count", getCount());
+		b.append("meanMillis", getMeanMillis());
+		b.append("maxMillis", getMaxMillis());
+		return b.build();
+	}
+}
@@ -0,0 +1,245 @@
+package ca.uhn.fhir.jpa.bulk;
+
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.r4.BaseJpaR4Test;
+import ca.uhn.fhir.jpa.entity.BulkExportJobStatusEnum;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.util.TestUtil;
+import com.google.common.base.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.AopTestUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class BulkDataExportSvcImplR4Test extends BaseJpaR4Test {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BulkDataExportSvcImplR4Test.class);
+	@Rule
+	public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+	@Autowired
+	private IBulkDataExportSvc myBulkDataExportSvc;
+
+	@After
+	public void after() {
+		myDaoConfig.setBulkExportDirectory(new DaoConfig().getBulkExportDirectory());
+		myDaoConfig.setBulkExportGzipFiles(new DaoConfig().isBulkExportGzipFiles());
+		BulkDataExportSvcImpl svc = AopTestUtils.getTargetObject(myBulkDataExportSvc);
+		svc.setBatchSizeForUnitTest(1000);
+	}
+
+	@Before
+	public void before() throws IOException {
+		myDaoConfig.setBulkExportDirectory(myTemporaryFolder.newFolder().getAbsolutePath());
+
+		// Use a small batch size so that multiple batches are needed
+		BulkDataExportSvcImpl svc = AopTestUtils.getTargetObject(myBulkDataExportSvc);
+		svc.setBatchSizeForUnitTest(2);
+	}
+
+	private List<String> readLines(String theFilePath) throws IOException {
+		InputStream is = new FileInputStream(theFilePath);
+		try {
+			if (theFilePath.endsWith(".gz")) {
+				is = new GZIPInputStream(is);
+			}
+			return IOUtils.readLines(is, Charsets.UTF_8);
+		} finally {
+			is.close();
+		}
+	}
+
+	@Test
+	public void testExport() throws IOException {
+		List<IIdType> patientIds = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			Patient p = new Patient();
+			p.addName().setFamily("FAM" + i);
+			if (i == 0) {
+				// Resources with tags can't reuse the stored text
+				p.getMeta().addTag("http://tags", "tag0", null);
+			}
+			patientIds.add(myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless());
+		}
+
+		// Update one so that it has a second version
+		Patient p = new Patient();
+		p.setId(patientIds.get(1));
+		p.addName().setFamily("FAM1B");
+		myPatientDao.update(p, mySrd);
+
+		// Deleted resources aren't exported
+		myPatientDao.delete(patientIds.get(4), mySrd);
+
+		for (int i = 0; i < 3; i++) {
+			Observation obs = new Observation();
+			obs.setSubject(new Reference(patientIds.get(0)));
+			obs.getCode().setText("OBS" + i);
+			myObservationDao.create(obs, mySrd);
+		}
+
+		IBulkDataExportSvc.JobInfo job = myBulkDataExportSvc.submitJob(new HashSet<>(Arrays.asList("Patient", "Observation", "Organization")), null, false);
+		assertEquals(BulkExportJobStatusEnum.SUBMITTED, myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(job.getJobId()).getStatus());
+
+		assertEquals(1, myBulkDataExportSvc.buildExportFiles());
+		assertEquals(0, myBulkDataExportSvc.buildExportFiles());
+
+		IBulkDataExportSvc.JobInfo status = myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(job.getJobId());
+		ourLog.info("Job status message: {}", status.getStatusMessage());
+		assertEquals(BulkExportJobStatusEnum.COMPLETE, status.getStatus());
+
+		// No file for Organization, since there were no resources
+		assertEquals(2, status.getFiles().size());
+		assertEquals("Observation", status.getFiles().get(0).getResourceType());
+		assertEquals(3, status.getFiles().get(0).getResourceCount());
+		assertEquals("Patient", status.getFiles().get(1).getResourceType());
+		assertEquals(4, status.getFiles().get(1).getResourceCount());
+		assertThat(status.getFiles().get(1).getFilePath(), endsWith("Patient.ndjson"));
+
+		List<String> lines = readLines(status.getFiles().get(1).getFilePath());
+		assertEquals(4, lines.size());
+		for (int i = 0; i < 4; i++) {
+			ourLog.info("Line: {}", lines.get(i));
+			Patient exported = myFhirCtx.newJsonParser().parseResource(Patient.class, lines.get(i));
+			Patient stored = myPatientDao.read(patientIds.get(i), mySrd);
+			assertEquals(stored.getIdElement().toUnqualified().getValue(), exported.getIdElement().toUnqualified().getValue());
+			assertEquals(stored.getIdElement().getVersionIdPart(), exported.getMeta().getVersionId());
+			assertEquals(stored.getMeta().getLastUpdated().getTime(), exported.getMeta().getLastUpdated().getTime());
+			assertEquals(stored.getNameFirstRep().getFamily(), exported.getNameFirstRep().getFamily());
+		}
+		assertEquals("FAM1B", myFhirCtx.newJsonParser().parseResource(Patient.class, lines.get(1)).getNameFirstRep().getFamily());
+		assertEquals("2", myFhirCtx.newJsonParser().parseResource(Patient.class, lines.get(1)).getMeta().getVersionId());
+		assertEquals("tag0", myFhirCtx.newJsonParser().parseResource(Patient.class, lines.get(0)).getMeta().getTagFirstRep().getCode());
+
+		lines = readLines(status.getFiles().get(0).getFilePath());
+		assertEquals(3, lines.size());
+		assertThat(lines.get(2), containsString("\"OBS2\""));
+
+		Long fileId = status.getFiles().get(0).getFileId();
+		assertEquals(status.getFiles().get(0).getFilePath(), myBulkDataExportSvc.getFileOrThrowResourceNotFound(job.getJobId(), fileId).getFilePath());
+		try {
+			myBulkDataExportSvc.getFileOrThrowResourceNotFound("FOO", fileId);
+			fail();
+		} catch (ResourceNotFoundException e) {
+			// good
+		}
+	}
+
+	@Test
+	public void testExportGzipSinceAllTypes() throws Exception {
+		myDaoConfig.setBulkExportGzipFiles(true);
+
+		Patient p = new Patient();
+		p.addName().setFamily("OLD");
+		myPatientDao.create(p, mySrd);
+
+		Thread.sleep(100);
+		Date since = new Date();
+		Thread.sleep(100);
+
+		p = new Patient();
+		p.addName().setFamily("NEW");
+		myPatientDao.create(p, mySrd);
+
+		IBulkDataExportSvc.JobInfo job = myBulkDataExportSvc.submitJob(null, since, false);
+		myBulkDataExportSvc.buildExportFiles();
+
+		IBulkDataExportSvc.JobInfo status = myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(job.getJobId());
+		assertEquals(BulkExportJobStatusEnum.COMPLETE, status.getStatus());
+		assertEquals(1, status.getFiles().size());
+		assertThat(status.getFiles().get(0).getFilePath(), endsWith("Patient.ndjson.gz"));
+
+		List<String> lines = readLines(status.getFiles().get(0).getFilePath());
+		assertEquals(1, lines.size());
+		assertThat(lines.get(0), containsString("\"NEW\""));
+	}
+
+	@Test
+	public void testExportPatientCompartment() throws IOException {
+		Patient p = new Patient();
+		p.addName().setFamily("FAM");
+		IIdType patientId = myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless();
+
+		Organization org = new Organization();
+		org.setName("ORG");
+		IIdType orgId = myOrganizationDao.create(org, mySrd).getId().toUnqualifiedVersionless();
+
+		Observation obs = new Observation();
+		obs.setSubject(new Reference(patientId));
+		obs.getCode().setText("OBS_PATIENT");
+		myObservationDao.create(obs, mySrd);
+
+		// Not in any Patient compartment
+		obs = new Observation();
+		obs.addPerformer(new Reference(orgId));
+		obs.getCode().setText("OBS_ORG");
+		myObservationDao.create(obs, mySrd);
+
+		IBulkDataExportSvc.JobInfo job = myBulkDataExportSvc.submitJob(null, null, true);
+		assertEquals(1, myBulkDataExportSvc.buildExportFiles());
+
+		IBulkDataExportSvc.JobInfo status = myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound(job.getJobId());
+		assertEquals(BulkExportJobStatusEnum.COMPLETE, status.getStatus());
+
+		// Organization is not a Patient compartment type
+		assertEquals(2, status.getFiles().size());
+		assertEquals("Observation", status.getFiles().get(0).getResourceType());
+		assertEquals(1, status.getFiles().get(0).getResourceCount());
+		assertEquals("Patient", status.getFiles().get(1).getResourceType());
+		assertEquals(1, status.getFiles().get(1).getResourceCount());
+
+		List<String> lines = readLines(status.getFiles().get(0).getFilePath());
+		assertEquals(1, lines.size());
+		assertThat(lines.get(0), containsString("\"OBS_PATIENT\""));
+	}
+
+	@Test
+	public void testPatientCompartmentTypes() {
+		Set<String> types = myBulkDataExportSvc.getPatientCompartmentResourceTypes();
+		assertThat(types, hasItems("Patient", "Observation", "Encounter"));
+		assertThat(types, not(hasItem("Organization")));
+	}
+
+	@Test
+	public void testSubmitInvalidType() {
+		try {
+			myBulkDataExportSvc.submitJob(new HashSet<>(Arrays.asList("Patient", "FOO")), null, false);
+			fail();
+		} catch (InvalidRequestException e) {
+			assertEquals("Unknown or unsupported resource type: FOO", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testUnknownJob() {
+		try {
+			myBulkDataExportSvc.getJobStatusOrThrowResourceNotFound("FOO");
+			fail();
+		} catch (ResourceNotFoundException e) {
+			assertEquals("Unknown bulk export job: FOO", e.getMessage());
+		}
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
@@ -0,0 +1,168 @@
+package ca.uhn.fhir.jpa.bulk;
+
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.SearchParameterMap;
+import ca.uhn.fhir.jpa.dao.r4.BaseJpaR4Test;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.util.TestUtil;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+public class BulkImportR4Test extends BaseJpaR4Test {
+
+	@After
+	public void after() {
+		myDaoConfig.setBulkImportBatchSize(new DaoConfig().getBulkImportBatchSize());
+	}
+
+	@Before
+	public void before() {
+		// Use a small batch size so that references cross batches
+		myDaoConfig.setBulkImportBatchSize(2);
+	}
+
+	private String encode(Observation theObservation) {
+		return myFhirCtx.newJsonParser().encodeResourceToString(theObservation);
+	}
+
+	private String encode(Patient thePatient) {
+		return myFhirCtx.newJsonParser().encodeResourceToString(thePatient);
+	}
+
+	private List<String> searchObservationsForSubject(String theSubject) {
+		SearchParameterMap map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		map.add(Observation.SP_SUBJECT, new ReferenceParam(theSubject));
+		return toUnqualifiedVersionlessIdValues(myObservationDao.search(map));
+	}
+
+	@Test
+	public void testImportResolvesReferencesRegardlessOfOrder() {
+		StringBuilder ndjson = new StringBuilder();
+
+		// Observations come before the patient they refer to
+		for (int i = 0; i < 3; i++) {
+			Observation obs = new Observation();
+			obs.setId("OBS" + i);
+			obs.getSubject().setReference("Patient/PA");
+			ndjson.append(encode(obs)).append("\n");
+		}
+		Observation obsWithoutId = new Observation();
+		obsWithoutId.getSubject().setReference("Patient/PA");
+		ndjson.append(encode(obsWithoutId)).append("\n");
+		ndjson.append("\n");
+		Patient patient = new Patient();
+		patient.setId("PA");
+		patient.addName().setFamily("FAMILY");
+		ndjson.append(encode(patient)).append("\n");
+
+		BulkImportOutcome outcome = mySystemDao.bulkImport(new StringReader(ndjson.toString()), mySrd);
+
+		assertEquals(0, outcome.getFailures().size());
+		assertEquals(5, outcome.getResourceCount());
+		assertEquals(4, outcome.getDeferredReferenceCount());
+
+		List<String> ids = searchObservationsForSubject("Patient/PA");
+		assertEquals(4, ids.size());
+		assertThat(ids.subList(0, 3), containsInAnyOrder("Observation/OBS0", "Observation/OBS1", "Observation/OBS2"));
+
+		Patient storedPatient = myPatientDao.read(patient.getIdElement().toUnqualifiedVersionless(), mySrd);
+		assertEquals("FAMILY", storedPatient.getNameFirstRep().getFamily());
+		assertEquals("1", storedPatient.getIdElement().getVersionIdPart());
+	}
+
+	@Test
+	public void testImportDoesNotRunUnrelatedReindexing() {
+		Organization org = new Organization();
+		org.setName("ORG");
+		final Long orgPid = myOrganizationDao.create(org, mySrd).getId().getIdPartAsLong();
+		newTxTemplate().execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+				myResourceTableDao.markResourcesOfTypeAsRequiringReindexing("Organization");
+			}
+		});
+
+		Observation obs = new Observation();
+		obs.setId("OBS0");
+		obs.getSubject().setReference("Patient/PC");
+		Patient patient = new Patient();
+		patient.setId("PC");
+		String ndjson = encode(obs) + "\n" + encode(patient) + "\n";
+
+		BulkImportOutcome outcome = mySystemDao.bulkImport(new StringReader(ndjson), mySrd);
+		assertEquals(0, outcome.getFailures().size());
+		assertEquals(1, outcome.getDeferredReferenceCount());
+		assertThat(searchObservationsForSubject("Patient/PC"), contains("Observation/OBS0"));
+
+		// The organization is left for the reindexing scheduler
+		assertNull(myResourceTableDao.findOne(orgPid).getIndexStatus());
+	}
+
+	@Test
+	public void testImportReportsFailedLines() {
+		List<String> lines = new ArrayList<>();
+
+		Patient patient = new Patient();
+		patient.setId("PB");
+		lines.add(encode(patient));
+
+		lines.add("{\"resourceType\":\"Patient\", BAD JSON");
+
+		// Numeric IDs can't be assigned by the client, this fails in the same batch as the line above it
+		Patient numericId = new Patient();
+		numericId.setId("123");
+		lines.add(encode(numericId));
+
+		Observation good = new Observation();
+		good.setId("OBSGOOD");
+		good.getSubject().setReference("Patient/PB");
+		lines.add(encode(good));
+
+		Observation missingTarget = new Observation();
+		missingTarget.setId("OBSBAD");
+		missingTarget.getSubject().setReference("Patient/NOTEXISTING");
+		lines.add(encode(missingTarget));
+
+		StringBuilder ndjson = new StringBuilder();
+		for (String next : lines) {
+			ndjson.append(next).append("\n");
+		}
+
+		BulkImportOutcome outcome = mySystemDao.bulkImport(new StringReader(ndjson.toString()), mySrd);
+
+		List<Integer> failedLines = new ArrayList<>();
+		for (BulkImportOutcome.Failure next : outcome.getFailures()) {
+			failedLines.add(next.getLineNumber());
+		}
+		assertThat(failedLines, contains(2, 3, 5));
+
+		// The observation with an unresolvable reference is stored but not indexed
+		assertEquals(3, outcome.getResourceCount());
+		assertEquals(1, outcome.getDeferredReferenceCount());
+		assertThat(searchObservationsForSubject("Patient/PB"), contains("Observation/OBSGOOD"));
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
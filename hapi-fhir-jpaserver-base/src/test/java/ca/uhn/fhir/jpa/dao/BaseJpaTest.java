@@ -141,6 +141,14 @@ public abstract class BaseJpaTest {
 		return retVal;
 	}
 
+	protected List<String> toUnqualifiedVersionlessIdValues(List<IBaseResource> theFound) {
+		List<String> retVal = new ArrayList<String>();
+		for (IBaseResource next : theFound) {
+			retVal.add(next.getIdElement().toUnqualifiedVersionless().getValue());
+		}
+		return retVal;
+	}
+
 	protected List<IIdType> toUnqualifiedVersionlessIds(Bundle theFound) {
 		List<IIdType> retVal = new ArrayList<IIdType>();
 		for (Entry next : theFound.getEntry()) {
@@ -222,7 +230,7 @@ public abstract class BaseJpaTest {
 		return bundleStr;
 	}
 
-	public static void purgeDatabase(final EntityManager entityManager, PlatformTransactionManager theTxManager, ISearchParamPresenceSvc theSearchParamPresenceSvc, ISearchCoordinatorSvc theSearchCoordinatorSvc, ISearchParamRegistry theSearchParamRegistry) {
+	public static void purgeDatabase(final EntityManager entityManager, PlatformTransactionManager theTxManager, ISearchParamPresenceSvc theSearchParamPresenceSvc, ISearchCoordinatorSvc theSearchCoordinatorSvc, ISearchParamRegistry theSearchParamRegistry, ForcedIdCache theForcedIdCache, TagDefinitionCache theTagDefinitionCache, ResourceCountCache theResourceCountCache) {
 
 		theSearchCoordinatorSvc.cancelAllActiveSearches();
 
@@ -252,8 +260,10 @@ public abstract class BaseJpaTest {
 				entityManager.createQuery("DELETE from " + ResourceIndexedCompositeStringUnique.class.getSimpleName() + " d").executeUpdate();
 				entityManager.createQuery("DELETE from " + ResourceLink.class.getSimpleName() + " d").executeUpdate();
 				entityManager.createQuery("DELETE from " + SearchResult.class.getSimpleName() + " d").executeUpdate();
+				entityManager.createQuery("DELETE from " + SearchResultBlock.class.getSimpleName() + " d").executeUpdate();
 				entityManager.createQuery("DELETE from " + SearchInclude.class.getSimpleName() + " d").executeUpdate();
 				entityManager.createQuery("DELETE from " + TermConceptParentChildLink.class.getSimpleName() + " d").executeUpdate();
+				entityManager.createQuery("DELETE from " + TermConceptClosure.class.getSimpleName() + " d").executeUpdate();
 				return null;
 			}
 		});
@@ -292,6 +302,9 @@ public abstract class BaseJpaTest {
 
 		theSearchParamPresenceSvc.flushCachesForUnitTest();
 		theSearchParamRegistry.forceRefresh();
+		theForcedIdCache.invalidateAll();
+		theTagDefinitionCache.invalidateAll();
+		theResourceCountCache.invalidate();
 	}
 
 	public static Set<String> toCodes(Set<TermConcept> theConcepts) {
@@ -123,6 +123,12 @@ public abstract class BaseJpaDstu2Test extends BaseJpaTest {
 	@Autowired(required = false)
 	protected IFulltextSearchSvc mySearchDao;
 	@Autowired
+	protected ForcedIdCache myForcedIdCache;
+	@Autowired
+	protected TagDefinitionCache myTagDefinitionCache;
+	@Autowired
+	protected ResourceCountCache myResourceCountCache;
+	@Autowired
 	protected ISearchParamPresenceSvc mySearchParamPresenceSvc;
 	@Autowired
 	@Qualifier("myStructureDefinitionDaoDstu2")
@@ -173,7 +179,7 @@ public abstract class BaseJpaDstu2Test extends BaseJpaTest {
 	@Transactional()
 	public void beforePurgeDatabase() {
 		final EntityManager entityManager = this.myEntityManager;
-		purgeDatabase(entityManager, myTxManager, mySearchParamPresenceSvc, mySearchCoordinatorSvc, mySearchParamRegistry);
+		purgeDatabase(entityManager, myTxManager, mySearchParamPresenceSvc, mySearchCoordinatorSvc, mySearchParamRegistry, myForcedIdCache, myTagDefinitionCache, myResourceCountCache);
 	}
 
 	@Before
@@ -1,14 +1,16 @@
 package ca.uhn.fhir.jpa.dao.dstu3;
 
-import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertEquals;
 
 import java.nio.charset.StandardCharsets;
 
 import org.apache.commons.io.IOUtils;
+import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.dstu3.model.CodeSystem;
 import org.junit.AfterClass;
 import org.junit.Test;
 
+import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
 import ca.uhn.fhir.jpa.term.BaseHapiTerminologySvc;
 import ca.uhn.fhir.util.TestUtil;
 
@@ -28,13 +30,15 @@ public class FhirResourceDaoDstu3CodeSystemTest extends BaseJpaDstu3Test {
 		
 		String input = IOUtils.toString(getClass().getResource("/dstu3_codesystem_complete.json"), StandardCharsets.UTF_8);
 		CodeSystem cs = myFhirCtx.newJsonParser().parseResource(CodeSystem.class, input);
-		myCodeSystemDao.create(cs, mySrd);
+		IIdType id = myCodeSystemDao.create(cs, mySrd).getId().toUnqualifiedVersionless();
 
 		
-		mySystemDao.markAllResourcesForReindexing();
+		assertEquals(1, mySystemDao.markAllResourcesForReindexing());
 
+		// Resources which fail to reindex are not counted
 		int outcome = mySystemDao.performReindexingPass(100);
-		assertNotEquals(-1, outcome); // -1 means there was a failure
+		assertEquals(1, outcome);
+		assertEquals(BaseHapiFhirDao.INDEX_STATUS_INDEXED, myResourceTableDao.findOne(id.getIdPartAsLong()).getIndexStatus().longValue());
 		
 		myTermSvc.saveDeferred();
 		
@@ -139,6 +139,12 @@ public class FhirResourceDaoDstu3SearchWithLuceneDisabledTest extends BaseJpaTes
 	@Autowired
 	protected PlatformTransactionManager myTxManager;
 	@Autowired
+	protected ForcedIdCache myForcedIdCache;
+	@Autowired
+	protected TagDefinitionCache myTagDefinitionCache;
+	@Autowired
+	protected ResourceCountCache myResourceCountCache;
+	@Autowired
 	protected ISearchParamPresenceSvc mySearchParamPresenceSvc;
 
 	@Autowired
@@ -153,7 +159,7 @@ public class FhirResourceDaoDstu3SearchWithLuceneDisabledTest extends BaseJpaTes
 	@Transactional()
 	public void beforePurgeDatabase() {
 		final EntityManager entityManager = this.myEntityManager;
-		purgeDatabase(entityManager, myTxManager, mySearchParamPresenceSvc, mySearchCoordinatorSvc, mySearchParamRegistry);
+		purgeDatabase(entityManager, myTxManager, mySearchParamPresenceSvc, mySearchCoordinatorSvc, mySearchParamRegistry, myForcedIdCache, myTagDefinitionCache, myResourceCountCache);
 	}
 
 	@Before
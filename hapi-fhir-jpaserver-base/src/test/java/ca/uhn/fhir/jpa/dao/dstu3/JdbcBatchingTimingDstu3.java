@@ -0,0 +1,100 @@
+package ca.uhn.fhir.jpa.dao.dstu3;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Bundle.BundleType;
+import org.hl7.fhir.dstu3.model.Bundle.HTTPVerb;
+import org.hl7.fhir.dstu3.model.Meta;
+import org.hl7.fhir.dstu3.model.Observation;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.mockito.Mockito;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import ca.uhn.fhir.jpa.config.TestDstu3Config;
+import ca.uhn.fhir.jpa.dao.IFhirSystemDao;
+import ca.uhn.fhir.jpa.util.StopWatch;
+import ca.uhn.fhir.rest.api.server.IRequestOperationCallback;
+import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import net.ttddyy.dsproxy.QueryCount;
+import net.ttddyy.dsproxy.QueryCountHolder;
+
+/**
+ * Not a test, but logs how long it takes to store a number of transaction
+ * bundles (each containing Patients and Observations), along with the number of
+ * statements sent to the database. The JDBC batching properties used by
+ * {@link TestDstu3Config} can be overridden using system properties in order to
+ * compare settings, e.g.
+ * <code>-Dhibernate.jdbc.batch_size=1 -Dhibernate.order_inserts=false</code>
+ * <p>
+ * Note that the test configuration uses an embedded Derby database, where each
+ * statement is a method call rather than a network round trip, so the results
+ * do not show the difference batching makes against a networked database.
+ * </p>
+ */
+public class JdbcBatchingTimingDstu3 {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(JdbcBatchingTimingDstu3.class);
+
+	private static Bundle createBundle(int thePass, int theSize) {
+		Bundle retVal = new Bundle();
+		retVal.setType(BundleType.TRANSACTION);
+		for (int i = 0; i < theSize; i++) {
+			String patientFullUrl = "urn:uuid:pass" + thePass + "patient" + i;
+
+			Patient patient = new Patient();
+			patient.addIdentifier().setSystem("http://example.com/mrn").setValue("P" + thePass + "-" + i);
+			patient.addName().setFamily("FAMILY" + i).addGiven("GIVEN" + i);
+			retVal.addEntry().setFullUrl(patientFullUrl).setResource(patient).getRequest().setMethod(HTTPVerb.POST).setUrl("Patient");
+
+			Observation obs = new Observation();
+			obs.getCode().addCoding().setSystem("http://loinc.org").setCode("789-8");
+			obs.setSubject(new Reference(patientFullUrl));
+			obs.setStatus(Observation.ObservationStatus.FINAL);
+			retVal.addEntry().setResource(obs).getRequest().setMethod(HTTPVerb.POST).setUrl("Observation");
+		}
+		return retVal;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static void main(String[] args) {
+		int warmupPasses = 5;
+		int passes = 20;
+		int bundleSize = 50;
+
+		AnnotationConfigApplicationContext appCtx = new AnnotationConfigApplicationContext(TestDstu3Config.class);
+		try {
+			IFhirSystemDao<Bundle, Meta> systemDao = appCtx.getBean("mySystemDaoDstu3", IFhirSystemDao.class);
+
+			ServletRequestDetails srd = mock(ServletRequestDetails.class, Mockito.RETURNS_DEEP_STUBS);
+			when(srd.getRequestOperationCallback()).thenReturn(mock(IRequestOperationCallback.class));
+			when(srd.getServer().getInterceptors()).thenReturn(new ArrayList<IServerInterceptor>());
+			when(srd.getUserData()).thenReturn(new HashMap<Object, Object>());
+
+			for (int i = 0; i < warmupPasses; i++) {
+				systemDao.transaction(srd, createBundle(-1 - i, bundleSize));
+			}
+
+			QueryCountHolder.clear();
+			StopWatch sw = new StopWatch();
+			for (int i = 0; i < passes; i++) {
+				systemDao.transaction(srd, createBundle(i, bundleSize));
+			}
+			long millis = sw.getMillis();
+			QueryCount count = QueryCountHolder.getGrandTotal();
+
+			ourLog.info("hibernate.jdbc.batch_size={} hibernate.order_inserts={}", System.getProperty("hibernate.jdbc.batch_size", "(default)"), System.getProperty("hibernate.order_inserts", "(default)"));
+			ourLog.info("Stored {} transactions of {} Patients and {} Observations in {}ms ({}ms per transaction)", passes, bundleSize, bundleSize, millis, millis / passes);
+			ourLog.info("Statements: {} inserts, {} updates, {} selects, {} other", count.getInsert(), count.getUpdate(), count.getSelect(), count.getOther());
+		} finally {
+			appCtx.close();
+		}
+	}
+
+}
@@ -1,6 +1,9 @@
 package ca.uhn.fhir.jpa.dao.r4;
 
+import ca.uhn.fhir.jpa.dao.DaoConfig;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultBlockDao;
+import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.jpa.search.StaleSearchDeletingSvcImpl;
 import ca.uhn.fhir.jpa.util.StopWatch;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
@@ -13,6 +16,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.util.AopTestUtils;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
@@ -25,11 +29,15 @@ import static org.junit.Assert.*;
 public class FhirResourceDaoR4SearchPageExpiryTest extends BaseJpaR4Test {
 	private static final Logger ourLog = LoggerFactory.getLogger(FhirResourceDaoR4SearchPageExpiryTest.class);
 
+	@Autowired
+	private ISearchResultBlockDao mySearchResultBlockDao;
+
 	@After()
 	public void after() {
 		StaleSearchDeletingSvcImpl staleSearchDeletingSvc = AopTestUtils.getTargetObject(myStaleSearchDeletingSvc);
 		staleSearchDeletingSvc.setCutoffSlackForUnitTest(StaleSearchDeletingSvcImpl.DEFAULT_CUTOFF_SLACK);
 		StaleSearchDeletingSvcImpl.setNowForUnitTests(null);
+		myDaoConfig.setSearchResultStorage(new DaoConfig().getSearchResultStorage());
 	}
 
 	@Before
@@ -199,4 +207,51 @@ public class FhirResourceDaoR4SearchPageExpiryTest extends BaseJpaR4Test {
 			}
 		});
 	}
+
+	@Test
+	public void testExpirePagesStoredInBlocks() throws Exception {
+		myDaoConfig.setSearchResultStorage(DaoConfig.SearchResultStorageEnum.COMPRESSED_BLOCKS);
+
+		IIdType pid1;
+		IIdType pid2;
+		{
+			Patient patient = new Patient();
+			patient.addName().setFamily("EXPIRE");
+			pid1 = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+		}
+		{
+			Patient patient = new Patient();
+			patient.addName().setFamily("EXPIRE");
+			pid2 = myPatientDao.create(patient, mySrd).getId().toUnqualifiedVersionless();
+		}
+
+		long start = System.currentTimeMillis();
+
+		SearchParameterMap params = new SearchParameterMap();
+		params.add(Patient.SP_FAMILY, new StringParam("EXPIRE"));
+		final IBundleProvider bundleProvider = myPatientDao.search(params);
+		assertThat(toUnqualifiedVersionlessIds(bundleProvider), containsInAnyOrder(pid1, pid2));
+
+		TransactionTemplate txTemplate = new TransactionTemplate(myTxManager);
+		txTemplate.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theArg0) {
+				Search search = mySearchEntityDao.findByUuid(bundleProvider.getUuid());
+				assertTrue(search.isResultsStoredInBlocks());
+				assertEquals(1, mySearchResultBlockDao.findForSearchInRange(search.getId(), 0, 100).size());
+				assertEquals(2, mySearchResultBlockDao.findForSearchInRange(search.getId(), 0, 100).get(0).getPids().size());
+			}
+		});
+
+		myDaoConfig.setExpireSearchResultsAfterMillis(500);
+		StaleSearchDeletingSvcImpl.setNowForUnitTests(start + 600);
+		myStaleSearchDeletingSvc.pollForStaleSearchesAndDeleteThem();
+		txTemplate.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theArg0) {
+				assertNull(mySearchEntityDao.findByUuid(bundleProvider.getUuid()));
+				assertEquals(0, mySearchResultBlockDao.count());
+			}
+		});
+	}
 }
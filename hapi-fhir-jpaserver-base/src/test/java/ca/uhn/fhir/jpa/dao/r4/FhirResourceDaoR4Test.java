@@ -32,6 +32,8 @@ import org.springframework.transaction.support.TransactionTemplate;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 
+import net.ttddyy.dsproxy.QueryCountHolder;
+
 import ca.uhn.fhir.jpa.dao.*;
 import ca.uhn.fhir.jpa.entity.*;
 import ca.uhn.fhir.model.api.Include;
@@ -56,6 +58,10 @@ public class FhirResourceDaoR4Test extends BaseJpaR4Test {
 		myDaoConfig.setAllowExternalReferences(new DaoConfig().isAllowExternalReferences());
 		myDaoConfig.setTreatReferencesAsLogical(new DaoConfig().getTreatReferencesAsLogical());
 		myDaoConfig.setEnforceReferentialIntegrityOnDelete(new DaoConfig().isEnforceReferentialIntegrityOnDelete());
+		myDaoConfig.setIndexMissingFields(new DaoConfig().getIndexMissingFields());
+		myDaoConfig.setResourceLoadingThreadCount(new DaoConfig().getResourceLoadingThreadCount());
+		myDaoConfig.setKeysetPagingEnabled(new DaoConfig().isKeysetPagingEnabled());
+		myDaoConfig.setSummaryCountUpTo(new DaoConfig().getSummaryCountUpTo());
 	}
 
 	private void assertGone(IIdType theId) {
@@ -128,6 +134,17 @@ public class FhirResourceDaoR4Test extends BaseJpaR4Test {
 		myDaoConfig.setReuseCachedSearchResultsForMillis(null);
 	}
 
+	private Patient createPatientWithTags() {
+		Patient retVal = new Patient();
+		retVal.setActive(true);
+		retVal.getMeta().addTag().setSystem("http://tags").setCode("tag1");
+		retVal.getMeta().addTag().setSystem("http://tags").setCode("tag2");
+		retVal.getMeta().addTag().setCode("tag3");
+		retVal.getMeta().addSecurity().setSystem("http://security").setCode("label1");
+		retVal.getMeta().addProfile("http://profiles/profile1");
+		return retVal;
+	}
+
 	private List<String> extractNames(IBundleProvider theSearch) {
 		ArrayList<String> retVal = new ArrayList<String>();
 		for (IBaseResource next : theSearch.getResources(0, theSearch.size())) {
@@ -623,6 +640,218 @@ public class FhirResourceDaoR4Test extends BaseJpaR4Test {
 		assertThat(toUnqualifiedVersionlessIdValues(myNamingSystemDao.search(new SearchParameterMap(NamingSystem.SP_NAME, new StringParam("NDF")).setLoadSynchronous(true))), org.hamcrest.Matchers.contains(id.getValue()));
 	}
 
+	/**
+	 * Index rows should take their IDs from pooled sequences, not
+	 * make a sequence round trip for every row. This does not cover
+	 * JDBC batching, which the test config leaves disabled.
+	 */
+	@Test
+	public void testCreateManyIndexRowsUsesPooledSequences() {
+		myDaoConfig.setIndexMissingFields(DaoConfig.IndexEnabledEnum.DISABLED);
+
+		QueryCountHolder.clear();
+		for (int i = 0; i < 3; i++) {
+			Patient p = new Patient();
+			for (int j = 0; j < 20; j++) {
+				p.addName().setFamily("FAMILY" + i + "_" + j);
+			}
+			myPatientDao.create(p, mySrd);
+		}
+
+		long inserts = QueryCountHolder.getGrandTotal().getInsert();
+		long sequenceCalls = QueryCountHolder.getGrandTotal().getOther();
+		ourLog.info("Now have {} inserts and {} other statements", inserts, sequenceCalls);
+		assertThat(inserts, greaterThan(60L));
+		// Without pooling there would be one sequence call per inserted row
+		assertThat(sequenceCalls * 5, lessThan(inserts));
+	}
+
+	@Test
+	public void testCreateWithTagsDoesNotReloadTagDefinitions() {
+		myDaoConfig.setIndexMissingFields(DaoConfig.IndexEnabledEnum.DISABLED);
+
+		// Create the tag definitions
+		myPatientDao.create(createPatientWithTags(), mySrd);
+
+		QueryCountHolder.clear();
+		myPatientDao.create(createPatientWithTags(), mySrd);
+		long selectsWithTags = QueryCountHolder.getGrandTotal().getSelect();
+
+		QueryCountHolder.clear();
+		myPatientDao.create(new Patient().setActive(true), mySrd);
+		long selectsWithoutTags = QueryCountHolder.getGrandTotal().getSelect();
+
+		ourLog.info("Create with tags used {} selects, without tags used {}", selectsWithTags, selectsWithoutTags);
+		assertEquals(selectsWithoutTags, selectsWithTags);
+
+		new TransactionTemplate(myTxManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+				assertThat(myResourceTagDao.findAll(), hasSize(10));
+				assertThat(myTagDefinitionDao.findAll(), hasSize(5));
+			}
+		});
+	}
+
+	@Test
+	public void testCreateWithTagsRolledBackDoesNotCacheTagDefinitions() {
+		new TransactionTemplate(myTxManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+				myPatientDao.create(createPatientWithTags(), mySrd);
+				theStatus.setRollbackOnly();
+			}
+		});
+
+		// Would fail with a foreign key violation if the rolled back definitions had been cached
+		myPatientDao.create(createPatientWithTags(), mySrd);
+
+		new TransactionTemplate(myTxManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+				assertThat(myResourceTagDao.findAll(), hasSize(5));
+				assertThat(myTagDefinitionDao.findAll(), hasSize(5));
+			}
+		});
+	}
+
+	@Test
+	public void testSearchWithParallelResourceLoading() {
+		myDaoConfig.setResourceLoadingThreadCount(4);
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			Patient p = createPatientWithTags();
+			p.addName().setFamily(String.format("FAM%03d", i));
+			expected.add(myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless().getValue());
+		}
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		map.setSort(new SortSpec(Patient.SP_FAMILY));
+		IBundleProvider results = myPatientDao.search(map);
+		List<IBaseResource> resources = results.getResources(0, 100);
+
+		assertEquals(expected, toUnqualifiedVersionlessIdValues(results));
+		for (IBaseResource next : resources) {
+			Patient patient = (Patient) next;
+			assertEquals(BundleEntrySearchModeEnum.MATCH.getCode(), ResourceMetadataKeyEnum.ENTRY_SEARCH_MODE.get(patient));
+			assertThat(patient.getMeta().getTag(), hasSize(3));
+			assertThat(patient.getMeta().getSecurity(), hasSize(1));
+			assertThat(patient.getMeta().getProfile(), hasSize(1));
+		}
+	}
+
+	/**
+	 * Mapping a profile to a custom type makes the conversion look at the tags of
+	 * every entity, which must not need the database on the worker threads
+	 */
+	@Test
+	public void testSearchWithParallelResourceLoadingAndDefaultTypeForProfile() {
+		myDaoConfig.setResourceLoadingThreadCount(4);
+		myFhirCtx.setDefaultTypeForProfile("http://profiles/profile1", Patient.class);
+		try {
+			List<String> expected = new ArrayList<>();
+			for (int i = 0; i < 100; i++) {
+				Patient p = i % 2 == 0 ? createPatientWithTags() : new Patient();
+				p.addName().setFamily(String.format("FAM%03d", i));
+				expected.add(myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless().getValue());
+			}
+
+			SearchParameterMap map = new SearchParameterMap();
+			map.setLoadSynchronous(true);
+			map.setSort(new SortSpec(Patient.SP_FAMILY));
+			IBundleProvider results = myPatientDao.search(map);
+			List<IBaseResource> resources = results.getResources(0, 100);
+
+			assertEquals(expected, toUnqualifiedVersionlessIdValues(results));
+			for (int i = 0; i < resources.size(); i++) {
+				Patient patient = (Patient) resources.get(i);
+				assertThat(patient.getMeta().getProfile(), hasSize(i % 2 == 0 ? 1 : 0));
+			}
+		} finally {
+			myFhirCtx.setDefaultTypeForProfile("http://profiles/profile1", null);
+		}
+	}
+
+	@Test
+	public void testSearchSortedByLastUpdatedUsesKeysetPaging() {
+		myDaoConfig.setKeysetPagingEnabled(true);
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			Patient p = new Patient();
+			p.addName().setFamily("KEYSET" + i);
+			expected.add(myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless().getValue());
+		}
+		Patient other = new Patient();
+		other.addName().setFamily("OTHER");
+		myPatientDao.create(other, mySrd);
+
+		// Descending, paged forward from the start
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Patient.SP_FAMILY, new StringParam("KEYSET"));
+		map.setSort(new SortSpec(Constants.PARAM_LASTUPDATED, SortOrderEnum.DESC));
+		IBundleProvider results = myPatientDao.search(map);
+		assertNull(results.size());
+
+		Search search = mySearchEntityDao.findByUuid(results.getUuid());
+		assertTrue(search.isKeysetPaged());
+		assertEquals(0, search.getNumFound());
+
+		List<String> actual = new ArrayList<>();
+		actual.addAll(toUnqualifiedVersionlessIdValues(results.getResources(0, 10)));
+		actual.addAll(toUnqualifiedVersionlessIdValues(myPagingProvider.retrieveResultList(results.getUuid()).getResources(10, 20)));
+		actual.addAll(toUnqualifiedVersionlessIdValues(myPagingProvider.retrieveResultList(results.getUuid()).getResources(20, 30)));
+		assertEquals(Lists.reverse(expected), actual);
+
+		// The end of the last page served is stored with the search so any server can continue from it
+		search = mySearchEntityDao.findByUuid(results.getUuid());
+		assertEquals(25, search.getKeysetPageOffset().intValue());
+		assertEquals(new IdType(expected.get(0)).getIdPartAsLong(), search.getKeysetPagePid());
+
+		// Ascending, starting part way through without a known page boundary
+		map = new SearchParameterMap();
+		map.add(Patient.SP_FAMILY, new StringParam("KEYSET"));
+		map.setSort(new SortSpec(Constants.PARAM_LASTUPDATED, SortOrderEnum.ASC));
+		results = myPatientDao.search(map);
+		assertEquals(expected.subList(20, 25), toUnqualifiedVersionlessIdValues(results.getResources(20, 30)));
+		assertEquals(expected.subList(0, 10), toUnqualifiedVersionlessIdValues(results.getResources(0, 10)));
+	}
+
+	@Test
+	public void testSummaryCountUsesCountQuery() {
+		for (int i = 0; i < 5; i++) {
+			Patient p = new Patient();
+			p.addName().setFamily("COUNTED").addGiven("A");
+			// A second matching name must not be counted twice
+			p.addName().setFamily("COUNTED").addGiven("B");
+			myPatientDao.create(p, mySrd);
+		}
+		Patient other = new Patient();
+		other.addName().setFamily("OTHER");
+		myPatientDao.create(other, mySrd);
+
+		Map<String, String[]> params = new HashMap<>();
+		params.put(Constants.PARAM_SUMMARY, new String[]{"count"});
+		when(mySrd.getParameters()).thenReturn(params);
+
+		long searchCount = mySearchEntityDao.count();
+		SearchParameterMap map = new SearchParameterMap();
+		map.add(Patient.SP_FAMILY, new StringParam("COUNTED"));
+		IBundleProvider found = myPatientDao.search(map, mySrd);
+		assertEquals(5, found.size().intValue());
+		assertNull(found.getUuid());
+		assertEquals(searchCount, mySearchEntityDao.count());
+
+		// Counting stops at the configured maximum
+		myDaoConfig.setSummaryCountUpTo(3);
+		map = new SearchParameterMap();
+		map.add(Patient.SP_FAMILY, new StringParam("COUNTED"));
+		found = myPatientDao.search(map, mySrd);
+		assertEquals(3, found.size().intValue());
+	}
+
 	@Test
 	public void testCreateNumericIdFails() {
 		Patient p = new Patient();
@@ -14,8 +14,10 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.junit.*;
 import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.ResourceTextCache;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
 import ca.uhn.fhir.model.primitive.InstantDt;
 import ca.uhn.fhir.rest.api.MethodOutcome;
@@ -29,10 +31,58 @@ import ca.uhn.fhir.util.TestUtil;
 public class FhirResourceDaoR4UpdateTest extends BaseJpaR4Test {
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FhirResourceDaoR4UpdateTest.class);
 
+	@Autowired
+	private ResourceTextCache myResourceTextCache;
+
 	@After
 	public void afterResetDao() {
 		myDaoConfig.setResourceMetaCountHardLimit(new DaoConfig().getResourceMetaCountHardLimit());
 		myDaoConfig.setIndexMissingFields(new DaoConfig().getIndexMissingFields());
+		myDaoConfig.setResourceTextCacheMaxBytes(new DaoConfig().getResourceTextCacheMaxBytes());
+	}
+
+	@Test
+	public void testReadAndUpdateWithResourceTextCache() {
+		myDaoConfig.setResourceTextCacheMaxBytes(1024 * 1024);
+		myResourceTextCache.invalidateAll();
+
+		Patient p = new Patient();
+		p.addName().setFamily("FAMILY1");
+		IIdType id = myPatientDao.create(p, mySrd).getId().toUnqualifiedVersionless();
+
+		long missesBefore = myResourceTextCache.getStatistics().missCount();
+		long hitsBefore = myResourceTextCache.getStatistics().hitCount();
+
+		p = myPatientDao.read(id, mySrd);
+		assertEquals("FAMILY1", p.getNameFirstRep().getFamily());
+		assertEquals(missesBefore + 1, myResourceTextCache.getStatistics().missCount());
+
+		// Modifying a returned instance must not affect later reads
+		p.getNameFirstRep().setFamily("MODIFIED");
+
+		p = myPatientDao.read(id, mySrd);
+		assertEquals("FAMILY1", p.getNameFirstRep().getFamily());
+		assertEquals(hitsBefore + 1, myResourceTextCache.getStatistics().hitCount());
+
+		p = new Patient();
+		p.setId(id);
+		p.addName().setFamily("FAMILY2");
+		myPatientDao.update(p, mySrd);
+
+		p = myPatientDao.read(id, mySrd);
+		assertEquals("FAMILY2", p.getNameFirstRep().getFamily());
+		assertEquals("2", p.getIdElement().getVersionIdPart());
+
+		p = myPatientDao.read(id.withVersion("1"), mySrd);
+		assertEquals("FAMILY1", p.getNameFirstRep().getFamily());
+
+		myPatientDao.delete(id, mySrd);
+		try {
+			myPatientDao.read(id, mySrd);
+			fail();
+		} catch (ResourceGoneException e) {
+			// good
+		}
 	}
 
 	@Test
@@ -8,12 +8,17 @@ import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.entity.ResourceTag;
 import ca.uhn.fhir.jpa.entity.TagTypeEnum;
 import ca.uhn.fhir.jpa.provider.SystemProviderDstu2Test;
+import ca.uhn.fhir.jpa.search.reindex.IResourceReindexingSvc;
+import ca.uhn.fhir.jpa.search.reindex.ReindexJobStatus;
 import ca.uhn.fhir.model.api.ResourceMetadataKeyEnum;
 import ca.uhn.fhir.model.primitive.IdDt;
+import ca.uhn.fhir.parser.BundleEntryIterator;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.exceptions.*;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor.ActionRequestDetails;
 import ca.uhn.fhir.util.TestUtil;
@@ -26,6 +31,7 @@ import org.hl7.fhir.r4.model.Observation.ObservationStatus;
 import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
 import org.junit.*;
 import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
@@ -34,27 +40,39 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import net.ttddyy.dsproxy.QueryCountHolder;
+
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class FhirSystemDaoR4Test extends BaseJpaR4SystemTest {
 
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(FhirSystemDaoR4Test.class);
+	@Autowired
+	private IResourceReindexingSvc myReindexingSvc;
 
 	@After
 	public void after() {
 		myDaoConfig.setAllowInlineMatchUrlReferences(false);
 		myDaoConfig.setAllowMultipleDelete(new DaoConfig().isAllowMultipleDelete());
+		myDaoConfig.setReindexBatchSize(new DaoConfig().getReindexBatchSize());
+		myDaoConfig.setReindexThreadCount(new DaoConfig().getReindexThreadCount());
+		myDaoConfig.setUseResourceCountsForSummaryCount(new DaoConfig().isUseResourceCountsForSummaryCount());
 	}
 
 	@Before
@@ -206,6 +224,26 @@ public class FhirSystemDaoR4Test extends BaseJpaR4SystemTest {
 		assertEquals("Resource Patient/BABABABA is not known", oo.getIssue().get(0).getDiagnostics());
 	}
 
+	@Test
+	public void testBatchStreamedFromBundleEntryIterator() {
+		Bundle request = new Bundle();
+		request.setType(BundleType.BATCH);
+		Patient p = new Patient();
+		p.addIdentifier().setSystem("urn:system").setValue("FOO");
+		request.addEntry().setResource(p).getRequest().setMethod(HTTPVerb.POST).setUrl("Patient");
+		request.addEntry().getRequest().setMethod(HTTPVerb.GET).setUrl("Patient/BABABABA");
+		String encoded = myFhirCtx.newJsonParser().encodeResourceToString(request);
+
+		BundleEntryIterator<BundleEntryComponent> entries = myFhirCtx.newJsonParser().parseBundleEntries(Bundle.class, new StringReader(encoded));
+		Bundle response = mySystemDao.batch(mySrd, entries);
+		assertEquals(BundleType.BATCHRESPONSE, response.getType());
+		assertEquals(2, response.getEntry().size());
+		assertEquals("201 Created", response.getEntry().get(0).getResponse().getStatus());
+		assertEquals("404 Not Found", response.getEntry().get(1).getResponse().getStatus());
+
+		assertEquals(1, myPatientDao.search(new SearchParameterMap().setLoadSynchronous(true)).size().intValue());
+	}
+
 	@Test
 	public void testBatchCreateWithBadSearch() {
 		Bundle request = new Bundle();
@@ -439,6 +477,84 @@ public class FhirSystemDaoR4Test extends BaseJpaR4SystemTest {
 		}
 	}
 
+	@Test
+	public void testResourceCountsMaintainedOnWrite() {
+		IIdType id1 = myPatientDao.create(new Patient().setActive(true), mySrd).getId().toUnqualifiedVersionless();
+		myPatientDao.create(new Patient().setActive(true), mySrd);
+		myOrganizationDao.create(new Organization().setName("ORG"), mySrd);
+
+		// Loads the counts from the database
+		assertEquals(Long.valueOf(2), mySystemDao.getResourceCounts().get("Patient"));
+		assertEquals(Long.valueOf(1), mySystemDao.getResourceCounts().get("Organization"));
+
+		myPatientDao.create(new Patient().setActive(true), mySrd);
+		myPatientDao.delete(id1, mySrd);
+		myObservationDao.create(new Observation().setStatus(ObservationStatus.FINAL), mySrd);
+		new TransactionTemplate(myTxManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+				myPatientDao.create(new Patient().setActive(true), mySrd);
+				theStatus.setRollbackOnly();
+			}
+		});
+
+		QueryCountHolder.clear();
+		assertEquals(Long.valueOf(2), mySystemDao.getResourceCounts().get("Patient"));
+		assertEquals(Long.valueOf(1), mySystemDao.getResourceCounts().get("Organization"));
+		assertEquals(Long.valueOf(1), mySystemDao.getResourceCounts().get("Observation"));
+		assertEquals(0, QueryCountHolder.getGrandTotal().getSelect());
+
+		// Un-deleting a resource counts it again
+		myPatientDao.update((Patient) new Patient().setActive(false).setId(id1), mySrd);
+		assertEquals(Long.valueOf(3), mySystemDao.getResourceCounts().get("Patient"));
+	}
+
+	@Test
+	public void testResourceCountsLoadedDuringWrite() {
+		myPatientDao.create(new Patient().setActive(true), mySrd);
+
+		// Loading the counts inside a transaction which has written resources uses that
+		// transaction, and leaves out its own writes until it commits
+		new TransactionTemplate(myTxManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+				myPatientDao.create(new Patient().setActive(true), mySrd);
+				assertEquals(Long.valueOf(1), mySystemDao.getResourceCounts().get("Patient"));
+			}
+		});
+		assertEquals(Long.valueOf(2), mySystemDao.getResourceCounts().get("Patient"));
+
+		myResourceCountCache.invalidate();
+		new TransactionTemplate(myTxManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+				myPatientDao.create(new Patient().setActive(true), mySrd);
+				assertEquals(Long.valueOf(2), mySystemDao.getResourceCounts().get("Patient"));
+				theStatus.setRollbackOnly();
+			}
+		});
+		assertEquals(Long.valueOf(2), mySystemDao.getResourceCounts().get("Patient"));
+	}
+
+	@Test
+	public void testSummaryCountUsesResourceCounts() {
+		myDaoConfig.setUseResourceCountsForSummaryCount(true);
+		myPatientDao.create(new Patient().setActive(true), mySrd);
+		myPatientDao.create(new Patient().setActive(false), mySrd);
+
+		Map<String, String[]> params = new HashMap<>();
+		params.put(Constants.PARAM_SUMMARY, new String[]{"count"});
+		when(mySrd.getParameters()).thenReturn(params);
+
+		IBundleProvider found = myPatientDao.search(new SearchParameterMap(), mySrd);
+		assertEquals(2, found.size().intValue());
+		assertNull(found.getUuid());
+
+		// Searches with parameters are run as normal
+		found = myPatientDao.search(new SearchParameterMap().add(Patient.SP_ACTIVE, new TokenParam(null, "true")), mySrd);
+		assertEquals(1, found.size().intValue());
+	}
+
 	@Test
 	public void testReindexing() {
 		Patient p = new Patient();
@@ -512,6 +628,59 @@ public class FhirSystemDaoR4Test extends BaseJpaR4SystemTest {
 
 	}
 
+	@Test
+	public void testReindexingInBatches() {
+		myReindexingSvc.cancelAndPurgeAllJobs();
+		myDaoConfig.setReindexBatchSize(5);
+		myDaoConfig.setReindexThreadCount(2);
+
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < 33; i++) {
+			Patient p = new Patient();
+			p.addName().setFamily("FAM" + i);
+			ids.add(myPatientDao.create(p, mySrd).getId().getIdPartAsLong());
+		}
+		Organization org = new Organization();
+		org.setName("ORG");
+		myOrganizationDao.create(org, mySrd);
+
+		assertEquals(33, myReindexingSvc.markAllResourcesForReindexing("Patient"));
+
+		List<ReindexJobStatus> status = myReindexingSvc.getJobStatus();
+		ourLog.info("Job status: {}", status);
+		assertEquals(1, status.size());
+		assertEquals("Patient", status.get(0).getResourceType());
+		assertEquals(0, status.get(0).getReindexCount());
+		assertEquals(33, status.get(0).getRemainingCount());
+
+		// Each chunk is batch size * thread count, so this stops after the first chunk
+		assertEquals(Integer.valueOf(10), myReindexingSvc.runReindexingPass(10));
+
+		status = myReindexingSvc.getJobStatus();
+		ourLog.info("Job status: {}", status);
+		assertEquals(1, status.size());
+		assertEquals(10, status.get(0).getReindexCount());
+		assertEquals(23, status.get(0).getRemainingCount());
+
+		assertEquals(Integer.valueOf(23), myReindexingSvc.runReindexingPass(null));
+		assertEquals(0, myReindexingSvc.getJobStatus().size());
+
+		for (final Long next : ids) {
+			ResourceTable entity = new TransactionTemplate(myTxManager).execute(new TransactionCallback<ResourceTable>() {
+				@Override
+				public ResourceTable doInTransaction(TransactionStatus theStatus) {
+					return myEntityManager.find(ResourceTable.class, next);
+				}
+			});
+			assertEquals(Long.valueOf(BaseHapiFhirDao.INDEX_STATUS_INDEXED), entity.getIndexStatus());
+		}
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		map.add(Patient.SP_FAMILY, new StringParam("FAM32"));
+		assertEquals(1, myPatientDao.search(map).size().intValue());
+	}
+
 	@Test
 	public void testSystemMetaOperation() {
 
@@ -2707,6 +2876,89 @@ public class FhirSystemDaoR4Test extends BaseJpaR4SystemTest {
 	// }
 
 
+	@Test
+	public void testTransactionWithReferencesToForcedIdsResolvesThemTogether() {
+		for (int i = 0; i < 50; i++) {
+			Patient p = new Patient();
+			p.setId("Patient/PT" + i);
+			p.setActive(true);
+			myPatientDao.update(p, mySrd);
+		}
+
+		// Warm up everything else
+		mySystemDao.transaction(mySrd, createTransactionWithReferencesToForcedIds());
+
+		myForcedIdCache.invalidateAll();
+		QueryCountHolder.clear();
+		mySystemDao.transaction(mySrd, createTransactionWithReferencesToForcedIds());
+		long selectsWithEmptyCache = QueryCountHolder.getGrandTotal().getSelect();
+		for (int i = 0; i < 50; i++) {
+			assertNotNull(myForcedIdCache.getPid("Patient", "PT" + i));
+		}
+
+		QueryCountHolder.clear();
+		mySystemDao.transaction(mySrd, createTransactionWithReferencesToForcedIds());
+		long selectsWithWarmCache = QueryCountHolder.getGrandTotal().getSelect();
+
+		ourLog.info("Transaction performed {} selects with an empty cache and {} with a warm one", selectsWithEmptyCache, selectsWithWarmCache);
+		assertEquals(selectsWithWarmCache + 1, selectsWithEmptyCache);
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		map.add(Observation.SP_SUBJECT, new ReferenceParam("Patient/PT7"));
+		assertEquals(3, myObservationDao.search(map).size().intValue());
+	}
+
+	private Bundle createTransactionWithReferencesToForcedIds() {
+		Bundle retVal = new Bundle();
+		retVal.setType(BundleType.TRANSACTION);
+		for (int i = 0; i < 50; i++) {
+			Observation o = new Observation();
+			o.setStatus(ObservationStatus.FINAL);
+			o.getSubject().setReference("Patient/PT" + i);
+			retVal.addEntry().setResource(o).getRequest().setMethod(HTTPVerb.POST).setUrl("Observation");
+		}
+		return retVal;
+	}
+
+	@Test
+	public void testTransactionRolledBackDoesNotCacheForcedIds() {
+		Bundle input = new Bundle();
+		input.setType(BundleType.TRANSACTION);
+		Patient p = new Patient();
+		p.setId("Patient/ROLLBACK");
+		input.addEntry().setResource(p).getRequest().setMethod(HTTPVerb.PUT).setUrl("Patient/ROLLBACK");
+		Observation o = new Observation();
+		o.getSubject().setReference("Patient/ROLLBACK");
+		input.addEntry().setResource(o).getRequest().setMethod(HTTPVerb.POST).setUrl("Observation");
+		o = new Observation();
+		o.getSubject().setReference("Patient/DOESNTEXIST");
+		input.addEntry().setResource(o).getRequest().setMethod(HTTPVerb.POST).setUrl("Observation");
+
+		try {
+			mySystemDao.transaction(mySrd, input);
+			fail();
+		} catch (InvalidRequestException e) {
+			// good
+		}
+		assertNull(myForcedIdCache.getPid("Patient", "ROLLBACK"));
+
+		p = new Patient();
+		p.setId("Patient/ROLLBACK");
+		p.setActive(true);
+		Long pid = myPatientDao.update(p, mySrd).getEntity().getId();
+
+		o = new Observation();
+		o.getSubject().setReference("Patient/ROLLBACK");
+		IIdType obsId = myObservationDao.create(o, mySrd).getId().toUnqualifiedVersionless();
+		assertEquals(pid, myForcedIdCache.getPid("Patient", "ROLLBACK"));
+
+		SearchParameterMap map = new SearchParameterMap();
+		map.setLoadSynchronous(true);
+		map.add(Observation.SP_SUBJECT, new ReferenceParam("Patient/ROLLBACK"));
+		assertThat(toUnqualifiedVersionlessIdValues(myObservationDao.search(map)), contains(obsId.getValue()));
+	}
+
 	@Test
 	public void testTransactionWithReferenceUuid() {
 		Bundle request = new Bundle();
@@ -1,22 +1,28 @@
 package ca.uhn.fhir.jpa.dao.r4;
 
+import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 
 import java.util.*;
 
 import ca.uhn.fhir.jpa.search.JpaRuntimeSearchParam;
 import org.hl7.fhir.r4.hapi.ctx.DefaultProfileValidationSupport;
 import org.hl7.fhir.r4.hapi.ctx.IValidationSupport;
+import org.hl7.fhir.r4.model.Enumerations;
 import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
 import org.junit.*;
 
 import ca.uhn.fhir.context.*;
 import ca.uhn.fhir.jpa.dao.ISearchParamRegistry;
 import ca.uhn.fhir.jpa.entity.*;
+import ca.uhn.fhir.jpa.util.StopWatch;
 import ca.uhn.fhir.util.TestUtil;
 
 public class SearchParamExtractorR4Test {
 
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchParamExtractorR4Test.class);
 	private static FhirContext ourCtx = FhirContext.forR4();
 	private static IValidationSupport ourValidationSupport;
 
@@ -81,4 +87,132 @@ public class SearchParamExtractorR4Test {
 		assertEquals("CODE", token.getValue());
 	}
 	
+	@Test
+	public void testParsedExpressionsAreReused() {
+		StableSearchParamRegistry searchParamRegistry = new StableSearchParamRegistry();
+		SearchParamExtractorR4 extractor = new SearchParamExtractorR4(ourCtx, ourValidationSupport, searchParamRegistry);
+
+		extractAll(extractor, createPatient());
+		int parsedCount = extractor.getParsedExpressionCountForUnitTest();
+		assertThat(parsedCount, greaterThan(0));
+
+		extractAll(extractor, createPatient());
+		assertEquals(parsedCount, extractor.getParsedExpressionCountForUnitTest());
+
+		// A refresh of the registry should clear the cache
+		searchParamRegistry.refresh();
+		extractor.extractSearchParamTokens(new ResourceTable(), createPatient());
+		assertThat(parsedCount, greaterThan(extractor.getParsedExpressionCountForUnitTest()));
+	}
+
+	/**
+	 * Not a test, but logs how long it takes to extract all of the search
+	 * parameters for a resource with a new extractor (so every expression needs to
+	 * be parsed and a new FHIRPath engine created) versus with a warm one
+	 */
+	public static void main(String[] args) {
+		ourValidationSupport = new DefaultProfileValidationSupport();
+		StableSearchParamRegistry searchParamRegistry = new StableSearchParamRegistry();
+		Patient patient = createPatient();
+		int passes = 500;
+
+		// Warm up the JIT and the structure definition cache first
+		for (int i = 0; i < passes; i++) {
+			extractAll(new SearchParamExtractorR4(ourCtx, ourValidationSupport, searchParamRegistry), patient);
+		}
+
+		StopWatch sw = new StopWatch();
+		for (int i = 0; i < passes; i++) {
+			SearchParamExtractorR4 extractor = new SearchParamExtractorR4(ourCtx, ourValidationSupport, searchParamRegistry);
+			extractAll(extractor, patient);
+		}
+		long coldMillis = sw.getMillisAndRestart();
+
+		SearchParamExtractorR4 extractor = new SearchParamExtractorR4(ourCtx, ourValidationSupport, searchParamRegistry);
+		extractAll(extractor, patient);
+		sw.getMillisAndRestart();
+		for (int i = 0; i < passes; i++) {
+			extractAll(extractor, patient);
+		}
+		long warmMillis = sw.getMillis();
+
+		ourLog.info("Extracted all Patient search params {} times: cold {}ms, warm {}ms", passes, coldMillis, warmMillis);
+	}
+
+	private static Patient createPatient() {
+		Patient patient = new Patient();
+		patient.addIdentifier().setSystem("urn:mrns").setValue("12345");
+		patient.addName().setFamily("FAMILY").addGiven("GIVEN");
+		patient.setGender(Enumerations.AdministrativeGender.MALE);
+		patient.setBirthDateElement(new org.hl7.fhir.r4.model.DateType("2011-02-03"));
+		patient.addAddress().setCity("CITY").setPostalCode("ZIP");
+		patient.getManagingOrganization().setReference("Organization/123");
+		return patient;
+	}
+
+	private static void extractAll(SearchParamExtractorR4 theExtractor, Patient thePatient) {
+		ResourceTable entity = new ResourceTable();
+		theExtractor.extractSearchParamStrings(entity, thePatient);
+		theExtractor.extractSearchParamTokens(entity, thePatient);
+		theExtractor.extractSearchParamDates(entity, thePatient);
+		theExtractor.extractSearchParamNumber(entity, thePatient);
+		theExtractor.extractSearchParamQuantity(entity, thePatient);
+		theExtractor.extractSearchParamUri(entity, thePatient);
+		for (RuntimeSearchParam next : theExtractor.getSearchParams(thePatient)) {
+			if (next.getParamType() == ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum.REFERENCE) {
+				theExtractor.extractResourceLinks(thePatient, next);
+			}
+		}
+	}
+
+	/**
+	 * Returns the same map instances until {@link #refresh()} is called, like the
+	 * real registry does between refreshes
+	 */
+	private static class StableSearchParamRegistry implements ISearchParamRegistry {
+		private Map<String, Map<String, RuntimeSearchParam>> myActiveSearchParams = new HashMap<>();
+
+		@Override
+		public void forceRefresh() {
+			refresh();
+		}
+
+		@Override
+		public RuntimeSearchParam getActiveSearchParam(String theResourceName, String theParamName) {
+			return getActiveSearchParams(theResourceName).get(theParamName);
+		}
+
+		@Override
+		public synchronized Map<String, RuntimeSearchParam> getActiveSearchParams(String theResourceName) {
+			Map<String, RuntimeSearchParam> retVal = myActiveSearchParams.get(theResourceName);
+			if (retVal == null) {
+				retVal = new HashMap<>();
+				for (RuntimeSearchParam nextSp : ourCtx.getResourceDefinition(theResourceName).getSearchParams()) {
+					retVal.put(nextSp.getName(), nextSp);
+				}
+				myActiveSearchParams.put(theResourceName, retVal);
+			}
+			return retVal;
+		}
+
+		@Override
+		public Map<String, Map<String, RuntimeSearchParam>> getActiveSearchParams() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<JpaRuntimeSearchParam> getActiveUniqueSearchParams(String theResourceName) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<JpaRuntimeSearchParam> getActiveUniqueSearchParams(String theResourceName, Set<String> theParamNames) {
+			throw new UnsupportedOperationException();
+		}
+
+		synchronized void refresh() {
+			myActiveSearchParams = new HashMap<>();
+		}
+	}
+
 }
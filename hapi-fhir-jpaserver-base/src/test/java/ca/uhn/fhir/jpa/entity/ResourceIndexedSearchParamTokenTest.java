@@ -0,0 +1,59 @@
+package ca.uhn.fhir.jpa.entity;
+
+import ca.uhn.fhir.util.TestUtil;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class ResourceIndexedSearchParamTokenTest {
+
+	@Test
+	public void testHashFunctions() {
+		ResourceTable resource = new ResourceTable();
+		resource.setResourceType("Patient");
+
+		ResourceIndexedSearchParamToken token = new ResourceIndexedSearchParamToken("NAME", "SYSTEM", "VALUE");
+		token.setResource(resource);
+		token.calculateHashes();
+
+		// Make sure our hashing function gives consistent results
+		assertEquals(BaseResourceIndexedSearchParam.calculateHashIdentity("Patient", "NAME"), token.getHashIdentity().longValue());
+		assertEquals(ResourceIndexedSearchParamToken.calculateHashSystem("Patient", "NAME", "SYSTEM"), token.getHashSystem().longValue());
+		assertEquals(ResourceIndexedSearchParamToken.calculateHashSystemAndValue("Patient", "NAME", "SYSTEM", "VALUE"), token.getHashSystemAndValue().longValue());
+		assertEquals(ResourceIndexedSearchParamToken.calculateHashValue("Patient", "NAME", "VALUE"), token.getHashValue().longValue());
+	}
+
+	@Test
+	public void testHashFunctionsUseDelimiter() {
+		// Values which would collide if they were simply concatenated
+		assertNotEquals(
+			ResourceIndexedSearchParamToken.calculateHashSystemAndValue("Patient", "NAME", "SYS", "TEMVALUE"),
+			ResourceIndexedSearchParamToken.calculateHashSystemAndValue("Patient", "NAME", "SYSTEM", "VALUE"));
+	}
+
+	@Test
+	public void testEqualsIncludesHash() {
+		ResourceTable resource = new ResourceTable();
+		resource.setResourceType("Patient");
+
+		ResourceIndexedSearchParamToken withHash = new ResourceIndexedSearchParamToken("NAME", "SYSTEM", "VALUE");
+		withHash.setResource(resource);
+		withHash.calculateHashes();
+		assertNotNull(withHash.getHashSystemAndValue());
+
+		// Rows written before the hash columns existed must not be considered
+		// equal, so that reindexing rewrites them
+		ResourceIndexedSearchParamToken withoutHash = new ResourceIndexedSearchParamToken("NAME", "SYSTEM", "VALUE");
+		withoutHash.setResource(resource);
+		assertNotEquals(withHash, withoutHash);
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
@@ -1,6 +1,9 @@
 package ca.uhn.fhir.jpa.provider.r4;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
@@ -14,9 +17,14 @@ import org.apache.http.client.methods.HttpGet;
 import org.hl7.fhir.r4.model.CapabilityStatement;
 import org.hl7.fhir.r4.model.CapabilityStatement.CapabilityStatementRestResourceComponent;
 import org.hl7.fhir.r4.model.CapabilityStatement.CapabilityStatementRestResourceSearchParamComponent;
+import org.hl7.fhir.r4.model.DecimalType;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.Patient;
 import org.junit.AfterClass;
 import org.junit.Test;
 
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.util.ExtensionConstants;
 import ca.uhn.fhir.util.TestUtil;
 
 public class ServerR4Test extends BaseResourceProviderR4Test {
@@ -60,6 +68,69 @@ public class ServerR4Test extends BaseResourceProviderR4Test {
 	}
 
 
+	@Test
+	public void testMetadataReturnsETagAndHonoursIfNoneMatch() throws IOException {
+		String etag;
+		HttpGet get = new HttpGet(ourServerBase + "/metadata");
+		CloseableHttpResponse resp = ourHttpClient.execute(get);
+		try {
+			assertEquals(200, resp.getStatusLine().getStatusCode());
+			assertNotNull(resp.getFirstHeader(Constants.HEADER_ETAG));
+			etag = resp.getFirstHeader(Constants.HEADER_ETAG).getValue();
+		} finally {
+			IOUtils.closeQuietly(resp.getEntity().getContent());
+		}
+
+		get = new HttpGet(ourServerBase + "/metadata");
+		get.addHeader(Constants.HEADER_IF_NONE_MATCH, etag);
+		resp = ourHttpClient.execute(get);
+		try {
+			assertEquals(304, resp.getStatusLine().getStatusCode());
+		} finally {
+			resp.close();
+		}
+
+		// The resource counts are part of the response, so changing them changes the ETag
+		Patient p = new Patient();
+		p.setActive(true);
+		myPatientDao.create(p, mySrd);
+
+		get = new HttpGet(ourServerBase + "/metadata");
+		get.addHeader(Constants.HEADER_IF_NONE_MATCH, etag);
+		resp = ourHttpClient.execute(get);
+		try {
+			assertEquals(200, resp.getStatusLine().getStatusCode());
+			assertNotEquals(etag, resp.getFirstHeader(Constants.HEADER_ETAG).getValue());
+		} finally {
+			IOUtils.closeQuietly(resp.getEntity().getContent());
+		}
+	}
+
+	@Test
+	public void testMetadataReturnsCopyOfCachedStatement() {
+		CapabilityStatement first = ourClient.capabilities().ofType(CapabilityStatement.class).execute();
+		assertFalse(first.getRest().isEmpty());
+
+		// Counts are still current even though the statement itself is cached
+		Patient p = new Patient();
+		p.setActive(true);
+		myPatientDao.create(p, mySrd);
+		CapabilityStatement second = ourClient.capabilities().ofType(CapabilityStatement.class).execute();
+		assertNotEquals(getPatientCount(first), getPatientCount(second));
+		assertNotEquals(first.getMeta().getVersionId(), second.getMeta().getVersionId());
+	}
+
+	private static String getPatientCount(CapabilityStatement theStatement) {
+		for (CapabilityStatementRestResourceComponent next : theStatement.getRestFirstRep().getResource()) {
+			if (next.getType().equals("Patient")) {
+				for (Extension nextExt : next.getExtensionsByUrl(ExtensionConstants.CONF_RESOURCE_COUNT)) {
+					return ((DecimalType) nextExt.getValue()).getValueAsString();
+				}
+			}
+		}
+		return null;
+	}
+
 	@AfterClass
 	public static void afterClassClearContext() {
 		TestUtil.clearAllStaticFieldsForUnitTest();
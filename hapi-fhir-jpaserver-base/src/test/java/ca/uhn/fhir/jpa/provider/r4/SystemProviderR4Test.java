@@ -25,10 +25,12 @@ import org.hl7.fhir.r4.model.Bundle.HTTPVerb;
 import org.hl7.fhir.r4.model.Enumerations.AdministrativeGender;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.junit.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.bulk.IBulkDataExportSvc;
 import ca.uhn.fhir.jpa.dao.r4.BaseJpaR4Test;
 import ca.uhn.fhir.jpa.provider.SystemProviderDstu2Test;
 import ca.uhn.fhir.jpa.rp.r4.*;
@@ -50,6 +52,8 @@ public class SystemProviderR4Test extends BaseJpaR4Test {
 
 	private static RestfulServer myRestServer;
 	private static IGenericClient ourClient;
+	@Autowired
+	private IBulkDataExportSvc myBulkDataExportSvc;
 	private static FhirContext ourCtx;
 	private static CloseableHttpClient ourHttpClient;
 	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SystemProviderR4Test.class);
@@ -340,6 +344,116 @@ public class SystemProviderR4Test extends BaseJpaR4Test {
 		myRestServer.unregisterInterceptor(interceptor);
 	}
 
+	@Test
+	public void testBulkExport() throws Exception {
+		Patient p = new Patient();
+		p.addName().setFamily("FAM");
+		ourClient.create().resource(p).execute();
+
+		String pollLocation;
+		String fileLocation = null;
+		HttpGet get = new HttpGet(ourServerBase + "/$export?_type=Patient");
+		CloseableHttpResponse http = ourHttpClient.execute(get);
+		try {
+			String output = IOUtils.toString(http.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.info(output);
+			assertEquals(200, http.getStatusLine().getStatusCode());
+			pollLocation = http.getFirstHeader(Constants.HEADER_CONTENT_LOCATION).getValue();
+			assertThat(pollLocation, startsWith(ourServerBase + "/$export-poll-status?_jobId="));
+			assertThat(output, containsString(pollLocation));
+		} finally {
+			IOUtils.closeQuietly(http);
+		}
+
+		myBulkDataExportSvc.buildExportFiles();
+
+		get = new HttpGet(pollLocation);
+		http = ourHttpClient.execute(get);
+		try {
+			String output = IOUtils.toString(http.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.info(output);
+			assertEquals(200, http.getStatusLine().getStatusCode());
+			assertThat(output, containsString("COMPLETE"));
+			assertThat(output, not(containsString("Patient.ndjson")));
+			Parameters status = EncodingEnum.detectEncoding(output).newParser(ourCtx).parseResource(Parameters.class, output);
+			for (Parameters.ParametersParameterComponent next : status.getParameter()) {
+				if (next.getName().equals("output")) {
+					fileLocation = ((StringType) next.getValue()).getValue();
+				}
+			}
+			assertThat(fileLocation, startsWith(ourServerBase + "/$export-file?_jobId="));
+		} finally {
+			IOUtils.closeQuietly(http);
+		}
+
+		get = new HttpGet(fileLocation);
+		http = ourHttpClient.execute(get);
+		try {
+			String output = IOUtils.toString(http.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.info(output);
+			assertEquals(200, http.getStatusLine().getStatusCode());
+			assertThat(http.getFirstHeader(Constants.HEADER_CONTENT_TYPE).getValue(), startsWith(Constants.CT_FHIR_NDJSON));
+			// The file is streamed as-is, not wrapped in a Binary
+			assertThat(output, startsWith("{\"resourceType\":\"Patient\""));
+			assertThat(output, containsString("\"family\":\"FAM\""));
+		} finally {
+			IOUtils.closeQuietly(http);
+		}
+
+		String otherJobFileLocation = fileLocation.replaceAll("_jobId=[^&]+", "_jobId=FOO");
+		get = new HttpGet(otherJobFileLocation);
+		http = ourHttpClient.execute(get);
+		try {
+			assertEquals(404, http.getStatusLine().getStatusCode());
+		} finally {
+			IOUtils.closeQuietly(http);
+		}
+	}
+
+	@Test
+	public void testBulkImport() throws Exception {
+		Observation obs = new Observation();
+		obs.setId("OBS");
+		obs.getSubject().setReference("Patient/PIMPORT");
+		Patient p = new Patient();
+		p.setId("PIMPORT");
+
+		String ndjson = myFhirCtx.newJsonParser().encodeResourceToString(obs) + "\n" +
+			"NOT JSON\n" +
+			myFhirCtx.newJsonParser().encodeResourceToString(p) + "\n";
+
+		// The NDJSON is the request body itself, not a Parameters resource
+		HttpPost post = new HttpPost(ourServerBase + "/$import?_format=json");
+		post.setEntity(new StringEntity(ndjson, ContentType.create("application/fhir+ndjson", StandardCharsets.UTF_8)));
+		Parameters output;
+		CloseableHttpResponse http = ourHttpClient.execute(post);
+		try {
+			String responseString = IOUtils.toString(http.getEntity().getContent(), StandardCharsets.UTF_8);
+			ourLog.info(responseString);
+			assertEquals(200, http.getStatusLine().getStatusCode());
+			output = myFhirCtx.newJsonParser().parseResource(Parameters.class, responseString);
+		} finally {
+			IOUtils.closeQuietly(http);
+		}
+		ourLog.info(myFhirCtx.newXmlParser().setPrettyPrint(true).encodeResourceToString(output));
+
+		assertEquals("resourceCount", output.getParameter().get(0).getName());
+		assertEquals("2", output.getParameter().get(0).getValue().primitiveValue());
+		// Both resources are stored in the same batch, so the reference resolves immediately
+		assertEquals("deferredReferenceCount", output.getParameter().get(1).getName());
+		assertEquals("0", output.getParameter().get(1).getValue().primitiveValue());
+		assertEquals("failure", output.getParameter().get(3).getName());
+		assertThat(output.getParameter().get(3).getValue().primitiveValue(), startsWith("Line 2: "));
+
+		Bundle found = ourClient
+			.search()
+			.forResource(Observation.class)
+			.where(Observation.SUBJECT.hasId("Patient/PIMPORT"))
+			.returnBundle(Bundle.class)
+			.execute();
+		assertEquals(1, found.getEntry().size());
+	}
+
 	@Test
 	public void testEverythingType() throws Exception {
 		HttpGet get = new HttpGet(ourServerBase + "/Patient/$everything");
@@ -7,12 +7,15 @@ import ca.uhn.fhir.jpa.dao.ISearchBuilder;
 import ca.uhn.fhir.jpa.dao.SearchParameterMap;
 import ca.uhn.fhir.jpa.dao.data.ISearchDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchIncludeDao;
+import ca.uhn.fhir.jpa.dao.data.ISearchResultBlockDao;
 import ca.uhn.fhir.jpa.dao.data.ISearchResultDao;
 import ca.uhn.fhir.jpa.entity.Search;
 import ca.uhn.fhir.jpa.entity.SearchResult;
+import ca.uhn.fhir.jpa.entity.SearchResultBlock;
 import ca.uhn.fhir.jpa.entity.SearchStatusEnum;
 import ca.uhn.fhir.jpa.entity.SearchTypeEnum;
 import ca.uhn.fhir.jpa.util.BaseIterator;
+import ca.uhn.fhir.jpa.util.StopWatch;
 import ca.uhn.fhir.model.dstu2.resource.Patient;
 import ca.uhn.fhir.rest.api.CacheControlDirective;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
@@ -20,6 +23,7 @@ import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.util.TestUtil;
 import com.google.common.collect.Lists;
+import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -41,6 +45,7 @@ import org.springframework.transaction.PlatformTransactionManager;
 import javax.persistence.EntityManager;
 import java.util.*;
 
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
@@ -68,6 +73,8 @@ public class SearchCoordinatorSvcImplTest {
 	private ISearchIncludeDao mySearchIncludeDao;
 	@Mock
 	private ISearchResultDao mySearchResultDao;
+	@Mock
+	private ISearchResultBlockDao mySearchResultBlockDao;
 	private SearchCoordinatorSvcImpl mySvc;
 
 	@Mock
@@ -89,6 +96,7 @@ public class SearchCoordinatorSvcImplTest {
 		mySvc.setSearchDaoForUnitTest(mySearchDao);
 		mySvc.setSearchDaoIncludeForUnitTest(mySearchIncludeDao);
 		mySvc.setSearchDaoResultForUnitTest(mySearchResultDao);
+		mySvc.setSearchDaoResultBlockForUnitTest(mySearchResultBlockDao);
 
 		myDaoConfig = new DaoConfig();
 		mySvc.setDaoConfigForUnitTest(myDaoConfig);
@@ -145,7 +153,7 @@ public class SearchCoordinatorSvcImplTest {
 
 		doAnswer(loadPids()).when(mySearchBuider).loadResourcesByPid(any(List.class), any(List.class), any(Set.class), anyBoolean(), any(EntityManager.class), any(FhirContext.class), same(myCallingDao));
 
-		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective());
+		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective(), null);
 		assertNotNull(result.getUuid());
 		assertEquals(null, result.size());
 
@@ -168,7 +176,7 @@ public class SearchCoordinatorSvcImplTest {
 
 		doAnswer(loadPids()).when(mySearchBuider).loadResourcesByPid(any(List.class), any(List.class), any(Set.class), anyBoolean(), any(EntityManager.class), any(FhirContext.class), same(myCallingDao));
 
-		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective());
+		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective(), null);
 		assertNotNull(result.getUuid());
 		assertEquals(null, result.size());
 
@@ -193,6 +201,52 @@ public class SearchCoordinatorSvcImplTest {
 		assertEquals(799, allResults.get(789).getResourcePid().longValue());
 	}
 
+	@Test
+	public void testAsyncSearchLargeResultSetStoredInBlocks() {
+		myDaoConfig.setSearchResultStorage(DaoConfig.SearchResultStorageEnum.COMPRESSED_BLOCKS);
+		myDaoConfig.setSearchResultBlockSize(300);
+
+		SearchParameterMap params = new SearchParameterMap();
+		params.add("name", new StringParam("ANAME"));
+
+		List<Long> pids = createPidSequence(10, 800);
+		Iterator<Long> iter = new SlowIterator<Long>(pids.iterator(), 1);
+		when(mySearchBuider.createQuery(Mockito.same(params), any(String.class))).thenReturn(iter);
+
+		doAnswer(loadPids()).when(mySearchBuider).loadResourcesByPid(any(List.class), any(List.class), any(Set.class), anyBoolean(), any(EntityManager.class), any(FhirContext.class), same(myCallingDao));
+
+		// Each block should only be written once, when it is full or when the search finishes
+		final TreeMap<Integer, List<Long>> savedBlocks = new TreeMap<>();
+		when(mySearchResultBlockDao.save(any(SearchResultBlock.class))).thenAnswer(new Answer<SearchResultBlock>() {
+			@Override
+			public SearchResultBlock answer(InvocationOnMock theInvocation) throws Throwable {
+				SearchResultBlock block = (SearchResultBlock) theInvocation.getArguments()[0];
+				assertNull(savedBlocks.put(block.getOffset(), block.getPids()));
+				return block;
+			}
+		});
+
+		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective(), null);
+		assertNotNull(result.getUuid());
+
+		List<IBaseResource> resources = result.getResources(0, 100000);
+		assertEquals(790, resources.size());
+
+		verify(mySearchResultDao, never()).save(any(Iterable.class));
+		verify(mySearchResultBlockDao, times(3)).save(any(SearchResultBlock.class));
+
+		assertEquals(Arrays.asList(0, 300, 600), new ArrayList<>(savedBlocks.keySet()));
+		assertEquals(300, savedBlocks.get(0).size());
+		assertEquals(300, savedBlocks.get(300).size());
+		assertEquals(190, savedBlocks.get(600).size());
+
+		List<Long> allPids = new ArrayList<>();
+		for (List<Long> next : savedBlocks.values()) {
+			allPids.addAll(next);
+		}
+		assertEquals(pids, allPids);
+	}
+
 	@Test
 	public void testAsyncSearchLargeResultSetSameCoordinator() {
 		SearchParameterMap params = new SearchParameterMap();
@@ -204,7 +258,7 @@ public class SearchCoordinatorSvcImplTest {
 
 		doAnswer(loadPids()).when(mySearchBuider).loadResourcesByPid(any(List.class), any(List.class), any(Set.class), anyBoolean(), any(EntityManager.class), any(FhirContext.class), same(myCallingDao));
 
-		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective());
+		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective(), null);
 		assertNotNull(result.getUuid());
 		assertEquals(null, result.size());
 
@@ -232,7 +286,7 @@ public class SearchCoordinatorSvcImplTest {
 
 		doAnswer(loadPids()).when(mySearchBuider).loadResourcesByPid(any(List.class), any(List.class), any(Set.class), anyBoolean(), any(EntityManager.class), any(FhirContext.class), same(myCallingDao));
 
-		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective());
+		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective(), null);
 		assertNotNull(result.getUuid());
 		assertEquals(null, result.size());
 
@@ -282,7 +336,7 @@ public class SearchCoordinatorSvcImplTest {
 
 		doAnswer(loadPids()).when(mySearchBuider).loadResourcesByPid(any(List.class), any(List.class), any(Set.class), anyBoolean(), any(EntityManager.class), any(FhirContext.class), same(myCallingDao));
 
-		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective());
+		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective(), null);
 		assertNotNull(result.getUuid());
 		assertEquals(90, result.size().intValue());
 
@@ -360,6 +414,61 @@ public class SearchCoordinatorSvcImplTest {
 		myExpectedNumberOfSearchBuildersCreated = 3;
 	}
 
+	@Test
+	public void testLoadSearchResultsFromDifferentCoordinatorWakesOnProgressNotification() {
+		final String uuid = UUID.randomUUID().toString();
+
+		final Search search = new Search();
+		search.setUuid(uuid);
+		search.setSearchType(SearchTypeEnum.SEARCH);
+		search.setResourceType("Patient");
+		search.setStatus(SearchStatusEnum.LOADING);
+
+		final SearchProgressNotifierLocal notifier = new SearchProgressNotifierLocal();
+		mySvc.setSearchProgressNotifierForUnitTest(notifier);
+		// Make sure we aren't just waking up because of the periodic recheck
+		mySvc.setRemoteResultsRecheckMillisForUnitTest(DateUtils.MILLIS_PER_MINUTE);
+
+		when(mySearchDao.findByUuid(eq(uuid))).thenReturn(search);
+		when(mySearchResultDao.findWithSearchUuid(any(Search.class), any(Pageable.class))).thenAnswer(new Answer<Page<SearchResult>>() {
+			@Override
+			public Page<SearchResult> answer(InvocationOnMock theInvocation) throws Throwable {
+				Pageable page = (Pageable) theInvocation.getArguments()[1];
+				ArrayList<SearchResult> results = new ArrayList<SearchResult>();
+				for (int i = page.getOffset(); i < page.getOffset() + page.getPageSize(); i++) {
+					results.add(new SearchResult().setResourcePid(i + 10L));
+				}
+				return new PageImpl<SearchResult>(results);
+			}
+		});
+
+		new Thread() {
+			@Override
+			public void run() {
+				while (notifier.getWaitingSearchCount() == 0) {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						// ignore
+					}
+				}
+				search.setNumFound(20);
+				notifier.notifySearchProgress(uuid);
+			}
+		}.start();
+
+		StopWatch sw = new StopWatch();
+		List<Long> pids = mySvc.getResources(uuid, 10, 20);
+		assertEquals(10, pids.size());
+		assertEquals(20L, pids.get(0).longValue());
+		assertThat(sw.getMillis(), lessThan(DateUtils.MILLIS_PER_MINUTE / 2));
+
+		assertEquals(1, mySvc.getPageWaitStatistics().getCount());
+		assertEquals(0, notifier.getWaitingSearchCount());
+
+		myExpectedNumberOfSearchBuildersCreated = 0;
+	}
+
 	@Test
 	public void testSynchronousSearch() {
 		SearchParameterMap params = new SearchParameterMap();
@@ -371,7 +480,7 @@ public class SearchCoordinatorSvcImplTest {
 
 		doAnswer(loadPids()).when(mySearchBuider).loadResourcesByPid(eq(pids), any(List.class), any(Set.class), anyBoolean(), any(EntityManager.class), any(FhirContext.class), same(myCallingDao));
 
-		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective());
+		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective(), null);
 		assertNull(result.getUuid());
 		assertEquals(790, result.size().intValue());
 
@@ -393,7 +502,7 @@ public class SearchCoordinatorSvcImplTest {
 		pids = createPidSequence(10, 110);
 		doAnswer(loadPids()).when(mySearchBuider).loadResourcesByPid(eq(pids), any(List.class), any(Set.class), anyBoolean(), any(EntityManager.class), any(FhirContext.class), same(myCallingDao));
 
-		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective());
+		IBundleProvider result = mySvc.registerSearch(myCallingDao, params, "Patient", new CacheControlDirective(), null);
 		assertNull(result.getUuid());
 		assertEquals(100, result.size().intValue());
 
@@ -0,0 +1,176 @@
+package ca.uhn.fhir.jpa.search;
+
+import ca.uhn.fhir.jpa.dao.DaoConfig.SearchQueueFullPolicyEnum;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import ca.uhn.fhir.util.TestUtil;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class SearchSchedulerTest {
+
+	private ExecutorService myExecutor;
+	private List<String> myOrder;
+	private SearchScheduler mySvc;
+
+	@After
+	public void after() {
+		myExecutor.shutdownNow();
+	}
+
+	@Before
+	public void before() {
+		myExecutor = Executors.newCachedThreadPool();
+		myOrder = Collections.synchronizedList(new ArrayList<String>());
+		mySvc = new SearchScheduler(myExecutor);
+	}
+
+	private Callable<Void> blocking(final CountDownLatch theStarted, final CountDownLatch theRelease) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				theStarted.countDown();
+				theRelease.await();
+				return null;
+			}
+		};
+	}
+
+	private Callable<Void> recording(final String theName, final CountDownLatch theDone) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() {
+				myOrder.add(theName);
+				theDone.countDown();
+				return null;
+			}
+		};
+	}
+
+	@Test
+	public void testNestedSynchronousUsesOneSlot() {
+		mySvc.setLimits(1, 0, 0, SearchQueueFullPolicyEnum.REJECT, 10);
+
+		mySvc.beginSynchronous();
+		mySvc.beginSynchronous();
+		assertEquals(1, mySvc.getActiveCount());
+		mySvc.endSynchronous();
+		assertEquals(1, mySvc.getActiveCount());
+		mySvc.endSynchronous();
+		assertEquals(0, mySvc.getActiveCount());
+	}
+
+	@Test
+	public void testQueuedSearchesStartRoundRobinAcrossKeys() throws Exception {
+		mySvc.setLimits(1, 100, 0, SearchQueueFullPolicyEnum.REJECT, 10);
+
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		mySvc.submitAsynchronous("A", blocking(started, release));
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		CountDownLatch done = new CountDownLatch(4);
+		mySvc.submitAsynchronous("A", recording("A1", done));
+		mySvc.submitAsynchronous("A", recording("A2", done));
+		mySvc.submitAsynchronous("A", recording("A3", done));
+		mySvc.submitAsynchronous("B", recording("B1", done));
+		assertEquals(4, mySvc.getQueuedCount());
+
+		release.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("A1", "B1", "A2", "A3"), myOrder);
+	}
+
+	@Test
+	public void testRejectWhenQueueFull() throws Exception {
+		mySvc.setLimits(1, 1, 0, SearchQueueFullPolicyEnum.REJECT, 15);
+
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		mySvc.submitAsynchronous("A", blocking(started, release));
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		CountDownLatch done = new CountDownLatch(1);
+		mySvc.submitAsynchronous("A", recording("A1", done));
+
+		try {
+			mySvc.submitAsynchronous("B", recording("B1", done));
+			fail();
+		} catch (UnclassifiedServerFailureException e) {
+			assertEquals(503, e.getStatusCode());
+			assertEquals(Collections.singletonList("15"), e.getResponseHeaders().get(SearchScheduler.HEADER_RETRY_AFTER));
+		}
+		assertEquals(1, mySvc.getRejectedCount());
+
+		release.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(Collections.singletonList("A1"), myOrder);
+	}
+
+	@Test
+	public void testSynchronousRejectedAfterMaxWait() throws Exception {
+		mySvc.setLimits(1, 10, 100, SearchQueueFullPolicyEnum.REJECT, 10);
+
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		mySvc.submitAsynchronous("A", blocking(started, release));
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		try {
+			mySvc.beginSynchronous();
+			fail();
+		} catch (UnclassifiedServerFailureException e) {
+			assertEquals(503, e.getStatusCode());
+		}
+		release.countDown();
+	}
+
+	@Test
+	public void testSynchronousTakesPriorityOverQueued() throws Exception {
+		mySvc.setLimits(1, 10, 10000, SearchQueueFullPolicyEnum.REJECT, 10);
+
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		mySvc.submitAsynchronous("A", blocking(started, release));
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		CountDownLatch done = new CountDownLatch(2);
+		mySvc.submitAsynchronous("A", recording("ASYNC", done));
+
+		final CountDownLatch syncDone = done;
+		Thread syncThread = new Thread() {
+			@Override
+			public void run() {
+				mySvc.beginSynchronous();
+				try {
+					myOrder.add("SYNC");
+				} finally {
+					mySvc.endSynchronous();
+				}
+				syncDone.countDown();
+			}
+		};
+		syncThread.start();
+		while (syncThread.getState() != Thread.State.TIMED_WAITING) {
+			Thread.sleep(10);
+		}
+
+		release.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("SYNC", "ASYNC"), myOrder);
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
@@ -0,0 +1,127 @@
+package ca.uhn.fhir.jpa.subscription.r4;
+
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
+import ca.uhn.fhir.jpa.dao.SearchParameterMap;
+import ca.uhn.fhir.jpa.dao.r4.BaseJpaR4Test;
+import ca.uhn.fhir.jpa.subscription.InMemorySubscriptionMatcher;
+import ca.uhn.fhir.jpa.subscription.InMemorySubscriptionMatcher.MatchResultEnum;
+import ca.uhn.fhir.util.TestUtil;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.*;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.Assert.assertEquals;
+
+public class InMemorySubscriptionMatcherR4Test extends BaseJpaR4Test {
+
+	@Autowired
+	private InMemorySubscriptionMatcher myMatcher;
+
+	private MatchResultEnum match(String theCriteria, IBaseResource theResource) {
+		RuntimeResourceDefinition resourceDef = myObservationDao.validateCriteriaAndReturnResourceDefinition(theCriteria);
+		SearchParameterMap map = BaseHapiFhirDao.translateMatchUrl(myObservationDao, myFhirCtx, theCriteria, resourceDef);
+		return myMatcher.match(map, myMatcher.extractValues(theResource));
+	}
+
+	private Observation newObservation() {
+		Observation obs = new Observation();
+		obs.setId("Observation/OBS1");
+		obs.setStatus(Observation.ObservationStatus.FINAL);
+		obs.getCode().addCoding().setSystem("http://loinc.org").setCode("1234-5").setDisplay("Heart Rate");
+		obs.setSubject(new Reference("Patient/PT1"));
+		obs.setEffective(new DateTimeType("2017-06-01T10:00:00Z"));
+		return obs;
+	}
+
+	@Test
+	public void testMatchDate() {
+		Observation obs = newObservation();
+		assertEquals(MatchResultEnum.MATCH, match("Observation?date=gt2017-01-01", obs));
+		assertEquals(MatchResultEnum.MATCH, match("Observation?date=2017-06", obs));
+		assertEquals(MatchResultEnum.NO_MATCH, match("Observation?date=lt2017-01-01", obs));
+		assertEquals(MatchResultEnum.NO_MATCH, match("Observation?date=2017-07", obs));
+	}
+
+	@Test
+	public void testMatchMultipleParams() {
+		Observation obs = newObservation();
+		assertEquals(MatchResultEnum.MATCH, match("Observation?code=1234-5&status=final", obs));
+		assertEquals(MatchResultEnum.NO_MATCH, match("Observation?code=1234-5&status=preliminary", obs));
+		assertEquals(MatchResultEnum.MATCH, match("Observation?status=preliminary,final", obs));
+
+		// A parameter which can't be matched doesn't prevent another one ruling out a match
+		assertEquals(MatchResultEnum.NO_MATCH, match("Observation?subject.name=smith&status=preliminary", obs));
+		assertEquals(MatchResultEnum.UNSUPPORTED, match("Observation?subject.name=smith&status=final", obs));
+	}
+
+	@Test
+	public void testMatchReference() {
+		Observation obs = newObservation();
+		assertEquals(MatchResultEnum.MATCH, match("Observation?subject=Patient/PT1", obs));
+		assertEquals(MatchResultEnum.MATCH, match("Observation?patient=PT1", obs));
+		assertEquals(MatchResultEnum.NO_MATCH, match("Observation?subject=Patient/PT2", obs));
+	}
+
+	@Test
+	public void testMatchResourceId() {
+		Observation obs = newObservation();
+		assertEquals(MatchResultEnum.MATCH, match("Observation?_id=OBS1", obs));
+		assertEquals(MatchResultEnum.NO_MATCH, match("Observation?_id=OBS2", obs));
+	}
+
+	@Test
+	public void testMatchString() {
+		Patient patient = new Patient();
+		patient.setId("Patient/PT1");
+		patient.addName().setFamily("Smithson").addGiven("John");
+		assertEquals(MatchResultEnum.MATCH, match("Patient?family=smith", patient));
+		assertEquals(MatchResultEnum.MATCH, match("Patient?name=JOHN", patient));
+		assertEquals(MatchResultEnum.MATCH, match("Patient?family:exact=Smithson", patient));
+		assertEquals(MatchResultEnum.NO_MATCH, match("Patient?family:exact=smithson", patient));
+		assertEquals(MatchResultEnum.NO_MATCH, match("Patient?family=son", patient));
+	}
+
+	@Test
+	public void testMatchToken() {
+		Observation obs = newObservation();
+		assertEquals(MatchResultEnum.MATCH, match("Observation?code=1234-5", obs));
+		assertEquals(MatchResultEnum.MATCH, match("Observation?code=http://loinc.org|1234-5", obs));
+		assertEquals(MatchResultEnum.MATCH, match("Observation?code=http://loinc.org|", obs));
+		assertEquals(MatchResultEnum.NO_MATCH, match("Observation?code=http://snomed.info/sct|1234-5", obs));
+		assertEquals(MatchResultEnum.NO_MATCH, match("Observation?code=|1234-5", obs));
+		assertEquals(MatchResultEnum.NO_MATCH, match("Observation?code=9999-9", obs));
+	}
+
+	@Test
+	public void testUnsupportedParams() {
+		Observation obs = newObservation();
+		assertEquals(MatchResultEnum.UNSUPPORTED, match("Observation?subject.name=smith", obs));
+		assertEquals(MatchResultEnum.UNSUPPORTED, match("Observation?_has:Observation:related-target:code=1234-5", obs));
+		assertEquals(MatchResultEnum.UNSUPPORTED, match("Observation?code:not=1234-5", obs));
+		assertEquals(MatchResultEnum.UNSUPPORTED, match("Observation?code:text=heart", obs));
+		assertEquals(MatchResultEnum.UNSUPPORTED, match("Observation?value-quantity=5", obs));
+	}
+
+	@Test
+	public void testUnsupportedSpecialParams() {
+		Observation obs = newObservation();
+		obs.setLanguage("en");
+		obs.getMeta().addTag("http://foo", "bar", null);
+		assertEquals(MatchResultEnum.UNSUPPORTED, match("Observation?_language=en", obs));
+		assertEquals(MatchResultEnum.UNSUPPORTED, match("Observation?_language=fr", obs));
+		assertEquals(MatchResultEnum.UNSUPPORTED, match("Observation?_tag=http://foo|bar", obs));
+		assertEquals(MatchResultEnum.UNSUPPORTED, match("Observation?_content=heart", obs));
+
+		// Another parameter can still rule out a match
+		assertEquals(MatchResultEnum.NO_MATCH, match("Observation?_language=en&status=preliminary", obs));
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
@@ -5,7 +5,9 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.List;
@@ -14,9 +16,17 @@ import java.util.Set;
 import org.hl7.fhir.dstu3.model.CodeSystem;
 import org.hl7.fhir.dstu3.model.CodeSystem.CodeSystemContentMode;
 import org.hl7.fhir.instance.model.api.IIdType;
+import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Test;
-
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import ca.uhn.fhir.jpa.dao.DaoConfig;
+import ca.uhn.fhir.jpa.dao.data.ITermCodeSystemVersionDao;
+import ca.uhn.fhir.jpa.dao.data.ITermConceptClosureDao;
 import ca.uhn.fhir.jpa.dao.dstu3.BaseJpaDstu3Test;
 import ca.uhn.fhir.jpa.entity.ResourceTable;
 import ca.uhn.fhir.jpa.entity.TermCodeSystemVersion;
@@ -30,6 +40,15 @@ public class TerminologySvcImplTest extends BaseJpaDstu3Test {
 
 	private static final String CS_URL = "http://example.com/my_code_system";
 
+	@Autowired
+	private ITermConceptClosureDao myTermConceptClosureDao;
+	@Autowired
+	private ITermCodeSystemVersionDao myTermCodeSystemVersionDao;
+
+	@After
+	public void after() {
+		myDaoConfig.setDeferIndexingForCodesystemsOfSize(new DaoConfig().getDeferIndexingForCodesystemsOfSize());
+	}
 
 	@AfterClass
 	public static void afterClassClearContext() {
@@ -150,6 +169,102 @@ public class TerminologySvcImplTest extends BaseJpaDstu3Test {
 		assertThat(codes, empty());
 	}
 
+	@Test
+	public void testClosureStored() {
+		createCodeSystem();
+
+		// childAA, childAB -> ParentA; childAAA, childAAB -> childAA, ParentA
+		assertEquals(6, myTermConceptClosureDao.count());
+
+		for (TermConcept next : myTermSvc.findCodes("http://foo")) {
+			if (next.getCode().equals("childAAB")) {
+				assertEquals(2, myTermConceptClosureDao.countByDescendant(next.getId()));
+			}
+		}
+	}
+
+	@Test
+	public void testClosureStoredWhenDeferred() {
+		myDaoConfig.setDeferIndexingForCodesystemsOfSize(1);
+		IIdType id = createCodeSystem();
+
+		// Nothing is in the closure yet, but hierarchy lookups still work once the links are saved
+		assertEquals(0, myTermConceptClosureDao.count());
+		assertFalse(myTermSvc.findCodes("http://foo").get(0).getCodeSystem().isClosureComplete());
+		for (int i = 0; i < 20; i++) {
+			myTermSvc.saveDeferred();
+		}
+		assertEquals(6, myTermConceptClosureDao.count());
+		assertTrue(myTermSvc.findCodes("http://foo").get(0).getCodeSystem().isClosureComplete());
+
+		Set<String> codes = toCodes(myTermSvc.findCodesBelow(id.getIdPartAsLong(), id.getVersionIdPartAsLong(), "ParentA"));
+		assertThat(codes, containsInAnyOrder("ParentA", "childAA", "childAAA", "childAAB", "childAB"));
+		assertTrue(myTermSvc.subsumes("http://foo", "ParentA", "childAAB"));
+	}
+
+	/**
+	 * The queue of closures to calculate is only held in memory, so a version
+	 * left incomplete by a restart needs to be found again in the database
+	 */
+	@Test
+	public void testClosureRecalculatedAfterRestart() {
+		createCodeSystem();
+		assertEquals(6, myTermConceptClosureDao.count());
+
+		// Simulate a server which stopped part way through saving the closure
+		newTxTemplate().execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus theStatus) {
+				TermConcept childAAB = null;
+				for (TermConcept next : myTermSvc.findCodes("http://foo")) {
+					if (next.getCode().equals("childAAB")) {
+						childAAB = next;
+					}
+				}
+				myTermConceptClosureDao.deleteByDescendant(childAAB.getId());
+				TermCodeSystemVersion version = myTermCodeSystemVersionDao.findOne(childAAB.getCodeSystem().getPid());
+				version.setClosureComplete(false);
+				myTermCodeSystemVersionDao.save(version);
+			}
+		});
+		BaseHapiTerminologySvc svc = AopTestUtils.getTargetObject(myTermSvc);
+		svc.clearClosureQueueForUnitTest();
+		assertEquals(4, myTermConceptClosureDao.count());
+
+		for (int i = 0; i < 5; i++) {
+			myTermSvc.saveDeferred();
+		}
+		assertEquals(6, myTermConceptClosureDao.count());
+		assertTrue(myTermSvc.findCodes("http://foo").get(0).getCodeSystem().isClosureComplete());
+	}
+
+	@Test
+	public void testClosureExpansionTooLarge() {
+		IIdType id = createCodeSystem();
+		myDaoConfig.setMaximumExpansionSize(3);
+		try {
+			myTermSvc.findCodesBelow(id.getIdPartAsLong(), id.getVersionIdPartAsLong(), "ParentA");
+			fail();
+		} catch (InvalidRequestException e) {
+			assertThat(e.getMessage(), containsString("Expansion of ValueSet produced too many codes (maximum 3)"));
+		} finally {
+			myDaoConfig.setMaximumExpansionSize(new DaoConfig().getMaximumExpansionSize());
+		}
+	}
+
+	@Test
+	public void testSubsumes() {
+		createCodeSystem();
+
+		assertTrue(myTermSvc.subsumes("http://foo", "ParentA", "childAAB"));
+		assertTrue(myTermSvc.subsumes("http://foo", "childAA", "childAAB"));
+		assertTrue(myTermSvc.subsumes("http://foo", "childAA", "childAA"));
+		assertFalse(myTermSvc.subsumes("http://foo", "childAAB", "ParentA"));
+		assertFalse(myTermSvc.subsumes("http://foo", "childAB", "childAAB"));
+		assertFalse(myTermSvc.subsumes("http://foo", "ParentB", "childAAB"));
+		assertFalse(myTermSvc.subsumes("http://foo", "ParentA", "FOO_BAD_CODE"));
+	}
+
 	@Test
 	public void testReindexTerminology() {
 		IIdType id = createCodeSystem();
@@ -0,0 +1,67 @@
+package ca.uhn.fhir.jpa.util;
+
+import ca.uhn.fhir.util.TestUtil;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class PidListCodecTest {
+
+	@Test
+	public void testEncodeDecodeEmpty() {
+		byte[] encoded = PidListCodec.encode(Collections.<Long>emptyList());
+		assertEquals(0, encoded.length);
+		assertEquals(Collections.<Long>emptyList(), PidListCodec.decode(encoded));
+	}
+
+	@Test
+	public void testEncodeDecodeExtremes() {
+		List<Long> pids = Arrays.asList(0L, Long.MAX_VALUE, 1L, Long.MIN_VALUE, -1L, Long.MAX_VALUE, 0L);
+		assertEquals(pids, PidListCodec.decode(PidListCodec.encode(pids)));
+	}
+
+	@Test
+	public void testEncodeDecodeUnsorted() {
+		List<Long> pids = Arrays.asList(1000000L, 1000003L, 999990L, 5L, 1234567890123L, 1000001L);
+		assertEquals(pids, PidListCodec.decode(PidListCodec.encode(pids)));
+	}
+
+	@Test
+	public void testEncodedSizeForClusteredPids() {
+		List<Long> pids = new ArrayList<>();
+		for (long i = 0; i < 2000; i++) {
+			pids.add(5000000L + (i * 7) % 1000);
+		}
+
+		byte[] encoded = PidListCodec.encode(pids);
+		assertThat(encoded.length, lessThan(pids.size() * 3));
+		assertEquals(pids, PidListCodec.decode(encoded));
+	}
+
+	@Test
+	public void testDecodeTruncated() {
+		byte[] encoded = PidListCodec.encode(Arrays.asList(123456789L));
+		byte[] truncated = Arrays.copyOf(encoded, encoded.length - 1);
+		try {
+			PidListCodec.decode(truncated);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Truncated PID block", e.getMessage());
+		}
+	}
+
+	@AfterClass
+	public static void afterClassClearContext() {
+		TestUtil.clearAllStaticFieldsForUnitTest();
+	}
+
+}
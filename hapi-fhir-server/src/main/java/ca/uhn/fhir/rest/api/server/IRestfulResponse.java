@@ -42,6 +42,23 @@ public interface IRestfulResponse {
 
 	Object sendWriterResponse(int status, String contentType, String charset, Writer writer) throws IOException;
 
+	/**
+	 * Returns a stream which the response body can be written to directly as bytes, using the
+	 * given character set. This is used instead of {@link #getResponseWriter(int, String, String, String, boolean)}
+	 * when the body is produced by a parser which is able to write bytes itself.
+	 *
+	 * @since 3.2.0
+	 */
+	OutputStream getResponseOutputStream(int theStatusCode, String theStatusMessage, String theContentType, String theCharset, boolean theRespondGzip) throws IOException;
+
+	/**
+	 * Counterpart to {@link #sendWriterResponse(int, String, String, Writer)} for streams obtained
+	 * from {@link #getResponseOutputStream(int, String, String, String, boolean)}
+	 *
+	 * @since 3.2.0
+	 */
+	Object sendOutputStreamResponse(int theStatus, String theContentType, String theCharset, OutputStream theOutputStream) throws IOException;
+
 	void addHeader(String headerKey, String headerValue);
 
 	Object sendAttachmentResponse(IBaseBinary bin, int stausCode, String contentType) throws IOException;
@@ -45,6 +45,7 @@ import org.hl7.fhir.instance.model.api.*;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.*;
 import java.util.regex.Matcher;
@@ -685,14 +686,17 @@ public class RestfulServerUtils {
 		}
 		String charset = Constants.CHARSET_NAME_UTF8;
 
+		if (theResource != null && !(encodingDomainResourceAsText && theResource instanceof IResource)) {
+			// The parser writes UTF-8 bytes directly, so no intermediate character stream is needed
+			OutputStream outputStream = response.getResponseOutputStream(theStausCode, theStatusMessage, contentType, charset, respondGzip);
+			IParser parser = getNewParser(theServer.getFhirContext(), theRequestDetails);
+			parser.encodeResourceToOutputStream(theResource, outputStream);
+			return response.sendOutputStreamResponse(theStausCode, contentType, charset, outputStream);
+		}
+
 		Writer writer = response.getResponseWriter(theStausCode, theStatusMessage, contentType, charset, respondGzip);
-		if (theResource == null) {
-			// No response is being returned
-		} else if (encodingDomainResourceAsText && theResource instanceof IResource) {
+		if (theResource != null) {
 			writer.append(((IResource) theResource).getText().getDiv().getValueAsString());
-		} else {
-			IParser parser = getNewParser(theServer.getFhirContext(), theRequestDetails);
-			parser.encodeResourceToWriter(theResource, writer);
 		}
 		//FIXME resource leak
 		return response.sendWriterResponse(theStausCode, contentType, charset, writer);
@@ -36,6 +36,7 @@ import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.Include;
 import ca.uhn.fhir.model.base.resource.BaseOperationOutcome;
 import ca.uhn.fhir.model.valueset.BundleTypeEnum;
+import ca.uhn.fhir.rest.annotation.Operation;
 import ca.uhn.fhir.rest.api.*;
 import ca.uhn.fhir.rest.api.server.*;
 import ca.uhn.fhir.rest.server.IPagingProvider;
@@ -96,6 +97,8 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 			myMethodReturnType = MethodReturnTypeEnum.BUNDLE_PROVIDER;
 		} else if (MethodOutcome.class.isAssignableFrom(methodReturnType)) {
 			myMethodReturnType = MethodReturnTypeEnum.METHOD_OUTCOME;
+		} else if (void.class.equals(methodReturnType) && theMethod.getAnnotation(Operation.class) != null && theMethod.getAnnotation(Operation.class).manualResponse()) {
+			myMethodReturnType = MethodReturnTypeEnum.VOID;
 		} else {
 			throw new ConfigurationException(
 					"Invalid return type '" + methodReturnType.getCanonicalName() + "' on method '" + theMethod.getName() + "' on type: " + theMethod.getDeclaringClass().getCanonicalName());
@@ -364,7 +367,8 @@ public abstract class BaseResourceReturningMethodBinding extends BaseMethodBindi
 		BUNDLE_RESOURCE,
 		LIST_OF_RESOURCES,
 		METHOD_OUTCOME,
-		RESOURCE
+		RESOURCE,
+		VOID
 	}
 
 	public enum ReturnTypeEnum {
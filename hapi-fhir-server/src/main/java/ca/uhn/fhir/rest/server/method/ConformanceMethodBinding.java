@@ -22,22 +22,28 @@ package ca.uhn.fhir.rest.server.method;
 
 import java.lang.reflect.Method;
 
+import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.instance.model.api.IBaseConformance;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
 import ca.uhn.fhir.context.ConfigurationException;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.model.valueset.BundleTypeEnum;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.RequestTypeEnum;
 import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.api.server.IRestfulServer;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.param.ParameterUtil;
+import ca.uhn.fhir.rest.server.ETagSupportEnum;
 import ca.uhn.fhir.rest.server.SimpleBundleProvider;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.MethodNotAllowedException;
+import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
 
 public class ConformanceMethodBinding extends BaseResourceReturningMethodBinding {
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ConformanceMethodBinding.class);
 
 	public ConformanceMethodBinding(Method theMethod, FhirContext theContext, Object theProvider) {
 		super(theMethod.getReturnType(), theMethod, theContext, theProvider);
@@ -61,6 +67,29 @@ public class ConformanceMethodBinding extends BaseResourceReturningMethodBinding
 	@Override
 	public IBundleProvider invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest, Object[] theMethodParams) throws BaseServerResponseException {
 		IBaseResource conf = (IBaseResource) invokeServerMethod(theServer, theRequest, theMethodParams);
+
+		/*
+		 * Providers which cache their statement may place a hash of its contents in
+		 * Meta.versionId, in which case we can use it as an ETag and let clients skip
+		 * downloading an unchanged statement
+		 */
+		if (conf != null && theServer.getETagSupport() == ETagSupportEnum.ENABLED) {
+			String versionId = conf.getMeta() != null ? conf.getMeta().getVersionId() : null;
+			if (StringUtils.isNotBlank(versionId)) {
+				String ifNoneMatch = theRequest.getHeader(Constants.HEADER_IF_NONE_MATCH_LC);
+				if (StringUtils.isNotBlank(ifNoneMatch)) {
+					ifNoneMatch = ParameterUtil.parseETagValue(ifNoneMatch);
+					if (versionId.equals(ifNoneMatch)) {
+						ourLog.debug("Returning HTTP 304 because request specified {}={}", Constants.HEADER_IF_NONE_MATCH, ifNoneMatch);
+						throw new NotModifiedException("Not Modified");
+					}
+				}
+				if (theRequest.getResponse() != null) {
+					theRequest.getResponse().addHeader(Constants.HEADER_ETAG, "W/\"" + versionId + '"');
+				}
+			}
+		}
+
 		return new SimpleBundleProvider(conf);
 	}
 
@@ -53,6 +53,8 @@ public class OperationMethodBinding extends BaseResourceReturningMethodBinding {
 	private String myDescription;
 	private final boolean myIdempotent;
 	private final Integer myIdParamIndex;
+	private boolean myManualRequest;
+	private boolean myManualResponse;
 	private final String myName;
 	private final RestOperationTypeEnum myOtherOperatiopnType;
 	private List<ReturnType> myReturnParams;
@@ -153,6 +155,8 @@ public class OperationMethodBinding extends BaseResourceReturningMethodBinding {
 			Operation theAnnotation) {
 		this(theReturnResourceType, theReturnTypeFromRp, theMethod, theContext, theProvider, theAnnotation.idempotent(), theAnnotation.name(), theAnnotation.type(), theAnnotation.returnParameters(),
 				theAnnotation.bundleType());
+		myManualRequest = theAnnotation.manualRequest();
+		myManualResponse = theAnnotation.manualResponse();
 	}
 
 	public String getDescription() {
@@ -222,10 +226,15 @@ public class OperationMethodBinding extends BaseResourceReturningMethodBinding {
 
 	@Override
 	public Object invokeServer(IRestfulServer<?> theServer, RequestDetails theRequest) throws BaseServerResponseException, IOException {
-		if (theRequest.getRequestType() == RequestTypeEnum.POST) {
+		if (theRequest.getRequestType() == RequestTypeEnum.POST && !myManualRequest) {
 			IBaseResource requestContents = ResourceParameter.loadResourceFromRequest(theRequest, this, null);
 			theRequest.getUserData().put(OperationParameter.REQUEST_CONTENTS_USERDATA_KEY, requestContents);
 		}
+		if (myManualResponse) {
+			// The method has written the response itself
+			invokeServer(theServer, theRequest, createMethodParams(theRequest));
+			return null;
+		}
 		return super.invokeServer(theServer, theRequest);
 	}
 
@@ -272,6 +281,21 @@ public class OperationMethodBinding extends BaseResourceReturningMethodBinding {
 		return myIdempotent;
 	}
 
+	/**
+	 * Returns <code>true</code> if the body of a POST is read by the operation method itself
+	 * rather than being parsed as a Parameters resource
+	 */
+	public boolean isManualRequest() {
+		return myManualRequest;
+	}
+
+	/**
+	 * Returns <code>true</code> if the response is written by the operation method itself
+	 */
+	public boolean isManualResponse() {
+		return myManualResponse;
+	}
+
 	@Override
 	protected void populateActionRequestDetailsForInterceptor(RequestDetails theRequestDetails, ActionRequestDetails theDetails, Object[] theMethodParams) {
 		super.populateActionRequestDetailsForInterceptor(theRequestDetails, theDetails, theMethodParams);
@@ -203,7 +203,8 @@ public class OperationParameter implements IParameter {
 	public Object translateQueryParametersIntoServerArgument(RequestDetails theRequest, BaseMethodBinding<?> theMethodBinding) throws InternalErrorException, InvalidRequestException {
 		List<Object> matchingParamValues = new ArrayList<Object>();
 
-		if (theRequest.getRequestType() == RequestTypeEnum.GET) {
+		if (theRequest.getRequestType() == RequestTypeEnum.GET || theRequest.getUserData().get(REQUEST_CONTENTS_USERDATA_KEY) == null) {
+			// Operations which read the request body themselves only take parameters from the URL
 			translateQueryParametersIntoServerArgumentForGet(theRequest, matchingParamValues);
 		} else {
 			translateQueryParametersIntoServerArgumentForPost(theRequest, matchingParamValues);
@@ -21,6 +21,7 @@ package ca.uhn.fhir.rest.server.servlet;
  */
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
@@ -72,6 +73,20 @@ public class ServletRestfulResponse extends RestfulResponse<ServletRequestDetail
 		return theHttpResponse.getWriter();
 	}
 
+	@Override
+	public OutputStream getResponseOutputStream(int theStatusCode, String theStatusMessage, String theContentType, String theCharset, boolean theRespondGzip) throws IOException {
+		addHeaders();
+		HttpServletResponse theHttpResponse = getRequestDetails().getServletResponse();
+		theHttpResponse.setCharacterEncoding(theCharset);
+		theHttpResponse.setStatus(theStatusCode);
+		theHttpResponse.setContentType(theContentType);
+		if (theRespondGzip) {
+			theHttpResponse.addHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
+			return new GZIPOutputStream(theHttpResponse.getOutputStream());
+		}
+		return theHttpResponse.getOutputStream();
+	}
+
 	private void addHeaders() {
 		HttpServletResponse theHttpResponse = getRequestDetails().getServletResponse();
 		getRequestDetails().getServer().addHeadersToResponse(theHttpResponse);
@@ -85,6 +100,11 @@ public class ServletRestfulResponse extends RestfulResponse<ServletRequestDetail
 		return theWriter;
 	}
 
+	@Override
+	public final Object sendOutputStreamResponse(int theStatus, String theContentType, String theCharset, OutputStream theOutputStream) throws IOException {
+		return theOutputStream;
+	}
+
 	@Override
 	public Object returnResponse(ParseAction<?> outcome, int operationStatus, boolean allowPrefer, MethodOutcome response, String resourceName) throws IOException {
 		addHeaders();
@@ -2,16 +2,25 @@ package ca.uhn.fhir.parser;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.util.TestUtil;
+import com.google.common.base.Charsets;
 import com.google.common.collect.Sets;
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Organization;
 import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Practitioner;
 import org.junit.AfterClass;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.core.IsNot.not;
@@ -156,6 +165,150 @@ public class JsonParserR4Test {
 	}
 
 
+	@Test
+	public void testStreamingParserMatchesTreeParser() {
+		String input = "{\n" +
+			"  \"resourceType\": \"Bundle\",\n" +
+			"  \"id\": \"BUNDLEID\",\n" +
+			"  \"type\": \"collection\",\n" +
+			"  \"entry\": [\n" +
+			"    {\n" +
+			"      \"fullUrl\": \"http://FOO/Patient/PATIENTID\",\n" +
+			"      \"resource\": {\n" +
+			"        \"id\": \"PATIENTID\",\n" +
+			"        \"resourceType\": \"Patient\",\n" +
+			"        \"active\": true\n" +
+			"      }\n" +
+			"    },\n" +
+			"    {\n" +
+			"      \"resource\": {\n" +
+			"        \"resourceType\": \"Patient\",\n" +
+			"        \"id\": \"PATIENTID2\",\n" +
+			"        \"contained\": [{ \"resourceType\": \"Organization\", \"id\": \"org\", \"name\": \"ORG\" }],\n" +
+			"        \"managingOrganization\": { \"reference\": \"#org\" },\n" +
+			"        \"extension\": [{ \"url\": \"http://EXT\", \"valueString\": \"EXTVAL\" }],\n" +
+			"        \"_birthDate\": { \"extension\": [{ \"url\": \"http://BD\", \"valueString\": \"BDEXT\" }] },\n" +
+			"        \"birthDate\": \"2011-01-01\",\n" +
+			"        \"name\": [{ \"family\": \"FAMILY\", \"given\": [\"GIVEN1\", \"GIVEN2\"], \"_given\": [null, { \"id\": \"GIVENID\" }] }],\n" +
+			"        \"_gender\": { \"extension\": [{ \"url\": \"http://GENDER\", \"valueCode\": \"unknown\" }] }\n" +
+			"      }\n" +
+			"    }\n" +
+			"  ]\n" +
+			"}";
+
+		IParser parser = ourCtx.newJsonParser();
+		Bundle treeParsed = parser.parseResource(Bundle.class, input);
+		String expected = parser.encodeResourceToString(treeParsed);
+		ourLog.info(expected);
+
+		Bundle streamParsed;
+		ourCtx.getParserOptions().setUseStreamingJsonParser(true);
+		try {
+			streamParsed = ourCtx.newJsonParser().parseResource(Bundle.class, input);
+		} finally {
+			ourCtx.getParserOptions().setUseStreamingJsonParser(false);
+		}
+
+		assertEquals(expected, parser.encodeResourceToString(streamParsed));
+
+		Patient patient = (Patient) streamParsed.getEntry().get(1).getResource();
+		assertEquals("GIVENID", patient.getNameFirstRep().getGiven().get(1).getId());
+		assertEquals("BDEXT", patient.getBirthDateElement().getExtensionsByUrl("http://BD").get(0).getValueAsPrimitive().getValueAsString());
+		assertEquals("unknown", patient.getGenderElement().getExtensionsByUrl("http://GENDER").get(0).getValueAsPrimitive().getValueAsString());
+		assertEquals("ORG", ((Organization) patient.getManagingOrganization().getResource()).getName());
+	}
+
+	@Test
+	public void testEncodeAndParseUsingByteStreams() throws IOException {
+		Patient p = new Patient();
+		p.setId("PATIENTID");
+		p.addName().setFamily("\u00C6r\u00F8 \u6F22\u5B57 <&>");
+
+		IParser parser = ourCtx.newJsonParser();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		parser.encodeResourceToOutputStream(p, bytes);
+
+		String encoded = parser.encodeResourceToString(p);
+		ourLog.info(encoded);
+		assertArrayEquals(encoded.getBytes(Charsets.UTF_8), bytes.toByteArray());
+
+		Patient parsed = parser.parseResource(Patient.class, new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals("\u00C6r\u00F8 \u6F22\u5B57 <&>", parsed.getNameFirstRep().getFamily());
+
+		ByteArrayOutputStream gzipBytes = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(gzipBytes);
+		parser.encodeResourceToOutputStream(p, gzip);
+		gzip.close();
+		parsed = (Patient) parser.parseResource(new GZIPInputStream(new ByteArrayInputStream(gzipBytes.toByteArray())));
+		assertEquals("\u00C6r\u00F8 \u6F22\u5B57 <&>", parsed.getNameFirstRep().getFamily());
+	}
+
+	@Test
+	public void testParseBundleEntries() {
+		Bundle input = new Bundle();
+		input.setId("BUNDLEID");
+		input.setType(Bundle.BundleType.BATCH);
+		for (int i = 0; i < 3; i++) {
+			Patient p = new Patient();
+			p.addName().setFamily("FAMILY" + i);
+			input.addEntry()
+				.setFullUrl("http://example.com/Patient/" + i)
+				.setResource(p)
+				.getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl("Patient/" + i);
+		}
+		String encoded = ourCtx.newJsonParser().encodeResourceToString(input);
+
+		BundleEntryIterator<Bundle.BundleEntryComponent> entries = ourCtx.newJsonParser().parseBundleEntries(Bundle.class, new StringReader(encoded));
+		assertTrue(entries.hasNext());
+		assertEquals(Bundle.BundleType.BATCH, ((Bundle) entries.getBundle()).getType());
+
+		int count = 0;
+		while (entries.hasNext()) {
+			Bundle.BundleEntryComponent next = entries.next();
+			assertEquals("http://example.com/Patient/" + count, next.getFullUrl());
+			assertEquals("Patient/" + count, next.getRequest().getUrl());
+			assertEquals(Bundle.HTTPVerb.PUT, next.getRequest().getMethod());
+			assertEquals("FAMILY" + count, ((Patient) next.getResource()).getNameFirstRep().getFamily());
+			assertEquals("http://example.com/Patient/" + count, next.getResource().getIdElement().getValue());
+			count++;
+		}
+		assertEquals(3, count);
+		assertEquals("BUNDLEID", entries.getBundle().getIdElement().getIdPart());
+	}
+
+	@Test
+	public void testParseBundleStitchesCrossReferences() {
+		String input = "{\n" +
+			"  \"resourceType\": \"Bundle\",\n" +
+			"  \"type\": \"collection\",\n" +
+			"  \"entry\": [\n" +
+			"    { \"fullUrl\": \"urn:uuid:0001\", \"resource\": { \"resourceType\": \"Organization\", \"name\": \"ORG\" } },\n" +
+			"    { \"fullUrl\": \"urn:uuid:0002\", \"resource\": {\n" +
+			"        \"resourceType\": \"Patient\",\n" +
+			"        \"contained\": [{ \"resourceType\": \"Practitioner\", \"id\": \"pract\", \"name\": [{ \"family\": \"PRACT\" }] }],\n" +
+			"        \"generalPractitioner\": [{ \"reference\": \"#pract\" }],\n" +
+			"        \"managingOrganization\": { \"reference\": \"urn:uuid:0001\" }\n" +
+			"    } }\n" +
+			"  ]\n" +
+			"}";
+
+		Bundle bundle = ourCtx.newJsonParser().parseResource(Bundle.class, input);
+		Patient patient = (Patient) bundle.getEntry().get(1).getResource();
+		assertSame(bundle.getEntry().get(0).getResource(), patient.getManagingOrganization().getResource());
+		assertEquals("PRACT", ((Practitioner) patient.getGeneralPractitionerFirstRep().getResource()).getNameFirstRep().getFamily());
+
+		ourCtx.getParserOptions().setStitchBundleCrossReferences(false);
+		try {
+			bundle = ourCtx.newJsonParser().parseResource(Bundle.class, input);
+		} finally {
+			ourCtx.getParserOptions().setStitchBundleCrossReferences(true);
+		}
+		patient = (Patient) bundle.getEntry().get(1).getResource();
+		assertNull(patient.getManagingOrganization().getResource());
+		assertEquals("urn:uuid:0001", patient.getManagingOrganization().getReference());
+		assertEquals("PRACT", ((Practitioner) patient.getGeneralPractitionerFirstRep().getResource()).getNameFirstRep().getFamily());
+	}
+
 	@AfterClass
 	public static void afterClassClearContext() {
 		TestUtil.clearAllStaticFieldsForUnitTest();
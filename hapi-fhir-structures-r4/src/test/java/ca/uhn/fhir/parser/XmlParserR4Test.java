@@ -2,6 +2,7 @@ package ca.uhn.fhir.parser;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.util.TestUtil;
+import com.google.common.base.Charsets;
 import com.google.common.collect.Sets;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Patient;
@@ -10,8 +11,14 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.core.IsNot.not;
@@ -146,6 +153,64 @@ public class XmlParserR4Test {
 	}
 
 
+	@Test
+	public void testEncodeAndParseUsingByteStreams() throws IOException {
+		Patient p = new Patient();
+		p.setId("PATIENTID");
+		p.addName().setFamily("\u00C6r\u00F8 \u6F22\u5B57 <&>");
+
+		IParser parser = ourCtx.newXmlParser();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		parser.encodeResourceToOutputStream(p, bytes);
+
+		String encoded = parser.encodeResourceToString(p);
+		ourLog.info(encoded);
+		assertArrayEquals(encoded.getBytes(Charsets.UTF_8), bytes.toByteArray());
+
+		Patient parsed = parser.parseResource(Patient.class, new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals("\u00C6r\u00F8 \u6F22\u5B57 <&>", parsed.getNameFirstRep().getFamily());
+
+		ByteArrayOutputStream gzipBytes = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(gzipBytes);
+		parser.encodeResourceToOutputStream(p, gzip);
+		gzip.close();
+		parsed = (Patient) parser.parseResource(new GZIPInputStream(new ByteArrayInputStream(gzipBytes.toByteArray())));
+		assertEquals("\u00C6r\u00F8 \u6F22\u5B57 <&>", parsed.getNameFirstRep().getFamily());
+	}
+
+	@Test
+	public void testParseBundleEntries() {
+		Bundle input = new Bundle();
+		input.setId("BUNDLEID");
+		input.setType(Bundle.BundleType.BATCH);
+		for (int i = 0; i < 3; i++) {
+			Patient p = new Patient();
+			p.addName().setFamily("FAMILY" + i);
+			input.addEntry()
+				.setFullUrl("http://example.com/Patient/" + i)
+				.setResource(p)
+				.getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl("Patient/" + i);
+		}
+		String encoded = ourCtx.newXmlParser().encodeResourceToString(input);
+
+		BundleEntryIterator<Bundle.BundleEntryComponent> entries = ourCtx.newXmlParser().parseBundleEntries(Bundle.class, new StringReader(encoded));
+		assertTrue(entries.hasNext());
+		assertEquals(Bundle.BundleType.BATCH, ((Bundle) entries.getBundle()).getType());
+
+		int count = 0;
+		while (entries.hasNext()) {
+			Bundle.BundleEntryComponent next = entries.next();
+			assertEquals("http://example.com/Patient/" + count, next.getFullUrl());
+			assertEquals("Patient/" + count, next.getRequest().getUrl());
+			assertEquals(Bundle.HTTPVerb.PUT, next.getRequest().getMethod());
+			assertEquals("FAMILY" + count, ((Patient) next.getResource()).getNameFirstRep().getFamily());
+			assertEquals("http://example.com/Patient/" + count, next.getResource().getIdElement().getValue());
+			count++;
+		}
+		assertEquals(3, count);
+		assertEquals("BUNDLEID", entries.getBundle().getIdElement().getIdPart());
+	}
+
 	@AfterClass
 	public static void afterClassClearContext() {
 		TestUtil.clearAllStaticFieldsForUnitTest();
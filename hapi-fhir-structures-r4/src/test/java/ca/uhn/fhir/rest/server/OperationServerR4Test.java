@@ -8,11 +8,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import javax.servlet.http.HttpServletResponse;
+
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.*;
@@ -34,6 +37,7 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.annotation.*;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.client.interceptor.LoggingInterceptor;
 import ca.uhn.fhir.util.PortUtil;
@@ -43,6 +47,7 @@ public class OperationServerR4Test {
 	private static CloseableHttpClient ourClient;
 	private static FhirContext ourCtx;
 
+	private static String ourLastBody;
 	private static IdType ourLastId;
 	private static String ourLastMethod;
 	private static StringType ourLastParam1;
@@ -57,6 +62,7 @@ public class OperationServerR4Test {
 
 	@Before
 	public void before() {
+		ourLastBody = null;
 		ourLastParam1 = null;
 		ourLastParam2 = null;
 		ourLastParam3 = null;
@@ -490,6 +496,37 @@ public class OperationServerR4Test {
 		assertEquals("123", ourLastParamUnsignedInt1.getValueAsString());
 	}
 
+	@Test
+	public void testOperationWithManualRequest() throws Exception {
+		HttpPost httpPost = new HttpPost("http://localhost:" + ourPort + "/$OP_SERVER_MANUAL_REQUEST?PARAM1=VALUE1");
+		httpPost.setEntity(new StringEntity("LINE1\nLINE2\n", ContentType.create("application/fhir+ndjson", "UTF-8")));
+		HttpResponse status = ourClient.execute(httpPost);
+
+		String response = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+		IOUtils.closeQuietly(status.getEntity().getContent());
+		ourLog.info(response);
+		assertEquals(200, status.getStatusLine().getStatusCode());
+
+		assertEquals("$OP_SERVER_MANUAL_REQUEST", ourLastMethod);
+		assertEquals("VALUE1", ourLastParam1.getValue());
+		assertEquals("LINE1\nLINE2\n", ourLastBody);
+	}
+
+	@Test
+	public void testOperationWithManualResponse() throws Exception {
+		HttpGet httpGet = new HttpGet("http://localhost:" + ourPort + "/$OP_SERVER_MANUAL_RESPONSE?PARAM1=VALUE1");
+		HttpResponse status = ourClient.execute(httpGet);
+
+		String response = IOUtils.toString(status.getEntity().getContent(), StandardCharsets.UTF_8);
+		IOUtils.closeQuietly(status.getEntity().getContent());
+		ourLog.info(response);
+		assertEquals(200, status.getStatusLine().getStatusCode());
+		assertThat(status.getFirstHeader(Constants.HEADER_CONTENT_TYPE).getValue(), startsWith("text/plain"));
+		assertEquals("VALUE1\n", response);
+
+		assertEquals("$OP_SERVER_MANUAL_RESPONSE", ourLastMethod);
+	}
+
 	@Test
 	public void testOperationWrongParamType() throws Exception {
 		Parameters p = new Parameters();
@@ -746,6 +783,36 @@ public class OperationServerR4Test {
 			return retVal;
 		}
 
+		//@formatter:off
+		@Operation(name="$OP_SERVER_MANUAL_REQUEST", manualRequest=true)
+		public Parameters opServerManualRequest(
+				@OperationParam(name="PARAM1") StringType theParam1,
+				RequestDetails theRequestDetails
+				) throws IOException {
+			//@formatter:on
+
+			ourLastMethod = "$OP_SERVER_MANUAL_REQUEST";
+			ourLastParam1 = theParam1;
+			ourLastBody = IOUtils.toString(theRequestDetails.getInputStream(), StandardCharsets.UTF_8);
+
+			Parameters retVal = new Parameters();
+			retVal.addParameter().setName("RET1").setValue(new StringType("RETVAL1"));
+			return retVal;
+		}
+
+		@Operation(name="$OP_SERVER_MANUAL_RESPONSE", idempotent=true, manualResponse=true)
+		public void opServerManualResponse(
+				@OperationParam(name="PARAM1") StringType theParam1,
+				HttpServletResponse theServletResponse
+				) throws IOException {
+			ourLastMethod = "$OP_SERVER_MANUAL_RESPONSE";
+			ourLastParam1 = theParam1;
+
+			theServletResponse.setContentType(Constants.CT_TEXT);
+			theServletResponse.setCharacterEncoding(Constants.CHARSET_NAME_UTF8);
+			theServletResponse.getWriter().write(theParam1.getValue() + "\n");
+		}
+
 		//@formatter:off
 		@Operation(name="$OP_SERVER_LIST_PARAM")
 		public Parameters opServerListParam(
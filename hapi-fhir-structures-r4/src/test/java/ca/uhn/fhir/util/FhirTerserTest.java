@@ -2,16 +2,26 @@ package ca.uhn.fhir.util;
 
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.util.*;
 
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseReference;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.*;
 import org.hl7.fhir.r4.model.Enumerations.AdministrativeGender;
 import org.junit.AfterClass;
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
+
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
 
 public class FhirTerserTest {
 
@@ -43,6 +53,33 @@ public class FhirTerserTest {
 
   }
 
+  @Test
+  public void testGetAllPopulatedChildElementsOfTypeFindsReferencesInExtensions() {
+    Patient p = new Patient();
+    p.addName().setFamily("FAMILY").addExtension("http://foo", new Reference("Practitioner/123"));
+    p.addIdentifier().setSystem("urn:sys").setValue("1").setAssigner(new Reference("Organization/1"));
+    p.getMaritalStatus().addCoding().setSystem("urn:sys").setCode("M").addExtension("http://bar", new Reference("Practitioner/456"));
+    Organization org = new Organization();
+    org.addIdentifier().setValue("2").setAssigner(new Reference("Organization/2"));
+    p.getManagingOrganization().setDisplay("ORG").setResource(org);
+
+    FhirTerser t = ourCtx.newTerser();
+    List<IBaseReference> refs = t.getAllPopulatedChildElementsOfType(p, IBaseReference.class);
+    assertEquals(5, refs.size());
+    Set<String> refValues = new HashSet<>();
+    for (IBaseReference next : refs) {
+      refValues.add(next.getReferenceElement().getValue());
+    }
+    assertThat(refValues, containsInAnyOrder("Practitioner/123", "Organization/1", "Practitioner/456", "Organization/2", null));
+    assertEquals(5, t.getAllResourceReferences(p).size());
+
+    BaseRuntimeElementCompositeDefinition<?> humanNameDef = (BaseRuntimeElementCompositeDefinition<?>) ourCtx.getElementDefinition(HumanName.class);
+    assertFalse(humanNameDef.mayContainType(IBaseReference.class));
+    assertTrue(humanNameDef.mayContainType(StringType.class));
+    BaseRuntimeElementCompositeDefinition<?> identifierDef = (BaseRuntimeElementCompositeDefinition<?>) ourCtx.getElementDefinition(Identifier.class);
+    assertTrue(identifierDef.mayContainType(IBaseReference.class));
+  }
+
   @Test
   public void testMultiValueTypes() {
 
@@ -109,6 +146,40 @@ public class FhirTerserTest {
     assertEquals("cid:device@bundle", elems.get(1).getReferenceElement().getValue());
   }
 
+  /**
+   * Times reference extraction across a directory of example resources (e.g. the
+   * examples from the FHIR specification download), passed as the only argument
+   */
+  public static void main(String[] args) throws Exception {
+    List<IBaseResource> resources = new ArrayList<>();
+    for (File next : new File(args[0]).listFiles()) {
+      String contents = FileUtils.readFileToString(next, Charsets.UTF_8);
+      try {
+        if (next.getName().endsWith(".xml")) {
+          resources.add(ourCtx.newXmlParser().parseResource(contents));
+        } else if (next.getName().endsWith(".json")) {
+          resources.add(ourCtx.newJsonParser().parseResource(contents));
+        }
+      } catch (DataFormatException e) {
+        ourLog.warn("Skipping {}: {}", next.getName(), e.getMessage());
+      }
+    }
+
+    FhirTerser t = ourCtx.newTerser();
+    int passes = 100;
+    int refs = 0;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < passes; i++) {
+      for (IBaseResource next : resources) {
+        refs += t.getAllResourceReferences(next).size();
+      }
+    }
+    long delay = System.currentTimeMillis() - start;
+    float per = (float) delay / (float) passes;
+
+    ourLog.info("Found {} references in {} resources - Took {} ms - {}ms / pass", refs / passes, resources.size(), delay, per);
+  }
+
   @AfterClass
   public static void afterClassClearContext() {
     TestUtil.clearAllStaticFieldsForUnitTest();